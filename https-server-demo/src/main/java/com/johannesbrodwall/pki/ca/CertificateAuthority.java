@@ -1,6 +1,7 @@
 package com.johannesbrodwall.pki.ca;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -9,13 +10,21 @@ import java.security.PublicKey;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface CertificateAuthority {
     X509Certificate getCaCertificate();
 
     X509Certificate issueServerCertificate(String hostname, String subject, ZonedDateTime validFrom, PublicKey publicKey) throws IOException, GeneralSecurityException;
 
+    /**
+     * Issues a server certificate naming exactly <code>hostnames</code> and nothing else, for callers
+     * like ACME which have validated the names and must not pass on anything else from a CSR
+     */
+    X509Certificate issueServerCertificate(List<String> hostnames, String subject, ZonedDateTime validFrom, PublicKey publicKey) throws IOException, GeneralSecurityException;
+
     default X509Certificate issueClientCertificate(String subject, ZonedDateTime validFrom, PublicKey publicKey) throws IOException, GeneralSecurityException {
         return issueCertificate(subject, validFrom, publicKey, Optional.empty());
     }
@@ -24,5 +33,26 @@ public interface CertificateAuthority {
 
     X509Certificate issueCertificate(byte[] certificationRequest, ZonedDateTime validFrom) throws IOException, GeneralSecurityException;
 
+    /** Issues without waiting for the signer where the implementation can, so callers can keep many requests in flight */
+    default CompletableFuture<X509Certificate> issueCertificateAsync(byte[] certificationRequest, ZonedDateTime validFrom) throws GeneralSecurityException {
+        try {
+            return CompletableFuture.completedFuture(issueCertificate(certificationRequest, validFrom));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     KeyStore getKeyStore() throws CertificateException, KeyStoreException, IOException, NoSuchAlgorithmException;
+
+    /**
+     * Replaces how serial numbers are chosen for the certificates this authority issues
+     *
+     * @throws IllegalStateException if the authority assigns serial numbers itself, like
+     *     {@link com.johannesbrodwall.pki.ca.cluster.ClusterCertificateAuthority}
+     */
+    void setSerialNumberGenerator(SerialNumberGenerator serialNumberGenerator);
+
+    default Optional<X509Certificate> findCertificate(BigInteger serialNumber) {
+        return Optional.empty();
+    }
 }
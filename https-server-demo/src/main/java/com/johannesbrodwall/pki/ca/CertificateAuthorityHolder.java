@@ -0,0 +1,51 @@
+package com.johannesbrodwall.pki.ca;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The current {@link CertificateAuthority}, replaced when the configuration is reloaded. Request
+ * threads take one {@link Version} when they start and use it to the end, so an issuance that is in
+ * flight finishes with the CA it started with, while requests that start after
+ * {@link #replace} see the new CA.
+ */
+public class CertificateAuthorityHolder {
+
+    public static class Version {
+        private final long number;
+        private final CertificateAuthority certificateAuthority;
+
+        private Version(long number, CertificateAuthority certificateAuthority) {
+            this.number = number;
+            this.certificateAuthority = certificateAuthority;
+        }
+
+        /** Increases by one for every replacement, starting at 1 */
+        public long getNumber() {
+            return number;
+        }
+
+        public CertificateAuthority getCertificateAuthority() {
+            return certificateAuthority;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{number=" + number + ", caCertificate=" + certificateAuthority.getCaCertificate().getSubjectX500Principal() + "}";
+        }
+    }
+
+    private final AtomicReference<Version> current = new AtomicReference<>();
+
+    /** Empty until the first certificate authority is set */
+    public Optional<Version> current() {
+        return Optional.ofNullable(current.get());
+    }
+
+    public Version replace(CertificateAuthority certificateAuthority) {
+        if (certificateAuthority == null) {
+            throw new IllegalArgumentException("certificateAuthority must not be null");
+        }
+        return current.updateAndGet(previous -> new Version(previous != null ? previous.number + 1 : 1, certificateAuthority));
+    }
+}
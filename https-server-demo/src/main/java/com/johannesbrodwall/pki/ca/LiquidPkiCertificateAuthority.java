@@ -1,12 +1,19 @@
 package com.johannesbrodwall.pki.ca;
 
+import com.johannesbrodwall.pki.ca.signer.CaSigner;
+import com.johannesbrodwall.pki.ca.signer.InMemoryCaSigner;
+import com.johannesbrodwall.pki.infrastructure.tracing.Span;
+import com.johannesbrodwall.pki.infrastructure.tracing.Tracer;
+import com.johannesbrodwall.pki.util.ExceptionUtil;
 import com.johannesbrodwall.pki.util.SslUtil;
+import io.liquidpki.common.CertificateExtensions;
 import io.liquidpki.common.Extension;
 import io.liquidpki.common.X500Name;
 import io.liquidpki.der.Der;
+import io.liquidpki.der.StrictDer;
 import io.liquidpki.pkcs10.CertificationRequest;
 import io.liquidpki.x509.CertificateInfo;
-import io.liquidpki.x509.SignedCertificate;
+import io.liquidpki.x509.CertificateTemplate;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -23,42 +30,81 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.time.Period;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class LiquidPkiCertificateAuthority implements CertificateAuthority {
+    private static final Tracer tracer = Tracer.getDefault();
+
     private final Period validity;
-    private final PrivateKey caPrivateKey;
+    private final CaSigner signer;
     private final X509Certificate caCertificate;
     private final X500Name caSubjectDN;
+    private final byte[] caKeyIdentifier;
+    private final Map<String, CertificateTemplate> templates = new LinkedHashMap<>();
+    private SerialNumberGenerator serialNumberGenerator = SerialNumberGenerator.random();
 
-    public LiquidPkiCertificateAuthority(Period validity, KeyPair caKeyPair, String issuerDN, ZonedDateTime validFromTime) throws GeneralSecurityException {
+    public LiquidPkiCertificateAuthority(Period validity, KeyPair caKeyPair, String issuerDN, ZonedDateTime validFromTime) throws GeneralSecurityException, IOException {
         this.validity = validity;
-        this.caPrivateKey = caKeyPair.getPrivate();
+        this.signer = new InMemoryCaSigner(caKeyPair);
 
         caSubjectDN = new X500Name(issuerDN);
-        SignedCertificate certificate = new CertificateInfo()
+        caKeyIdentifier = Extension.SubjectKeyIdentifierExtensionType.keyIdentifier(caKeyPair.getPublic());
+        CertificateInfo certificate = new CertificateInfo()
                 .version(2)
+                .serialNumber(serialNumberGenerator.nextSerialNumber())
                 .issuerName(caSubjectDN)
                 .subjectName(caSubjectDN)
                 .validity(validFromTime, validFromTime.plus(validity))
                 .publicKey(caKeyPair.getPublic())
                 .addExtension(new Extension.BasicConstraintExtensionType().ca(true))
                 .addExtension(new Extension.KeyUsageExtensionType().keyCertSign(true))
-                .signWithKey(caPrivateKey, "SHA512withRSA");
-        caCertificate = toX509(certificate);
-
+                .addExtension(new Extension.SubjectKeyIdentifierExtensionType().keyIdentifier(caKeyIdentifier));
+        caCertificate = CaSigner.await(sign(certificate));
+        addDefaultTemplates();
     }
 
     public LiquidPkiCertificateAuthority(KeyStore keyStore, Period validity) throws KeyStoreException, UnrecoverableKeyException, NoSuchAlgorithmException {
+        this(validity, loadSigner(keyStore), (X509Certificate) keyStore.getCertificate(keyStore.aliases().nextElement()));
+    }
+
+    /** Issues certificates under an existing CA certificate, with the key held by the signer */
+    public LiquidPkiCertificateAuthority(Period validity, CaSigner signer, X509Certificate caCertificate) {
+        if (!signer.getPublicKey().equals(caCertificate.getPublicKey())) {
+            throw new IllegalArgumentException("Signer key does not match " + caCertificate.getSubjectX500Principal());
+        }
         this.validity = validity;
-        String alias = keyStore.aliases().nextElement();
-        caPrivateKey = (PrivateKey) keyStore.getKey(alias, null);
-        caCertificate = (X509Certificate) keyStore.getCertificate(alias);
+        this.signer = signer;
+        this.caCertificate = caCertificate;
         caSubjectDN = new X500Name(Der.parse(caCertificate.getSubjectX500Principal().getEncoded()));
+        caKeyIdentifier = getKeyIdentifier(caCertificate);
+        addDefaultTemplates();
+    }
+
+    private void addDefaultTemplates() {
+        String signatureAlgorithm = signer.getSignatureAlgorithm();
+        addTemplate(CertificateTemplate.server(caSubjectDN, caKeyIdentifier, signatureAlgorithm, validity));
+        addTemplate(CertificateTemplate.client(caSubjectDN, caKeyIdentifier, signatureAlgorithm, validity));
+        addTemplate(CertificateTemplate.intermediate(caSubjectDN, caKeyIdentifier, signatureAlgorithm, validity));
+    }
+
+    private static CaSigner loadSigner(KeyStore keyStore) throws KeyStoreException, UnrecoverableKeyException, NoSuchAlgorithmException {
+        String alias = keyStore.aliases().nextElement();
+        return new InMemoryCaSigner(new KeyPair(keyStore.getCertificate(alias).getPublicKey(), (PrivateKey) keyStore.getKey(alias, null)));
     }
 
-    private X509Certificate toX509(SignedCertificate signedSignature) throws CertificateException {
-        return (X509Certificate) CertificateFactory.getInstance("X509").generateCertificate(new ByteArrayInputStream(signedSignature.toDer().toByteArray()));
+    /** Uses the CA certificate's own subjectKeyIdentifier if it has one, as issuers may compute it differently */
+    private static byte[] getKeyIdentifier(X509Certificate caCertificate) {
+        byte[] extension = caCertificate.getExtensionValue("2.5.29.14");
+        if (extension == null) {
+            return Extension.SubjectKeyIdentifierExtensionType.keyIdentifier(caCertificate.getPublicKey());
+        }
+        return new Extension.SubjectKeyIdentifierExtensionType((Der.OCTET_STRING) Der.parse(extension)).keyIdentifier();
     }
 
     @Override
@@ -66,46 +112,172 @@ public class LiquidPkiCertificateAuthority implements CertificateAuthority {
         return caCertificate;
     }
 
+    /** The template for issuing with the given name: "server", "client", "intermediate" or one added with {@link #addTemplate} */
+    public CertificateTemplate getTemplate(String name) {
+        CertificateTemplate template = templates.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown certificate template " + name + ", expected one of " + templates.keySet());
+        }
+        return template;
+    }
+
+    public void addTemplate(CertificateTemplate template) {
+        templates.put(template.getName(), template);
+    }
+
     @Override
-    public X509Certificate issueServerCertificate(String hostname, String subject, ZonedDateTime validFrom, PublicKey publicKey) throws GeneralSecurityException {
-        return signCertificate(
-                createCertificateToBeSigned(new X500Name(subject), validFrom, publicKey)
-                        .addExtension(new Extension.SANExtensionType().dnsName(hostname))
-        );
+    public X509Certificate issueServerCertificate(String hostname, String subject, ZonedDateTime validFrom, PublicKey publicKey) throws GeneralSecurityException, IOException {
+        List<Extension> extensions = List.of(new Extension(new Extension.SANExtensionType().dnsName(hostname)));
+        return CaSigner.await(issueCertificateAsync("server", new X500Name(subject), validFrom, publicKey, extensions));
     }
 
     @Override
-    public X509Certificate issueCertificate(String subject, ZonedDateTime validFrom, PublicKey publicKey, Optional<byte[]> csrForExtensions) throws GeneralSecurityException {
-        CertificateInfo tbsCertificate = createCertificateToBeSigned(new X500Name(subject), validFrom, publicKey);
-        csrForExtensions.map(Der::parse)
-                .map(CertificationRequest::new)
-                .map(csr -> csr.info().extensions())
-                .ifPresent(tbsCertificate::extensions);
-        return signCertificate(tbsCertificate);
+    public X509Certificate issueServerCertificate(List<String> hostnames, String subject, ZonedDateTime validFrom, PublicKey publicKey) throws GeneralSecurityException, IOException {
+        Extension.SANExtensionType san = new Extension.SANExtensionType();
+        hostnames.forEach(san::dnsName);
+        return CaSigner.await(issueCertificateAsync("server", new X500Name(subject), validFrom, publicKey, List.of(new Extension(san))));
     }
 
     @Override
-    public X509Certificate issueCertificate(byte[] csrBytes, ZonedDateTime validFrom) throws GeneralSecurityException {
-        CertificationRequest certificationRequest = new CertificationRequest(Der.parse(csrBytes));
-        return signCertificate(createCertificateToBeSigned(certificationRequest.info().subject(), validFrom, certificationRequest.info().publicKey())
-                .extensions(certificationRequest.info().extensions()));
+    public X509Certificate issueClientCertificate(String subject, ZonedDateTime validFrom, PublicKey publicKey) throws IOException, GeneralSecurityException {
+        return CaSigner.await(issueCertificateAsync("client", new X500Name(subject), validFrom, publicKey, List.of()));
     }
 
-    private CertificateInfo createCertificateToBeSigned(X500Name subject, ZonedDateTime validFrom, PublicKey publicKey) {
-        return new CertificateInfo()
-                .version(2)
-                .subjectName(subject)
-                .validity(validFrom, validFrom.plus(validity))
-                .issuerName(caSubjectDN)
-                .publicKey(publicKey);
+    @Override
+    public X509Certificate issueCertificate(String subject, ZonedDateTime validFrom, PublicKey publicKey, Optional<byte[]> csrForExtensions) throws GeneralSecurityException, IOException {
+        List<Extension> extensions = csrForExtensions.map(ExceptionUtil.softenFunction(this::parseCertificationRequest))
+                .map(csr -> requestedExtensions(csr.info().extensions()))
+                .orElse(List.of());
+        return CaSigner.await(issueCertificateAsync(templateFor(extensions), new X500Name(subject), validFrom, publicKey, extensions));
+    }
+
+    @Override
+    public X509Certificate issueCertificate(byte[] csrBytes, ZonedDateTime validFrom) throws GeneralSecurityException, IOException {
+        return CaSigner.await(issueCertificateAsync(csrBytes, validFrom));
+    }
+
+    /** Issues without waiting for the signer, so the caller can keep many requests in flight */
+    @Override
+    public CompletableFuture<X509Certificate> issueCertificateAsync(byte[] csrBytes, ZonedDateTime validFrom) throws GeneralSecurityException {
+        PendingCertificate certificate = createCertificateToBeSigned(csrBytes, validFrom);
+        return tracer.startSpan("sign").endWhenComplete(signer.sign(certificate.toBeSigned)).thenApply(certificate::toX509);
     }
 
-    private X509Certificate signCertificate(CertificateInfo tbsCertificate) throws GeneralSecurityException {
-        return toX509(tbsCertificate.signWithKey(caPrivateKey, "SHA512withRSA"));
+    /**
+     * Issues a certificate with the named template, adding <code>extensions</code> except those
+     * the template sets itself
+     */
+    public CompletableFuture<X509Certificate> issueCertificateAsync(String templateName, X500Name subject, ZonedDateTime validFrom, PublicKey publicKey, List<Extension> extensions) throws GeneralSecurityException {
+        PendingCertificate certificate = createCertificateToBeSigned(getTemplate(templateName), subject, validFrom, publicKey, extensions);
+        return tracer.startSpan("sign").endWhenComplete(signer.sign(certificate.toBeSigned)).thenApply(certificate::toX509);
+    }
+
+    /** Issues a certificate for each CSR, sending all of them to the signer as one batch */
+    public CompletableFuture<List<X509Certificate>> issueCertificates(List<byte[]> csrs, ZonedDateTime validFrom) throws GeneralSecurityException {
+        List<PendingCertificate> pendingCertificates = new ArrayList<>();
+        List<byte[]> toBeSigned = new ArrayList<>();
+        for (byte[] csr : csrs) {
+            PendingCertificate certificate = createCertificateToBeSigned(csr, validFrom);
+            pendingCertificates.add(certificate);
+            toBeSigned.add(certificate.toBeSigned);
+        }
+        return tracer.startSpan("signBatch").endWhenComplete(signer.signBatch(toBeSigned)).thenApply(signatures -> {
+            List<X509Certificate> certificates = new ArrayList<>();
+            for (int i = 0; i < signatures.size(); i++) {
+                certificates.add(pendingCertificates.get(i).toX509(signatures.get(i)));
+            }
+            return certificates;
+        });
+    }
+
+    private PendingCertificate createCertificateToBeSigned(byte[] csrBytes, ZonedDateTime validFrom) throws GeneralSecurityException {
+        CertificationRequest certificationRequest = parseCertificationRequest(csrBytes);
+        List<Extension> extensions = requestedExtensions(certificationRequest.info().extensions());
+        return createCertificateToBeSigned(
+                getTemplate(templateFor(extensions)),
+                certificationRequest.info().subject(),
+                validFrom,
+                certificationRequest.info().publicKey(),
+                extensions
+        );
+    }
+
+    private PendingCertificate createCertificateToBeSigned(CertificateTemplate template, X500Name subject, ZonedDateTime validFrom, PublicKey publicKey, List<Extension> requestedExtensions) {
+        List<Extension> extensions = new ArrayList<>();
+        boolean hasSubjectKeyIdentifier = false;
+        for (Extension extension : requestedExtensions) {
+            // An authorityKeyIdentifier requested in a CSR is not ours to honor
+            if (template.isFixed(extension.getExtnId()) || extension.getExtnId().equals("2.5.29.35")) {
+                continue;
+            }
+            hasSubjectKeyIdentifier |= extension.getExtnId().equals("2.5.29.14");
+            extensions.add(extension);
+        }
+        if (!hasSubjectKeyIdentifier) {
+            extensions.add(new Extension(Extension.SubjectKeyIdentifierExtensionType.forPublicKey(publicKey)));
+        }
+        try (Span ignored = tracer.startSpan("buildTbs")) {
+            byte[] toBeSigned = template.toBeSigned(serialNumberGenerator.nextSerialNumber(), validFrom, subject, publicKey, extensions);
+            return new PendingCertificate(template, toBeSigned);
+        }
+    }
+
+    /** The extensions are decoded along with the rest of the request, and the signature checked like PKCS10 does */
+    private CertificationRequest parseCertificationRequest(byte[] csrBytes) throws GeneralSecurityException {
+        try (Span ignored = tracer.startSpan("parsePkcs10")) {
+            StrictDer.validate(csrBytes);
+            CertificationRequest certificationRequest = new CertificationRequest(Der.parse(csrBytes));
+            certificationRequest.verifySignature();
+            return certificationRequest;
+        }
+    }
+
+    private static List<Extension> requestedExtensions(CertificateExtensions extensions) {
+        return extensions != null ? extensions.getExtensions() : List.of();
+    }
+
+    /** Requests which name a host get a server certificate, others a client certificate */
+    private static String templateFor(List<Extension> requestedExtensions) {
+        return requestedExtensions.stream().anyMatch(e -> e.getExtnId().equals("2.5.29.17")) ? "server" : "client";
+    }
+
+    private CompletableFuture<X509Certificate> sign(CertificateInfo tbsCertificate) {
+        return signer.sign(tbsCertificate.toBeSigned(signer.getSignatureAlgorithm()))
+                .thenApply(signature -> toX509OrThrow(tbsCertificate.withSignature(signature).getEncoded()));
+    }
+
+    private static X509Certificate toX509OrThrow(byte[] certificate) {
+        try {
+            return (X509Certificate) CertificateFactory.getInstance("X509").generateCertificate(new ByteArrayInputStream(certificate));
+        } catch (CertificateException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static class PendingCertificate {
+        private final CertificateTemplate template;
+        private final byte[] toBeSigned;
+
+        private PendingCertificate(CertificateTemplate template, byte[] toBeSigned) {
+            this.template = template;
+            this.toBeSigned = toBeSigned;
+        }
+
+        private X509Certificate toX509(byte[] signature) {
+            return toX509OrThrow(template.withSignature(toBeSigned, signature));
+        }
+    }
+
+    @Override
+    public void setSerialNumberGenerator(SerialNumberGenerator serialNumberGenerator) {
+        this.serialNumberGenerator = serialNumberGenerator;
     }
 
     @Override
     public KeyStore getKeyStore() throws CertificateException, KeyStoreException, IOException, NoSuchAlgorithmException {
-        return SslUtil.createKeyStore(caPrivateKey, null, caCertificate);
+        if (!(signer instanceof InMemoryCaSigner)) {
+            throw new KeyStoreException("The CA key is held by " + signer.getClass().getSimpleName() + " and cannot be exported");
+        }
+        return SslUtil.createKeyStore(((InMemoryCaSigner) signer).getPrivateKey(), null, caCertificate);
     }
 }
@@ -0,0 +1,115 @@
+package com.johannesbrodwall.pki.ca;
+
+import com.johannesbrodwall.pki.infrastructure.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Counts and times the certificates issued by another certificate authority, labelled with
+ * the kind of issuance: "server", "client", "request" (confirmed in the web form) or "csr".
+ */
+public class MeteredCertificateAuthority implements CertificateAuthority {
+
+    private final CertificateAuthority delegate;
+    private final MetricsRegistry metrics;
+
+    public MeteredCertificateAuthority(CertificateAuthority delegate, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public X509Certificate getCaCertificate() {
+        return delegate.getCaCertificate();
+    }
+
+    @Override
+    public X509Certificate issueServerCertificate(String hostname, String subject, ZonedDateTime validFrom, PublicKey publicKey) throws IOException, GeneralSecurityException {
+        return measure("server", () -> delegate.issueServerCertificate(hostname, subject, validFrom, publicKey));
+    }
+
+    @Override
+    public X509Certificate issueServerCertificate(List<String> hostnames, String subject, ZonedDateTime validFrom, PublicKey publicKey) throws IOException, GeneralSecurityException {
+        return measure("server", () -> delegate.issueServerCertificate(hostnames, subject, validFrom, publicKey));
+    }
+
+    @Override
+    public X509Certificate issueClientCertificate(String subject, ZonedDateTime validFrom, PublicKey publicKey) throws IOException, GeneralSecurityException {
+        return measure("client", () -> delegate.issueClientCertificate(subject, validFrom, publicKey));
+    }
+
+    @Override
+    public X509Certificate issueCertificate(String subjectName, ZonedDateTime validFrom, PublicKey publicKey, Optional<byte[]> csrForExtensions) throws IOException, GeneralSecurityException {
+        return measure("request", () -> delegate.issueCertificate(subjectName, validFrom, publicKey, csrForExtensions));
+    }
+
+    @Override
+    public X509Certificate issueCertificate(byte[] certificationRequest, ZonedDateTime validFrom) throws IOException, GeneralSecurityException {
+        return measure("csr", () -> delegate.issueCertificate(certificationRequest, validFrom));
+    }
+
+    @Override
+    public CompletableFuture<X509Certificate> issueCertificateAsync(byte[] certificationRequest, ZonedDateTime validFrom) throws GeneralSecurityException {
+        long start = System.nanoTime();
+        try {
+            return delegate.issueCertificateAsync(certificationRequest, validFrom)
+                    .whenComplete((certificate, e) -> record("csr", start, e instanceof CompletionException ? e.getCause() : e));
+        } catch (GeneralSecurityException | RuntimeException e) {
+            record("csr", start, e);
+            throw e;
+        }
+    }
+
+    private X509Certificate measure(String kind, Issuance issuance) throws IOException, GeneralSecurityException {
+        long start = System.nanoTime();
+        try {
+            X509Certificate certificate = issuance.issue();
+            record(kind, start, null);
+            return certificate;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            record(kind, start, e);
+            throw e;
+        }
+    }
+
+    private void record(String kind, long start, Throwable failure) {
+        if (failure == null) {
+            metrics.counter("ca_certificates_issued_total", "Certificates issued", "kind", kind).increment();
+        } else {
+            metrics.counter("ca_issuance_failures_total", "Failed certificate issuances", "kind", kind, "exception", failure.getClass().getSimpleName()).increment();
+        }
+        metrics.timer("ca_issuance_seconds", "Time to issue a certificate, including signing", "kind", kind).recordSince(start);
+    }
+
+    private interface Issuance {
+        X509Certificate issue() throws IOException, GeneralSecurityException;
+    }
+
+    @Override
+    public KeyStore getKeyStore() throws CertificateException, KeyStoreException, IOException, NoSuchAlgorithmException {
+        return delegate.getKeyStore();
+    }
+
+    @Override
+    public void setSerialNumberGenerator(SerialNumberGenerator serialNumberGenerator) {
+        delegate.setSerialNumberGenerator(serialNumberGenerator);
+    }
+
+    @Override
+    public Optional<X509Certificate> findCertificate(BigInteger serialNumber) {
+        return delegate.findCertificate(serialNumber);
+    }
+}
@@ -0,0 +1,15 @@
+package com.johannesbrodwall.pki.ca;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+@FunctionalInterface
+public interface SerialNumberGenerator {
+
+    BigInteger nextSerialNumber();
+
+    static SerialNumberGenerator random() {
+        SecureRandom random = new SecureRandom();
+        return () -> new BigInteger(64, random);
+    }
+}
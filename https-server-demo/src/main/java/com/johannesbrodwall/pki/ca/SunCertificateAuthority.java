@@ -1,8 +1,12 @@
 package com.johannesbrodwall.pki.ca;
 
+import com.johannesbrodwall.pki.infrastructure.tracing.Span;
+import com.johannesbrodwall.pki.infrastructure.tracing.Tracer;
 import com.johannesbrodwall.pki.util.ExceptionUtil;
 import com.johannesbrodwall.pki.util.SslUtil;
 import com.johannesbrodwall.pki.util.SunCertificateUtil;
+import io.liquidpki.common.AlgorithmIdentifier;
+import io.liquidpki.der.StrictDer;
 import sun.security.pkcs10.PKCS10;
 import sun.security.x509.BasicConstraintsExtension;
 import sun.security.x509.CertificateExtensions;
@@ -30,18 +34,23 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.time.Period;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 public class SunCertificateAuthority implements CertificateAuthority {
+    private static final Tracer tracer = Tracer.getDefault();
 
     private final Period validity;
     private final PrivateKey caPrivateKey;
+    private final String signatureAlgorithm;
     private final X509Certificate caCertificate;
+    private SerialNumberGenerator serialNumberGenerator = SerialNumberGenerator.random();
 
     public SunCertificateAuthority(Period validity, KeyPair caKeyPair, String issuer, ZonedDateTime validFrom) throws IOException, GeneralSecurityException {
         this.validity = validity;
         caPrivateKey = caKeyPair.getPrivate();
+        signatureAlgorithm = AlgorithmIdentifier.defaultSignatureAlgorithm(caPrivateKey);
 
         CertificateExtensions extensions = new CertificateExtensions();
         KeyUsageExtension keyUsageExtension = new KeyUsageExtension();
@@ -54,14 +63,19 @@ public class SunCertificateAuthority implements CertificateAuthority {
         BasicConstraintsExtension basicConstraintsExtension = new BasicConstraintsExtension(isCertificateAuthority, certificationPathDepth);
         extensions.set(BasicConstraintsExtension.NAME, basicConstraintsExtension);
 
-        X509CertImpl certificate = sign(SunCertificateUtil.createX509Cert(new X500Name(issuer), new X500Name(issuer), validFrom, validFrom.plus(validity), Optional.of(extensions), caKeyPair.getPublic()));
+        X509CertImpl certificate = sign(SunCertificateUtil.createX509Cert(new X500Name(issuer), new X500Name(issuer), validFrom, validFrom.plus(validity), Optional.of(extensions), caKeyPair.getPublic(), serialNumberGenerator.nextSerialNumber(), signatureAlgorithm));
         this.caCertificate = (X509Certificate) CertificateFactory.getInstance("X509").generateCertificate(new ByteArrayInputStream(certificate.getEncoded()));
     }
 
     public SunCertificateAuthority(KeyStore keyStore, Period validityPeriod) throws GeneralSecurityException {
+        this(keyStore, null, validityPeriod);
+    }
+
+    public SunCertificateAuthority(KeyStore keyStore, char[] keyPassword, Period validityPeriod) throws GeneralSecurityException {
         this.validity = validityPeriod;
         String alias = keyStore.aliases().nextElement();
-        caPrivateKey = (PrivateKey) keyStore.getKey(alias, null);
+        caPrivateKey = (PrivateKey) keyStore.getKey(alias, keyPassword);
+        signatureAlgorithm = AlgorithmIdentifier.defaultSignatureAlgorithm(caPrivateKey);
         caCertificate = (X509Certificate) keyStore.getCertificate(alias);
     }
 
@@ -70,6 +84,11 @@ public class SunCertificateAuthority implements CertificateAuthority {
         return caCertificate;
     }
 
+    @Override
+    public void setSerialNumberGenerator(SerialNumberGenerator serialNumberGenerator) {
+        this.serialNumberGenerator = serialNumberGenerator;
+    }
+
     @Override
     public KeyStore getKeyStore() throws CertificateException, KeyStoreException, IOException, NoSuchAlgorithmException {
         return SslUtil.createKeyStore(caPrivateKey, null, caCertificate);
@@ -88,37 +107,69 @@ public class SunCertificateAuthority implements CertificateAuthority {
         return doIssueCertificate(subject, validFrom, publicKey, Optional.of(extensions));
     }
 
+    @Override
+    public X509Certificate issueServerCertificate(List<String> hostnames, String subject, ZonedDateTime validFrom, PublicKey publicKey) throws IOException, GeneralSecurityException {
+        List<GeneralName> names = new ArrayList<>();
+        for (String hostname : hostnames) {
+            names.add(new GeneralName(new DNSName(hostname)));
+        }
+        CertificateExtensions extensions = new CertificateExtensions();
+        extensions.set(SubjectAlternativeNameExtension.NAME, new SubjectAlternativeNameExtension(SunCertificateUtil.createGeneralNames(names)));
+        return doIssueCertificate(subject, validFrom, publicKey, Optional.of(extensions));
+    }
+
     @Override
     public X509Certificate issueCertificate(String subject, ZonedDateTime validFrom, PublicKey publicKey, Optional<byte[]> extensions) throws GeneralSecurityException, IOException {
         return doIssueCertificate(subject, validFrom, publicKey, extensions.flatMap(ExceptionUtil.softenFunction(this::decodeExtensions)));
     }
 
     private Optional<CertificateExtensions> decodeExtensions(byte[] bytes) throws IOException, SignatureException, NoSuchAlgorithmException {
-        PKCS10 pkcs10 = new PKCS10(bytes);
-        return Optional.ofNullable(SunCertificateUtil.getCertificateExtensions(pkcs10));
+        return Optional.ofNullable(decodeExtensions(parsePkcs10(bytes)));
+    }
+
+    private static PKCS10 parsePkcs10(byte[] bytes) throws IOException, SignatureException, NoSuchAlgorithmException {
+        try (Span ignored = tracer.startSpan("parsePkcs10")) {
+            // Reject malformed input before PKCS10 verifies the signature
+            StrictDer.validate(bytes);
+            return new PKCS10(bytes);
+        }
+    }
+
+    private static CertificateExtensions decodeExtensions(PKCS10 pkcs10) {
+        try (Span ignored = tracer.startSpan("decodeExtensions")) {
+            return SunCertificateUtil.getCertificateExtensions(pkcs10);
+        }
     }
 
     @Override
     public X509Certificate issueCertificate(byte[] certificationRequest, ZonedDateTime validFrom) throws IOException, GeneralSecurityException {
-        PKCS10 pkcs10 = new PKCS10(certificationRequest);
-        Optional<CertificateExtensions> certificateExtensions = Optional.ofNullable(SunCertificateUtil.getCertificateExtensions(pkcs10));
+        PKCS10 pkcs10 = parsePkcs10(certificationRequest);
+        Optional<CertificateExtensions> certificateExtensions = Optional.ofNullable(decodeExtensions(pkcs10));
         return doIssueCertificate(pkcs10.getSubjectName().toString(), validFrom, pkcs10.getSubjectPublicKeyInfo(), certificateExtensions);
     }
 
     private X509Certificate doIssueCertificate(String subject, ZonedDateTime validFrom, PublicKey publicKey, Optional<CertificateExtensions> certificateExtensions) throws GeneralSecurityException, IOException {
-        return sign(SunCertificateUtil.createX509Cert(
-                new X500Name(subject),
-                getIssuer(),
-                validFrom,
-                validFrom.plus(validity),
-                certificateExtensions,
-                publicKey
-        ));
+        X509CertImpl x509Cert;
+        try (Span ignored = tracer.startSpan("buildTbs")) {
+            x509Cert = SunCertificateUtil.createX509Cert(
+                    new X500Name(subject),
+                    getIssuer(),
+                    validFrom,
+                    validFrom.plus(validity),
+                    certificateExtensions,
+                    publicKey,
+                    serialNumberGenerator.nextSerialNumber(),
+                    signatureAlgorithm
+            );
+        }
+        return sign(x509Cert);
     }
 
     private X509CertImpl sign(X509CertImpl x509Cert) throws CertificateException, NoSuchAlgorithmException, InvalidKeyException, NoSuchProviderException, SignatureException {
-        x509Cert.sign(caPrivateKey, "SHA512withRSA");
-        return x509Cert;
+        try (Span ignored = tracer.startSpan("sign")) {
+            x509Cert.sign(caPrivateKey, signatureAlgorithm);
+            return x509Cert;
+        }
     }
 
     private X500Name getIssuer() throws IOException {
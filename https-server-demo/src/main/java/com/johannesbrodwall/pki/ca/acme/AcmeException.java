@@ -0,0 +1,38 @@
+package com.johannesbrodwall.pki.ca.acme;
+
+import org.jsonbuddy.JsonObject;
+
+/**
+ * An ACME error, returned to the client as a problem document with a type from
+ * <a href="https://datatracker.ietf.org/doc/html/rfc8555#section-6.7">RFC 8555 section 6.7</a>
+ */
+public class AcmeException extends Exception {
+
+    private final int status;
+    private final String type;
+
+    public AcmeException(int status, String type, String detail) {
+        super(detail);
+        this.status = status;
+        this.type = type;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /** The error type without the <code>urn:ietf:params:acme:error:</code> prefix, such as "badNonce" */
+    public String getType() {
+        return type;
+    }
+
+    public JsonObject toProblem() {
+        return problem(type, getMessage());
+    }
+
+    static JsonObject problem(String type, String detail) {
+        return new JsonObject()
+                .put("type", "urn:ietf:params:acme:error:" + type)
+                .put("detail", detail);
+    }
+}
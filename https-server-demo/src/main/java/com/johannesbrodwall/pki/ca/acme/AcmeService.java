@@ -0,0 +1,550 @@
+package com.johannesbrodwall.pki.ca.acme;
+
+import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.CertificateAuthorityHolder;
+import com.johannesbrodwall.pki.infrastructure.metrics.MetricsRegistry;
+import com.johannesbrodwall.pki.infrastructure.tracing.Span;
+import com.johannesbrodwall.pki.infrastructure.tracing.Tracer;
+import io.liquidpki.common.Extension;
+import io.liquidpki.pkcs10.CertificationRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * The accounts, orders and authorizations of the ACME server in {@link AcmeServlet}, kept in memory.
+ * Challenge validation and issuance are slow, so they are put on a bounded queue and the client
+ * polls the authorization or order until it's no longer pending or processing, as
+ * <a href="https://datatracker.ietf.org/doc/html/rfc8555#section-7.1.6">RFC 8555 section 7.1.6</a>
+ * describes. Only dns identifiers are supported, and each authorization offers the one challenge
+ * type of the {@link ChallengeValidator}.
+ *
+ * <p>Orders and their authorizations are gone when they expire, and are evicted from memory by a
+ * sweep at most every minute when accounts and orders are created. Accounts are evicted when they
+ * have no orders and haven't been used for {@link #ACCOUNT_IDLE_LIFETIME}. Each account may have
+ * {@value #MAX_PENDING_ORDERS} orders that are not yet valid or invalid.</p>
+ */
+public class AcmeService implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AcmeService.class);
+    private static final Tracer tracer = Tracer.getDefault();
+
+    private static final Duration ORDER_LIFETIME = Duration.ofDays(7);
+    /** Longer than clients usually wait between renewals */
+    private static final Duration ACCOUNT_IDLE_LIFETIME = Duration.ofDays(90);
+    private static final Duration SWEEP_INTERVAL = Duration.ofMinutes(1);
+    static final int MAX_PENDING_ORDERS = 100;
+    private static final Pattern DNS_NAME = Pattern.compile("([a-z0-9]([a-z0-9-]{0,61}[a-z0-9])?\\.)*[a-z0-9]([a-z0-9-]{0,61}[a-z0-9])?");
+    /** Single-label names like localhost and names with a numeric top-level label, like IP addresses */
+    private static final Pattern NOT_PUBLIC_NAME = Pattern.compile("[^.]*|.*\\.[0-9]+");
+
+    enum Status {
+        PENDING, READY, PROCESSING, VALID, INVALID;
+
+        String toJson() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    static class Account {
+        private final String id;
+        private final PublicKey publicKey;
+        private final String thumbprint;
+        private final List<String> contact;
+        private final Set<Order> orders = ConcurrentHashMap.newKeySet();
+        private volatile Instant lastUsed;
+
+        private Account(String id, PublicKey publicKey, String thumbprint, List<String> contact, Instant created) {
+            this.id = id;
+            this.publicKey = publicKey;
+            this.thumbprint = thumbprint;
+            this.contact = contact;
+            this.lastUsed = created;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        PublicKey getPublicKey() {
+            return publicKey;
+        }
+
+        List<String> getContact() {
+            return contact;
+        }
+    }
+
+    static class Authorization {
+        private final String id;
+        private final Order order;
+        private final String identifier;
+        private final String token;
+        private Status challengeStatus = Status.PENDING;
+        private Instant validated;
+        private AcmeException error;
+
+        private Authorization(String id, Order order, String identifier, String token) {
+            this.id = id;
+            this.order = order;
+            this.identifier = identifier;
+            this.token = token;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        String getIdentifier() {
+            return identifier;
+        }
+
+        String getToken() {
+            return token;
+        }
+
+        Instant getExpires() {
+            return order.expires;
+        }
+
+        /** Pending until the challenge has been validated or has failed */
+        synchronized Status getStatus() {
+            return challengeStatus == Status.VALID || challengeStatus == Status.INVALID ? challengeStatus : Status.PENDING;
+        }
+
+        synchronized Status getChallengeStatus() {
+            return challengeStatus;
+        }
+
+        synchronized Instant getValidated() {
+            return validated;
+        }
+
+        synchronized AcmeException getError() {
+            return error;
+        }
+
+        private synchronized boolean startValidation() {
+            if (challengeStatus != Status.PENDING) {
+                return false;
+            }
+            challengeStatus = Status.PROCESSING;
+            return true;
+        }
+
+        private void complete(boolean valid, AcmeException error) {
+            synchronized (this) {
+                this.challengeStatus = valid ? Status.VALID : Status.INVALID;
+                this.validated = valid ? Instant.now() : null;
+                this.error = error;
+            }
+            order.authorizationCompleted();
+        }
+    }
+
+    static class Order {
+        private final String id;
+        private final Account account;
+        private final List<String> identifiers;
+        private final Instant expires;
+        private final List<Authorization> authorizations = new ArrayList<>();
+        private Status status = Status.PENDING;
+        private X509Certificate[] certificateChain;
+        private AcmeException error;
+
+        private Order(String id, Account account, List<String> identifiers, Instant expires) {
+            this.id = id;
+            this.account = account;
+            this.identifiers = identifiers;
+            this.expires = expires;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        List<String> getIdentifiers() {
+            return identifiers;
+        }
+
+        Instant getExpires() {
+            return expires;
+        }
+
+        List<Authorization> getAuthorizations() {
+            return authorizations;
+        }
+
+        synchronized Status getStatus() {
+            return status;
+        }
+
+        private boolean isExpired(Instant now) {
+            return !now.isBefore(expires);
+        }
+
+        /** The issued certificate followed by the CA certificate, or null until the order is valid */
+        synchronized X509Certificate[] getCertificateChain() {
+            return certificateChain;
+        }
+
+        synchronized AcmeException getError() {
+            return error;
+        }
+
+        private synchronized void authorizationCompleted() {
+            if (status != Status.PENDING) {
+                return;
+            }
+            if (authorizations.stream().anyMatch(a -> a.getStatus() == Status.INVALID)) {
+                status = Status.INVALID;
+                error = new AcmeException(403, "unauthorized", "Authorization failed");
+            } else if (authorizations.stream().allMatch(a -> a.getStatus() == Status.VALID)) {
+                status = Status.READY;
+            }
+        }
+
+        private synchronized void setStatus(Status expected, Status status) throws AcmeException {
+            if (this.status != expected) {
+                throw new AcmeException(403, "orderNotReady", "Order is " + this.status.toJson() + ", not " + expected.toJson());
+            }
+            this.status = status;
+        }
+
+        private synchronized void complete(X509Certificate[] certificateChain, AcmeException error) {
+            this.status = certificateChain != null ? Status.VALID : Status.INVALID;
+            this.certificateChain = certificateChain;
+            this.error = error;
+        }
+    }
+
+    private final CertificateAuthorityHolder certificateAuthorityHolder;
+    private final ChallengeValidator challengeValidator;
+    private final ThreadPoolExecutor queue;
+    private final SecureRandom random = new SecureRandom();
+    private final Clock clock;
+    private Instant nextSweep = Instant.MIN;
+
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final Map<String, Account> accountsByThumbprint = new ConcurrentHashMap<>();
+    private final Map<String, Order> orders = new ConcurrentHashMap<>();
+    private final Map<String, Authorization> authorizations = new ConcurrentHashMap<>();
+
+    public AcmeService(CertificateAuthorityHolder certificateAuthorityHolder, ChallengeValidator challengeValidator) {
+        this(certificateAuthorityHolder, challengeValidator, 4, 1000);
+    }
+
+    /**
+     * Validates challenges and submits certificates for signing on <code>threads</code> threads, with
+     * up to <code>queueCapacity</code> tasks waiting before new ones are rejected
+     */
+    public AcmeService(CertificateAuthorityHolder certificateAuthorityHolder, ChallengeValidator challengeValidator, int threads, int queueCapacity) {
+        this(certificateAuthorityHolder, challengeValidator, threads, queueCapacity, Clock.systemUTC());
+    }
+
+    /** Lets tests decide when orders expire */
+    AcmeService(CertificateAuthorityHolder certificateAuthorityHolder, ChallengeValidator challengeValidator, int threads, int queueCapacity, Clock clock) {
+        this.clock = clock;
+        this.certificateAuthorityHolder = certificateAuthorityHolder;
+        this.challengeValidator = challengeValidator;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.queue = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), task -> {
+            Thread thread = new Thread(task, "AcmeService-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queue.allowCoreThreadTimeOut(true);
+    }
+
+    String getChallengeType() {
+        return challengeValidator.getType();
+    }
+
+    Optional<Account> findAccount(String id) {
+        return Optional.ofNullable(accounts.get(id)).map(this::used);
+    }
+
+    /** Finds the account by the JWK thumbprint of its key */
+    Optional<Account> findAccountByKey(String thumbprint) {
+        return Optional.ofNullable(accountsByThumbprint.get(thumbprint)).map(this::used);
+    }
+
+    private Account used(Account account) {
+        account.lastUsed = clock.instant();
+        return account;
+    }
+
+    /** Returns the existing account if there is one for the key */
+    Account newAccount(PublicKey publicKey, String thumbprint, List<String> contact) {
+        evictExpired();
+        return used(accountsByThumbprint.computeIfAbsent(thumbprint, key -> {
+            Account account = new Account(randomId(), publicKey, thumbprint, List.copyOf(contact), clock.instant());
+            accounts.put(account.id, account);
+            return account;
+        }));
+    }
+
+    Order newOrder(Account account, List<String> identifiers) throws AcmeException {
+        if (identifiers.isEmpty()) {
+            throw new AcmeException(400, "malformed", "Order has no identifiers");
+        }
+        List<String> names = new ArrayList<>();
+        for (String identifier : identifiers) {
+            String name = identifier.toLowerCase(Locale.ROOT);
+            if (name.startsWith("*.")) {
+                throw new AcmeException(400, "rejectedIdentifier", "Wildcard identifiers are not supported: " + identifier);
+            } else if (name.length() > 253 || !DNS_NAME.matcher(name).matches()) {
+                throw new AcmeException(400, "rejectedIdentifier", "Not a valid DNS name: " + identifier);
+            } else if (NOT_PUBLIC_NAME.matcher(name).matches()) {
+                throw new AcmeException(400, "rejectedIdentifier", "Not a fully qualified domain name: " + identifier);
+            }
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        evictExpired();
+        Instant now = clock.instant();
+        Order order = new Order(randomId(), account, List.copyOf(names), now.plus(ORDER_LIFETIME));
+        for (String name : names) {
+            order.authorizations.add(new Authorization(randomId(), order, name, randomId()));
+        }
+        synchronized (account) {
+            long pending = account.orders.stream()
+                    .filter(o -> !o.isExpired(now) && o.getStatus() != Status.VALID && o.getStatus() != Status.INVALID)
+                    .count();
+            if (pending >= MAX_PENDING_ORDERS) {
+                throw new AcmeException(429, "rateLimited", "Account has " + pending + " pending orders");
+            }
+            account.orders.add(order);
+        }
+        for (Authorization authorization : order.authorizations) {
+            authorizations.put(authorization.id, authorization);
+        }
+        orders.put(order.id, order);
+        return order;
+    }
+
+    Order getOrder(Account account, String id) throws AcmeException {
+        Order order = orders.get(id);
+        if (order != null && order.isExpired(clock.instant())) {
+            remove(order);
+            order = null;
+        }
+        if (order == null) {
+            throw new AcmeException(404, "malformed", "No such order " + id);
+        } else if (order.account != account) {
+            throw new AcmeException(403, "unauthorized", "Order " + id + " belongs to another account");
+        }
+        return order;
+    }
+
+    List<Order> getOrders(Account account) {
+        Instant now = clock.instant();
+        return account.orders.stream().filter(order -> !order.isExpired(now)).collect(Collectors.toList());
+    }
+
+    /** The number of orders in memory, including expired orders which have not been evicted yet */
+    int getOrderCount() {
+        return orders.size();
+    }
+
+    Authorization getAuthorization(Account account, String id) throws AcmeException {
+        Authorization authorization = authorizations.get(id);
+        if (authorization != null && authorization.order.isExpired(clock.instant())) {
+            remove(authorization.order);
+            authorization = null;
+        }
+        if (authorization == null) {
+            throw new AcmeException(404, "malformed", "No such authorization " + id);
+        } else if (authorization.order.account != account) {
+            throw new AcmeException(403, "unauthorized", "Authorization " + id + " belongs to another account");
+        }
+        return authorization;
+    }
+
+    /** Queues validation of the challenge, unless it has already been started */
+    Authorization respondToChallenge(Account account, String authorizationId) throws AcmeException {
+        Authorization authorization = getAuthorization(account, authorizationId);
+        if (!authorization.startValidation()) {
+            return authorization;
+        }
+        String keyAuthorization = authorization.token + "." + account.thumbprint;
+        submit(() -> validate(authorization, keyAuthorization), () -> {
+            synchronized (authorization) {
+                authorization.challengeStatus = Status.PENDING;
+            }
+        });
+        return authorization;
+    }
+
+    private void validate(Authorization authorization, String keyAuthorization) {
+        try (Span span = tracer.startSpan("acmeValidate")) {
+            span.tag("type", challengeValidator.getType());
+            boolean valid;
+            AcmeException error = null;
+            try {
+                valid = challengeValidator.validate(authorization.identifier, authorization.token, keyAuthorization);
+                if (!valid) {
+                    error = new AcmeException(403, "incorrectResponse", "Key authorization not found for " + authorization.identifier);
+                }
+            } catch (Exception e) {
+                logger.debug("Challenge validation for {} failed", authorization.identifier, e);
+                valid = false;
+                error = new AcmeException(400, "connection", "Could not validate " + authorization.identifier + ": " + e);
+            }
+            span.tag("valid", String.valueOf(valid));
+            authorization.complete(valid, error);
+            MetricsRegistry.getDefault().counter("acme_challenges_total", "ACME challenges by result", "result", valid ? "valid" : "invalid").increment();
+        }
+    }
+
+    /**
+     * Checks the certification request against the order and queues it for signing. The order is
+     * processing until the certificate is signed. Only the key is taken from the request: the
+     * certificate names the order's identifiers and nothing else the request may ask for.
+     */
+    Order finalizeOrder(Account account, String orderId, byte[] certificationRequest) throws AcmeException {
+        Order order = getOrder(account, orderId);
+        if (order.getStatus() != Status.READY) {
+            throw new AcmeException(403, "orderNotReady", "Order is " + order.getStatus().toJson() + ", not ready");
+        }
+        PublicKey publicKey = checkCertificationRequest(order, account, certificationRequest);
+        CertificateAuthority certificateAuthority = certificateAuthorityHolder.current()
+                .map(CertificateAuthorityHolder.Version::getCertificateAuthority)
+                .orElseThrow(() -> new AcmeException(503, "serverInternal", "Certificate authority is not configured"));
+        order.setStatus(Status.READY, Status.PROCESSING);
+        submit(() -> issue(order, certificateAuthority, publicKey), () -> {
+            synchronized (order) {
+                order.status = Status.READY;
+            }
+        });
+        return order;
+    }
+
+    /** Returns the key of the request, once its signature and names have been checked */
+    private PublicKey checkCertificationRequest(Order order, Account account, byte[] certificationRequest) throws AcmeException {
+        Set<String> names = new HashSet<>();
+        PublicKey publicKey;
+        try {
+            CertificationRequest request = new CertificationRequest(certificationRequest);
+            request.verifySignature();
+            Extension.SANExtensionType san = request.info().extensions().sanExtension();
+            if (san != null) {
+                san.dnsNames().forEach(name -> names.add(name.toLowerCase(Locale.ROOT)));
+            }
+            String commonName = request.info().subject().cn();
+            if (commonName != null) {
+                names.add(commonName.toLowerCase(Locale.ROOT));
+            }
+            publicKey = request.info().publicKey();
+            if (publicKey.equals(account.publicKey)) {
+                throw new AcmeException(400, "badCSR", "The certificate must not use the account key");
+            }
+        } catch (GeneralSecurityException | RuntimeException e) {
+            throw new AcmeException(400, "badCSR", "Malformed certification request: " + e.getMessage());
+        }
+        if (!names.equals(new HashSet<>(order.identifiers))) {
+            throw new AcmeException(400, "badCSR", "Certification request names " + names + " do not match the order " + order.identifiers);
+        }
+        return publicKey;
+    }
+
+    private void issue(Order order, CertificateAuthority certificateAuthority, PublicKey publicKey) {
+        Span span = tracer.startSpan("acmeIssue");
+        CompletableFuture<X509Certificate> certificate;
+        try {
+            certificate = CompletableFuture.completedFuture(certificateAuthority.issueServerCertificate(
+                    order.identifiers, "CN=" + order.identifiers.get(0), ZonedDateTime.now(), publicKey
+            ));
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            certificate = CompletableFuture.failedFuture(e);
+        }
+        span.endWhenComplete(certificate).whenComplete((issued, e) -> {
+            if (e == null) {
+                order.complete(new X509Certificate[] { issued, certificateAuthority.getCaCertificate() }, null);
+            } else {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                logger.warn("Failed to issue certificate for order {}", order.id, cause);
+                order.complete(null, new AcmeException(500, "serverInternal", "Failed to issue certificate: " + cause.getMessage()));
+            }
+            MetricsRegistry.getDefault().counter("acme_orders_total", "Finalized ACME orders by result", "result", e == null ? "valid" : "invalid").increment();
+        });
+    }
+
+    private void submit(Runnable task, Runnable onRejected) throws AcmeException {
+        try {
+            queue.execute(task);
+        } catch (RejectedExecutionException e) {
+            onRejected.run();
+            throw new AcmeException(503, "serverInternal", "Too many requests are being processed, try again later");
+        }
+    }
+
+    private void remove(Order order) {
+        orders.remove(order.id);
+        for (Authorization authorization : order.authorizations) {
+            authorizations.remove(authorization.id);
+        }
+        order.account.orders.remove(order);
+    }
+
+    /** Removes expired orders and idle accounts, unless that was done less than a minute ago */
+    private void evictExpired() {
+        Instant now = clock.instant();
+        synchronized (this) {
+            if (now.isBefore(nextSweep)) {
+                return;
+            }
+            nextSweep = now.plus(SWEEP_INTERVAL);
+        }
+        for (Order order : orders.values()) {
+            if (order.isExpired(now)) {
+                remove(order);
+            }
+        }
+        for (Account account : accounts.values()) {
+            if (account.orders.isEmpty() && account.lastUsed.plus(ACCOUNT_IDLE_LIFETIME).isBefore(now)) {
+                accounts.remove(account.id);
+                accountsByThumbprint.remove(account.thumbprint, account);
+            }
+        }
+    }
+
+    private String randomId() {
+        byte[] bytes = new byte[12];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    @Override
+    public void close() {
+        queue.shutdownNow();
+    }
+}
@@ -0,0 +1,360 @@
+package com.johannesbrodwall.pki.ca.acme;
+
+import com.johannesbrodwall.pki.infrastructure.tracing.Span;
+import com.johannesbrodwall.pki.infrastructure.tracing.Tracer;
+import com.johannesbrodwall.pki.util.SslUtil;
+import org.jsonbuddy.JsonArray;
+import org.jsonbuddy.JsonConversionException;
+import org.jsonbuddy.JsonObject;
+import org.jsonbuddy.JsonValueNotPresentException;
+import org.jsonbuddy.parse.JsonParseException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An <a href="https://datatracker.ietf.org/doc/html/rfc8555">ACME</a> server, so clients such as certbot
+ * can get certificates from the {@link com.johannesbrodwall.pki.ca.CertificateAuthority} without an
+ * operator. Supports the directory, nonces, accounts, orders, authorizations with one challenge,
+ * finalization and certificate download; not key change, revocation or pre-authorization.
+ * All resources are under the servlet path:
+ *
+ * <pre>
+ * GET  /directory
+ * HEAD /new-nonce
+ * POST /new-account
+ * POST /new-order
+ * POST /account/{id}, /account/{id}/orders, /order/{id}, /authz/{id}, /cert/{id}    (POST-as-GET)
+ * POST /chall/{id}
+ * POST /order/{id}/finalize
+ * </pre>
+ */
+public class AcmeServlet extends HttpServlet {
+
+    private static final Tracer tracer = Tracer.getDefault();
+
+    /** A certification request is a few KiB at most, and nothing else is nearly as large */
+    private static final int MAX_BODY_LENGTH = 64 * 1024;
+
+    private final AcmeService service;
+    private final NoncePool noncePool;
+
+    public AcmeServlet(AcmeService service) {
+        this(service, new NoncePool());
+    }
+
+    public AcmeServlet(AcmeService service, NoncePool noncePool) {
+        this.service = service;
+        this.noncePool = noncePool;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String path = path(req);
+        if (path.equals("/directory")) {
+            String baseUrl = baseUrl(req);
+            writeJson(resp, 200, new JsonObject()
+                    .put("newNonce", baseUrl + "/new-nonce")
+                    .put("newAccount", baseUrl + "/new-account")
+                    .put("newOrder", baseUrl + "/new-order"));
+        } else if (path.equals("/new-nonce")) {
+            newNonce(req, resp, 204);
+        } else {
+            writeProblem(req, resp, new AcmeException(405, "malformed", "Use POST-as-GET for " + path));
+        }
+    }
+
+    @Override
+    protected void doHead(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (path(req).equals("/new-nonce")) {
+            newNonce(req, resp, 200);
+        } else {
+            super.doHead(req, resp);
+        }
+    }
+
+    private void newNonce(HttpServletRequest req, HttpServletResponse resp, int status) {
+        resp.setStatus(status);
+        resp.setHeader("Replay-Nonce", noncePool.next());
+        resp.setHeader("Cache-Control", "no-store");
+        resp.setHeader("Link", "<" + baseUrl(req) + "/directory>;rel=\"index\"");
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String path = path(req);
+        String[] parts = path.split("/");
+        try (Span span = tracer.startSpan("POST /acme/" + (parts.length > 1 ? parts[1] : ""))) {
+            try {
+                JsonWebSignature request = readRequest(req);
+                if (path.equals("/new-account")) {
+                    newAccount(req, resp, request);
+                    return;
+                }
+                AcmeService.Account account = authenticate(req, request);
+                if (path.equals("/new-order")) {
+                    newOrder(req, resp, account, request.getPayload());
+                } else if (parts.length == 3 && parts[1].equals("account") && parts[2].equals(account.getId())) {
+                    writeJson(req, resp, 200, accountJson(req, account));
+                } else if (parts.length == 4 && parts[1].equals("account") && parts[2].equals(account.getId()) && parts[3].equals("orders")) {
+                    String baseUrl = baseUrl(req);
+                    writeJson(req, resp, 200, new JsonObject().put("orders", JsonArray.fromStringStream(
+                            service.getOrders(account).stream().map(o -> baseUrl + "/order/" + o.getId()))));
+                } else if (parts.length == 3 && parts[1].equals("order")) {
+                    writeJson(req, resp, 200, orderJson(req, service.getOrder(account, parts[2])));
+                } else if (parts.length == 4 && parts[1].equals("order") && parts[3].equals("finalize")) {
+                    finalizeOrder(req, resp, account, parts[2], request.getPayload());
+                } else if (parts.length == 3 && parts[1].equals("authz")) {
+                    writeJson(req, resp, 200, authorizationJson(req, service.getAuthorization(account, parts[2])));
+                } else if (parts.length == 3 && parts[1].equals("chall")) {
+                    AcmeService.Authorization authorization = service.respondToChallenge(account, parts[2]);
+                    resp.setHeader("Link", "<" + baseUrl(req) + "/authz/" + authorization.getId() + ">;rel=\"up\"");
+                    writeJson(req, resp, 200, challengeJson(req, authorization));
+                } else if (parts.length == 3 && parts[1].equals("cert")) {
+                    downloadCertificate(req, resp, service.getOrder(account, parts[2]));
+                } else {
+                    throw new AcmeException(404, "malformed", "No such resource " + path);
+                }
+            } catch (AcmeException e) {
+                span.tag("error", e.getType());
+                writeProblem(req, resp, e);
+            } catch (IllegalArgumentException | JsonParseException | JsonValueNotPresentException | JsonConversionException e) {
+                span.tag("error", "malformed");
+                writeProblem(req, resp, new AcmeException(400, "malformed", e.getMessage()));
+            }
+        }
+    }
+
+    /** Checks the content type, the nonce and the URL, which are the same for every request */
+    private JsonWebSignature readRequest(HttpServletRequest req) throws AcmeException, IOException {
+        String contentType = req.getContentType();
+        if (contentType == null || !contentType.startsWith("application/jose+json")) {
+            throw new AcmeException(415, "malformed", "Content-Type must be application/jose+json");
+        }
+        byte[] body = req.getInputStream().readNBytes(MAX_BODY_LENGTH + 1);
+        if (body.length > MAX_BODY_LENGTH) {
+            throw new AcmeException(413, "malformed", "Request body larger than " + MAX_BODY_LENGTH + " bytes");
+        }
+        JsonWebSignature request = JsonWebSignature.parse(new String(body, StandardCharsets.UTF_8));
+        if (!JsonWebSignature.isSupportedAlgorithm(request.getAlgorithm())) {
+            throw new AcmeException(400, "badSignatureAlgorithm", "Unsupported JWS algorithm " + request.getAlgorithm());
+        }
+        if (!noncePool.consume(request.getNonce())) {
+            throw new AcmeException(400, "badNonce", "Unknown or reused nonce");
+        }
+        if (!req.getRequestURL().toString().equals(request.getUrl())) {
+            throw new AcmeException(401, "unauthorized", "JWS url " + request.getUrl() + " does not match the request URL");
+        }
+        return request;
+    }
+
+    private AcmeService.Account authenticate(HttpServletRequest req, JsonWebSignature request) throws AcmeException {
+        if (request.getJwk().isPresent()) {
+            throw new AcmeException(400, "malformed", "Only newAccount requests may use jwk instead of kid");
+        }
+        String keyId = request.getKeyId()
+                .orElseThrow(() -> new AcmeException(400, "malformed", "Missing kid in protected header"));
+        String accountPrefix = baseUrl(req) + "/account/";
+        AcmeService.Account account = Optional.of(keyId)
+                .filter(kid -> kid.startsWith(accountPrefix))
+                .flatMap(kid -> service.findAccount(kid.substring(accountPrefix.length())))
+                .orElseThrow(() -> new AcmeException(400, "accountDoesNotExist", "No account " + keyId));
+        verify(request, account.getPublicKey());
+        return account;
+    }
+
+    private static void verify(JsonWebSignature request, PublicKey publicKey) throws AcmeException {
+        boolean valid;
+        try {
+            valid = request.verify(publicKey);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AcmeException(400, "badSignatureAlgorithm", e.getMessage());
+        } catch (GeneralSecurityException e) {
+            throw new AcmeException(400, "malformed", "Could not verify signature: " + e.getMessage());
+        }
+        if (!valid) {
+            throw new AcmeException(400, "malformed", "Invalid JWS signature");
+        }
+    }
+
+    private void newAccount(HttpServletRequest req, HttpServletResponse resp, JsonWebSignature request) throws AcmeException, IOException {
+        if (request.getKeyId().isPresent()) {
+            throw new AcmeException(400, "malformed", "newAccount requests must use jwk instead of kid");
+        }
+        JsonObject jwk = request.getJwk()
+                .orElseThrow(() -> new AcmeException(400, "malformed", "Missing jwk in protected header"));
+        PublicKey publicKey;
+        String thumbprint;
+        try {
+            publicKey = JsonWebSignature.toPublicKey(jwk);
+            thumbprint = JsonWebSignature.thumbprint(jwk);
+        } catch (GeneralSecurityException e) {
+            throw new AcmeException(400, "badPublicKey", e.getMessage());
+        }
+        verify(request, publicKey);
+
+        JsonObject payload = request.getPayload();
+        Optional<AcmeService.Account> existing = service.findAccountByKey(thumbprint);
+        AcmeService.Account account;
+        int status;
+        if (existing.isPresent()) {
+            account = existing.get();
+            status = 200;
+        } else if (payload.booleanValue("onlyReturnExisting").orElse(false)) {
+            throw new AcmeException(400, "accountDoesNotExist", "No account for this key");
+        } else {
+            if (!payload.booleanValue("termsOfServiceAgreed").orElse(true)) {
+                throw new AcmeException(403, "userActionRequired", "Terms of service must be agreed to");
+            }
+            List<String> contact = payload.arrayValue("contact").map(JsonArray::strings).orElse(List.of());
+            account = service.newAccount(publicKey, thumbprint, contact);
+            status = 201;
+        }
+        resp.setHeader("Location", baseUrl(req) + "/account/" + account.getId());
+        writeJson(req, resp, status, accountJson(req, account));
+    }
+
+    private void newOrder(HttpServletRequest req, HttpServletResponse resp, AcmeService.Account account, JsonObject payload) throws AcmeException, IOException {
+        List<String> identifiers = new ArrayList<>();
+        for (JsonObject identifier : payload.requiredArray("identifiers").objects(o -> o)) {
+            if (!identifier.requiredString("type").equals("dns")) {
+                throw new AcmeException(400, "unsupportedIdentifier", "Unsupported identifier type " + identifier.requiredString("type"));
+            }
+            identifiers.add(identifier.requiredString("value"));
+        }
+        AcmeService.Order order = service.newOrder(account, identifiers);
+        resp.setHeader("Location", baseUrl(req) + "/order/" + order.getId());
+        writeJson(req, resp, 201, orderJson(req, order));
+    }
+
+    private void finalizeOrder(HttpServletRequest req, HttpServletResponse resp, AcmeService.Account account, String orderId, JsonObject payload) throws AcmeException, IOException {
+        byte[] certificationRequest;
+        try {
+            certificationRequest = Base64.getUrlDecoder().decode(payload.requiredString("csr"));
+        } catch (IllegalArgumentException e) {
+            throw new AcmeException(400, "badCSR", "csr must be base64url encoded DER");
+        }
+        AcmeService.Order order = service.finalizeOrder(account, orderId, certificationRequest);
+        resp.setHeader("Location", baseUrl(req) + "/order/" + order.getId());
+        resp.setHeader("Retry-After", "1");
+        writeJson(req, resp, 200, orderJson(req, order));
+    }
+
+    private void downloadCertificate(HttpServletRequest req, HttpServletResponse resp, AcmeService.Order order) throws AcmeException, IOException {
+        X509Certificate[] chain = order.getCertificateChain();
+        if (chain == null) {
+            throw new AcmeException(404, "malformed", "Order " + order.getId() + " has no certificate");
+        }
+        StringBuilder pem = new StringBuilder();
+        try {
+            for (X509Certificate certificate : chain) {
+                pem.append(SslUtil.writePemString(certificate.getEncoded(), "CERTIFICATE")).append("\n");
+            }
+        } catch (CertificateEncodingException e) {
+            throw new AcmeException(500, "serverInternal", e.getMessage());
+        }
+        addCommonHeaders(req, resp);
+        resp.setContentType("application/pem-certificate-chain");
+        resp.getOutputStream().write(pem.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private JsonObject accountJson(HttpServletRequest req, AcmeService.Account account) {
+        return new JsonObject()
+                .put("status", "valid")
+                .put("contact", JsonArray.fromStringList(account.getContact()))
+                .put("orders", baseUrl(req) + "/account/" + account.getId() + "/orders");
+    }
+
+    private JsonObject orderJson(HttpServletRequest req, AcmeService.Order order) {
+        String baseUrl = baseUrl(req);
+        AcmeService.Status status = order.getStatus();
+        JsonObject json = new JsonObject()
+                .put("status", status.toJson())
+                .put("expires", order.getExpires().toString())
+                .put("identifiers", JsonArray.map(order.getIdentifiers(), this::identifierJson))
+                .put("authorizations", JsonArray.fromStringStream(order.getAuthorizations().stream().map(a -> baseUrl + "/authz/" + a.getId())))
+                .put("finalize", baseUrl + "/order/" + order.getId() + "/finalize");
+        if (status == AcmeService.Status.VALID) {
+            json.put("certificate", baseUrl + "/cert/" + order.getId());
+        }
+        if (order.getError() != null) {
+            json.put("error", order.getError().toProblem());
+        }
+        return json;
+    }
+
+    private JsonObject identifierJson(String identifier) {
+        return new JsonObject().put("type", "dns").put("value", identifier);
+    }
+
+    private JsonObject authorizationJson(HttpServletRequest req, AcmeService.Authorization authorization) {
+        return new JsonObject()
+                .put("status", authorization.getStatus().toJson())
+                .put("expires", authorization.getExpires().toString())
+                .put("identifier", identifierJson(authorization.getIdentifier()))
+                .put("challenges", JsonArray.fromNodeList(List.of(challengeJson(req, authorization))));
+    }
+
+    private JsonObject challengeJson(HttpServletRequest req, AcmeService.Authorization authorization) {
+        JsonObject json = new JsonObject()
+                .put("type", service.getChallengeType())
+                .put("url", baseUrl(req) + "/chall/" + authorization.getId())
+                .put("token", authorization.getToken())
+                .put("status", authorization.getChallengeStatus().toJson());
+        if (authorization.getValidated() != null) {
+            json.put("validated", authorization.getValidated().toString());
+        }
+        if (authorization.getError() != null) {
+            json.put("error", authorization.getError().toProblem());
+        }
+        return json;
+    }
+
+    private void writeProblem(HttpServletRequest req, HttpServletResponse resp, AcmeException e) throws IOException {
+        addCommonHeaders(req, resp);
+        resp.setStatus(e.getStatus());
+        resp.setContentType("application/problem+json");
+        resp.getOutputStream().write(e.toProblem().toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeJson(HttpServletRequest req, HttpServletResponse resp, int status, JsonObject json) throws IOException {
+        addCommonHeaders(req, resp);
+        writeJson(resp, status, json);
+    }
+
+    private static void writeJson(HttpServletResponse resp, int status, JsonObject json) throws IOException {
+        resp.setStatus(status);
+        resp.setContentType("application/json");
+        resp.getOutputStream().write(json.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Every response to a POST carries a fresh nonce, so clients never need to ask for one */
+    private void addCommonHeaders(HttpServletRequest req, HttpServletResponse resp) {
+        resp.setHeader("Replay-Nonce", noncePool.next());
+        resp.setHeader("Cache-Control", "no-store");
+        resp.addHeader("Link", "<" + baseUrl(req) + "/directory>;rel=\"index\"");
+    }
+
+    private static String path(HttpServletRequest req) {
+        return req.getPathInfo() != null ? req.getPathInfo() : "";
+    }
+
+    /** The URL of the servlet, which the URLs of all ACME resources start with */
+    private static String baseUrl(HttpServletRequest req) {
+        String requestUrl = req.getRequestURL().toString();
+        return requestUrl.substring(0, requestUrl.length() - path(req).length());
+    }
+}
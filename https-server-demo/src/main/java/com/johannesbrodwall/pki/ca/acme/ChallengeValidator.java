@@ -0,0 +1,19 @@
+package com.johannesbrodwall.pki.ca.acme;
+
+import java.io.IOException;
+
+/**
+ * Checks that the client controls an identifier, such as by the http-01 challenge in
+ * {@link Http01ChallengeValidator}. Called from the order processing queue, so it may block.
+ */
+public interface ChallengeValidator {
+
+    /** The challenge type offered to clients, such as "http-01" */
+    String getType();
+
+    /**
+     * Returns true if the key authorization <code>token + "." + thumbprint</code> is published for the
+     * identifier as the challenge type requires
+     */
+    boolean validate(String identifier, String token, String keyAuthorization) throws IOException;
+}
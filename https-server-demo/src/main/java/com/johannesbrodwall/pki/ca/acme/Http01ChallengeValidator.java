@@ -0,0 +1,122 @@
+package com.johannesbrodwall.pki.ca.acme;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * The http-01 challenge from <a href="https://datatracker.ietf.org/doc/html/rfc8555#section-8.3">RFC 8555
+ * section 8.3</a>: the key authorization must be served at
+ * <code>http://{identifier}/.well-known/acme-challenge/{token}</code>
+ *
+ * <p>The identifier is chosen by the client, so the validator must not become a way to make
+ * requests into our own network: it resolves the identifier once, refuses it if any of its
+ * addresses is loopback, link-local, site-local or otherwise not public, and connects to the
+ * address it checked rather than looking the name up again. The request is plain HTTP/1.0 over a
+ * socket, as {@link java.net.HttpURLConnection} would do its own lookup and won't let us set the
+ * Host header.</p>
+ */
+public class Http01ChallengeValidator implements ChallengeValidator {
+
+    /** A key authorization is a token and a thumbprint, so anything much longer is not one */
+    private static final int MAX_LENGTH = 1024;
+    private static final int MAX_HEADERS = 100;
+    private static final int TIMEOUT_MILLIS = 5000;
+    private static final Pattern OK_STATUS_LINE = Pattern.compile("HTTP/1\\.[01] 200( .*)?");
+
+    private final int port;
+    private final Predicate<InetAddress> allowedAddress;
+
+    public Http01ChallengeValidator() {
+        this(80);
+    }
+
+    /** Validates against another port than 80, for testing */
+    public Http01ChallengeValidator(int port) {
+        this(port, Http01ChallengeValidator::isPublicAddress);
+    }
+
+    /** Lets tests validate against servers on addresses which are not public */
+    Http01ChallengeValidator(int port, Predicate<InetAddress> allowedAddress) {
+        this.port = port;
+        this.allowedAddress = allowedAddress;
+    }
+
+    @Override
+    public String getType() {
+        return "http-01";
+    }
+
+    @Override
+    public boolean validate(String identifier, String token, String keyAuthorization) throws IOException {
+        InetAddress address = resolve(identifier);
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(address, port), TIMEOUT_MILLIS);
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            OutputStream output = socket.getOutputStream();
+            output.write(("GET /.well-known/acme-challenge/" + token + " HTTP/1.0\r\n"
+                          + "Host: " + identifier + (port != 80 ? ":" + port : "") + "\r\n"
+                          + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            if (!OK_STATUS_LINE.matcher(readLine(input)).matches()) {
+                return false;
+            }
+            int headers = 0;
+            while (!readLine(input).isEmpty()) {
+                if (++headers > MAX_HEADERS) {
+                    throw new IOException("More than " + MAX_HEADERS + " headers from " + identifier);
+                }
+            }
+            byte[] body = input.readNBytes(MAX_LENGTH);
+            return new String(body, StandardCharsets.US_ASCII).trim().equals(keyAuthorization);
+        }
+    }
+
+    /** Returns the first address of the identifier, if all its addresses are allowed */
+    private InetAddress resolve(String identifier) throws IOException {
+        InetAddress[] addresses = InetAddress.getAllByName(identifier);
+        for (InetAddress address : addresses) {
+            if (!allowedAddress.test(address)) {
+                throw new IOException(identifier + " resolves to non-public address " + address.getHostAddress());
+            }
+        }
+        return addresses[0];
+    }
+
+    static boolean isPublicAddress(InetAddress address) {
+        return !(address.isAnyLocalAddress()
+                 || address.isLoopbackAddress()
+                 || address.isLinkLocalAddress()
+                 || address.isSiteLocalAddress()
+                 || address.isMulticastAddress()
+                 // IPv6 unique local addresses, fc00::/7, are the successor of site-local addresses
+                 || (address instanceof Inet6Address && (address.getAddress()[0] & 0xfe) == 0xfc));
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = input.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException("Connection closed before end of response headers");
+            } else if (line.size() >= MAX_LENGTH) {
+                throw new IOException("Response line longer than " + MAX_LENGTH + " bytes");
+            }
+            line.write(c);
+        }
+        String result = line.toString(StandardCharsets.ISO_8859_1);
+        return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+    }
+}
@@ -0,0 +1,227 @@
+package com.johannesbrodwall.pki.ca.acme;
+
+import org.jsonbuddy.JsonObject;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A request body in the flattened JSON serialization of JWS
+ * (<a href="https://datatracker.ietf.org/doc/html/rfc7515#section-7.2.2">RFC 7515 section 7.2.2</a>),
+ * as sent by ACME clients, with the JWK conversions and thumbprints
+ * (<a href="https://datatracker.ietf.org/doc/html/rfc7638">RFC 7638</a>) that ACME uses to identify
+ * account keys.
+ */
+class JsonWebSignature {
+
+    private static final Map<String, String> signatureAlgorithms = Map.of(
+            "ES256", "SHA256withECDSAinP1363Format",
+            "ES384", "SHA384withECDSAinP1363Format",
+            "RS256", "SHA256withRSA"
+    );
+
+    private static final Map<String, String> curves = Map.of(
+            "P-256", "secp256r1",
+            "P-384", "secp384r1"
+    );
+
+    private static final Base64.Encoder base64url = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder base64urlDecoder = Base64.getUrlDecoder();
+
+    private final String encodedProtectedHeader;
+    private final String encodedPayload;
+    private final byte[] signature;
+    private final JsonObject protectedHeader;
+
+    private JsonWebSignature(String encodedProtectedHeader, String encodedPayload, byte[] signature) {
+        this.encodedProtectedHeader = encodedProtectedHeader;
+        this.encodedPayload = encodedPayload;
+        this.signature = signature;
+        this.protectedHeader = JsonObject.parse(new String(base64urlDecoder.decode(encodedProtectedHeader), StandardCharsets.UTF_8));
+    }
+
+    /** @throws IllegalArgumentException if the body is not a flattened JWS */
+    static JsonWebSignature parse(String body) {
+        try {
+            JsonObject json = JsonObject.parse(body);
+            return new JsonWebSignature(
+                    json.requiredString("protected"),
+                    json.requiredString("payload"),
+                    base64urlDecoder.decode(json.requiredString("signature"))
+            );
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Not a flattened JWS: " + e.getMessage(), e);
+        }
+    }
+
+    /** Signs the payload, or a POST-as-GET request if the payload is null */
+    static JsonObject sign(JsonObject protectedHeader, JsonObject payload, PrivateKey privateKey) throws GeneralSecurityException {
+        String encodedProtectedHeader = base64url.encodeToString(protectedHeader.toJson().getBytes(StandardCharsets.UTF_8));
+        String encodedPayload = payload != null ? base64url.encodeToString(payload.toJson().getBytes(StandardCharsets.UTF_8)) : "";
+        Signature signature = Signature.getInstance(signatureAlgorithm(protectedHeader.requiredString("alg")));
+        signature.initSign(privateKey);
+        signature.update((encodedProtectedHeader + "." + encodedPayload).getBytes(StandardCharsets.US_ASCII));
+        return new JsonObject()
+                .put("protected", encodedProtectedHeader)
+                .put("payload", encodedPayload)
+                .put("signature", base64url.encodeToString(signature.sign()));
+    }
+
+    JsonObject getProtectedHeader() {
+        return protectedHeader;
+    }
+
+    String getAlgorithm() {
+        return protectedHeader.stringValue("alg").orElse(null);
+    }
+
+    String getNonce() {
+        return protectedHeader.stringValue("nonce").orElse(null);
+    }
+
+    String getUrl() {
+        return protectedHeader.stringValue("url").orElse(null);
+    }
+
+    Optional<String> getKeyId() {
+        return protectedHeader.stringValue("kid");
+    }
+
+    Optional<JsonObject> getJwk() {
+        return protectedHeader.objectValue("jwk");
+    }
+
+    /** True for the empty payload of a POST-as-GET request */
+    boolean isPostAsGet() {
+        return encodedPayload.isEmpty();
+    }
+
+    /** @throws IllegalArgumentException if the payload is not a JSON object */
+    JsonObject getPayload() {
+        if (isPostAsGet()) {
+            return new JsonObject();
+        }
+        return JsonObject.parse(new String(base64urlDecoder.decode(encodedPayload), StandardCharsets.UTF_8));
+    }
+
+    boolean verify(PublicKey publicKey) throws GeneralSecurityException {
+        String algorithm = getAlgorithm();
+        if (algorithm == null || !signatureAlgorithms.containsKey(algorithm)) {
+            throw new NoSuchAlgorithmException("Unsupported JWS algorithm " + algorithm);
+        }
+        if (!publicKey.getAlgorithm().equals(algorithm.startsWith("ES") ? "EC" : "RSA")) {
+            return false;
+        }
+        Signature verifier = Signature.getInstance(signatureAlgorithm(algorithm));
+        verifier.initVerify(publicKey);
+        verifier.update((encodedProtectedHeader + "." + encodedPayload).getBytes(StandardCharsets.US_ASCII));
+        return verifier.verify(signature);
+    }
+
+    static boolean isSupportedAlgorithm(String algorithm) {
+        return algorithm != null && signatureAlgorithms.containsKey(algorithm);
+    }
+
+    private static String signatureAlgorithm(String algorithm) throws NoSuchAlgorithmException {
+        String result = signatureAlgorithms.get(algorithm);
+        if (result == null) {
+            throw new NoSuchAlgorithmException("Unsupported JWS algorithm " + algorithm);
+        }
+        return result;
+    }
+
+    static PublicKey toPublicKey(JsonObject jwk) throws GeneralSecurityException {
+        String keyType = jwk.requiredString("kty");
+        if (keyType.equals("EC")) {
+            String curve = curves.get(jwk.requiredString("crv"));
+            if (curve == null) {
+                throw new NoSuchAlgorithmException("Unsupported JWK curve " + jwk.requiredString("crv"));
+            }
+            ECPoint point = new ECPoint(unsigned(jwk.requiredString("x")), unsigned(jwk.requiredString("y")));
+            return KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(point, curveParameters(curve)));
+        } else if (keyType.equals("RSA")) {
+            return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(unsigned(jwk.requiredString("n")), unsigned(jwk.requiredString("e"))));
+        }
+        throw new NoSuchAlgorithmException("Unsupported JWK key type " + keyType);
+    }
+
+    static JsonObject toJwk(PublicKey publicKey) throws GeneralSecurityException {
+        if (publicKey instanceof ECPublicKey) {
+            ECPublicKey ecKey = (ECPublicKey) publicKey;
+            int length = (ecKey.getParams().getCurve().getField().getFieldSize() + 7) / 8;
+            String curve = length == 32 ? "P-256" : length == 48 ? "P-384" : null;
+            if (curve == null) {
+                throw new NoSuchAlgorithmException("Unsupported EC key size " + length * 8);
+            }
+            return new JsonObject()
+                    .put("kty", "EC")
+                    .put("crv", curve)
+                    .put("x", base64url.encodeToString(fixedLength(ecKey.getW().getAffineX(), length)))
+                    .put("y", base64url.encodeToString(fixedLength(ecKey.getW().getAffineY(), length)));
+        } else if (publicKey instanceof RSAPublicKey) {
+            RSAPublicKey rsaKey = (RSAPublicKey) publicKey;
+            return new JsonObject()
+                    .put("kty", "RSA")
+                    .put("n", base64url.encodeToString(unsignedBytes(rsaKey.getModulus())))
+                    .put("e", base64url.encodeToString(unsignedBytes(rsaKey.getPublicExponent())));
+        }
+        throw new NoSuchAlgorithmException("Unsupported key type " + publicKey.getAlgorithm());
+    }
+
+    /** The base64url SHA-256 of the required JWK members in lexicographic order, without whitespace */
+    static String thumbprint(JsonObject jwk) throws GeneralSecurityException {
+        String keyType = jwk.requiredString("kty");
+        String canonical;
+        if (keyType.equals("EC")) {
+            canonical = "{\"crv\":\"" + jwk.requiredString("crv") + "\",\"kty\":\"EC\",\"x\":\"" + jwk.requiredString("x") + "\",\"y\":\"" + jwk.requiredString("y") + "\"}";
+        } else if (keyType.equals("RSA")) {
+            canonical = "{\"e\":\"" + jwk.requiredString("e") + "\",\"kty\":\"RSA\",\"n\":\"" + jwk.requiredString("n") + "\"}";
+        } else {
+            throw new NoSuchAlgorithmException("Unsupported JWK key type " + keyType);
+        }
+        return base64url.encodeToString(MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static ECParameterSpec curveParameters(String curve) throws GeneralSecurityException {
+        AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+        parameters.init(new ECGenParameterSpec(curve));
+        return parameters.getParameterSpec(ECParameterSpec.class);
+    }
+
+    private static BigInteger unsigned(String base64) {
+        return new BigInteger(1, base64urlDecoder.decode(base64));
+    }
+
+    private static byte[] unsignedBytes(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        return bytes[0] == 0 && bytes.length > 1 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+
+    private static byte[] fixedLength(BigInteger value, int length) {
+        byte[] bytes = unsignedBytes(value);
+        byte[] result = new byte[length];
+        System.arraycopy(bytes, 0, result, length - bytes.length, bytes.length);
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+package com.johannesbrodwall.pki.ca.acme;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The anti-replay nonces of <a href="https://datatracker.ietf.org/doc/html/rfc8555#section-6.5">RFC 8555
+ * section 6.5</a>. Every response hands out a nonce and every request must use one, so nonces are
+ * generated in batches from one {@link SecureRandom} call instead of one call per response. Each nonce
+ * can be used once, and only the most recent <code>capacity</code> nonces are remembered, so a client
+ * holding an old nonce gets a badNonce error and retries with a fresh one.
+ */
+public class NoncePool {
+
+    private static final int NONCE_LENGTH = 16;
+    private static final int BATCH_SIZE = 64;
+
+    private final SecureRandom random = new SecureRandom();
+    private final int capacity;
+    private final Queue<String> generated = new ArrayDeque<>();
+    private final Set<String> outstanding = ConcurrentHashMap.newKeySet();
+    private final Queue<String> issuedOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger issuedCount = new AtomicInteger();
+
+    public NoncePool() {
+        this(10000);
+    }
+
+    public NoncePool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** A new nonce which will be accepted once by {@link #consume} */
+    public String next() {
+        String nonce = take();
+        outstanding.add(nonce);
+        issuedOrder.add(nonce);
+        if (issuedCount.incrementAndGet() > capacity) {
+            String oldest = issuedOrder.poll();
+            if (oldest != null) {
+                issuedCount.decrementAndGet();
+                outstanding.remove(oldest);
+            }
+        }
+        return nonce;
+    }
+
+    /** Returns false if the nonce was never issued, has been used or has been forgotten */
+    public boolean consume(String nonce) {
+        return nonce != null && outstanding.remove(nonce);
+    }
+
+    private synchronized String take() {
+        if (generated.isEmpty()) {
+            byte[] bytes = new byte[NONCE_LENGTH * BATCH_SIZE];
+            random.nextBytes(bytes);
+            Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                byte[] nonce = new byte[NONCE_LENGTH];
+                System.arraycopy(bytes, i * NONCE_LENGTH, nonce, 0, NONCE_LENGTH);
+                generated.add(encoder.encodeToString(nonce));
+            }
+        }
+        return generated.poll();
+    }
+}
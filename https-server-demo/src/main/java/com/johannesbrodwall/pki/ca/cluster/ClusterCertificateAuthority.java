@@ -0,0 +1,164 @@
+package com.johannesbrodwall.pki.ca.cluster;
+
+import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.SerialNumberGenerator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+/**
+ * One node in a cluster of certificate authorities sharing the same CA key. Each node issues from
+ * its own serial number range and records everything it issues in a shared {@link IssuanceLog},
+ * so any node can look up certificates issued by any other node.
+ *
+ * <p>Each serial number is reserved in the log before the delegate signs with it. If the record
+ * can't be appended after signing, the certificate is not returned, and the reservation keeps the
+ * serial number from being used again after a restart. A reservation without a record is a
+ * certificate which was signed but never handed out.</p>
+ */
+public class ClusterCertificateAuthority implements CertificateAuthority {
+
+    private final CertificateAuthority delegate;
+    private final int nodeId;
+    private final IssuanceLog issuanceLog;
+
+    public ClusterCertificateAuthority(CertificateAuthority delegate, int nodeId, IssuanceLog issuanceLog) throws IOException {
+        this(delegate, nodeId, issuanceLog, createSerialNumberGenerator(nodeId, issuanceLog));
+    }
+
+    /**
+     * Issues with serial numbers from <code>serialNumbers</code>, which must come from
+     * {@link #createSerialNumberGenerator}. When the delegate is replaced, as on a configuration
+     * reload, the new authority must share the generator with the old, which may still be signing.
+     */
+    public ClusterCertificateAuthority(CertificateAuthority delegate, int nodeId, IssuanceLog issuanceLog, SerialNumberGenerator serialNumbers) {
+        this.delegate = delegate;
+        this.nodeId = nodeId;
+        this.issuanceLog = issuanceLog;
+        delegate.setSerialNumberGenerator(() -> reserve(serialNumbers.nextSerialNumber()));
+    }
+
+    /** Continues after the highest serial number this node has recorded or reserved in the log */
+    public static SerialNumberGenerator createSerialNumberGenerator(int nodeId, IssuanceLog issuanceLog) throws IOException {
+        return new PartitionedSerialNumberGenerator(nodeId, nextSequence(nodeId, issuanceLog));
+    }
+
+    private static long nextSequence(int nodeId, IssuanceLog issuanceLog) throws IOException {
+        return Stream.concat(issuanceLog.records().stream().map(IssuanceRecord::getSerialNumber), issuanceLog.reservedSerialNumbers().stream())
+                .filter(serialNumber -> PartitionedSerialNumberGenerator.nodeOf(serialNumber) == nodeId)
+                .mapToLong(PartitionedSerialNumberGenerator::sequenceOf)
+                .max()
+                .orElse(0) + 1;
+    }
+
+    @Override
+    public X509Certificate getCaCertificate() {
+        return delegate.getCaCertificate();
+    }
+
+    @Override
+    public X509Certificate issueServerCertificate(String hostname, String subject, ZonedDateTime validFrom, PublicKey publicKey) throws IOException, GeneralSecurityException {
+        return issue(() -> delegate.issueServerCertificate(hostname, subject, validFrom, publicKey));
+    }
+
+    @Override
+    public X509Certificate issueServerCertificate(List<String> hostnames, String subject, ZonedDateTime validFrom, PublicKey publicKey) throws IOException, GeneralSecurityException {
+        return issue(() -> delegate.issueServerCertificate(hostnames, subject, validFrom, publicKey));
+    }
+
+    @Override
+    public X509Certificate issueCertificate(String subjectName, ZonedDateTime validFrom, PublicKey publicKey, Optional<byte[]> csrForExtensions) throws IOException, GeneralSecurityException {
+        return issue(() -> delegate.issueCertificate(subjectName, validFrom, publicKey, csrForExtensions));
+    }
+
+    @Override
+    public X509Certificate issueCertificate(byte[] certificationRequest, ZonedDateTime validFrom) throws IOException, GeneralSecurityException {
+        return issue(() -> delegate.issueCertificate(certificationRequest, validFrom));
+    }
+
+    @Override
+    public CompletableFuture<X509Certificate> issueCertificateAsync(byte[] certificationRequest, ZonedDateTime validFrom) throws GeneralSecurityException {
+        CompletableFuture<X509Certificate> signed;
+        try {
+            signed = delegate.issueCertificateAsync(certificationRequest, validFrom);
+        } catch (UncheckedIOException e) {
+            return CompletableFuture.failedFuture(e.getCause());
+        }
+        return signed.thenApply(certificate -> {
+            try {
+                return record(certificate);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Issuance {
+        X509Certificate issue() throws IOException, GeneralSecurityException;
+    }
+
+    private X509Certificate issue(Issuance issuance) throws IOException, GeneralSecurityException {
+        X509Certificate certificate;
+        try {
+            certificate = issuance.issue();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return record(certificate);
+    }
+
+    /** Called by the delegate for each certificate before it signs */
+    private BigInteger reserve(BigInteger serialNumber) {
+        try {
+            issuanceLog.reserve(nodeId, serialNumber);
+            return serialNumber;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not reserve serial number " + serialNumber.toString(16), e);
+        }
+    }
+
+    private X509Certificate record(X509Certificate certificate) throws IOException {
+        issuanceLog.append(new IssuanceRecord(nodeId, Instant.now(), certificate));
+        return certificate;
+    }
+
+    @Override
+    public KeyStore getKeyStore() throws CertificateException, KeyStoreException, IOException, NoSuchAlgorithmException {
+        return delegate.getKeyStore();
+    }
+
+    /** @throws IllegalStateException always, as serial numbers are assigned by the cluster */
+    @Override
+    public void setSerialNumberGenerator(SerialNumberGenerator serialNumberGenerator) {
+        throw new IllegalStateException("Serial numbers are assigned by the cluster");
+    }
+
+    @Override
+    public Optional<X509Certificate> findCertificate(BigInteger serialNumber) {
+        try {
+            return issuanceLog.find(serialNumber).map(IssuanceRecord::getCertificate);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+}
@@ -0,0 +1,161 @@
+package com.johannesbrodwall.pki.ca.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.cert.CertificateException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link IssuanceLog} in a directory shared by all nodes. Each node appends to its own
+ * <code>node-&lt;id&gt;.log</code>, so there are never two writers to the same file. Files
+ * from other nodes are read incrementally from where we left off the last time. A reservation
+ * is a line with the serial number, node and time followed by <code>reserved</code> instead of
+ * the certificate. Once the record for a reservation is in, the reservation is dropped, so only
+ * the serial numbers which were lost stay in memory.
+ */
+public class DirectoryIssuanceLog implements IssuanceLog {
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryIssuanceLog.class);
+    private static final String RESERVED = "reserved";
+
+    private final Path directory;
+    private final Path nodeLog;
+    private final Map<Path, Long> readPositions = new HashMap<>();
+    private final Map<BigInteger, IssuanceRecord> records = new ConcurrentHashMap<>();
+    private final Set<BigInteger> reservations = ConcurrentHashMap.newKeySet();
+
+    public DirectoryIssuanceLog(Path directory, int nodeId) throws IOException {
+        this.directory = directory;
+        this.nodeLog = directory.resolve("node-" + nodeId + ".log");
+        Files.createDirectories(directory);
+        refresh();
+    }
+
+    @Override
+    public synchronized void reserve(int nodeId, BigInteger serialNumber) throws IOException {
+        write(serialNumber.toString(16) + "\t" + nodeId + "\t" + Instant.now() + "\t" + RESERVED + "\n");
+        if (!records.containsKey(serialNumber)) {
+            reservations.add(serialNumber);
+        }
+    }
+
+    @Override
+    public Collection<BigInteger> reservedSerialNumbers() throws IOException {
+        refresh();
+        return reservations;
+    }
+
+    @Override
+    public synchronized void append(IssuanceRecord record) throws IOException {
+        try {
+            write(record.toLine());
+            records.put(record.getSerialNumber(), record);
+            reservations.remove(record.getSerialNumber());
+        } catch (CertificateException e) {
+            throw new IOException("Could not encode " + record, e);
+        }
+    }
+
+    private void write(String line) throws IOException {
+        try (FileChannel channel = FileChannel.open(nodeLog, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public Optional<IssuanceRecord> find(BigInteger serialNumber) throws IOException {
+        IssuanceRecord record = records.get(serialNumber);
+        if (record == null) {
+            refresh();
+            record = records.get(serialNumber);
+        }
+        return Optional.ofNullable(record);
+    }
+
+    @Override
+    public Collection<IssuanceRecord> records() throws IOException {
+        refresh();
+        return records.values();
+    }
+
+    public synchronized void refresh() throws IOException {
+        try (DirectoryStream<Path> logFiles = Files.newDirectoryStream(directory, "node-*.log")) {
+            for (Path logFile : logFiles) {
+                readPositions.put(logFile, readFrom(logFile, readPositions.getOrDefault(logFile, 0L)));
+            }
+        }
+    }
+
+    /**
+     * Reads all complete lines after position and returns the position after the last complete line.
+     * A partial line at the end of the file is a write in progress on another node and is read next time.
+     * The file is streamed a line at a time, so a large log is never held in memory at once.
+     */
+    private long readFrom(Path logFile, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            if (channel.size() <= position) {
+                return position;
+            }
+            InputStream input = new BufferedInputStream(Channels.newInputStream(channel.position(position)));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int c;
+            while ((c = input.read()) >= 0) {
+                if (c != '\n') {
+                    line.write(c);
+                    continue;
+                }
+                position += line.size() + 1;
+                readLine(logFile, line.toString(StandardCharsets.UTF_8));
+                line.reset();
+            }
+            return position;
+        }
+    }
+
+    private void readLine(Path logFile, String line) {
+        if (line.isBlank()) {
+            return;
+        }
+        if (line.endsWith("\t" + RESERVED)) {
+            try {
+                BigInteger serialNumber = new BigInteger(line.substring(0, line.indexOf('\t')), 16);
+                if (!records.containsKey(serialNumber)) {
+                    reservations.add(serialNumber);
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                logger.warn("Skipping unreadable reservation in {}", logFile, e);
+            }
+            return;
+        }
+        try {
+            IssuanceRecord record = IssuanceRecord.parse(line);
+            records.putIfAbsent(record.getSerialNumber(), record);
+            reservations.remove(record.getSerialNumber());
+        } catch (CertificateException | IllegalArgumentException e) {
+            logger.warn("Skipping unreadable line in {}", logFile, e);
+        }
+    }
+}
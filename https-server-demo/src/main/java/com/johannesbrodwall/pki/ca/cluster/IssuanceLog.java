@@ -0,0 +1,29 @@
+package com.johannesbrodwall.pki.ca.cluster;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Append-only record of every certificate issued by any node in the cluster. A node reserves
+ * each serial number before signing with it, so a certificate whose record could not be
+ * appended still leaves its serial number in the log and is never reissued.
+ */
+public interface IssuanceLog {
+
+    /** Durably records that <code>nodeId</code> is about to sign with <code>serialNumber</code> */
+    void reserve(int nodeId, BigInteger serialNumber) throws IOException;
+
+    /**
+     * The reserved serial numbers which never got a record. Together with {@link #records()}, this
+     * covers every serial number a node may have signed with
+     */
+    Collection<BigInteger> reservedSerialNumbers() throws IOException;
+
+    void append(IssuanceRecord record) throws IOException;
+
+    Optional<IssuanceRecord> find(BigInteger serialNumber) throws IOException;
+
+    Collection<IssuanceRecord> records() throws IOException;
+}
@@ -0,0 +1,66 @@
+package com.johannesbrodwall.pki.ca.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * One line in the shared issuance log: which node issued which certificate, and when
+ */
+public class IssuanceRecord {
+    private final BigInteger serialNumber;
+    private final int nodeId;
+    private final Instant issuedAt;
+    private final X509Certificate certificate;
+
+    public IssuanceRecord(int nodeId, Instant issuedAt, X509Certificate certificate) {
+        this.serialNumber = certificate.getSerialNumber();
+        this.nodeId = nodeId;
+        this.issuedAt = issuedAt;
+        this.certificate = certificate;
+    }
+
+    public static IssuanceRecord parse(String line) throws CertificateException {
+        String[] parts = line.split("\t");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Malformed issuance record: " + line);
+        }
+        X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X509")
+                .generateCertificate(new ByteArrayInputStream(Base64.getDecoder().decode(parts[3])));
+        if (!certificate.getSerialNumber().equals(new BigInteger(parts[0], 16))) {
+            throw new IllegalArgumentException("Serial number mismatch in issuance record: " + parts[0]);
+        }
+        return new IssuanceRecord(Integer.parseInt(parts[1]), Instant.parse(parts[2]), certificate);
+    }
+
+    public String toLine() throws CertificateEncodingException {
+        return serialNumber.toString(16) + "\t" + nodeId + "\t" + issuedAt + "\t" +
+               Base64.getEncoder().encodeToString(certificate.getEncoded()) + "\n";
+    }
+
+    public BigInteger getSerialNumber() {
+        return serialNumber;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public Instant getIssuedAt() {
+        return issuedAt;
+    }
+
+    public X509Certificate getCertificate() {
+        return certificate;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{serialNumber=" + serialNumber.toString(16) + ", nodeId=" + nodeId + ", subject=" + certificate.getSubjectX500Principal() + "}";
+    }
+}
@@ -0,0 +1,47 @@
+package com.johannesbrodwall.pki.ca.cluster;
+
+import com.johannesbrodwall.pki.ca.SerialNumberGenerator;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gives each node in the cluster a disjoint range of serial numbers by putting the
+ * node id in the top bits of a positive 64-bit serial and a sequence number in the rest.
+ */
+public class PartitionedSerialNumberGenerator implements SerialNumberGenerator {
+    static final int SEQUENCE_BITS = 56;
+    public static final int MAX_NODES = 127;
+
+    private final int nodeId;
+    private final AtomicLong sequence;
+
+    public PartitionedSerialNumberGenerator(int nodeId, long nextSequence) {
+        if (nodeId < 0 || nodeId >= MAX_NODES) {
+            throw new IllegalArgumentException("nodeId must be in [0, " + MAX_NODES + ">, was " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.sequence = new AtomicLong(nextSequence);
+    }
+
+    @Override
+    public BigInteger nextSerialNumber() {
+        long next = sequence.getAndIncrement();
+        if (next >= (1L << SEQUENCE_BITS)) {
+            throw new IllegalStateException("Serial number range exhausted for node " + nodeId);
+        }
+        return BigInteger.valueOf(((long) (nodeId + 1) << SEQUENCE_BITS) | next);
+    }
+
+    public boolean contains(BigInteger serialNumber) {
+        return nodeOf(serialNumber) == nodeId;
+    }
+
+    public static int nodeOf(BigInteger serialNumber) {
+        return serialNumber.shiftRight(SEQUENCE_BITS).intValue() - 1;
+    }
+
+    public static long sequenceOf(BigInteger serialNumber) {
+        return serialNumber.longValue() & ((1L << SEQUENCE_BITS) - 1);
+    }
+}
@@ -0,0 +1,182 @@
+package com.johannesbrodwall.pki.ca.server;
+
+import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.CertificateAuthorityHolder;
+import com.johannesbrodwall.pki.infrastructure.tracing.Span;
+import com.johannesbrodwall.pki.infrastructure.tracing.Tracer;
+import com.johannesbrodwall.pki.util.SslUtil;
+import org.jsonbuddy.JsonObject;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Issues a certificate for each request in a stream of certification requests, for automation
+ * that renews many certificates over one connection. See {@link CertificationRequestReader} for the
+ * request formats. Each request is issued as soon as it has been read, and each result is written
+ * and flushed as a line of NDJSON as soon as it's signed, so the response is sent chunked while
+ * the request is still being read. Results may come in a different order than the requests and
+ * carry the index of the request, and the id of NDJSON requests:
+ *
+ * <pre>
+ * {"index":0,"id":"web-1","serialNumber":"1f3a...","certificate":"-----BEGIN CERTIFICATE-----\n..."}
+ * {"index":1,"error":"Malformed certificate request: ..."}
+ * </pre>
+ */
+public class BulkIssuanceServlet extends HttpServlet {
+
+    private static final Tracer tracer = Tracer.getDefault();
+
+    private final CertificateAuthorityHolder certificateAuthorityHolder;
+    private final int maxInFlight;
+
+    public BulkIssuanceServlet(CertificateAuthorityHolder certificateAuthorityHolder) {
+        this(certificateAuthorityHolder, 64);
+    }
+
+    /** Stops reading requests while <code>maxInFlight</code> are waiting for the signer */
+    public BulkIssuanceServlet(CertificateAuthorityHolder certificateAuthorityHolder, int maxInFlight) {
+        this.certificateAuthorityHolder = certificateAuthorityHolder;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Optional<CertificateAuthorityHolder.Version> version = certificateAuthorityHolder.current();
+        if (version.isEmpty()) {
+            resp.sendError(503, "Certificate authority is not configured");
+            return;
+        }
+        // The whole stream is issued by the CA which was current when it started
+        CertificateAuthority certificateAuthority = version.get().getCertificateAuthority();
+        CertificationRequestReader reader = CertificationRequestReader.create(req.getContentType(), req.getInputStream());
+        resp.setContentType("application/x-ndjson");
+        ResultWriter results = new ResultWriter(resp.getOutputStream());
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        try (Span span = tracer.startSpan("POST /ca/bulk")) {
+            int count = 0;
+            try {
+                CertificationRequestReader.Item item;
+                while (!results.isFailed() && (item = reader.next()) != null) {
+                    int index = count++;
+                    String id = item.getId();
+                    if (item.getError() != null) {
+                        results.error(index, id, item.getError());
+                        continue;
+                    }
+                    acquire(inFlight, 1);
+                    issue(certificateAuthority, item.getCertificationRequest()).whenComplete((certificate, e) -> {
+                        try {
+                            if (e == null) {
+                                results.certificate(index, id, certificate);
+                            } else {
+                                results.error(index, id, errorMessage(e));
+                            }
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+            } finally {
+                // Also when reading fails or is interrupted: the callbacks write to the response,
+                // which Jetty completes and recycles as soon as we return
+                inFlight.acquireUninterruptibly(maxInFlight);
+                span.tag("requests", String.valueOf(count));
+            }
+        }
+        results.throwIfFailed();
+    }
+
+    private static CompletableFuture<X509Certificate> issue(CertificateAuthority certificateAuthority, byte[] certificationRequest) {
+        try {
+            return certificateAuthority.issueCertificateAsync(certificationRequest, ZonedDateTime.now());
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static String errorMessage(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof IllegalArgumentException) {
+            return "Malformed certificate request: " + cause.getMessage();
+        }
+        return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+    }
+
+    private static void acquire(Semaphore semaphore, int permits) throws InterruptedIOException {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for certificates to be issued");
+        }
+    }
+
+    /** Results are written from the signer's threads as they complete */
+    private static class ResultWriter {
+        private final OutputStream output;
+        private IOException failure;
+
+        private ResultWriter(OutputStream output) {
+            this.output = output;
+        }
+
+        private void certificate(int index, String id, X509Certificate certificate) {
+            try {
+                write(result(index, id)
+                        .put("serialNumber", certificate.getSerialNumber().toString(16))
+                        .put("certificate", SslUtil.writePemString(certificate.getEncoded(), "CERTIFICATE")));
+            } catch (CertificateEncodingException e) {
+                error(index, id, e.getMessage());
+            }
+        }
+
+        private void error(int index, String id, String message) {
+            write(result(index, id).put("error", message));
+        }
+
+        private static JsonObject result(int index, String id) {
+            JsonObject result = new JsonObject().put("index", index);
+            if (id != null) {
+                result.put("id", id);
+            }
+            return result;
+        }
+
+        private synchronized void write(JsonObject result) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                output.write((result.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+                output.flush();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        private synchronized boolean isFailed() {
+            return failure != null;
+        }
+
+        private synchronized void throwIfFailed() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
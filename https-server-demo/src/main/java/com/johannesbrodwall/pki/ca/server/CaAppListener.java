@@ -1,8 +1,14 @@
 package com.johannesbrodwall.pki.ca.server;
 
 import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.CertificateAuthorityHolder;
+import com.johannesbrodwall.pki.ca.acme.AcmeServlet;
+import com.johannesbrodwall.pki.ca.acme.AcmeService;
+import com.johannesbrodwall.pki.ca.acme.Http01ChallengeValidator;
 import com.johannesbrodwall.pki.https.server.EchoServlet;
 import com.johannesbrodwall.pki.infrastructure.OpenIdAuthenticationFilter;
+import com.johannesbrodwall.pki.infrastructure.metrics.MetricsRegistry;
+import com.johannesbrodwall.pki.infrastructure.metrics.MetricsServlet;
 import org.actioncontroller.servlet.ApiServlet;
 
 import javax.servlet.DispatcherType;
@@ -16,24 +22,34 @@ import java.util.Map;
 
 public class CaAppListener implements ServletContextListener {
 
-    private final CertificateAuthorityController caController = new CertificateAuthorityController();
+    private final CertificateAuthorityHolder certificateAuthority = new CertificateAuthorityHolder();
+    private final CertificateAuthorityController caController = new CertificateAuthorityController(certificateAuthority);
+    private final AcmeService acmeService = new AcmeService(certificateAuthority, new Http01ChallengeValidator());
     private final OpenIdAuthenticationFilter authenticationFilter = new OpenIdAuthenticationFilter();
 
     @Override
     public void contextInitialized(ServletContextEvent sce) {
         ServletContext context = sce.getServletContext();
         context.addServlet("userinfo", new EchoServlet()).addMapping("/userInfo");
+        context.addServlet("metrics", new MetricsServlet(MetricsRegistry.getDefault())).addMapping("/metrics");
 
         ServletRegistration.Dynamic caRegistration = context.addServlet("ca", new ApiServlet(caController));
         caRegistration.addMapping("/ca/*");
         caRegistration.setMultipartConfig(new MultipartConfigElement(""));
+        context.addServlet("bulkIssuance", new BulkIssuanceServlet(certificateAuthority)).addMapping("/ca/bulk");
+        context.addServlet("acme", new AcmeServlet(acmeService)).addMapping("/acme/*");
 
         context.addFilter("authentication", authenticationFilter)
                 .addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), false, "*");
     }
 
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        acmeService.close();
+    }
+
     public void setCertificateAuthority(CertificateAuthority certificateAuthority) {
-        caController.setCertificateAuthority(certificateAuthority);
+        this.certificateAuthority.replace(certificateAuthority);
     }
 
     public void setAuthentication(Map<String, String> config) {
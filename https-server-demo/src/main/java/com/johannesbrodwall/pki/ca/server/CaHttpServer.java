@@ -1,8 +1,21 @@
 package com.johannesbrodwall.pki.ca.server;
 
 import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.LiquidPkiCertificateAuthority;
+import com.johannesbrodwall.pki.ca.MeteredCertificateAuthority;
+import com.johannesbrodwall.pki.ca.SerialNumberGenerator;
 import com.johannesbrodwall.pki.ca.SunCertificateAuthority;
+import com.johannesbrodwall.pki.ca.cluster.ClusterCertificateAuthority;
+import com.johannesbrodwall.pki.ca.cluster.DirectoryIssuanceLog;
+import com.johannesbrodwall.pki.ca.cluster.IssuanceLog;
+import com.johannesbrodwall.pki.ca.signer.MeteredCaSigner;
+import com.johannesbrodwall.pki.ca.signer.RemoteCaSigner;
+import com.johannesbrodwall.pki.ca.signer.SignerProtocol;
+import com.johannesbrodwall.pki.infrastructure.Http2Settings;
 import com.johannesbrodwall.pki.infrastructure.SslServerConnector;
+import com.johannesbrodwall.pki.infrastructure.metrics.MetricsRegistry;
+import com.johannesbrodwall.pki.infrastructure.tracing.JsonLinesSpanExporter;
+import com.johannesbrodwall.pki.infrastructure.tracing.Tracer;
 import com.johannesbrodwall.pki.util.SslUtil;
 import com.johannesbrodwall.pki.infrastructure.WebApplication;
 import org.actioncontroller.config.ConfigMap;
@@ -22,7 +35,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.KeyStore;
 import java.security.cert.X509Certificate;
 import java.time.Period;
@@ -31,6 +43,7 @@ import java.util.List;
 import java.util.Optional;
 
 import static com.johannesbrodwall.pki.util.SslUtil.createKeyStore;
+import static com.johannesbrodwall.pki.util.SslUtil.generateKeyPair;
 import static com.johannesbrodwall.pki.util.SslUtil.loadKeyStore;
 import static com.johannesbrodwall.pki.util.SslUtil.storeKeyStore;
 import static com.johannesbrodwall.pki.util.SslUtil.writeCertificate;
@@ -42,10 +55,31 @@ public class CaHttpServer {
     private final ServerConnector connector = new ServerConnector(server);
     private final CaAppListener caApplication = new CaAppListener();
     private final WebAppContext application = new WebApplication("/webapp", "/ca", caApplication);
+    private JsonLinesSpanExporter spanExporter;
+    private ClusterNode clusterNode;
+
+    /**
+     * The issuance log and serial numbers of this node. They are kept across reloads, as two
+     * authorities with their own generators would hand out the same serial numbers.
+     */
+    private static class ClusterNode {
+        private final Path logDirectory;
+        private final int nodeId;
+        private final IssuanceLog issuanceLog;
+        private final SerialNumberGenerator serialNumbers;
+
+        private ClusterNode(Path logDirectory, int nodeId) throws IOException {
+            this.logDirectory = logDirectory;
+            this.nodeId = nodeId;
+            this.issuanceLog = new DirectoryIssuanceLog(logDirectory, nodeId);
+            this.serialNumbers = ClusterCertificateAuthority.createSerialNumberGenerator(nodeId, issuanceLog);
+        }
+    }
 
     public static void main(String[] args) throws Exception {
         CaHttpServer server = new CaHttpServer();
         new ConfigObserver("pkidemo")
+                .onPrefixedValue("tracing", server::setTracing)
                 .onPrefixedValue("ca.authentication", server::setAuthentication)
                 .onInetSocketAddress("ca.http.address", 11080, server::setHttpAddress)
                 .onPrefixedValue("ca", server::setCaConfiguration);
@@ -53,28 +87,55 @@ public class CaHttpServer {
         server.start();
     }
 
+    private void setTracing(ConfigMap config) throws IOException {
+        Tracer tracer = Tracer.getDefault();
+        JsonLinesSpanExporter previousExporter = spanExporter;
+        Optional<String> file = config.optional("file");
+        spanExporter = file.isPresent() ? new JsonLinesSpanExporter(Path.of(file.get())) : null;
+        tracer.setExporter(spanExporter != null ? spanExporter : span -> {});
+        tracer.setSampleRate(file.isPresent() ? Double.parseDouble(config.getOrDefault("sampleRate", "1")) : 0);
+        // Spans which end from now on go to the new exporter, so closing only waits for those being written
+        if (previousExporter != null) {
+            previousExporter.close();
+        }
+    }
+
     private void setAuthentication(ConfigMap config) {
         caApplication.setAuthentication(config);
     }
 
     private void setCaConfiguration(ConfigMap config) throws Exception {
         Optional<Path> keystore = config.optionalFile("keystore");
-        if (keystore.isPresent() && !config.getBoolean("create.ifPresent")) {
-            setCertificateAuthority(loadCertificateAuthority(config, keystore.get()), config);
+        Optional<String> signerAddress = config.optional("signer.address");
+        CertificateAuthority certificateAuthority;
+        if (signerAddress.isPresent()) {
+            certificateAuthority = connectCertificateAuthority(config, signerAddress.get());
+        } else if (keystore.isPresent() && !config.getBoolean("create.ifPresent")) {
+            certificateAuthority = loadCertificateAuthority(config, keystore.get());
         } else if (config.containsKey("keystore") && config.getBoolean("create.ifMissing")) {
-            setCertificateAuthority(createCertificateAuthority(config), config);
+            certificateAuthority = createCertificateAuthority(config);
         } else {
             throw new IllegalArgumentException("Missing keystore");
         }
+        Optional<String> clusterLog = config.optional("cluster.logDirectory");
+        if (clusterLog.isPresent()) {
+            ClusterNode node = getClusterNode(Path.of(clusterLog.get()), Integer.parseInt(config.get("cluster.nodeId")));
+            certificateAuthority = new ClusterCertificateAuthority(certificateAuthority, node.nodeId, node.issuanceLog, node.serialNumbers);
+        }
+        setCertificateAuthority(new MeteredCertificateAuthority(certificateAuthority, MetricsRegistry.getDefault()), config);
     }
 
-    private CertificateAuthority createCertificateAuthority(ConfigMap config) throws IOException, GeneralSecurityException {
-        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
-        generator.initialize(2048);
+    private synchronized ClusterNode getClusterNode(Path logDirectory, int nodeId) throws IOException {
+        if (clusterNode == null || !clusterNode.logDirectory.equals(logDirectory) || clusterNode.nodeId != nodeId) {
+            clusterNode = new ClusterNode(logDirectory, nodeId);
+        }
+        return clusterNode;
+    }
 
+    private CertificateAuthority createCertificateAuthority(ConfigMap config) throws IOException, GeneralSecurityException {
         CertificateAuthority certificateAuthority = new SunCertificateAuthority(
                 config.optional("validityPeriod").map(Period::parse).orElse(Period.ofYears(1)),
-                generator.generateKeyPair(),
+                generateKeyPair(config.getOrDefault("create.keyType", "RSA")),
                 config.get("create.issuerDN"),
                 ZonedDateTime.now()
         );
@@ -92,9 +153,24 @@ public class CaHttpServer {
         return lastPeriod > 0 ? path.substring(0, lastPeriod) : path;
     }
 
+    /** Issues with a key held by a CaSignerServer in another process */
+    private CertificateAuthority connectCertificateAuthority(ConfigMap config, String signerAddress) throws GeneralSecurityException, IOException {
+        RemoteCaSigner signer = RemoteCaSigner.connect(
+                SignerProtocol.parseAddress(signerAddress),
+                Integer.parseInt(config.getOrDefault("signer.maxInFlight", "64"))
+        );
+        return new LiquidPkiCertificateAuthority(
+                config.optional("validityPeriod").map(Period::parse).orElse(Period.ofDays(1)),
+                new MeteredCaSigner(signer, MetricsRegistry.getDefault()),
+                SslUtil.readCertificate(Path.of(config.get("signer.certificate")))
+        );
+    }
+
     private CertificateAuthority loadCertificateAuthority(ConfigMap config, Path keyStoreFile) throws GeneralSecurityException, IOException {
+        String password = config.getOrDefault("keystorePassword", "");
         return new SunCertificateAuthority(
-                loadKeyStore(keyStoreFile, config.getOrDefault("keystorePassword", "")),
+                loadKeyStore(keyStoreFile, password),
+                password.toCharArray(),
                 config.optional("validityPeriod").map(Period::parse).orElse(Period.ofDays(1))
         );
     }
@@ -107,15 +183,15 @@ public class CaHttpServer {
 
         secureConnector.start(
                 address,
-                createSslContext(address, certificateAuthority),
+                createSslContext(address, certificateAuthority, config.getOrDefault("https.keyType", "RSA")),
                 config.getBoolean("wantClientAuth"),
-                config.getBoolean("needClientAuth")
+                config.getBoolean("needClientAuth"),
+                config.subMap("https").map(Http2Settings::fromConfig).orElse(Http2Settings.DEFAULT)
         );
     }
 
-    private SSLContext createSslContext(InetSocketAddress address, CertificateAuthority certificateAuthority) throws GeneralSecurityException, IOException, InvalidNameException {
-        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
-        KeyPair keyPair = generator.generateKeyPair();
+    private SSLContext createSslContext(InetSocketAddress address, CertificateAuthority certificateAuthority, String keyType) throws GeneralSecurityException, IOException, InvalidNameException {
+        KeyPair keyPair = generateKeyPair(keyType);
 
         X509Certificate caCertificate = certificateAuthority.getCaCertificate();
         LdapName subjectName = new LdapName(certificateAuthority.getCaCertificate().getIssuerDN().toString());
@@ -130,7 +206,10 @@ public class CaHttpServer {
                         keyPair.getPublic()
                 )
         );
-        return SslUtil.createSslContext(keyStore, null, List.of(caCertificate));
+        return SslUtil.createSslContext(
+                SslUtil.createKeyManagers(keyStore, null),
+                SslUtil.createCachingTrustManagers(List.of(caCertificate))
+        );
     }
 
     private void setHttpAddress(InetSocketAddress httpAddress) throws Exception {
@@ -1,31 +1,44 @@
 package com.johannesbrodwall.pki.ca.server;
 
 import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.CertificateAuthorityHolder;
 import com.johannesbrodwall.pki.infrastructure.Multipart;
 import com.johannesbrodwall.pki.infrastructure.OpenIdAuthenticationFilter;
+import com.johannesbrodwall.pki.infrastructure.tracing.Span;
+import com.johannesbrodwall.pki.infrastructure.tracing.Tracer;
 import com.johannesbrodwall.pki.util.SslUtil;
 import com.johannesbrodwall.pki.util.SunCertificateUtil;
+import io.liquidpki.der.StrictDer;
+import io.liquidpki.pkcs12.Pkcs12Writer;
+import org.actioncontroller.actions.GET;
 import org.actioncontroller.actions.POST;
+import org.actioncontroller.exceptions.HttpActionException;
+import org.actioncontroller.exceptions.HttpNotFoundException;
 import org.actioncontroller.exceptions.HttpRequestException;
 import org.actioncontroller.values.ContentBody;
 import org.actioncontroller.values.HttpHeader;
+import org.actioncontroller.values.PathParam;
 import org.actioncontroller.values.RequestParam;
 import org.actioncontroller.values.UserPrincipal;
+import org.actioncontroller.values.json.JsonBody;
+import org.jsonbuddy.JsonObject;
 import sun.security.pkcs10.PKCS10;
 import sun.security.util.DerValue;
 import sun.security.x509.CertificateExtensions;
 import sun.security.x509.X500Name;
 import sun.security.x509.X509Key;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
-import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.Base64;
 import java.util.Optional;
@@ -33,7 +46,17 @@ import java.util.function.Consumer;
 
 public class CertificateAuthorityController {
 
-    private CertificateAuthority certificateAuthority;
+    private static final Tracer tracer = Tracer.getDefault();
+
+    private final CertificateAuthorityHolder certificateAuthorityHolder;
+
+    public CertificateAuthorityController() {
+        this(new CertificateAuthorityHolder());
+    }
+
+    public CertificateAuthorityController(CertificateAuthorityHolder certificateAuthorityHolder) {
+        this.certificateAuthorityHolder = certificateAuthorityHolder;
+    }
 
     @POST("/privateKey")
     @ContentBody(contentType = "application/x-pkcs12")
@@ -64,12 +87,13 @@ public class CertificateAuthorityController {
         generator.initialize(2048);
         KeyPair keyPair = generator.generateKeyPair();
 
-        X509Certificate certificate = certificateAuthority.issueClientCertificate(subjectName, ZonedDateTime.now(), keyPair.getPublic());
-        KeyStore keyStore = SslUtil.createKeyStore(keyPair.getPrivate(), null, certificate);
+        X509Certificate certificate = certificateAuthority().issueClientCertificate(subjectName, ZonedDateTime.now(), keyPair.getPublic());
         setContentDisposition.accept("attachment; filename=\"" + name + ".p12\"");
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        keyStore.store(buffer, "".toCharArray());
-        return buffer.toByteArray();
+        try (Span ignored = tracer.startSpan("writePkcs12")) {
+            return new Pkcs12Writer()
+                    .addKeyEntry(certificate.getSubjectDN().toString(), keyPair.getPrivate(), new Certificate[] { certificate })
+                    .write("".toCharArray());
+        }
     }
 
 
@@ -78,8 +102,31 @@ public class CertificateAuthorityController {
     public String requestCertificate(
             @Multipart("certificateRequestFile") String data
     ) throws IOException, SignatureException, NoSuchAlgorithmException {
-        PKCS10 pkcs10 = new PKCS10(SslUtil.parsePemString(data));
-        CertificateExtensions certificateExtensions = SunCertificateUtil.getCertificateExtensions(pkcs10);
+        try (Span ignored = tracer.startSpan("POST /ca/certificateRequest")) {
+            return requestCertificate(parseCertificationRequest(data), data);
+        }
+    }
+
+    /** Rejects malformed requests with 400 before any work is done on them */
+    private static byte[] parseCertificationRequest(String pem) {
+        try {
+            byte[] csr = SslUtil.parsePemString(pem);
+            StrictDer.validate(csr);
+            return csr;
+        } catch (IllegalArgumentException e) {
+            throw new HttpRequestException("Malformed certificate request: " + e.getMessage());
+        }
+    }
+
+    private String requestCertificate(byte[] csr, String data) throws IOException, SignatureException, NoSuchAlgorithmException {
+        PKCS10 pkcs10;
+        try (Span ignored = tracer.startSpan("parsePkcs10")) {
+            pkcs10 = new PKCS10(csr);
+        }
+        CertificateExtensions certificateExtensions;
+        try (Span ignored = tracer.startSpan("decodeExtensions")) {
+            certificateExtensions = SunCertificateUtil.getCertificateExtensions(pkcs10);
+        }
         String extensions = "";
         if (certificateExtensions != null) {
             extensions = "<div><label>Extensions: <br /><input name=extensions type=checkbox checked value='" + data + "' />" + certificateExtensions + "</label></div>";
@@ -100,19 +147,66 @@ public class CertificateAuthorityController {
             @RequestParam("extensions") Optional<String> extensionsInPemCsr,
             @HttpHeader("Content-Disposition") Consumer<String> setContentDisposition
     ) throws IOException, GeneralSecurityException {
-        X509Certificate certificate = certificateAuthority.issueCertificate(
-                subjectName,
-                ZonedDateTime.now(),
-                X509Key.parse(new DerValue(Base64.getDecoder().decode(base64PublicKey.getBytes()))),
-                extensionsInPemCsr.map(SslUtil::parsePemString)
-        );
-
-        String filename = ((X500Name) certificate.getSubjectDN()).getCommonName() + ".crt";
-        setContentDisposition.accept("attachment; filename=\"" + filename + "\"");
-        return SslUtil.writePemString(certificate.getEncoded(), "CERTIFICATE");
+        try (Span ignored = tracer.startSpan("POST /ca/issueCertificate")) {
+            X509Certificate certificate = certificateAuthority().issueCertificate(
+                    subjectName,
+                    ZonedDateTime.now(),
+                    X509Key.parse(new DerValue(Base64.getDecoder().decode(base64PublicKey.getBytes()))),
+                    extensionsInPemCsr.map(CertificateAuthorityController::parseCertificationRequest)
+            );
+
+            String filename = ((X500Name) certificate.getSubjectDN()).getCommonName() + ".crt";
+            setContentDisposition.accept("attachment; filename=\"" + filename + "\"");
+            return SslUtil.writePemString(certificate.getEncoded(), "CERTIFICATE");
+        }
+    }
+
+    @GET("/certificates/{serialNumber}")
+    @ContentBody(contentType = "application/pkix-cert")
+    public String getCertificate(@PathParam("serialNumber") String serialNumber) throws CertificateEncodingException {
+        return SslUtil.writePemString(findCertificate(serialNumber).getEncoded(), "CERTIFICATE");
+    }
+
+    @GET("/certificates/{serialNumber}/status")
+    @JsonBody
+    public JsonObject getCertificateStatus(@PathParam("serialNumber") String serialNumber) {
+        X509Certificate certificate = findCertificate(serialNumber);
+        Instant now = Instant.now();
+        String status;
+        if (now.isBefore(certificate.getNotBefore().toInstant())) {
+            status = "notYetValid";
+        } else if (now.isAfter(certificate.getNotAfter().toInstant())) {
+            status = "expired";
+        } else {
+            status = "valid";
+        }
+        return new JsonObject()
+                .put("serialNumber", certificate.getSerialNumber().toString(16))
+                .put("subject", certificate.getSubjectX500Principal().getName())
+                .put("notBefore", certificate.getNotBefore().toInstant().toString())
+                .put("notAfter", certificate.getNotAfter().toInstant().toString())
+                .put("status", status);
+    }
+
+    private X509Certificate findCertificate(String serialNumber) {
+        BigInteger serial;
+        try {
+            serial = new BigInteger(serialNumber, 16);
+        } catch (NumberFormatException e) {
+            throw new HttpRequestException("Invalid serial number " + serialNumber);
+        }
+        return certificateAuthority().findCertificate(serial)
+                .orElseThrow(() -> new HttpNotFoundException("Unknown certificate " + serialNumber));
+    }
+
+    /** Each request reads the current CA once, so it completes with the same CA even if it's replaced */
+    private CertificateAuthority certificateAuthority() {
+        return certificateAuthorityHolder.current()
+                .orElseThrow(() -> new HttpActionException(503, "Certificate authority is not configured"))
+                .getCertificateAuthority();
     }
 
-    public void setCertificateAuthority(CertificateAuthority certificateAuthority) {
-        this.certificateAuthority = certificateAuthority;
+    public CertificateAuthorityHolder.Version setCertificateAuthority(CertificateAuthority certificateAuthority) {
+        return certificateAuthorityHolder.replace(certificateAuthority);
     }
 }
@@ -0,0 +1,212 @@
+package com.johannesbrodwall.pki.ca.server;
+
+import io.liquidpki.pem.PemCodec;
+import org.jsonbuddy.JsonObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Reads certification requests one at a time from a request body, so each can be issued before the
+ * next has arrived. The body is either NDJSON with <code>{"id": "...", "csr": "..."}</code> per line,
+ * where csr is PEM or base64 DER, or concatenated DER and PEM requests.
+ */
+abstract class CertificationRequestReader {
+
+    /** Larger than any reasonable CSR, and bounds the memory used for a request */
+    static final int MAX_LENGTH = 64 * 1024;
+
+    static class Item {
+        private final String id;
+        private final byte[] certificationRequest;
+        private final String error;
+
+        private Item(String id, byte[] certificationRequest, String error) {
+            this.id = id;
+            this.certificationRequest = certificationRequest;
+            this.error = error;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        byte[] getCertificationRequest() {
+            return certificationRequest;
+        }
+
+        /** Why this request could not be read, or null */
+        String getError() {
+            return error;
+        }
+    }
+
+    static CertificationRequestReader create(String contentType, InputStream input) {
+        if (contentType != null && (contentType.startsWith("application/x-ndjson") || contentType.startsWith("application/json"))) {
+            return new NdjsonReader(input);
+        }
+        return new DerOrPemReader(input);
+    }
+
+    /** The next request, or null at the end of the stream */
+    abstract Item next() throws IOException;
+
+    private static class NdjsonReader extends CertificationRequestReader {
+        private final BufferedReader reader;
+        private boolean lineTooLong;
+
+        private NdjsonReader(InputStream input) {
+            reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        Item next() throws IOException {
+            String line;
+            do {
+                line = readLine();
+                if (line == null) {
+                    return null;
+                }
+            } while (!lineTooLong && line.trim().isEmpty());
+            if (lineTooLong) {
+                return new Item(null, null, "Line longer than " + MAX_LENGTH + " characters");
+            }
+            String id = null;
+            try {
+                JsonObject json = JsonObject.parse(line);
+                id = json.stringValue("id").orElse(null);
+                String csr = json.requiredString("csr");
+                byte[] der = csr.contains("-----BEGIN") ? PemCodec.decode(csr) : Base64.getDecoder().decode(csr);
+                return new Item(id, der, null);
+            } catch (RuntimeException e) {
+                return new Item(id, null, e.getMessage());
+            }
+        }
+
+        /**
+         * Unlike {@link BufferedReader#readLine()}, keeps at most {@link #MAX_LENGTH} characters of a line
+         * and skips the rest up to the next newline, so a body without newlines can't fill the heap.
+         * Returns null at the end of the stream.
+         */
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            lineTooLong = false;
+            int c;
+            while ((c = reader.read()) >= 0 && c != '\n') {
+                if (c == '\r') {
+                    continue;
+                } else if (line.length() < MAX_LENGTH) {
+                    line.append((char) c);
+                } else {
+                    lineTooLong = true;
+                }
+            }
+            return c < 0 && line.length() == 0 ? null : line.toString();
+        }
+    }
+
+    private static class DerOrPemReader extends CertificationRequestReader {
+        private final InputStream input;
+        /** After a framing error we cannot find the start of the next request */
+        private boolean failed;
+
+        private DerOrPemReader(InputStream input) {
+            this.input = new BufferedInputStream(input);
+        }
+
+        @Override
+        Item next() throws IOException {
+            if (failed) {
+                return null;
+            }
+            int first;
+            do {
+                input.mark(1);
+                first = input.read();
+            } while (first == ' ' || first == '\t' || first == '\r' || first == '\n');
+            if (first < 0) {
+                return null;
+            }
+            input.reset();
+            if (first == 0x30) {
+                return readDer();
+            } else if (first == '-') {
+                return readPem();
+            }
+            return fail("Expected DER or PEM certification request, found 0x" + Integer.toHexString(first));
+        }
+
+        private Item readDer() throws IOException {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            header.write(input.read());
+            int length = input.read();
+            if (length < 0) {
+                return fail("Truncated certification request");
+            }
+            header.write(length);
+            if (length == 0x80) {
+                return fail("Indefinite length is not allowed in a certification request");
+            } else if (length > 0x80) {
+                int bytesInLength = length & 0x7f;
+                if (bytesInLength > 3) {
+                    return fail("Certification request longer than " + MAX_LENGTH + " bytes");
+                }
+                length = 0;
+                for (int i = 0; i < bytesInLength; i++) {
+                    int octet = input.read();
+                    if (octet < 0) {
+                        return fail("Truncated certification request");
+                    }
+                    header.write(octet);
+                    length = length << 8 | octet;
+                }
+            }
+            if (length > MAX_LENGTH) {
+                return fail("Certification request longer than " + MAX_LENGTH + " bytes");
+            }
+            byte[] der = new byte[header.size() + length];
+            System.arraycopy(header.toByteArray(), 0, der, 0, header.size());
+            if (input.readNBytes(der, header.size(), length) < length) {
+                return fail("Truncated certification request");
+            }
+            return new Item(null, der, null);
+        }
+
+        /** Reads to the end of the "-----END ...-----" boundary, which may be followed by the next request on the same line */
+        private Item readPem() throws IOException {
+            StringBuilder pem = new StringBuilder();
+            int endBoundary = -1;
+            int c;
+            while ((c = input.read()) >= 0) {
+                pem.append((char) c);
+                if (pem.length() > MAX_LENGTH) {
+                    return fail("Certification request longer than " + MAX_LENGTH + " bytes");
+                } else if (endBoundary < 0 && c == 'D' && endsWith(pem, "-----END")) {
+                    endBoundary = pem.length();
+                } else if (endBoundary >= 0 && c == '-' && pem.length() > endBoundary + 5 && endsWith(pem, "-----")) {
+                    try {
+                        return new Item(null, PemCodec.decode(pem), null);
+                    } catch (IllegalArgumentException e) {
+                        return new Item(null, null, e.getMessage());
+                    }
+                }
+            }
+            return fail("Missing -----END boundary");
+        }
+
+        private static boolean endsWith(StringBuilder text, String suffix) {
+            return text.length() >= suffix.length() && text.substring(text.length() - suffix.length()).equals(suffix);
+        }
+
+        private Item fail(String message) {
+            failed = true;
+            return new Item(null, null, message);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.johannesbrodwall.pki.ca.signer;
+
+import com.johannesbrodwall.pki.util.ExceptionUtil;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Signs to-be-signed certificate bytes with the CA key, wherever that key lives. Signing is
+ * asynchronous so a certificate authority can keep many requests in flight while a slow
+ * signer (a hardware module or another process) works through them.
+ */
+public interface CaSigner {
+
+    /** The JCA signature algorithm, such as "SHA512withRSA" or "SHA256withECDSA" */
+    String getSignatureAlgorithm();
+
+    PublicKey getPublicKey();
+
+    CompletableFuture<byte[]> sign(byte[] toBeSigned);
+
+    /** Signs several requests at once. Implementations may send them to the signer together. */
+    default CompletableFuture<List<byte[]>> signBatch(List<byte[]> toBeSigned) {
+        List<CompletableFuture<byte[]>> signatures = new ArrayList<>();
+        for (byte[] bytes : toBeSigned) {
+            signatures.add(sign(bytes));
+        }
+        return allOf(signatures);
+    }
+
+    static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    /** Waits for the result, rethrowing the checked exception it failed with */
+    static <T> T await(CompletableFuture<T> future) throws GeneralSecurityException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for signer");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof ExecutionException || cause instanceof CompletionException) {
+                cause = cause.getCause();
+            }
+            throw ExceptionUtil.softenException(cause);
+        }
+    }
+}
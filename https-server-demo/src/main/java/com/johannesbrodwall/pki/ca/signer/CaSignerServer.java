@@ -0,0 +1,177 @@
+package com.johannesbrodwall.pki.ca.signer;
+
+import com.johannesbrodwall.pki.util.SslUtil;
+import io.liquidpki.der.Der;
+import io.liquidpki.der.Oid;
+import io.liquidpki.der.StrictDer;
+import io.liquidpki.x509.CertificateInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A stand-in for a hardware or remote signer: holds the CA key in its own process and signs
+ * requests from {@link RemoteCaSigner} clients. Each connection has a reader thread; signing
+ * happens on the delegate signer's executor and responses are written as they complete.
+ *
+ * <p>Clients are not authenticated, so the server only listens on loopback addresses and Unix
+ * domain sockets, where the operating system decides who may connect. Even so, it only signs
+ * what parses as a TBSCertificate issued by its own CA certificate with the signer's algorithm,
+ * rather than any bytes it's given.</p>
+ */
+public class CaSignerServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CaSignerServer.class);
+
+    private final ServerSocketChannel serverChannel;
+    private final CaSigner signer;
+    private final X509Certificate caCertificate;
+    private final String signatureAlgorithmOid;
+
+    /**
+     * @throws IllegalArgumentException if <code>address</code> is a network address other than
+     *     loopback, or the signer's key is not the key of <code>caCertificate</code>
+     */
+    public static CaSignerServer start(SocketAddress address, CaSigner signer, X509Certificate caCertificate) throws IOException {
+        if (address instanceof InetSocketAddress && !isLoopback((InetSocketAddress) address)) {
+            throw new IllegalArgumentException("Refusing to listen on " + address + ": signer clients are not authenticated, use a loopback address or a unix: socket");
+        }
+        if (!signer.getPublicKey().equals(caCertificate.getPublicKey())) {
+            throw new IllegalArgumentException("Signer key does not match " + caCertificate.getSubjectX500Principal());
+        }
+        ServerSocketChannel serverChannel = SignerProtocol.openServerChannel(address);
+        serverChannel.bind(address);
+        CaSignerServer server = new CaSignerServer(serverChannel, signer, caCertificate);
+        Thread acceptor = new Thread(server::acceptConnections, "CaSignerServer-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    private CaSignerServer(ServerSocketChannel serverChannel, CaSigner signer, X509Certificate caCertificate) {
+        this.serverChannel = serverChannel;
+        this.signer = signer;
+        this.caCertificate = caCertificate;
+        this.signatureAlgorithmOid = Oid.getSignatureAlgorithmOid(signer.getSignatureAlgorithm());
+    }
+
+    private static boolean isLoopback(InetSocketAddress address) {
+        return address.getAddress() != null && address.getAddress().isLoopbackAddress();
+    }
+
+    public SocketAddress getLocalAddress() throws IOException {
+        return serverChannel.getLocalAddress();
+    }
+
+    private void acceptConnections() {
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                Thread connection = new Thread(() -> serve(channel), "CaSignerServer-" + channel.getRemoteAddress());
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                if (serverChannel.isOpen()) {
+                    logger.warn("Failed to accept signer connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        Object writeLock = new Object();
+        try (channel) {
+            SignerProtocol.writeFully(channel, SignerProtocol.hello(signer.getSignatureAlgorithm(), signer.getPublicKey().getEncoded()));
+            while (true) {
+                int id = SignerProtocol.readFully(channel, 4).getInt();
+                byte[] toBeSigned = SignerProtocol.readBytes(channel);
+                String rejection = checkToBeSigned(toBeSigned);
+                if (rejection != null) {
+                    logger.warn("Refusing to sign request {} from {}: {}", id, channel.getRemoteAddress(), rejection);
+                    synchronized (writeLock) {
+                        SignerProtocol.writeFully(channel, SignerProtocol.response(id, SignerProtocol.STATUS_ERROR, rejection.getBytes(StandardCharsets.UTF_8)));
+                    }
+                    continue;
+                }
+                signer.sign(toBeSigned).whenComplete((signature, e) -> {
+                    ByteBuffer response = e == null
+                            ? SignerProtocol.response(id, SignerProtocol.STATUS_OK, signature)
+                            : SignerProtocol.response(id, SignerProtocol.STATUS_ERROR, String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+                    synchronized (writeLock) {
+                        try {
+                            SignerProtocol.writeFully(channel, response);
+                        } catch (IOException ioException) {
+                            logger.debug("Could not send response {}", id, ioException);
+                        }
+                    }
+                });
+            }
+        } catch (IOException e) {
+            logger.debug("Signer connection closed", e);
+        }
+    }
+
+    /** Returns why the request must not be signed, or null if it's a certificate from our CA */
+    private String checkToBeSigned(byte[] toBeSigned) {
+        CertificateInfo certificateInfo;
+        try {
+            StrictDer.validate(toBeSigned);
+            certificateInfo = new CertificateInfo(Der.parse(toBeSigned));
+        } catch (RuntimeException e) {
+            return "Not a TBSCertificate: " + e.getMessage();
+        }
+        if (!new X500Principal(certificateInfo.issuer().getEncoded()).equals(caCertificate.getSubjectX500Principal())) {
+            return "Issuer " + certificateInfo.issuer().print() + " is not " + caCertificate.getSubjectX500Principal();
+        }
+        if (!signatureAlgorithmOid.equals(certificateInfo.signature().getAlgorithmOid())) {
+            return "Signature algorithm " + certificateInfo.signature().getAlgorithmOid() + " is not " + signer.getSignatureAlgorithm();
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverChannel.close();
+    }
+
+    /**
+     * Usage: CaSignerServer &lt;unix:/path/to/socket | localhost:port&gt; &lt;keystore.p12&gt; [password]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: CaSignerServer <unix:/path/to/socket | localhost:port> <keystore.p12> [password]");
+            System.exit(1);
+        }
+        String password = args.length > 2 ? args[2] : "";
+        KeyStore keyStore = SslUtil.loadKeyStore(Path.of(args[1]), password);
+        String alias = keyStore.aliases().nextElement();
+        KeyPair keyPair = new KeyPair(
+                keyStore.getCertificate(alias).getPublicKey(),
+                (PrivateKey) Objects.requireNonNull(keyStore.getKey(alias, password.toCharArray()), "No key in " + args[1])
+        );
+        if (args[0].startsWith("unix:")) {
+            Files.deleteIfExists(Path.of(args[0].substring("unix:".length())));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        X509Certificate caCertificate = (X509Certificate) keyStore.getCertificate(alias);
+        CaSignerServer server = start(SignerProtocol.parseAddress(args[0]), new InMemoryCaSigner(keyPair, executor), caCertificate);
+        logger.info("Signing with {} on {}", alias, server.getLocalAddress());
+        Thread.currentThread().join();
+    }
+}
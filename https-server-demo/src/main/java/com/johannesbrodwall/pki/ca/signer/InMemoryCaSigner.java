@@ -0,0 +1,70 @@
+package com.johannesbrodwall.pki.ca.signer;
+
+import com.johannesbrodwall.pki.infrastructure.tracing.Span;
+import com.johannesbrodwall.pki.infrastructure.tracing.Tracer;
+import io.liquidpki.common.AlgorithmIdentifier;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Signs with a private key held in this process. Without an executor, signing happens in the
+ * calling thread and the returned future is already complete.
+ */
+public class InMemoryCaSigner implements CaSigner {
+    private static final Tracer tracer = Tracer.getDefault();
+
+    private final PrivateKey privateKey;
+    private final PublicKey publicKey;
+    private final String signatureAlgorithm;
+    private final Executor executor;
+
+    public InMemoryCaSigner(PrivateKey privateKey, PublicKey publicKey, Executor executor) {
+        this.privateKey = privateKey;
+        this.publicKey = publicKey;
+        this.signatureAlgorithm = AlgorithmIdentifier.defaultSignatureAlgorithm(privateKey);
+        this.executor = executor;
+    }
+
+    public InMemoryCaSigner(KeyPair keyPair, Executor executor) {
+        this(keyPair.getPrivate(), keyPair.getPublic(), executor);
+    }
+
+    public InMemoryCaSigner(KeyPair keyPair) {
+        this(keyPair, Runnable::run);
+    }
+
+    @Override
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    @Override
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    public PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> sign(byte[] toBeSigned) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (Span ignored = tracer.startSpan("computeSignature")) {
+                Signature signature = Signature.getInstance(signatureAlgorithm);
+                signature.initSign(privateKey);
+                signature.update(toBeSigned);
+                return signature.sign();
+            } catch (GeneralSecurityException e) {
+                throw new CompletionException(e);
+            }
+        }, tracer.currentSpan().wrap(executor));
+    }
+}
@@ -0,0 +1,43 @@
+package com.johannesbrodwall.pki.ca.signer;
+
+import com.johannesbrodwall.pki.infrastructure.metrics.MetricsRegistry;
+import com.johannesbrodwall.pki.infrastructure.metrics.Timer;
+
+import java.security.PublicKey;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/** Times each signature from request until the signer completes it, including time queued behind other requests */
+public class MeteredCaSigner implements CaSigner {
+    private final CaSigner delegate;
+    private final Timer signingTime;
+    private final Timer batchTime;
+
+    public MeteredCaSigner(CaSigner delegate, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        this.signingTime = metrics.timer("ca_signing_seconds", "Time from signing request to signature", "signer", delegate.getClass().getSimpleName());
+        this.batchTime = metrics.timer("ca_signing_batch_seconds", "Time from batch signing request to the last signature", "signer", delegate.getClass().getSimpleName());
+    }
+
+    @Override
+    public String getSignatureAlgorithm() {
+        return delegate.getSignatureAlgorithm();
+    }
+
+    @Override
+    public PublicKey getPublicKey() {
+        return delegate.getPublicKey();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> sign(byte[] toBeSigned) {
+        long start = System.nanoTime();
+        return delegate.sign(toBeSigned).whenComplete((signature, e) -> signingTime.recordSince(start));
+    }
+
+    @Override
+    public CompletableFuture<List<byte[]>> signBatch(List<byte[]> toBeSigned) {
+        long start = System.nanoTime();
+        return delegate.signBatch(toBeSigned).whenComplete((signatures, e) -> batchTime.recordSince(start));
+    }
+}
@@ -0,0 +1,178 @@
+package com.johannesbrodwall.pki.ca.signer;
+
+import io.liquidpki.common.SubjectPublicKeyInfo;
+import io.liquidpki.der.Der;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Signs through a {@link CaSignerServer} in another process. Requests are pipelined over one
+ * connection and matched to responses by id. At most <code>maxInFlight</code> requests are
+ * outstanding; further callers wait, which keeps a slow signer from being flooded.
+ *
+ * <p>Futures are completed on <code>completionExecutor</code> rather than on the thread reading
+ * responses, so callers who chain work onto a signature don't hold up the responses after it.</p>
+ */
+public class RemoteCaSigner implements CaSigner, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(RemoteCaSigner.class);
+
+    private final SocketChannel channel;
+    private final String signatureAlgorithm;
+    private final PublicKey publicKey;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final Executor completionExecutor;
+    private volatile IOException failure;
+
+    public static RemoteCaSigner connect(SocketAddress address, int maxInFlight) throws IOException, GeneralSecurityException {
+        return new RemoteCaSigner(SocketChannel.open(address), maxInFlight);
+    }
+
+    public RemoteCaSigner(SocketChannel channel, int maxInFlight) throws IOException, GeneralSecurityException {
+        this(channel, maxInFlight, ForkJoinPool.commonPool());
+    }
+
+    public RemoteCaSigner(SocketChannel channel, int maxInFlight, Executor completionExecutor) throws IOException, GeneralSecurityException {
+        this.channel = channel;
+        this.completionExecutor = completionExecutor;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.signatureAlgorithm = new String(SignerProtocol.readBytes(channel), StandardCharsets.UTF_8);
+        byte[] encodedKey = SignerProtocol.readBytes(channel);
+        this.publicKey = KeyFactory.getInstance(new SubjectPublicKeyInfo(Der.parse(encodedKey)).getKeyAlgorithm())
+                .generatePublic(new X509EncodedKeySpec(encodedKey));
+
+        Thread reader = new Thread(this::readResponses, "RemoteCaSigner-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    @Override
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> sign(byte[] toBeSigned) {
+        return signBatch(List.of(toBeSigned)).thenApply(signatures -> signatures.get(0));
+    }
+
+    /** Writes the whole batch in one go, in chunks of at most maxInFlight requests */
+    @Override
+    public CompletableFuture<List<byte[]>> signBatch(List<byte[]> toBeSigned) {
+        List<CompletableFuture<byte[]>> signatures = new ArrayList<>();
+        for (int start = 0; start < toBeSigned.size(); start += maxInFlight) {
+            signatures.addAll(send(toBeSigned.subList(start, Math.min(start + maxInFlight, toBeSigned.size()))));
+        }
+        return CaSigner.allOf(signatures);
+    }
+
+    private List<CompletableFuture<byte[]>> send(List<byte[]> requests) {
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        try {
+            inFlight.acquire(requests.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.add(CompletableFuture.failedFuture(new InterruptedIOException("Interrupted waiting for signer capacity")));
+            return futures;
+        }
+        int length = 0;
+        for (byte[] request : requests) {
+            length += 8 + request.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] request : requests) {
+            int id = nextId.getAndIncrement();
+            CompletableFuture<byte[]> future = new CompletableFuture<>();
+            future.whenComplete((result, e) -> inFlight.release());
+            pending.put(id, future);
+            futures.add(future);
+            SignerProtocol.putRequest(buffer, id, request);
+        }
+        buffer.flip();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            synchronized (writeLock) {
+                SignerProtocol.writeFully(channel, buffer);
+            }
+        } catch (IOException e) {
+            failAll(e);
+        }
+        return futures;
+    }
+
+    private void readResponses() {
+        try {
+            while (true) {
+                ByteBuffer header = SignerProtocol.readFully(channel, 5);
+                int id = header.getInt();
+                byte status = header.get();
+                byte[] body = SignerProtocol.readBytes(channel);
+                CompletableFuture<byte[]> future = pending.remove(id);
+                if (future == null) {
+                    logger.warn("Response for unknown request {}", id);
+                } else if (status == SignerProtocol.STATUS_OK) {
+                    completionExecutor.execute(() -> future.complete(body));
+                } else {
+                    SignatureException e = new SignatureException("Signer failed: " + new String(body, StandardCharsets.UTF_8));
+                    completionExecutor.execute(() -> future.completeExceptionally(e));
+                }
+            }
+        } catch (IOException e) {
+            if (channel.isOpen()) {
+                logger.warn("Lost connection to signer", e);
+            }
+            failAll(e);
+        }
+    }
+
+    private void failAll(IOException e) {
+        failure = e;
+        for (Integer id : pending.keySet()) {
+            CompletableFuture<byte[]> future = pending.remove(id);
+            if (future != null) {
+                completionExecutor.execute(() -> future.completeExceptionally(e));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,98 @@
+package com.johannesbrodwall.pki.ca.signer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The framing between {@link RemoteCaSigner} and {@link CaSignerServer}. On connect the server sends
+ * its signature algorithm and public key. Requests are [int id][int length][to-be-signed bytes],
+ * responses are [int id][byte status][int length][signature or error message]. Responses may
+ * arrive in any order, so the client can pipeline as many requests as it likes.
+ */
+public class SignerProtocol {
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+    static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    /**
+     * Parses "unix:/path/to/socket" (requires Java 16+) or "host:port". Unix domain sockets keep the
+     * signer unreachable from the network; TCP is for platforms without them.
+     */
+    public static SocketAddress parseAddress(String address) {
+        if (address.startsWith("unix:")) {
+            try {
+                return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                        .getMethod("of", String.class)
+                        .invoke(null, address.substring("unix:".length()));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Unix domain sockets require Java 16+: " + address, e);
+            }
+        }
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected unix:<path> or <host>:<port>, was " + address);
+        }
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    static ServerSocketChannel openServerChannel(SocketAddress address) throws IOException {
+        if (address instanceof InetSocketAddress) {
+            return ServerSocketChannel.open();
+        }
+        try {
+            return (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class)
+                    .invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new IOException("Unix domain sockets require Java 16+", e);
+        }
+    }
+
+    static ByteBuffer readFully(ReadableByteChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Signer connection closed");
+            }
+        }
+        return buffer.flip();
+    }
+
+    static byte[] readBytes(ReadableByteChannel channel) throws IOException {
+        int length = readFully(channel, 4).getInt();
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return readFully(channel, length).array();
+    }
+
+    static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static ByteBuffer hello(String signatureAlgorithm, byte[] publicKey) {
+        byte[] algorithm = signatureAlgorithm.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(8 + algorithm.length + publicKey.length)
+                .putInt(algorithm.length).put(algorithm)
+                .putInt(publicKey.length).put(publicKey)
+                .flip();
+    }
+
+    static void putRequest(ByteBuffer buffer, int id, byte[] toBeSigned) {
+        buffer.putInt(id).putInt(toBeSigned.length).put(toBeSigned);
+    }
+
+    static ByteBuffer response(int id, byte status, byte[] body) {
+        return ByteBuffer.allocate(9 + body.length).putInt(id).put(status).putInt(body.length).put(body).flip();
+    }
+}
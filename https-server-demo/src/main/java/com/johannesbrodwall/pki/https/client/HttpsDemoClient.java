@@ -3,15 +3,14 @@ package com.johannesbrodwall.pki.https.client;
 import org.actioncontroller.config.ConfigMap;
 import org.actioncontroller.config.ConfigObserver;
 
-import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -25,20 +24,22 @@ import java.util.Optional;
 public class HttpsDemoClient {
     private SSLContext sslContext;
     private URL url;
+    private PooledHttpsClient client;
 
     public static void main(String[] args) throws IOException {
         HttpsDemoClient testClient = new HttpsDemoClient();
         new ConfigObserver("pkidemo")
-                .onPrefixedValue("client.key", testClient::getSslContext, testClient::setSslContext)
+                .onPrefixedValue("client.key", HttpsDemoClient::getSslContext, testClient::setSslContext)
                 .onUrlValue("client.url", new URL("https://localhost"), testClient::setUrl);
         System.out.println(testClient.fetch(""));
     }
 
-    private void setUrl(URL url) {
+    private synchronized void setUrl(URL url) {
         this.url = url;
+        this.client = null;
     }
 
-    private SSLContext getSslContext(ConfigMap configMap) throws GeneralSecurityException, IOException {
+    static SSLContext getSslContext(ConfigMap configMap) throws GeneralSecurityException, IOException {
         Optional<Path> keyStorePath = configMap.optionalFile("keyStore");
         String keyStorePassword = ((Map<String, String>) configMap).getOrDefault("keyStorePassword", "");
         String keyPassword = ((Map<String, String>) configMap).getOrDefault("keyPassword", "");
@@ -79,20 +80,24 @@ public class HttpsDemoClient {
         return sslContext;
     }
 
+    /** Reuses connections between calls until the URL or SSLContext changes */
     public String fetch(String spec) throws IOException {
-        HttpsURLConnection connection = (HttpsURLConnection) new URL(this.url, spec).openConnection();
-        connection.setSSLSocketFactory(sslContext.getSocketFactory());
+        return client().fetch(spec);
+    }
 
-        int responseCode = connection.getResponseCode();
-        if (responseCode >= 400) {
-            throw new IOException("Response code " + responseCode + ": " + connection.getResponseMessage());
+    private synchronized PooledHttpsClient client() throws IOException {
+        if (client == null) {
+            try {
+                client = new PooledHttpsClient(url.toURI(), sslContext);
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid URL " + url, e);
+            }
         }
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        connection.getInputStream().transferTo(buffer);
-        return buffer.toString();
+        return client;
     }
 
-    public void setSslContext(SSLContext sslContext) {
+    public synchronized void setSslContext(SSLContext sslContext) {
         this.sslContext = sslContext;
+        this.client = null;
     }
 }
@@ -0,0 +1,164 @@
+package com.johannesbrodwall.pki.https.client;
+
+import org.actioncontroller.config.ConfigObserver;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs requests against the demo server from a fixed number of concurrent users, each sending its
+ * next request when the previous one completes, and reports latency percentiles. The main method
+ * compares {@link PooledHttpsClient} over HTTP/2 and HTTP/1.1 with a new
+ * {@link HttpsURLConnection} and resumed TLS handshake per request, configured like {@link HttpsDemoClient}
+ * with <code>client.key.*</code> and <code>client.url</code>, plus <code>load.requests</code> and
+ * <code>load.concurrency</code>.
+ */
+public class HttpsLoadDriver {
+
+    @FunctionalInterface
+    public interface Request {
+        CompletableFuture<?> send() throws IOException;
+    }
+
+    public static class Result {
+        private final String name;
+        private final long[] latencyNanos;
+        private final int errors;
+        private final long elapsedNanos;
+
+        private Result(String name, long[] latencyNanos, int errors, long elapsedNanos) {
+            this.name = name;
+            this.latencyNanos = latencyNanos;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            Arrays.sort(this.latencyNanos);
+        }
+
+        public int getCount() {
+            return latencyNanos.length;
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+
+        public double getRequestsPerSecond() {
+            return latencyNanos.length * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        /** The latency in milliseconds which <code>percentile</code> percent of the requests were faster than */
+        public double getPercentileMillis(double percentile) {
+            if (latencyNanos.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * latencyNanos.length) - 1;
+            return latencyNanos[Math.max(0, Math.min(index, latencyNanos.length - 1))] / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-30s %8d requests %9.1f req/s   p50 %7.2f ms   p99 %7.2f ms   errors %d",
+                    name, getCount(), getRequestsPerSecond(), getPercentileMillis(50), getPercentileMillis(99), errors);
+        }
+    }
+
+    private SSLContext sslContext;
+    private URL url;
+    private int requests;
+    private int concurrency;
+
+    public static void main(String[] args) throws Exception {
+        HttpsLoadDriver driver = new HttpsLoadDriver();
+        new ConfigObserver("pkidemo")
+                .onPrefixedValue("client.key", HttpsDemoClient::getSslContext, sslContext -> driver.sslContext = sslContext)
+                .onUrlValue("client.url", new URL("https://localhost:8443/"), url -> driver.url = url)
+                .onIntValue("load.requests", 5000, requests -> driver.requests = requests)
+                .onIntValue("load.concurrency", 16, concurrency -> driver.concurrency = concurrency);
+        driver.compare();
+    }
+
+    private void compare() throws Exception {
+        for (HttpClient.Version version : HttpClient.Version.values()) {
+            PooledHttpsClient client = new PooledHttpsClient(url.toURI(), sslContext)
+                    .version(version)
+                    .maxConnections(concurrency);
+            run("pooled " + version, concurrency, requests / 10, () -> client.fetchAsync(""));
+            System.out.println(run("pooled " + version, concurrency, requests, () -> client.fetchAsync("")));
+        }
+        ExecutorService threads = Executors.newFixedThreadPool(concurrency);
+        try {
+            Request request = () -> CompletableFuture.runAsync(() -> fetchWithNewConnection(url, sslContext), threads);
+            System.out.println(run("HttpsURLConnection resumed", concurrency, requests, request));
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    /**
+     * How {@link HttpsDemoClient} used to fetch, with a new socket factory and so a new connection every
+     * time. The session cache belongs to the SSLContext, so after the first request the handshakes are
+     * resumed rather than full: this measures connection setup, not certificate verification.
+     */
+    private static void fetchWithNewConnection(URL url, SSLContext sslContext) {
+        try {
+            HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
+            connection.setSSLSocketFactory(sslContext.getSocketFactory());
+            if (connection.getResponseCode() >= 400) {
+                throw new IOException("Response code " + connection.getResponseCode());
+            }
+            try (InputStream input = connection.getInputStream()) {
+                input.readAllBytes();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Sends <code>requests</code> requests from <code>concurrency</code> users and waits for all of them */
+    public static Result run(String name, int concurrency, int requests, Request request) throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(Math.min(concurrency, requests));
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency && i < requests; i++) {
+            sendNext(request, requests, latencies, started, completed, errors, done);
+        }
+        done.await();
+        return new Result(name, Arrays.copyOf(latencies, completed.get()), errors.get(), System.nanoTime() - start);
+    }
+
+    private static void sendNext(Request request, int requests, long[] latencies, AtomicInteger started, AtomicInteger completed, AtomicInteger errors, CountDownLatch done) {
+        while (started.getAndIncrement() < requests) {
+            long requestStart = System.nanoTime();
+            CompletableFuture<?> response;
+            try {
+                response = request.send();
+            } catch (IOException | RuntimeException e) {
+                errors.incrementAndGet();
+                continue;
+            }
+            response.whenComplete((result, e) -> {
+                if (e != null) {
+                    errors.incrementAndGet();
+                } else {
+                    latencies[completed.getAndIncrement()] = System.nanoTime() - requestStart;
+                }
+                sendNext(request, requests, latencies, started, completed, errors, done);
+            });
+            return;
+        }
+        done.countDown();
+    }
+}
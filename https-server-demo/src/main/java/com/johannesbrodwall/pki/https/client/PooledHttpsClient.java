@@ -0,0 +1,158 @@
+package com.johannesbrodwall.pki.https.client;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * An HTTPS client on {@link HttpClient}, which keeps connections open between requests and
+ * negotiates HTTP/2 with ALPN where the server offers it. A client making many requests pays the
+ * mutual TLS handshake once per connection instead of once per request, and new connections
+ * resume the TLS session from the {@link SSLContext}'s session cache.
+ *
+ * <p>At most {@link #maxConnections(int)} requests are in flight. Over HTTP/1.1 this is the number of
+ * connections in the pool; over HTTP/2 the requests are multiplexed on one connection. Callers
+ * of the async methods wait for a free slot, which keeps a batch from opening a connection per
+ * request.</p>
+ */
+public class PooledHttpsClient {
+
+    private final URI baseUri;
+    private final SSLContext sslContext;
+    private HttpClient.Version version = HttpClient.Version.HTTP_2;
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    private Duration requestTimeout = Duration.ofSeconds(30);
+    private Executor executor;
+    private int maxConnections = 16;
+    private Semaphore inFlight;
+    private HttpClient client;
+
+    public PooledHttpsClient(URI baseUri, SSLContext sslContext) {
+        this.baseUri = baseUri;
+        this.sslContext = sslContext;
+    }
+
+    /** HTTP/2 by default, which falls back to HTTP/1.1 if the server doesn't offer h2 */
+    public PooledHttpsClient version(HttpClient.Version version) {
+        this.version = version;
+        return reset();
+    }
+
+    public PooledHttpsClient connectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return reset();
+    }
+
+    public PooledHttpsClient requestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        return this;
+    }
+
+    /** Where responses are handled, by default the HttpClient's own cached thread pool */
+    public PooledHttpsClient executor(Executor executor) {
+        this.executor = executor;
+        return reset();
+    }
+
+    public PooledHttpsClient maxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return reset();
+    }
+
+    private synchronized PooledHttpsClient reset() {
+        client = null;
+        inFlight = null;
+        return this;
+    }
+
+    private synchronized HttpClient client() {
+        if (client == null) {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                    .sslContext(sslContext)
+                    .version(version)
+                    .connectTimeout(connectTimeout)
+                    .followRedirects(HttpClient.Redirect.NEVER);
+            if (executor != null) {
+                builder.executor(executor);
+            }
+            client = builder.build();
+            inFlight = new Semaphore(maxConnections);
+        }
+        return client;
+    }
+
+    /** GETs the path relative to the base URI */
+    public String fetch(String path) throws IOException {
+        try {
+            return fetchAsync(path).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted fetching " + path);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to fetch " + path, e.getCause());
+        }
+    }
+
+    /** Waits for a free connection, then completes when the response has been read */
+    public CompletableFuture<String> fetchAsync(String path) throws InterruptedIOException {
+        return sendAsync(HttpRequest.newBuilder(baseUri.resolve(path)).GET())
+                .thenApply(response -> {
+                    if (response.statusCode() >= 400) {
+                        throw new CompletionException(new IOException("Response code " + response.statusCode() + " from " + response.uri()));
+                    }
+                    return response.body();
+                });
+    }
+
+    /** Fetches the paths concurrently, up to {@link #maxConnections(int)} at a time, and completes with the bodies in order */
+    public CompletableFuture<List<String>> fetchAll(List<String> paths) throws InterruptedIOException {
+        List<CompletableFuture<String>> responses = new ArrayList<>();
+        for (String path : paths) {
+            responses.add(fetchAsync(path));
+        }
+        return CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<String> result = new ArrayList<>();
+            for (CompletableFuture<String> response : responses) {
+                result.add(response.join());
+            }
+            return result;
+        });
+    }
+
+    public CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest.Builder request) throws InterruptedIOException {
+        HttpClient client;
+        Semaphore inFlight;
+        synchronized (this) {
+            client = client();
+            inFlight = this.inFlight;
+        }
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a connection");
+        }
+        try {
+            return client.sendAsync(request.timeout(requestTimeout).build(), HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, e) -> inFlight.release());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.johannesbrodwall.pki.https.server;
 
+import com.johannesbrodwall.pki.infrastructure.Http2Settings;
 import com.johannesbrodwall.pki.infrastructure.SslServerConnector;
+import com.johannesbrodwall.pki.util.SslContextCache;
 import com.johannesbrodwall.pki.util.SslUtil;
 import com.johannesbrodwall.pki.util.SunCertificateUtil;
 import org.actioncontroller.config.ConfigMap;
@@ -21,11 +23,6 @@ import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.util.Optional;
 
-import static com.johannesbrodwall.pki.util.SslUtil.createKeyStore;
-import static com.johannesbrodwall.pki.util.SslUtil.createSslContext;
-import static com.johannesbrodwall.pki.util.SslUtil.readCertificate;
-import static com.johannesbrodwall.pki.util.SslUtil.readCertificates;
-import static com.johannesbrodwall.pki.util.SslUtil.readPrivateKey;
 import static com.johannesbrodwall.pki.util.SslUtil.writePrivateKey;
 
 public class HttpsDemoServer {
@@ -34,6 +31,30 @@ public class HttpsDemoServer {
     private final Server server = new Server();
     private final SslServerConnector secureConnector = new SslServerConnector(server);
     private final ServerConnector connector = new ServerConnector(server);
+    private HttpsSettings currentHttpsSettings;
+
+    /** The SSLContext comes from {@link SslContextCache}, so it's the same instance when the files are unchanged */
+    private static class HttpsSettings {
+        private final InetSocketAddress address;
+        private final SSLContext sslContext;
+        private final boolean wantClientAuth;
+        private final boolean needClientAuth;
+        private final Http2Settings http2Settings;
+
+        private HttpsSettings(InetSocketAddress address, SSLContext sslContext, boolean wantClientAuth, boolean needClientAuth, Http2Settings http2Settings) {
+            this.address = address;
+            this.sslContext = sslContext;
+            this.wantClientAuth = wantClientAuth;
+            this.needClientAuth = needClientAuth;
+            this.http2Settings = http2Settings;
+        }
+
+        private boolean isSameAs(HttpsSettings other) {
+            return other != null && address.equals(other.address) && sslContext == other.sslContext
+                    && wantClientAuth == other.wantClientAuth && needClientAuth == other.needClientAuth
+                    && http2Settings.isSameAs(other.http2Settings);
+        }
+    }
 
     public static void main(String[] args) throws Exception {
         HttpsDemoServer server = new HttpsDemoServer();
@@ -52,23 +73,33 @@ public class HttpsDemoServer {
     }
 
     private void setHttpsConfiguration(ConfigMap config) throws Exception {
-        secureConnector.stop();
         Optional<Path> keyFile = config.optionalFile("key");
         Optional<Path> certificate = config.optionalFile("certificate");
         InetSocketAddress address = config.getInetSocketAddress("address", 8443);
 
         if (keyFile.isPresent() && certificate.isPresent()) {
-            secureConnector.start(
+            HttpsSettings settings = new HttpsSettings(
                     address,
-                    createSslContext(
-                            createKeyStore(readPrivateKey(keyFile.get()), null, readCertificate(certificate.get())),
+                    SslContextCache.getDefault().getSslContext(
+                            keyFile.get(),
+                            certificate.get(),
                             config.get("password").toCharArray(),
-                            readCertificates(config.listFiles("trustedCertificates"))
+                            config.listFiles("trustedCertificates")
                     ),
                     config.getBoolean("wantClientAuth"),
-                    config.getBoolean("needClientAuth")
+                    config.getBoolean("needClientAuth"),
+                    Http2Settings.fromConfig(config)
             );
+            if (settings.isSameAs(currentHttpsSettings) && secureConnector.isRunning()) {
+                logger.debug("Https configuration changed without changing key material, keeping connections");
+                return;
+            }
+            secureConnector.stop();
+            secureConnector.start(settings.address, settings.sslContext, settings.wantClientAuth, settings.needClientAuth, settings.http2Settings);
+            currentHttpsSettings = settings;
         } else if (keyFile.isEmpty()) {
+            secureConnector.stop();
+            currentHttpsSettings = null;
             KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
             generator.initialize(2048);
             KeyPair keyPair = generator.generateKeyPair();
@@ -83,6 +114,7 @@ public class HttpsDemoServer {
 
     public void setHttpsConfiguration(InetSocketAddress address, SSLContext sslContext) throws Exception {
         secureConnector.start(address, sslContext, true, false);
+        currentHttpsSettings = new HttpsSettings(address, sslContext, true, false, Http2Settings.DEFAULT);
     }
 
     public void start() throws Exception {
@@ -0,0 +1,56 @@
+package com.johannesbrodwall.pki.infrastructure;
+
+import org.actioncontroller.config.ConfigMap;
+
+/**
+ * Stream limits and flow-control windows for HTTP/2 on {@link SslServerConnector}, read from
+ * <code>http2.enabled</code>, <code>http2.maxConcurrentStreams</code>,
+ * <code>http2.initialStreamRecvWindow</code> and <code>http2.initialSessionRecvWindow</code>
+ * under the connector's configuration prefix. The defaults are Jetty's.
+ */
+public class Http2Settings {
+
+    public static final Http2Settings DEFAULT = new Http2Settings(true, 128, 512 * 1024, 1024 * 1024);
+
+    private final boolean enabled;
+    private final int maxConcurrentStreams;
+    private final int initialStreamRecvWindow;
+    private final int initialSessionRecvWindow;
+
+    public Http2Settings(boolean enabled, int maxConcurrentStreams, int initialStreamRecvWindow, int initialSessionRecvWindow) {
+        this.enabled = enabled;
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.initialStreamRecvWindow = initialStreamRecvWindow;
+        this.initialSessionRecvWindow = initialSessionRecvWindow;
+    }
+
+    public static Http2Settings fromConfig(ConfigMap config) {
+        return new Http2Settings(
+                config.optional("http2.enabled").map(Boolean::parseBoolean).orElse(DEFAULT.enabled),
+                Integer.parseInt(config.getOrDefault("http2.maxConcurrentStreams", String.valueOf(DEFAULT.maxConcurrentStreams))),
+                Integer.parseInt(config.getOrDefault("http2.initialStreamRecvWindow", String.valueOf(DEFAULT.initialStreamRecvWindow))),
+                Integer.parseInt(config.getOrDefault("http2.initialSessionRecvWindow", String.valueOf(DEFAULT.initialSessionRecvWindow)))
+        );
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    public int getInitialStreamRecvWindow() {
+        return initialStreamRecvWindow;
+    }
+
+    public int getInitialSessionRecvWindow() {
+        return initialSessionRecvWindow;
+    }
+
+    public boolean isSameAs(Http2Settings other) {
+        return other != null && enabled == other.enabled && maxConcurrentStreams == other.maxConcurrentStreams
+                && initialStreamRecvWindow == other.initialStreamRecvWindow && initialSessionRecvWindow == other.initialSessionRecvWindow;
+    }
+}
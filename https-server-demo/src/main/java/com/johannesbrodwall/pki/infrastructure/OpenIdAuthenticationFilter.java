@@ -1,5 +1,6 @@
 package com.johannesbrodwall.pki.infrastructure;
 
+import com.johannesbrodwall.pki.infrastructure.metrics.MetricsRegistry;
 import org.eclipse.jetty.security.DefaultUserIdentity;
 import org.eclipse.jetty.security.UserAuthentication;
 import org.eclipse.jetty.server.Authentication;
@@ -85,7 +86,16 @@ public class OpenIdAuthenticationFilter implements Filter {
     }
 
     private JsonObject getDiscoveryDocument() throws IOException {
-        return JsonObject.read(new URL(discoveryUrl));
+        long start = System.nanoTime();
+        try {
+            return JsonObject.read(new URL(discoveryUrl));
+        } finally {
+            recordOutboundCall("discovery", start);
+        }
+    }
+
+    private void recordOutboundCall(String endpoint, long start) {
+        MetricsRegistry.getDefault().timer("openid_request_seconds", "Time of calls to the OpenID provider", "endpoint", endpoint).recordSince(start);
     }
 
     private String getClientId() {
@@ -132,11 +142,16 @@ public class OpenIdAuthenticationFilter implements Filter {
 
 
         HttpURLConnection connection = (HttpURLConnection) new URL(getDiscoveryDocument().requiredString("token_endpoint")).openConnection();
-        connection.setRequestMethod("POST");
-        connection.setDoOutput(true);
-        connection.getOutputStream().write(toHttpQuery(payload).getBytes());
-
-        JsonObject tokenResponse = JsonObject.read(connection);
+        long start = System.nanoTime();
+        JsonObject tokenResponse;
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.getOutputStream().write(toHttpQuery(payload).getBytes());
+            tokenResponse = JsonObject.read(connection);
+        } finally {
+            recordOutboundCall("token", start);
+        }
 
         Cookie tokenCookie = new Cookie("access_token", tokenResponse.requiredString("access_token"));
         tokenCookie.setMaxAge((int) tokenResponse.requiredLong("expires_in"));
@@ -163,7 +178,12 @@ public class OpenIdAuthenticationFilter implements Filter {
             HttpURLConnection connection = (HttpURLConnection) new URL(discoveryDocument.requiredString("userinfo_endpoint")).openConnection();
             connection.setRequestProperty("Authorization", "Bearer " + accessToken);
 
-            return Optional.ofNullable(JsonObject.read(connection));
+            long start = System.nanoTime();
+            try {
+                return Optional.ofNullable(JsonObject.read(connection));
+            } finally {
+                recordOutboundCall("userinfo", start);
+            }
         } catch (JsonHttpException | IOException e) {
             logger.info("Could not fetch userinfo for access token", e);
             return Optional.empty();
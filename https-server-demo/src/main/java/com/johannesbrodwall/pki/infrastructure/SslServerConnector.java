@@ -1,7 +1,15 @@
 package com.johannesbrodwall.pki.infrastructure;
 
+import com.johannesbrodwall.pki.infrastructure.metrics.MetricsRegistry;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
 import org.eclipse.jetty.server.AbstractConnectionFactory;
 import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
@@ -10,34 +18,123 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
 import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * An HTTPS connector which negotiates HTTP/2 with ALPN, falling back to HTTP/1.1 for clients
+ * which don't offer h2, unless HTTP/2 is disabled in the {@link Http2Settings}.
+ */
 public class SslServerConnector extends ServerConnector {
 
     private static final Logger logger = LoggerFactory.getLogger(SslServerConnector.class);
 
     public SslServerConnector(Server server) {
+        this(server, MetricsRegistry.getDefault());
+    }
+
+    public SslServerConnector(Server server, MetricsRegistry metrics) {
         super(server);
+        addBean(new HandshakeMetrics(metrics));
     }
 
     public void start(InetSocketAddress address, SSLContext sslContext, boolean wantClientAuth, boolean needClientAuth) throws Exception {
+        start(address, sslContext, wantClientAuth, needClientAuth, Http2Settings.DEFAULT);
+    }
+
+    public void start(InetSocketAddress address, SSLContext sslContext, boolean wantClientAuth, boolean needClientAuth, Http2Settings http2Settings) throws Exception {
         setPort(address.getPort());
         setHost(address.getHostName());
         setDefaultProtocol(null);
-        setConnectionFactories(createConnectionFactories(sslContext, wantClientAuth, needClientAuth));
+        setConnectionFactories(createConnectionFactories(sslContext, wantClientAuth, needClientAuth, http2Settings));
         start();
 
-        logger.info("Started https://{}:{}", address.getHostName(), address.getPort());
+        logger.info("Started https://{}:{} with {}", address.getHostName(), address.getPort(), getProtocols());
     }
 
-    private Collection<ConnectionFactory> createConnectionFactories(SSLContext sslContext, boolean wantClientAuth, boolean needClientAuth) {
+    private Collection<ConnectionFactory> createConnectionFactories(SSLContext sslContext, boolean wantClientAuth, boolean needClientAuth, Http2Settings http2Settings) {
         SslContextFactory.Server sslConnectionFactory = new SslContextFactory.Server();
         sslConnectionFactory.setSslContext(sslContext);
         sslConnectionFactory.setWantClientAuth(wantClientAuth);
         sslConnectionFactory.setNeedClientAuth(needClientAuth);
-        return List.of(AbstractConnectionFactory.getFactories(sslConnectionFactory, new HttpConnectionFactory()));
+        HttpConfiguration httpConfiguration = new HttpConfiguration();
+        HttpConnectionFactory http11 = new HttpConnectionFactory(httpConfiguration);
+        if (!http2Settings.isEnabled()) {
+            return List.of(AbstractConnectionFactory.getFactories(sslConnectionFactory, http11));
+        }
+
+        // HTTP/2 forbids the weaker TLS 1.2 ciphers, so they must be negotiated last
+        sslConnectionFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+        sslConnectionFactory.setUseCipherSuitesOrder(true);
+
+        HTTP2ServerConnectionFactory http2 = new HTTP2ServerConnectionFactory(httpConfiguration);
+        http2.setMaxConcurrentStreams(http2Settings.getMaxConcurrentStreams());
+        http2.setInitialStreamRecvWindow(http2Settings.getInitialStreamRecvWindow());
+        http2.setInitialSessionRecvWindow(http2Settings.getInitialSessionRecvWindow());
+
+        ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory(http2.getProtocol(), http11.getProtocol());
+        alpn.setDefaultProtocol(http11.getProtocol());
+        return List.of(AbstractConnectionFactory.getFactories(sslConnectionFactory, alpn, http2, http11));
     }
 
+    /**
+     * Times handshakes from when the connection opens. A session created before the connection
+     * opened must have been resumed.
+     */
+    private static class HandshakeMetrics implements SslHandshakeListener, Connection.Listener {
+        private final MetricsRegistry metrics;
+        private final Map<SSLEngine, Long> openedAt = new ConcurrentHashMap<>();
+
+        private HandshakeMetrics(MetricsRegistry metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void onOpened(Connection connection) {
+            if (connection instanceof SslConnection) {
+                openedAt.put(((SslConnection) connection).getSSLEngine(), System.nanoTime());
+            }
+        }
+
+        @Override
+        public void onClosed(Connection connection) {
+            if (connection instanceof SslConnection) {
+                openedAt.remove(((SslConnection) connection).getSSLEngine());
+            }
+        }
+
+        @Override
+        public void handshakeSucceeded(Event event) {
+            SSLEngine engine = event.getSSLEngine();
+            Long start = openedAt.remove(engine);
+            SSLSession session = engine.getSession();
+            boolean resumed = start != null && session.getCreationTime() < System.currentTimeMillis() - (System.nanoTime() - start) / 1_000_000;
+            if (start != null) {
+                metrics.timer("https_handshake_seconds", "TLS handshake time from connection open", "resumed", String.valueOf(resumed)).recordSince(start);
+            }
+            metrics.counter("https_handshakes_total", "Successful TLS handshakes",
+                    "protocol", session.getProtocol(), "resumed", String.valueOf(resumed), "client_auth", clientAuth(session)
+            ).increment();
+        }
+
+        private static String clientAuth(SSLSession session) {
+            try {
+                return session.getPeerCertificates().length > 0 ? "certificate" : "none";
+            } catch (SSLPeerUnverifiedException e) {
+                return "none";
+            }
+        }
+
+        @Override
+        public void handshakeFailed(Event event, Throwable failure) {
+            openedAt.remove(event.getSSLEngine());
+            metrics.counter("https_handshake_failures_total", "Failed TLS handshakes", "exception", failure.getClass().getSimpleName()).increment();
+        }
+    }
 }
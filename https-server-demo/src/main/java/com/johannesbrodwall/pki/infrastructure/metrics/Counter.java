@@ -0,0 +1,21 @@
+package com.johannesbrodwall.pki.infrastructure.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Counter implements MetricsRegistry.Metric {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public void writePrometheus(Appendable out, String name, String labels) throws IOException {
+        MetricsRegistry.writeSample(out, name, labels, Long.toString(count.sum()));
+    }
+}
@@ -0,0 +1,26 @@
+package com.johannesbrodwall.pki.infrastructure.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A value which goes up and down, like the number of open connections */
+public class Gauge implements MetricsRegistry.Metric {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void decrement() {
+        value.decrement();
+    }
+
+    public long getValue() {
+        return value.sum();
+    }
+
+    @Override
+    public void writePrometheus(Appendable out, String name, String labels) throws IOException {
+        MetricsRegistry.writeSample(out, name, labels, Long.toString(value.sum()));
+    }
+}
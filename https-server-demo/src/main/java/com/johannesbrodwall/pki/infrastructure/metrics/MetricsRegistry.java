@@ -0,0 +1,140 @@
+package com.johannesbrodwall.pki.infrastructure.metrics;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * Counters, gauges and timers, named and labelled like Prometheus metrics. Looking up a metric
+ * is a map lookup, so code can ask for it every time with the labels at hand. Components use
+ * {@link #getDefault()}, which the /metrics endpoint serves.
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry defaultRegistry = new MetricsRegistry();
+
+    private final Map<String, Family<?>> families = new ConcurrentSkipListMap<>();
+
+    public static MetricsRegistry getDefault() {
+        return defaultRegistry;
+    }
+
+    /** Labels are given as name/value pairs, e.g. <code>counter("x_total", "help", "kind", "server")</code> */
+    public Counter counter(String name, String help, String... labels) {
+        return family(name, help, "counter", n -> new Counter()).get(labels);
+    }
+
+    public Gauge gauge(String name, String help, String... labels) {
+        return family(name, help, "gauge", n -> new Gauge()).get(labels);
+    }
+
+    public Timer timer(String name, String help, String... labels) {
+        return family(name, help, "histogram", n -> new Timer()).get(labels);
+    }
+
+    private <T extends Metric> Family<T> family(String name, String help, String type, Function<String, T> factory) {
+        //noinspection unchecked
+        Family<T> family = (Family<T>) families.computeIfAbsent(name, n -> new Family<>(name, help, type, factory));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    /** Writes all metrics in the <a href="https://prometheus.io/docs/instrumenting/exposition_formats/">Prometheus text format</a> */
+    public void writePrometheus(Appendable out) throws IOException {
+        for (Family<?> family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, ? extends Metric> entry : family.metrics.entrySet()) {
+                entry.getValue().writePrometheus(out, family.name, entry.getKey());
+            }
+        }
+    }
+
+    public String toPrometheus() {
+        StringBuilder result = new StringBuilder();
+        try {
+            writePrometheus(result);
+        } catch (IOException cannotHappen) {
+            throw new RuntimeException(cannotHappen);
+        }
+        return result.toString();
+    }
+
+    interface Metric {
+        /** <code>labels</code> is the formatted label list without braces, possibly empty */
+        void writePrometheus(Appendable out, String name, String labels) throws IOException;
+    }
+
+    private static class Family<T extends Metric> {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final Function<String, T> factory;
+        private final Map<String, T> metrics = new ConcurrentSkipListMap<>();
+        private final Map<LabelKey, T> byLabels = new ConcurrentHashMap<>();
+
+        private Family(String name, String help, String type, Function<String, T> factory) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.factory = factory;
+        }
+
+        private T get(String[] labels) {
+            T metric = byLabels.get(new LabelKey(labels));
+            if (metric == null) {
+                if (labels.length % 2 != 0) {
+                    throw new IllegalArgumentException("Labels must be name/value pairs for " + name);
+                }
+                String formatted = formatLabels(labels);
+                metric = metrics.computeIfAbsent(formatted, factory);
+                byLabels.putIfAbsent(new LabelKey(labels.clone()), metric);
+            }
+            return metric;
+        }
+
+        private static String formatLabels(String[] labels) {
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) result.append(',');
+                result.append(labels[i]).append("=\"")
+                        .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                        .append('"');
+            }
+            return result.toString();
+        }
+    }
+
+    private static class LabelKey {
+        private final String[] labels;
+        private final int hashCode;
+
+        private LabelKey(String[] labels) {
+            this.labels = labels;
+            this.hashCode = Arrays.hashCode(labels);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof LabelKey && Arrays.equals(labels, ((LabelKey) o).labels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    static void writeSample(Appendable out, String name, String labels, String value) throws IOException {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+}
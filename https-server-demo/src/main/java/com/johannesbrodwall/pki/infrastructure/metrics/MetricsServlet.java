@@ -0,0 +1,21 @@
+package com.johannesbrodwall.pki.infrastructure.metrics;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/** Serves the metrics for Prometheus to scrape */
+public class MetricsServlet extends HttpServlet {
+    private final MetricsRegistry registry;
+
+    public MetricsServlet(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        registry.writePrometheus(resp.getWriter());
+    }
+}
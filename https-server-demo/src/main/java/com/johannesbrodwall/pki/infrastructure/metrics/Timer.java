@@ -0,0 +1,64 @@
+package com.johannesbrodwall.pki.infrastructure.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations, exposed in seconds. The buckets span from half a millisecond, for
+ * signing with an EC key, to ten seconds, for a slow identity provider.
+ */
+public class Timer implements MetricsRegistry.Metric {
+    private static final double[] BUCKETS = { 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+    private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+    static {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKETS[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    private final LongAdder[] bucketCounts = new LongAdder[BUCKETS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    Timer() {
+        for (int i = 0; i < bucketCounts.length; i++) {
+            bucketCounts[i] = new LongAdder();
+        }
+    }
+
+    /** Records the time since <code>startNanos</code>, which was read from {@link System#nanoTime()} */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_NANOS.length && nanos > BUCKET_NANOS[bucket]) {
+            bucket++;
+        }
+        bucketCounts[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucketCount : bucketCounts) {
+            count += bucketCount.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public void writePrometheus(Appendable out, String name, String labels) throws IOException {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            cumulative += bucketCounts[i].sum();
+            MetricsRegistry.writeSample(out, name + "_bucket", prefix + "le=\"" + BUCKETS[i] + "\"", Long.toString(cumulative));
+        }
+        cumulative += bucketCounts[BUCKETS.length].sum();
+        MetricsRegistry.writeSample(out, name + "_bucket", prefix + "le=\"+Inf\"", Long.toString(cumulative));
+        MetricsRegistry.writeSample(out, name + "_sum", labels, Double.toString(sumNanos.sum() / 1e9));
+        MetricsRegistry.writeSample(out, name + "_count", labels, Long.toString(cumulative));
+    }
+}
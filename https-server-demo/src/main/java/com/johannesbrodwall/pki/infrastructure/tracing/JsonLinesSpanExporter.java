@@ -0,0 +1,76 @@
+package com.johannesbrodwall.pki.infrastructure.tracing;
+
+import org.jsonbuddy.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Appends each span as a line of JSON to a file, for reading with jq or loading into a trace viewer */
+public class JsonLinesSpanExporter implements SpanExporter, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(JsonLinesSpanExporter.class);
+
+    private final BufferedWriter writer;
+    private boolean closed;
+
+    public JsonLinesSpanExporter(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        writer = Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        logger.info("Writing spans to {}", file);
+    }
+
+    public static String toJson(Span span) {
+        JsonObject tags = new JsonObject();
+        span.getTags().forEach(tags::put);
+        JsonObject json = new JsonObject()
+                .put("traceId", span.getTraceId())
+                .put("spanId", span.getSpanId());
+        if (span.getParentId() != null) {
+            json.put("parentId", span.getParentId());
+        }
+        return json
+                .put("name", span.getName())
+                .put("start", span.getStartTime().toString())
+                .put("durationMicros", span.getDurationMicros())
+                .put("thread", span.getThreadName())
+                .put("tags", tags)
+                .toJson();
+    }
+
+    @Override
+    public void export(Span span) {
+        String line = toJson(span);
+        try {
+            synchronized (writer) {
+                if (closed) {
+                    logger.debug("Dropping span {} ended after the exporter was replaced", span);
+                    return;
+                }
+                writer.write(line);
+                writer.write('\n');
+                writer.flush();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write span {}", span, e);
+        }
+    }
+
+    /**
+     * Waits for spans which are being written and closes the file. Replace the exporter in the
+     * {@link Tracer} first, so only spans which already got hold of this exporter can still reach it.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (writer) {
+            closed = true;
+            writer.close();
+        }
+    }
+}
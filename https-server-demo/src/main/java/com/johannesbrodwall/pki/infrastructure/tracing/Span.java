@@ -0,0 +1,179 @@
+package com.johannesbrodwall.pki.infrastructure.tracing;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A timed step in a trace. Spans from {@link Tracer#startSpan} are current on their thread until
+ * closed. Work continuing on another thread can use {@link #startChild} or {@link #wrap}.
+ */
+public class Span implements AutoCloseable {
+
+    private final Tracer tracer;
+    private final boolean sampled;
+    private final boolean unsampledRoot;
+    private final String name;
+    private final long traceId;
+    private final long spanId;
+    private final long parentId;
+    private final Instant startTime;
+    private final long startNanos;
+    private final String threadName;
+    private Map<String, String> tags;
+    private volatile long durationNanos = -1;
+    Span previous;
+
+    Span(Tracer tracer, String name, Span parent) {
+        this.tracer = tracer;
+        this.sampled = true;
+        this.unsampledRoot = false;
+        this.name = name;
+        this.spanId = ThreadLocalRandom.current().nextLong();
+        this.traceId = parent != null ? parent.traceId : ThreadLocalRandom.current().nextLong();
+        this.parentId = parent != null ? parent.spanId : 0;
+        this.startTime = Instant.now();
+        this.startNanos = System.nanoTime();
+        this.threadName = Thread.currentThread().getName();
+    }
+
+    /** A span for traces which are not sampled */
+    Span(Tracer tracer, boolean unsampledRoot) {
+        this.tracer = tracer;
+        this.sampled = false;
+        this.unsampledRoot = unsampledRoot;
+        this.name = null;
+        this.traceId = 0;
+        this.spanId = 0;
+        this.parentId = 0;
+        this.startTime = null;
+        this.startNanos = 0;
+        this.threadName = null;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public Span tag(String key, String value) {
+        if (sampled) {
+            synchronized (this) {
+                if (tags == null) {
+                    tags = new LinkedHashMap<>();
+                }
+                tags.put(key, value);
+            }
+        }
+        return this;
+    }
+
+    /** Starts a child which is not current on any thread, for work which completes elsewhere. End it with {@link #end()} */
+    public Span startChild(String name) {
+        return sampled ? new Span(tracer, name, this) : tracer.noop();
+    }
+
+    /** Runs <code>task</code> with this span as the current span on whatever thread runs it */
+    public Runnable wrap(Runnable task) {
+        if (!sampled) {
+            return task;
+        }
+        return () -> {
+            Span previous = tracer.swap(this);
+            try {
+                task.run();
+            } finally {
+                tracer.swap(previous);
+            }
+        };
+    }
+
+    public Executor wrap(Executor executor) {
+        if (!sampled) {
+            return executor;
+        }
+        return task -> executor.execute(wrap(task));
+    }
+
+    /**
+     * Stops being the current span on this thread and ends when <code>future</code> completes,
+     * on whichever thread completes it
+     */
+    public <T> CompletableFuture<T> endWhenComplete(CompletableFuture<T> future) {
+        if (!sampled) {
+            close();
+            return future;
+        }
+        tracer.detach(this);
+        return future.whenComplete((result, e) -> {
+            if (e != null) {
+                tag("error", e.toString());
+            }
+            end();
+        });
+    }
+
+    /** Ends the span without changing the current span of any thread. Only the first call counts. */
+    public void end() {
+        if (sampled && durationNanos < 0) {
+            durationNanos = System.nanoTime() - startNanos;
+            tracer.export(this);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (sampled) {
+            end();
+            tracer.detach(this);
+        } else if (unsampledRoot) {
+            tracer.detach(this);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTraceId() {
+        return toHex(traceId);
+    }
+
+    public String getSpanId() {
+        return toHex(spanId);
+    }
+
+    /** The id of the parent span, or null for the root of the trace */
+    public String getParentId() {
+        return parentId != 0 ? toHex(parentId) : null;
+    }
+
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    public long getDurationMicros() {
+        return durationNanos / 1000;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public synchronized Map<String, String> getTags() {
+        return tags != null ? new LinkedHashMap<>(tags) : Collections.emptyMap();
+    }
+
+    private static String toHex(long id) {
+        String hex = Long.toHexString(id);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    @Override
+    public String toString() {
+        return sampled ? "Span{" + name + " " + getTraceId() + "/" + getSpanId() + "}" : "Span{unsampled}";
+    }
+}
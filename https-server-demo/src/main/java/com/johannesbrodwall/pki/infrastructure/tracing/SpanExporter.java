@@ -0,0 +1,6 @@
+package com.johannesbrodwall.pki.infrastructure.tracing;
+
+public interface SpanExporter {
+    /** Called on the thread which ended the span */
+    void export(Span span);
+}
@@ -0,0 +1,91 @@
+package com.johannesbrodwall.pki.infrastructure.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts spans as children of the current span on this thread, or as new traces when there is
+ * none. Traces which are not sampled get shared no-op spans, so tracing allocates nothing when
+ * the sample rate is 0. Use spans with try-with-resources:
+ *
+ * <pre>
+ * try (Span span = Tracer.getDefault().startSpan("parsePkcs10")) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class Tracer {
+
+    private static final Tracer defaultTracer = new Tracer();
+
+    private final ThreadLocal<Span> currentSpan = new ThreadLocal<>();
+    private final Span noop = new Span(this, false);
+    private final Span unsampledRoot = new Span(this, true);
+    private volatile double sampleRate = 0;
+    private volatile SpanExporter exporter = span -> {};
+
+    public static Tracer getDefault() {
+        return defaultTracer;
+    }
+
+    /** The fraction of traces to record, from 0 (none) to 1 (all) */
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public void setExporter(SpanExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    /** Starts a span which is current on this thread until it is closed */
+    public Span startSpan(String name) {
+        Span parent = currentSpan.get();
+        if (parent == null) {
+            if (!isSampled()) {
+                currentSpan.set(unsampledRoot);
+                return unsampledRoot;
+            }
+            return attach(new Span(this, name, null));
+        } else if (!parent.isSampled()) {
+            return noop;
+        }
+        return attach(new Span(this, name, parent));
+    }
+
+    /** The span which is current on this thread, or a no-op span */
+    public Span currentSpan() {
+        Span span = currentSpan.get();
+        return span != null ? span : noop;
+    }
+
+    Span noop() {
+        return noop;
+    }
+
+    private boolean isSampled() {
+        double sampleRate = this.sampleRate;
+        return sampleRate > 0 && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    Span attach(Span span) {
+        span.previous = currentSpan.get();
+        currentSpan.set(span);
+        return span;
+    }
+
+    /** Leaves the entry for this thread in place, as removing and recreating it would allocate */
+    void detach(Span span) {
+        if (currentSpan.get() == span) {
+            currentSpan.set(span.previous);
+        }
+    }
+
+    Span swap(Span span) {
+        Span previous = currentSpan.get();
+        currentSpan.set(span);
+        return previous;
+    }
+
+    void export(Span span) {
+        exporter.export(span);
+    }
+}
@@ -1,5 +1,8 @@
 package com.johannesbrodwall.pki.sockets;
 
+import com.johannesbrodwall.pki.infrastructure.metrics.Counter;
+import com.johannesbrodwall.pki.infrastructure.metrics.Gauge;
+import com.johannesbrodwall.pki.infrastructure.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,6 +20,8 @@ public class SocketServer {
     private final SSLContext sslContext;
     private int port = 0;
     private SSLServerSocket serverSocket;
+    private final Counter connections = MetricsRegistry.getDefault().counter("socket_connections_total", "Connections accepted by SocketServer");
+    private final Gauge activeConnections = MetricsRegistry.getDefault().gauge("socket_connections_active", "Connections currently handled by SocketServer");
 
     public SocketServer(SSLContext sslContext) {
         this.sslContext = sslContext;
@@ -37,7 +42,13 @@ public class SocketServer {
             logger.info("Waiting for connections: {}", serverSocket.getLocalSocketAddress());
             try (Socket clientSocket = serverSocket.accept()) {
                 logger.info("Connected: {}", clientSocket);
-                handleClient(clientSocket);
+                connections.increment();
+                activeConnections.increment();
+                try {
+                    handleClient(clientSocket);
+                } finally {
+                    activeConnections.decrement();
+                }
             } catch (IOException e) {
                 logger.error("Failed to handle socket", e);
             }
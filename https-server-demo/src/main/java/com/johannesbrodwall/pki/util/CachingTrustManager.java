@@ -0,0 +1,245 @@
+package com.johannesbrodwall.pki.util;
+
+import io.liquidpki.common.Extension;
+import io.liquidpki.path.CertificatePathException;
+import io.liquidpki.path.CertificatePathValidator;
+import io.liquidpki.x509.SignedCertificate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * A trust manager which validates certificate chains with liquidpki's {@link CertificatePathValidator}
+ * and remembers each validated chain by the SHA-256 fingerprint of its end entity certificate.
+ * When a client returns, the handshake only costs a fingerprint, a hash lookup and the
+ * {@link RevocationChecker} until the entry expires after the configured time to live, the
+ * certificate expires or the certificate or one of its issuers is revoked. The revocation check
+ * runs on every handshake, so a certificate revoked through the checker is rejected at once.
+ *
+ * <p>Validation includes what the PKIX trust manager would check for the handshake: a certificate
+ * with a critical extension the validator doesn't process is rejected, and the end entity's
+ * KeyUsage and ExtendedKeyUsage must allow clientAuth in {@link #checkClientTrusted} and serverAuth
+ * in {@link #checkServerTrusted}. A chain is cached for the purpose it was validated for.</p>
+ *
+ * <p>At most <code>maxEntries</code> chains are kept. The least recently used chain is dropped
+ * to make room, along with the oldest chain if it has expired.</p>
+ *
+ * <p>This trust manager does not perform endpoint identification (hostname verification)
+ * and is intended for servers validating client certificates.</p>
+ */
+public class CachingTrustManager extends X509ExtendedTrustManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingTrustManager.class);
+
+    @FunctionalInterface
+    public interface RevocationChecker {
+        boolean isRevoked(SignedCertificate certificate);
+    }
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private static class ValidatedChain {
+        private final String keyPurpose;
+        private final Instant expiresAt;
+        private final List<SignedCertificate> path;
+        /** The fingerprint of each certificate in the path, in the same order */
+        private final List<ByteBuffer> fingerprints;
+
+        private ValidatedChain(String keyPurpose, Instant expiresAt, List<SignedCertificate> path, List<ByteBuffer> fingerprints) {
+            this.keyPurpose = keyPurpose;
+            this.expiresAt = expiresAt;
+            this.path = path;
+            this.fingerprints = fingerprints;
+        }
+    }
+
+    private final X509Certificate[] acceptedIssuers;
+    private final CertificatePathValidator validator;
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final Map<ByteBuffer, ValidatedChain> validatedChains;
+    private final Set<ByteBuffer> revoked = ConcurrentHashMap.newKeySet();
+    private final LongAdder validations = new LongAdder();
+    private volatile RevocationChecker revocationChecker = certificate -> false;
+
+    public CachingTrustManager(List<X509Certificate> trustedCertificates, Duration timeToLive, Clock clock, int maxEntries) throws CertificateEncodingException {
+        this.acceptedIssuers = trustedCertificates.toArray(new X509Certificate[0]);
+        List<SignedCertificate> trustAnchors = new ArrayList<>();
+        for (X509Certificate certificate : trustedCertificates) {
+            trustAnchors.add(new SignedCertificate(certificate.getEncoded()));
+        }
+        this.validator = new CertificatePathValidator(trustAnchors);
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.validatedChains = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, ValidatedChain> eldest) {
+                return size() > maxEntries || !clock.instant().isBefore(eldest.getValue().expiresAt);
+            }
+        };
+    }
+
+    public CachingTrustManager(List<X509Certificate> trustedCertificates, Duration timeToLive, Clock clock) throws CertificateEncodingException {
+        this(trustedCertificates, timeToLive, clock, DEFAULT_MAX_ENTRIES);
+    }
+
+    public CachingTrustManager(List<X509Certificate> trustedCertificates, Duration timeToLive) throws CertificateEncodingException {
+        this(trustedCertificates, timeToLive, Clock.systemUTC());
+    }
+
+    /** Consulted for every certificate in the path on every handshake, including cached chains, so it must be fast */
+    public void setRevocationChecker(RevocationChecker revocationChecker) {
+        this.revocationChecker = revocationChecker;
+    }
+
+    /**
+     * Rejects the certificate from now on, and forgets every cached chain which contains it
+     */
+    public void revoke(X509Certificate certificate) throws CertificateEncodingException {
+        ByteBuffer fingerprint = fingerprint(certificate.getEncoded());
+        revoked.add(fingerprint);
+        synchronized (validatedChains) {
+            validatedChains.values().removeIf(chain -> chain.fingerprints.contains(fingerprint));
+        }
+    }
+
+    public void clear() {
+        synchronized (validatedChains) {
+            validatedChains.clear();
+        }
+    }
+
+    public int getCachedChainCount() {
+        synchronized (validatedChains) {
+            return validatedChains.size();
+        }
+    }
+
+    /** How many chains have been validated in full rather than found in the cache */
+    public long getValidationCount() {
+        return validations.sum();
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        checkTrusted(chain, Extension.ExtendedKeyUsageExtensionType.CLIENT_AUTH);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        checkTrusted(chain, Extension.ExtendedKeyUsageExtensionType.SERVER_AUTH);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+        checkTrusted(chain, Extension.ExtendedKeyUsageExtensionType.CLIENT_AUTH);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+        checkTrusted(chain, Extension.ExtendedKeyUsageExtensionType.SERVER_AUTH);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+        checkTrusted(chain, Extension.ExtendedKeyUsageExtensionType.CLIENT_AUTH);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+        checkTrusted(chain, Extension.ExtendedKeyUsageExtensionType.SERVER_AUTH);
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return acceptedIssuers.clone();
+    }
+
+    private void checkTrusted(X509Certificate[] chain, String keyPurpose) throws CertificateException {
+        if (chain == null || chain.length == 0) {
+            throw new CertificateException("Empty certificate chain");
+        }
+        ByteBuffer leafFingerprint = fingerprint(chain[0].getEncoded());
+        Instant now = clock.instant();
+        ValidatedChain cached;
+        synchronized (validatedChains) {
+            cached = validatedChains.get(leafFingerprint);
+            if (cached != null && !now.isBefore(cached.expiresAt)) {
+                validatedChains.remove(leafFingerprint);
+                cached = null;
+            } else if (cached != null && !cached.keyPurpose.equals(keyPurpose)) {
+                cached = null;
+            }
+        }
+        if (cached != null) {
+            try {
+                checkRevocation(cached.path, cached.fingerprints);
+            } catch (CertificateException e) {
+                synchronized (validatedChains) {
+                    validatedChains.remove(leafFingerprint, cached);
+                }
+                throw e;
+            }
+            return;
+        }
+
+        validations.increment();
+        List<SignedCertificate> certificates = new ArrayList<>();
+        for (X509Certificate certificate : chain) {
+            certificates.add(new SignedCertificate(certificate.getEncoded()));
+        }
+        List<SignedCertificate> path;
+        try {
+            path = validator.validate(certificates, ZonedDateTime.ofInstant(now, clock.getZone()), keyPurpose).getCertificates();
+        } catch (CertificatePathException e) {
+            logger.debug("Rejected certificate chain", e);
+            throw new CertificateException(e.getMessage(), e);
+        }
+        List<ByteBuffer> fingerprints = path.stream().map(c -> fingerprint(c.getEncoded())).collect(Collectors.toList());
+        checkRevocation(path, fingerprints);
+
+        Instant expiresAt = now.plus(timeToLive);
+        Instant notAfter = chain[0].getNotAfter().toInstant();
+        synchronized (validatedChains) {
+            validatedChains.put(leafFingerprint, new ValidatedChain(keyPurpose, notAfter.isBefore(expiresAt) ? notAfter : expiresAt, path, fingerprints));
+        }
+    }
+
+    private void checkRevocation(List<SignedCertificate> path, List<ByteBuffer> fingerprints) throws CertificateException {
+        for (int i = 0; i < path.size(); i++) {
+            SignedCertificate certificate = path.get(i);
+            if (revoked.contains(fingerprints.get(i)) || revocationChecker.isRevoked(certificate)) {
+                throw new CertificateException("Revoked certificate " + certificate.tbsCertificate().subject().print());
+            }
+        }
+    }
+
+    private static ByteBuffer fingerprint(byte[] encoded) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(encoded));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required in every JRE", e);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.johannesbrodwall.pki.util;
+
+import com.johannesbrodwall.pki.infrastructure.metrics.MetricsRegistry;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Parsed keys, certificates and {@link SSLContext}s keyed by the path and SHA-256 of the files they
+ * were read from, so a configuration reload where the files haven't changed returns the same objects
+ * and callers can see that nothing needs to be restarted. A file is only read and hashed again when
+ * its size or modification time changes, so touching a file costs a digest but not a parse.
+ *
+ * <p>Passwords are not part of the key. They are kept with the cached value, and a lookup with
+ * other passwords loads the value again. Values are loaded outside the lock, so a slow key store
+ * only holds up lookups of the same entry.</p>
+ */
+public class SslContextCache {
+
+    private static final SslContextCache defaultCache = new SslContextCache(64);
+
+    public static SslContextCache getDefault() {
+        return defaultCache;
+    }
+
+    @FunctionalInterface
+    private interface Loader<T> {
+        T load() throws GeneralSecurityException, IOException;
+    }
+
+    private static class FileStamp {
+        private final FileTime lastModified;
+        private final long size;
+        private final String digest;
+
+        private FileStamp(FileTime lastModified, long size, String digest) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.digest = digest;
+        }
+    }
+
+    /** A loaded value and the passwords it was loaded with */
+    private static class Cached {
+        private final Object value;
+        private final byte[] passwords;
+
+        private Cached(Object value, byte[] passwords) {
+            this.value = value;
+            this.passwords = passwords;
+        }
+    }
+
+    private static final char[][] NO_PASSWORDS = new char[0][];
+
+    private final Map<Path, FileStamp> stamps = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Cached>> entries;
+
+    /** Remembers the <code>maxEntries</code> most recently used keys, certificates and contexts */
+    public SslContextCache(int maxEntries) {
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Cached>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public PrivateKey readPrivateKey(Path keyFile) throws GeneralSecurityException, IOException {
+        return get("key:" + fileKey(keyFile), NO_PASSWORDS, () -> SslUtil.readPrivateKey(keyFile));
+    }
+
+    public X509Certificate readCertificate(Path certificateFile) throws GeneralSecurityException, IOException {
+        return get("certificate:" + fileKey(certificateFile), NO_PASSWORDS, () -> SslUtil.readCertificate(certificateFile));
+    }
+
+    public List<X509Certificate> readCertificates(List<Path> certificateFiles) throws GeneralSecurityException, IOException {
+        List<X509Certificate> certificates = new ArrayList<>();
+        for (Path certificateFile : certificateFiles) {
+            certificates.add(readCertificate(certificateFile));
+        }
+        return certificates;
+    }
+
+    /**
+     * The context from {@link SslUtil#createSslContext(javax.net.ssl.KeyManager[], javax.net.ssl.TrustManager[])}
+     * with a PEM key and certificate and caching trust managers, as used by the demo server
+     */
+    public SSLContext getSslContext(Path keyFile, Path certificateFile, char[] password, List<Path> trustedCertificates) throws GeneralSecurityException, IOException {
+        String key = "sslContext:" + fileKey(keyFile) + ":" + fileKey(certificateFile) + ":" + fileKeys(trustedCertificates);
+        return get(key, new char[][] { password }, () -> SslUtil.createSslContext(
+                SslUtil.createKeyManagers(SslUtil.createKeyStore(readPrivateKey(keyFile), null, readCertificate(certificateFile)), password),
+                SslUtil.createCachingTrustManagers(readCertificates(trustedCertificates))
+        ));
+    }
+
+    /** The context from {@link SslUtil#createSslContext(java.security.KeyStore, char[], List)} with a PKCS#12 key store */
+    public SSLContext getSslContext(Path keyStoreFile, String keyStorePassword, String keyPassword, List<Path> trustedCertificates) throws GeneralSecurityException, IOException {
+        String key = "keyStoreSslContext:" + (keyStoreFile != null ? fileKey(keyStoreFile) : "none") + ":" + fileKeys(trustedCertificates);
+        return get(key, new char[][] { keyStorePassword.toCharArray(), keyPassword.toCharArray() }, () -> SslUtil.createSslContext(
+                SslUtil.loadKeyStore(keyStoreFile, keyStorePassword),
+                keyPassword.toCharArray(),
+                readCertificates(trustedCertificates)
+        ));
+    }
+
+    private <T> T get(String key, char[][] passwords, Loader<T> loader) throws GeneralSecurityException, IOException {
+        byte[] encodedPasswords = encode(passwords);
+        String kind = key.substring(0, key.indexOf(':'));
+        while (true) {
+            CompletableFuture<Cached> future;
+            boolean load = false;
+            synchronized (entries) {
+                future = entries.get(key);
+                if (future == null) {
+                    future = new CompletableFuture<>();
+                    entries.put(key, future);
+                    load = true;
+                }
+            }
+            MetricsRegistry.getDefault().counter("ssl_cache_lookups_total", "Lookups of parsed key material by file content", "kind", kind, "result", load ? "miss" : "hit").increment();
+            if (load) {
+                try {
+                    future.complete(new Cached(loader.load(), encodedPasswords));
+                } catch (Throwable e) {
+                    synchronized (entries) {
+                        entries.remove(key, future);
+                    }
+                    future.completeExceptionally(e);
+                    throw ExceptionUtil.softenException(e);
+                }
+            }
+            Cached cached = await(future);
+            if (MessageDigest.isEqual(cached.passwords, encodedPasswords)) {
+                @SuppressWarnings("unchecked")
+                T value = (T) cached.value;
+                return value;
+            }
+            // Loaded with other passwords: load again with ours, unless someone else already has
+            synchronized (entries) {
+                entries.remove(key, future);
+            }
+        }
+    }
+
+    private static Cached await(CompletableFuture<Cached> future) throws GeneralSecurityException, IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw ExceptionUtil.softenException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for key material");
+        }
+    }
+
+    private String fileKeys(List<Path> files) throws IOException {
+        StringBuilder result = new StringBuilder();
+        for (Path file : files) {
+            result.append(fileKey(file)).append(',');
+        }
+        return result.toString();
+    }
+
+    private String fileKey(Path file) throws IOException {
+        return file.toAbsolutePath().normalize() + "@" + digest(file);
+    }
+
+    /** The SHA-256 of the file, which is only read again when its size or modification time has changed */
+    String digest(Path file) throws IOException {
+        Path path = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        FileStamp stamp = stamps.get(path);
+        if (stamp == null || !stamp.lastModified.equals(attributes.lastModifiedTime()) || stamp.size != attributes.size()) {
+            stamp = new FileStamp(attributes.lastModifiedTime(), attributes.size(), hex(sha256(Files.readAllBytes(path))));
+            stamps.put(path, stamp);
+        }
+        return stamp.digest;
+    }
+
+    private static byte[] encode(char[][] passwords) {
+        StringBuilder result = new StringBuilder();
+        for (char[] password : passwords) {
+            if (password == null) {
+                result.append('-');
+            } else {
+                result.append(password.length).append(':').append(password);
+            }
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required in every JRE", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+}
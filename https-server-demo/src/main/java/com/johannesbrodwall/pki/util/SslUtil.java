@@ -1,5 +1,12 @@
 package com.johannesbrodwall.pki.util;
 
+import com.johannesbrodwall.pki.infrastructure.tracing.Span;
+import com.johannesbrodwall.pki.infrastructure.tracing.Tracer;
+import io.liquidpki.common.AlgorithmIdentifier;
+import io.liquidpki.der.Der;
+import io.liquidpki.der.Oid;
+import io.liquidpki.pem.PemCodec;
+import io.liquidpki.pkcs12.Pkcs12KeyStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,7 +16,6 @@ import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -18,6 +24,7 @@ import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -28,12 +35,13 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
 import java.security.spec.PKCS8EncodedKeySpec;
-import java.util.Base64;
+import java.time.Duration;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class SslUtil {
     private static final Logger logger = LoggerFactory.getLogger(SslUtil.class);
@@ -50,9 +58,48 @@ public class SslUtil {
     }
 
     public static PrivateKey readPrivateKey(Path keyFile) throws IOException, GeneralSecurityException {
-        return KeyFactory.getInstance("RSA").generatePrivate(
-                new PKCS8EncodedKeySpec(parsePemString(Files.readString(keyFile)))
-        );
+        byte[] pkcs8 = parsePemString(Files.readString(keyFile));
+        return KeyFactory.getInstance(getKeyAlgorithm(pkcs8)).generatePrivate(new PKCS8EncodedKeySpec(pkcs8));
+    }
+
+    /** Reads the key algorithm from the privateKeyAlgorithm of a PKCS#8 PrivateKeyInfo */
+    private static String getKeyAlgorithm(byte[] pkcs8) throws NoSuchAlgorithmException {
+        Iterator<Der> privateKeyInfo = ((Der.SEQUENCE) Der.parse(pkcs8)).iterator();
+        privateKeyInfo.next();
+        String algorithmOid = new AlgorithmIdentifier(privateKeyInfo.next()).getAlgorithmOid();
+        String keyAlgorithm = Oid.getJcaKeyAlgorithm(algorithmOid);
+        if (keyAlgorithm == null) {
+            throw new NoSuchAlgorithmException("Unsupported private key algorithm " + algorithmOid);
+        }
+        return keyAlgorithm;
+    }
+
+    /**
+     * Generates a key pair of the given type: "RSA" (2048 bits), "P-256", "P-384" or "Ed25519".
+     * Ed25519 requires Java 15 or later.
+     */
+    public static KeyPair generateKeyPair(String keyType) throws GeneralSecurityException {
+        KeyPairGenerator generator;
+        switch (keyType) {
+            case "RSA":
+                generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(2048);
+                break;
+            case "P-256":
+                generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+                break;
+            case "P-384":
+                generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec("secp384r1"));
+                break;
+            case "Ed25519":
+                generator = KeyPairGenerator.getInstance("Ed25519");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown key type " + keyType + ", expected RSA, P-256, P-384 or Ed25519");
+        }
+        return generator.generateKeyPair();
     }
 
     public static KeyStore createKeyStore(PrivateKey privateKey, char[] keyPassword, X509Certificate certificate) throws KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException {
@@ -66,11 +113,13 @@ public class SslUtil {
         if (keyStoreFile == null) {
             return null;
         }
-        KeyStore keyStore = KeyStore.getInstance("pkcs12");
         try (InputStream inputStream = Files.newInputStream(keyStoreFile)) {
-            keyStore.load(inputStream, password.toCharArray());
+            return Pkcs12KeyStore.load(inputStream, password.toCharArray());
+        } catch (NoSuchAlgorithmException | CertificateException | KeyStoreException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new KeyStoreException("Failed to read " + keyStoreFile + ": " + e.getMessage(), e);
         }
-        return keyStore;
     }
 
     public static void storeKeyStore(KeyStore keyStore, Path path, String password) throws IOException, CertificateException, KeyStoreException, NoSuchAlgorithmException {
@@ -101,7 +150,8 @@ public class SslUtil {
         KeyStore trustStore = KeyStore.getInstance("pkcs12");
         trustStore.load(null, null);
         for (X509Certificate certificate : certificates) {
-            trustStore.setCertificateEntry(certificate.getSubjectDN().toString(), certificate);
+            // Several anchors may share a subject (e.g. a re-keyed CA), so the alias must include the serial number
+            trustStore.setCertificateEntry(certificate.getSubjectDN() + " #" + certificate.getSerialNumber().toString(16), certificate);
         }
 
         TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
@@ -109,6 +159,18 @@ public class SslUtil {
         return factory.getTrustManagers();
     }
 
+    /**
+     * Trust managers which remember validated chains, for servers which see the same clients over and over.
+     * Like the PKIX trust managers, they reject unsupported critical extensions and end entities
+     * whose key usage doesn't allow the side of the handshake they are used for.
+     */
+    public static TrustManager[] createCachingTrustManagers(List<X509Certificate> certificates) throws CertificateEncodingException {
+        if (certificates.isEmpty()) {
+            return null;
+        }
+        return new TrustManager[] { new CachingTrustManager(certificates, Duration.ofMinutes(10)) };
+    }
+
     public static SSLContext createSslContext(KeyManager[] keyManagers, TrustManager[] trustManagers) throws GeneralSecurityException {
         SSLContext ctx = SSLContext.getInstance("TLS");
         ctx.init(keyManagers, trustManagers, null);
@@ -119,14 +181,14 @@ public class SslUtil {
         return createSslContext(createKeyManagers(serverKeyStore, keyPassword), createTrustManagers(certificates));
     }
 
+    /** Returns the same context as long as the files and passwords are unchanged, see {@link SslContextCache} */
     public static SSLContext toSslContext(Map<String, String> config, Path keystoreFile, List<Path> trustedCertificates) {
         try {
-            String keyStorePassword = config.getOrDefault("keyStorePassword", "");
-            String keyPassword = config.getOrDefault("keyPassword", "");
-            return createSslContext(
-                    loadKeyStore(keystoreFile, keyStorePassword),
-                    keyPassword.toCharArray(),
-                    readCertificates(trustedCertificates)
+            return SslContextCache.getDefault().getSslContext(
+                    keystoreFile,
+                    config.getOrDefault("keyStorePassword", ""),
+                    config.getOrDefault("keyPassword", ""),
+                    trustedCertificates
             );
         } catch (GeneralSecurityException | IOException e) {
             throw ExceptionUtil.softenException(e);
@@ -149,8 +211,8 @@ public class SslUtil {
         if (path.getParent() != null) {
             Files.createDirectories(path.getParent());
         }
-        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
-            writer.write(writePemString(encoded, label));
+        try (Span ignored = Tracer.getDefault().startSpan("encodePem")) {
+            Files.write(path, PemCodec.encode(label, encoded));
         }
         logger.info("Wrote {} to {}", label.toLowerCase(), path);
     }
@@ -159,19 +221,15 @@ public class SslUtil {
      * <a href="https://www.rfc-editor.org/rfc/rfc7468">PKIX Textual Encodings</a>
      * */
     public static String writePemString(byte[] derEncodedObject, String label) {
-        Base64.Encoder encoder = Base64.getMimeEncoder(64, "\n".getBytes());
-        String encodedCertText = new String(encoder.encode(derEncodedObject));
-        return "-----BEGIN " + label + "-----\n" +
-               encodedCertText +
-               "\n-----END " + label + "-----";
+        try (Span ignored = Tracer.getDefault().startSpan("encodePem")) {
+            return PemCodec.encodeToString(label, derEncodedObject);
+        }
     }
 
     public static byte[] parsePemString(String data) {
-        String pemContent = Stream.of(data.split("\n"))
-                .filter(s -> !s.startsWith("-----"))
-                .map(String::trim)
-                .collect(Collectors.joining(""));
-        return Base64.getDecoder().decode(pemContent);
+        try (Span ignored = Tracer.getDefault().startSpan("parsePem")) {
+            return PemCodec.decode(data);
+        }
     }
 
 }
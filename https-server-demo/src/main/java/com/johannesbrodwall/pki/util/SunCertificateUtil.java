@@ -1,5 +1,6 @@
 package com.johannesbrodwall.pki.util;
 
+import io.liquidpki.common.AlgorithmIdentifier;
 import sun.security.pkcs.PKCS9Attribute;
 import sun.security.pkcs10.PKCS10;
 import sun.security.pkcs10.PKCS10Attribute;
@@ -27,7 +28,6 @@ import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.SecureRandom;
 import java.security.Signature;
 import java.security.SignatureException;
 import java.security.cert.CertificateException;
@@ -62,7 +62,7 @@ public class SunCertificateUtil {
     }
 
     private static byte[] encodeAndSign(PKCS10 pkcs10, X500Name subject, PrivateKey privateKey) throws NoSuchAlgorithmException, InvalidKeyException, CertificateException, IOException, SignatureException {
-        Signature signature = Signature.getInstance("SHA256withRSA");
+        Signature signature = Signature.getInstance(AlgorithmIdentifier.defaultSignatureAlgorithm(privateKey));
         signature.initSign(privateKey);
         pkcs10.encodeAndSign(subject, signature);
         return pkcs10.getEncoded();
@@ -74,18 +74,19 @@ public class SunCertificateUtil {
             ZonedDateTime validFrom,
             ZonedDateTime validTo,
             Optional<CertificateExtensions> extensions,
-            PublicKey publicKey
-    ) throws CertificateException, IOException {
+            PublicKey publicKey,
+            BigInteger serialNumber,
+            String signatureAlgorithm
+    ) throws CertificateException, IOException, NoSuchAlgorithmException {
         X509CertInfo certInfo = new X509CertInfo();
         certInfo.set(X509CertInfo.VERSION, new CertificateVersion(CertificateVersion.V3));
         certInfo.set(X509CertInfo.VALIDITY, new CertificateValidity(
                 Date.from(validFrom.toInstant()),
                 Date.from(validTo.toInstant())
         ));
-        certInfo.set(X509CertInfo.SERIAL_NUMBER,
-                new CertificateSerialNumber(new BigInteger(64, new SecureRandom())));
+        certInfo.set(X509CertInfo.SERIAL_NUMBER, new CertificateSerialNumber(serialNumber));
         certInfo.set(X509CertInfo.ALGORITHM_ID,
-                new CertificateAlgorithmId(new AlgorithmId(AlgorithmId.sha512WithRSAEncryption_oid)));
+                new CertificateAlgorithmId(AlgorithmId.get(signatureAlgorithm)));
         certInfo.set(X509CertInfo.SUBJECT, subject);
         certInfo.set(X509CertInfo.ISSUER, issuer);
         certInfo.set(X509CertInfo.KEY, new CertificateX509Key(publicKey));
@@ -0,0 +1,60 @@
+package com.johannesbrodwall.pki.ca;
+
+import com.johannesbrodwall.pki.util.SslUtil;
+import com.johannesbrodwall.pki.util.SunCertificateUtil;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.time.Period;
+import java.time.ZonedDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CertificateAuthorityKeyTypeTest {
+
+    private final ZonedDateTime now = ZonedDateTime.now();
+
+    @ParameterizedTest
+    @CsvSource({
+            "liquidpki, RSA, SHA512withRSA",
+            "liquidpki, P-256, SHA256withECDSA",
+            "liquidpki, P-384, SHA384withECDSA",
+            "liquidpki, Ed25519, Ed25519",
+            "sun, RSA, SHA512withRSA",
+            "sun, P-256, SHA256withECDSA",
+            "sun, P-384, SHA384withECDSA",
+    })
+    void shouldIssueWithKeyType(String implementation, String keyType, String expectedSignatureAlgorithm) throws GeneralSecurityException, IOException {
+        KeyPair caKeyPair = generateKeyPair(keyType);
+        CertificateAuthority certificateAuthority = implementation.equals("sun")
+                ? new SunCertificateAuthority(Period.ofDays(1), caKeyPair, "CN=Test CA,O=Certificate Fun Corp", now)
+                : new LiquidPkiCertificateAuthority(Period.ofDays(1), caKeyPair, "CN=Test CA,O=Certificate Fun Corp", now);
+        X509Certificate caCertificate = certificateAuthority.getCaCertificate();
+        caCertificate.verify(caKeyPair.getPublic());
+        assertThat(caCertificate.getSigAlgName()).isEqualToIgnoringCase(expectedSignatureAlgorithm);
+
+        KeyPair clientKeyPair = generateKeyPair(keyType);
+        X509Certificate clientCertificate = certificateAuthority.issueClientCertificate("CN=Client", now, clientKeyPair.getPublic());
+        clientCertificate.verify(caCertificate.getPublicKey());
+        assertThat(clientCertificate.getPublicKey()).isEqualTo(clientKeyPair.getPublic());
+
+        X509Certificate fromCsr = certificateAuthority.issueCertificate(SunCertificateUtil.createCsr(clientKeyPair, "CN=From CSR"), now);
+        fromCsr.verify(caCertificate.getPublicKey());
+        assertThat(fromCsr.getPublicKey()).isEqualTo(clientKeyPair.getPublic());
+    }
+
+    private static KeyPair generateKeyPair(String keyType) throws GeneralSecurityException {
+        try {
+            return SslUtil.generateKeyPair(keyType);
+        } catch (NoSuchAlgorithmException e) {
+            Assumptions.assumeTrue(false, keyType + " is not supported by this JRE");
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.johannesbrodwall.pki.ca;
+
+import com.johannesbrodwall.pki.util.SslUtil;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Compares certificate issuance rate and full TLS handshake cost for each key type.
+ * Run the main method from the IDE, optionally with the key types to compare as arguments.
+ */
+public class KeyTypeBenchmark {
+
+    private static final long MEASURE_MILLIS = 3_000;
+
+    public static void main(String[] args) throws Exception {
+        List<String> keyTypes = args.length > 0 ? List.of(args) : List.of("RSA", "P-256", "P-384", "Ed25519");
+        System.out.printf("%-8s %-10s %14s %14s%n", "key", "ca", "issued/s", "handshake ms");
+        for (String keyType : keyTypes) {
+            KeyPair caKeyPair;
+            try {
+                caKeyPair = SslUtil.generateKeyPair(keyType);
+            } catch (NoSuchAlgorithmException e) {
+                System.out.printf("%-8s not supported by this JRE%n", keyType);
+                continue;
+            }
+            ZonedDateTime now = ZonedDateTime.now();
+            CertificateAuthority liquidPki = new LiquidPkiCertificateAuthority(Period.ofDays(1), caKeyPair, "CN=Benchmark CA", now);
+            CertificateAuthority sun = new SunCertificateAuthority(Period.ofDays(1), caKeyPair, "CN=Benchmark CA", now);
+            double handshakeMillis = measureHandshake(liquidPki, keyType);
+            System.out.printf("%-8s %-10s %14.0f %14.3f%n", keyType, "liquidpki", measureIssuance(liquidPki, keyType), handshakeMillis);
+            System.out.printf("%-8s %-10s %14.0f %14s%n", keyType, "sun", measureIssuance(sun, keyType), "");
+        }
+    }
+
+    private static double measureIssuance(CertificateAuthority certificateAuthority, String keyType) throws GeneralSecurityException, IOException {
+        KeyPair subjectKeyPair = SslUtil.generateKeyPair(keyType);
+        ZonedDateTime now = ZonedDateTime.now();
+        for (int i = 0; i < 200; i++) {
+            certificateAuthority.issueClientCertificate("CN=Warmup " + i, now, subjectKeyPair.getPublic());
+        }
+        long start = System.currentTimeMillis();
+        int count = 0;
+        while (System.currentTimeMillis() - start < MEASURE_MILLIS) {
+            certificateAuthority.issueClientCertificate("CN=Client " + count++, now, subjectKeyPair.getPublic());
+        }
+        return count * 1000.0 / (System.currentTimeMillis() - start);
+    }
+
+    /** Average time of a full handshake (no session resumption) against a server certificate of the key type */
+    private static double measureHandshake(CertificateAuthority certificateAuthority, String keyType) throws Exception {
+        KeyPair serverKeyPair = SslUtil.generateKeyPair(keyType);
+        X509Certificate serverCertificate = certificateAuthority.issueServerCertificate("localhost", "CN=localhost", ZonedDateTime.now(), serverKeyPair.getPublic());
+        SSLContext serverContext = SslUtil.createSslContext(SslUtil.createKeyManagers(serverKeyPair, serverCertificate), null);
+        SSLContext clientContext = SslUtil.createSslContext(null, SslUtil.createTrustManagers(List.of(certificateAuthority.getCaCertificate())));
+
+        try (SSLServerSocket serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread server = new Thread(() -> {
+                while (!serverSocket.isClosed()) {
+                    try (SSLSocket socket = (SSLSocket) serverSocket.accept()) {
+                        socket.startHandshake();
+                        socket.getInputStream().read();
+                    } catch (IOException ignored) {
+                    }
+                }
+            });
+            server.setDaemon(true);
+            server.start();
+
+            for (int i = 0; i < 100; i++) {
+                handshake(clientContext, serverSocket.getLocalPort());
+            }
+            long start = System.nanoTime();
+            int count = 0;
+            while (System.nanoTime() - start < MEASURE_MILLIS * 1_000_000) {
+                handshake(clientContext, serverSocket.getLocalPort());
+                count++;
+            }
+            return (System.nanoTime() - start) / 1_000_000.0 / count;
+        }
+    }
+
+    private static void handshake(SSLContext clientContext, int port) throws IOException {
+        try (SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(InetAddress.getLoopbackAddress(), port)) {
+            socket.startHandshake();
+            socket.getSession().invalidate();
+        }
+    }
+}
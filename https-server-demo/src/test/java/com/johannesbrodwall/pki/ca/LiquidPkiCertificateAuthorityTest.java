@@ -0,0 +1,104 @@
+package com.johannesbrodwall.pki.ca;
+
+import com.johannesbrodwall.pki.ca.signer.CaSigner;
+import com.johannesbrodwall.pki.util.SslUtil;
+import com.johannesbrodwall.pki.util.SunCertificateUtil;
+import io.liquidpki.common.Extension;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.der.MalformedDerException;
+import io.liquidpki.pkcs10.CertificationRequestInfo;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LiquidPkiCertificateAuthorityTest {
+
+    private final ZonedDateTime now = ZonedDateTime.now();
+    private final KeyPair caKeyPair = SslUtil.generateKeyPair("P-256");
+    private final LiquidPkiCertificateAuthority certificateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), caKeyPair, "CN=Template CA", now);
+
+    LiquidPkiCertificateAuthorityTest() throws GeneralSecurityException, IOException {
+    }
+
+    @Test
+    void shouldIssueServerCertificatesFromTemplate() throws GeneralSecurityException, IOException {
+        KeyPair keyPair = SslUtil.generateKeyPair("P-256");
+        X509Certificate certificate = certificateAuthority.issueServerCertificate("www.example.com", "CN=www.example.com", now, keyPair.getPublic());
+        certificate.verify(caKeyPair.getPublic());
+        assertThat(certificate.getIssuerX500Principal()).isEqualTo(certificateAuthority.getCaCertificate().getSubjectX500Principal());
+        assertThat(certificate.getKeyUsage()[0]).as("digitalSignature").isTrue();
+        assertThat(certificate.getSubjectAlternativeNames()).containsExactly(List.of(2, "www.example.com"));
+        assertThat(certificate.getBasicConstraints()).isEqualTo(-1);
+    }
+
+    @Test
+    void shouldChooseTemplateFromCertificationRequest() throws GeneralSecurityException, IOException {
+        KeyPair keyPair = SslUtil.generateKeyPair("P-256");
+        X509Certificate server = certificateAuthority.issueCertificate(SunCertificateUtil.createHostnameCsr(keyPair, "CN=app", "app.example.com"), now);
+        assertThat(server.getKeyUsage()[2]).as("keyEncipherment").isTrue();
+        assertThat(server.getSubjectAlternativeNames()).containsExactly(List.of(2, "app.example.com"));
+
+        X509Certificate client = certificateAuthority.issueCertificate(SunCertificateUtil.createCsr(keyPair, "CN=client"), now);
+        assertThat(client.getKeyUsage()[0]).as("digitalSignature").isTrue();
+        assertThat(client.getKeyUsage()[2]).as("keyEncipherment").isFalse();
+    }
+
+    @Test
+    void shouldIgnoreRequestedCaAndExtendedKeyUsage() throws GeneralSecurityException, IOException {
+        KeyPair keyPair = SslUtil.generateKeyPair("P-256");
+        for (boolean server : List.of(true, false)) {
+            CertificationRequestInfo request = new CertificationRequestInfo()
+                    .subject(new X500Name("CN=Rogue CA"))
+                    .publicKey(keyPair.getPublic())
+                    .addExtension(new Extension.BasicConstraintExtensionType().ca(true))
+                    .addExtension(new Extension.KeyUsageExtensionType().keyCertSign(true))
+                    .addExtension(new Extension.ExtendedKeyUsageExtensionType().keyPurpose("1.3.6.1.5.5.7.3.3"));
+            if (server) {
+                request.addExtension(new Extension.SANExtensionType().dnsName("rogue.example.com"));
+            }
+            byte[] csr = request.signWithKey(keyPair.getPrivate()).toDer().toByteArray();
+
+            X509Certificate certificate = certificateAuthority.issueCertificate(csr, now);
+            assertThat(certificate.getBasicConstraints()).isEqualTo(-1);
+            assertThat(certificate.getKeyUsage()[5]).as("keyCertSign").isFalse();
+            assertThat(certificate.getExtendedKeyUsage()).containsExactly(server ? "1.3.6.1.5.5.7.3.1" : "1.3.6.1.5.5.7.3.2");
+        }
+    }
+
+    @Test
+    void shouldIssueIntermediateCertificate() throws GeneralSecurityException, IOException {
+        KeyPair keyPair = SslUtil.generateKeyPair("P-256");
+        X509Certificate intermediate = CaSigner.await(certificateAuthority.issueCertificateAsync(
+                "intermediate", new X500Name("CN=Intermediate CA"), now, keyPair.getPublic(), List.of()
+        ));
+        intermediate.verify(caKeyPair.getPublic());
+        assertThat(intermediate.getBasicConstraints()).isEqualTo(0);
+        assertThat(intermediate.getKeyUsage()[5]).as("keyCertSign").isTrue();
+    }
+
+    @Test
+    void shouldRejectMalformedCertificationRequest() throws GeneralSecurityException, IOException {
+        byte[] csr = SunCertificateUtil.createCsr(SslUtil.generateKeyPair("P-256"), "CN=client");
+        byte[] withTrailingData = Arrays.copyOf(csr, csr.length + 1);
+        assertThatThrownBy(() -> certificateAuthority.issueCertificate(withTrailingData, now))
+                .isInstanceOf(MalformedDerException.class)
+                .hasMessageContaining("Trailing data");
+    }
+
+    @Test
+    void shouldRejectUnknownTemplate() {
+        assertThatThrownBy(() -> certificateAuthority.getTemplate("codeSigning"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("codeSigning");
+    }
+}
@@ -0,0 +1,67 @@
+package com.johannesbrodwall.pki.ca;
+
+import com.johannesbrodwall.pki.util.SslUtil;
+import io.liquidpki.pkcs12.Pkcs12Writer;
+
+import java.io.ByteArrayOutputStream;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.concurrent.Callable;
+
+/**
+ * Compares writing the PKCS#12 file for <code>POST /ca/privateKey</code> with the JDK KeyStore and
+ * with {@link Pkcs12Writer}, with the default iteration counts and with cheaper settings.
+ * Run the main method from the IDE.
+ */
+public class Pkcs12WriterBenchmark {
+
+    private static final long MEASURE_MILLIS = 3_000;
+
+    public static void main(String[] args) throws Exception {
+        KeyPair caKeyPair = SslUtil.generateKeyPair("RSA");
+        CertificateAuthority certificateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), caKeyPair, "CN=Benchmark CA", ZonedDateTime.now());
+        KeyPair keyPair = SslUtil.generateKeyPair("RSA");
+        X509Certificate certificate = certificateAuthority.issueClientCertificate("CN=Benchmark Client", ZonedDateTime.now(), keyPair.getPublic());
+        String alias = certificate.getSubjectDN().toString();
+        char[] password = "".toCharArray();
+
+        System.out.printf("%-36s %10s %10s%n", "writer", "files/s", "bytes");
+        measure("JDK KeyStore.store", () -> {
+            KeyStore keyStore = SslUtil.createKeyStore(keyPair.getPrivate(), null, certificate);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            keyStore.store(buffer, password);
+            return buffer.toByteArray();
+        });
+        measure("Pkcs12Writer", () -> new Pkcs12Writer()
+                .addKeyEntry(alias, keyPair.getPrivate(), new Certificate[] { certificate })
+                .write(password));
+        measure("Pkcs12Writer, plain certificates", () -> new Pkcs12Writer()
+                .certificateEncryption(Pkcs12Writer.Encryption.NONE)
+                .addKeyEntry(alias, keyPair.getPrivate(), new Certificate[] { certificate })
+                .write(password));
+        measure("Pkcs12Writer, 2048 iterations", () -> new Pkcs12Writer()
+                .certificateEncryption(Pkcs12Writer.Encryption.NONE)
+                .iterations(2048)
+                .macIterations(2048)
+                .addKeyEntry(alias, keyPair.getPrivate(), new Certificate[] { certificate })
+                .write(password));
+    }
+
+    private static void measure(String name, Callable<byte[]> writer) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            writer.call();
+        }
+        long start = System.currentTimeMillis();
+        int count = 0;
+        int size = 0;
+        while (System.currentTimeMillis() - start < MEASURE_MILLIS) {
+            size = writer.call().length;
+            count++;
+        }
+        System.out.printf("%-36s %10.0f %10d%n", name, count * 1000.0 / (System.currentTimeMillis() - start), size);
+    }
+}
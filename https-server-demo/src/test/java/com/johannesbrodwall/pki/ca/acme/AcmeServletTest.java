@@ -0,0 +1,484 @@
+package com.johannesbrodwall.pki.ca.acme;
+
+import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.CertificateAuthorityHolder;
+import com.johannesbrodwall.pki.ca.LiquidPkiCertificateAuthority;
+import com.johannesbrodwall.pki.util.SslUtil;
+import io.liquidpki.common.Extension;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.pkcs10.CertificationRequestInfo;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.jsonbuddy.JsonArray;
+import org.jsonbuddy.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AcmeServletTest {
+
+    private final Server server = new Server(0);
+    private final CertificateAuthorityHolder certificateAuthorityHolder = new CertificateAuthorityHolder();
+    /** Key authorizations "published" by the client, by identifier and token */
+    private final Map<String, String> published = new ConcurrentHashMap<>();
+    private volatile Instant currentTime = Instant.now();
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return currentTime;
+        }
+    };
+    private final AcmeService service = new AcmeService(certificateAuthorityHolder, new ChallengeValidator() {
+        @Override
+        public String getType() {
+            return "http-01";
+        }
+
+        @Override
+        public boolean validate(String identifier, String token, String keyAuthorization) {
+            return keyAuthorization.equals(published.get(identifier + "/" + token));
+        }
+    }, 4, 1000, clock);
+    private CertificateAuthority certificateAuthority;
+    private String directoryUrl;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        certificateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), SslUtil.generateKeyPair("P-256"), "CN=ACME CA", ZonedDateTime.now());
+        certificateAuthorityHolder.replace(certificateAuthority);
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(new AcmeServlet(service)), "/acme/*");
+        server.setHandler(context);
+        server.start();
+        directoryUrl = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/acme/directory";
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.stop();
+        service.close();
+    }
+
+    @Test
+    void shouldIssueCertificateForValidatedOrder() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        Response account = client.newAccount();
+        assertThat(account.status).isEqualTo(201);
+        assertThat(account.json.requiredString("status")).isEqualTo("valid");
+
+        Response order = client.newOrder("www.example.com", "api.example.com");
+        assertThat(order.status).isEqualTo(201);
+        assertThat(order.json.requiredString("status")).isEqualTo("pending");
+        for (String authorizationUrl : order.json.requiredArray("authorizations").strings()) {
+            client.completeChallenge(authorizationUrl);
+        }
+        assertThat(client.poll(order.location, "ready").requiredString("status")).isEqualTo("ready");
+
+        KeyPair keyPair = SslUtil.generateKeyPair("P-256");
+        Response finalized = client.finalizeOrder(order.json.requiredString("finalize"), csr(keyPair, "CN=www.example.com", "www.example.com", "api.example.com"));
+        assertThat(finalized.status).isEqualTo(200);
+        JsonObject validOrder = client.poll(order.location, "valid");
+        assertThat(validOrder.requiredString("status")).isEqualTo("valid");
+
+        Response certificate = client.post(validOrder.requiredString("certificate"), null);
+        assertThat(certificate.contentType).startsWith("application/pem-certificate-chain");
+        List<X509Certificate> chain = new ArrayList<>();
+        for (Certificate c : CertificateFactory.getInstance("X.509").generateCertificates(new ByteArrayInputStream(certificate.body))) {
+            chain.add((X509Certificate) c);
+        }
+        assertThat(chain).hasSize(2);
+        assertThat(chain.get(0).getPublicKey()).isEqualTo(keyPair.getPublic());
+        chain.get(0).verify(certificateAuthority.getCaCertificate().getPublicKey());
+        assertThat(chain.get(0).getSubjectAlternativeNames())
+                .extracting(name -> (Object) name.get(1))
+                .containsExactlyInAnyOrder("www.example.com", "api.example.com");
+        assertThat(chain.get(1)).isEqualTo(certificateAuthority.getCaCertificate());
+    }
+
+    @Test
+    void shouldReturnExistingAccountForSameKey() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        Response first = client.newAccount();
+        Response second = client.newAccount();
+        assertThat(second.status).isEqualTo(200);
+        assertThat(second.location).isEqualTo(first.location);
+    }
+
+    @Test
+    void shouldSupportRsaAccountKeys() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("RSA"));
+        assertThat(client.newAccount().status).isEqualTo(201);
+        assertThat(client.newOrder("rsa.example.com").status).isEqualTo(201);
+    }
+
+    @Test
+    void shouldRejectIdentifiersWhichAreNotPublicNames() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        client.newAccount();
+        for (String identifier : List.of("localhost", "127.0.0.1", "169.254.169.254", "metadata")) {
+            Response order = client.newOrder(identifier);
+            assertThat(order.status).as(identifier).isEqualTo(400);
+            assertThat(order.json.requiredString("type")).isEqualTo("urn:ietf:params:acme:error:rejectedIdentifier");
+        }
+        assertThat(client.newOrder("www.example.com").status).isEqualTo(201);
+    }
+
+    @Test
+    void shouldForgetExpiredOrders() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        client.newAccount();
+        Response order = client.newOrder("www.example.com");
+        String authorizationUrl = order.json.requiredArray("authorizations").requiredString(0);
+        JsonObject challenge = client.post(authorizationUrl, null).json.requiredArray("challenges").requiredObject(0);
+        assertThat(client.post(order.location, null).status).isEqualTo(200);
+
+        currentTime = Instant.parse(order.json.requiredString("expires"));
+        assertThat(client.post(order.location, null).status).isEqualTo(404);
+        assertThat(client.post(authorizationUrl, null).status).isEqualTo(404);
+        assertThat(client.post(challenge.requiredString("url"), new JsonObject()).status).isEqualTo(404);
+        assertThat(client.finalizeOrder(order.json.requiredString("finalize"), csr(SslUtil.generateKeyPair("P-256"), "CN=www.example.com", "www.example.com")).status)
+                .isEqualTo(404);
+    }
+
+    @Test
+    void shouldEvictExpiredOrdersWhenCreatingNewOnes() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        client.newAccount();
+        client.newOrder("www.example.com");
+        client.newOrder("api.example.com");
+        assertThat(service.getOrderCount()).isEqualTo(2);
+
+        currentTime = currentTime.plus(Duration.ofDays(8));
+        assertThat(client.newOrder("www.example.com").status).isEqualTo(201);
+        assertThat(service.getOrderCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldEvictIdleAccountsWithoutOrders() throws Exception {
+        AcmeClient idle = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        idle.newAccount();
+        AcmeClient active = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        active.newAccount();
+
+        currentTime = currentTime.plus(Duration.ofDays(100));
+        assertThat(active.newOrder("www.example.com").status).isEqualTo(201);
+        currentTime = currentTime.plus(Duration.ofMinutes(2));
+        assertThat(new AcmeClient(SslUtil.generateKeyPair("P-256")).newAccount().status).isEqualTo(201);
+
+        Response order = idle.newOrder("www.example.com");
+        assertThat(order.status).isEqualTo(400);
+        assertThat(order.json.requiredString("type")).isEqualTo("urn:ietf:params:acme:error:accountDoesNotExist");
+        assertThat(active.newOrder("api.example.com").status).isEqualTo(201);
+    }
+
+    @Test
+    void shouldLimitPendingOrdersPerAccount() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        client.newAccount();
+        for (int i = 0; i < AcmeService.MAX_PENDING_ORDERS; i++) {
+            assertThat(client.newOrder("host" + i + ".example.com").status).isEqualTo(201);
+        }
+        Response rejected = client.newOrder("www.example.com");
+        assertThat(rejected.status).isEqualTo(429);
+        assertThat(rejected.json.requiredString("type")).isEqualTo("urn:ietf:params:acme:error:rateLimited");
+
+        AcmeClient other = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        other.newAccount();
+        assertThat(other.newOrder("www.example.com").status).isEqualTo(201);
+
+        currentTime = currentTime.plus(Duration.ofDays(8));
+        assertThat(client.newOrder("www.example.com").status).isEqualTo(201);
+    }
+
+    @Test
+    void shouldRejectReusedNonce() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        String nonce = client.newNonce();
+        assertThat(client.post(client.directory.requiredString("newAccount"), new JsonObject(), nonce, true).status).isEqualTo(201);
+
+        Response reused = client.post(client.directory.requiredString("newAccount"), new JsonObject(), nonce, true);
+        assertThat(reused.status).isEqualTo(400);
+        assertThat(reused.json.requiredString("type")).isEqualTo("urn:ietf:params:acme:error:badNonce");
+        assertThat(reused.nonce).isNotNull().isNotEqualTo(nonce);
+    }
+
+    @Test
+    void shouldRejectRequestsSignedWithAnotherKey() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        client.newAccount();
+        AcmeClient impostor = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        impostor.accountUrl = client.accountUrl;
+
+        Response response = impostor.newOrder("www.example.com");
+        assertThat(response.status).isEqualTo(400);
+        assertThat(response.json.requiredString("detail")).contains("signature");
+    }
+
+    @Test
+    void shouldNotFinalizeBeforeChallengesAreValid() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        client.newAccount();
+        Response order = client.newOrder("www.example.com");
+
+        Response finalized = client.finalizeOrder(order.json.requiredString("finalize"), csr(SslUtil.generateKeyPair("P-256"), "CN=www.example.com", "www.example.com"));
+        assertThat(finalized.status).isEqualTo(403);
+        assertThat(finalized.json.requiredString("type")).isEqualTo("urn:ietf:params:acme:error:orderNotReady");
+    }
+
+    @Test
+    void shouldInvalidateOrderWhenChallengeFails() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        client.newAccount();
+        Response order = client.newOrder("www.example.com");
+        String authorizationUrl = order.json.requiredArray("authorizations").requiredString(0);
+        JsonObject challenge = client.post(authorizationUrl, null).json.requiredArray("challenges").requiredObject(0);
+
+        client.post(challenge.requiredString("url"), new JsonObject());
+        JsonObject authorization = client.poll(authorizationUrl, "invalid");
+        assertThat(authorization.requiredString("status")).isEqualTo("invalid");
+        assertThat(authorization.requiredArray("challenges").requiredObject(0).requiredObject("error").requiredString("type"))
+                .isEqualTo("urn:ietf:params:acme:error:incorrectResponse");
+        assertThat(client.poll(order.location, "invalid").requiredString("status")).isEqualTo("invalid");
+    }
+
+    @Test
+    void shouldRejectCsrForOtherNames() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        client.newAccount();
+        Response order = client.newOrder("www.example.com");
+        client.completeChallenge(order.json.requiredArray("authorizations").requiredString(0));
+        client.poll(order.location, "ready");
+
+        Response finalized = client.finalizeOrder(order.json.requiredString("finalize"), csr(SslUtil.generateKeyPair("P-256"), "CN=www.example.com", "www.example.com", "evil.example.com"));
+        assertThat(finalized.status).isEqualTo(400);
+        assertThat(finalized.json.requiredString("type")).isEqualTo("urn:ietf:params:acme:error:badCSR");
+        assertThat(client.post(order.location, null).json.requiredString("status")).isEqualTo("ready");
+    }
+
+    @Test
+    void shouldRejectCsrWithInvalidSignature() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        client.newAccount();
+        Response order = client.newOrder("www.example.com");
+        client.completeChallenge(order.json.requiredArray("authorizations").requiredString(0));
+        client.poll(order.location, "ready");
+
+        byte[] csr = new CertificationRequestInfo()
+                .subject(new X500Name("CN=www.example.com"))
+                .publicKey(SslUtil.generateKeyPair("P-256").getPublic())
+                .addExtension(new Extension.SANExtensionType().dnsName("www.example.com"))
+                .signWithKey(SslUtil.generateKeyPair("P-256").getPrivate())
+                .toDer().toByteArray();
+        Response finalized = client.finalizeOrder(order.json.requiredString("finalize"), csr);
+        assertThat(finalized.status).isEqualTo(400);
+        assertThat(finalized.json.requiredString("type")).isEqualTo("urn:ietf:params:acme:error:badCSR");
+    }
+
+    @Test
+    void shouldIssueOnlyValidatedNamesFromCsr() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        client.newAccount();
+        Response order = client.newOrder("www.example.com");
+        client.completeChallenge(order.json.requiredArray("authorizations").requiredString(0));
+        client.poll(order.location, "ready");
+
+        KeyPair keyPair = SslUtil.generateKeyPair("P-256");
+        byte[] csr = new CertificationRequestInfo()
+                .subject(new X500Name("CN=www.example.com,O=Example Bank"))
+                .publicKey(keyPair.getPublic())
+                .addExtension(new Extension.SANExtensionType().dnsName("www.example.com"))
+                .addExtension(new Extension.BasicConstraintExtensionType().ca(true))
+                .signWithKey(keyPair.getPrivate())
+                .toDer().toByteArray();
+        assertThat(client.finalizeOrder(order.json.requiredString("finalize"), csr).status).isEqualTo(200);
+        JsonObject validOrder = client.poll(order.location, "valid");
+
+        X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                .generateCertificates(new ByteArrayInputStream(client.post(validOrder.requiredString("certificate"), null).body))
+                .iterator().next();
+        assertThat(certificate.getSubjectX500Principal().getName()).isEqualTo("CN=www.example.com");
+        assertThat(certificate.getBasicConstraints()).isEqualTo(-1);
+        assertThat(certificate.getSubjectAlternativeNames()).containsExactly(List.of(2, "www.example.com"));
+    }
+
+    @Test
+    void shouldNotShowOrdersToOtherAccounts() throws Exception {
+        AcmeClient client = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        client.newAccount();
+        Response order = client.newOrder("www.example.com");
+        AcmeClient other = new AcmeClient(SslUtil.generateKeyPair("P-256"));
+        other.newAccount();
+
+        Response response = other.post(order.location, null);
+        assertThat(response.status).isEqualTo(403);
+        assertThat(response.json.requiredString("type")).isEqualTo("urn:ietf:params:acme:error:unauthorized");
+    }
+
+    private static byte[] csr(KeyPair keyPair, String subject, String... dnsNames) throws GeneralSecurityException {
+        Extension.SANExtensionType san = new Extension.SANExtensionType();
+        for (String dnsName : dnsNames) {
+            san.dnsName(dnsName);
+        }
+        return new CertificationRequestInfo()
+                .subject(new X500Name(subject))
+                .publicKey(keyPair.getPublic())
+                .addExtension(san)
+                .signWithKey(keyPair.getPrivate())
+                .toDer().toByteArray();
+    }
+
+    private static class Response {
+        private int status;
+        private String location;
+        private String nonce;
+        private String contentType;
+        private byte[] body;
+        private JsonObject json;
+    }
+
+    /** Just enough of an ACME client to drive the server */
+    private class AcmeClient {
+        private final KeyPair keyPair;
+        private final JsonObject directory;
+        private String nonce;
+        private String accountUrl;
+
+        private AcmeClient(KeyPair keyPair) throws IOException {
+            this.keyPair = keyPair;
+            this.directory = JsonObject.read(new URL(directoryUrl));
+        }
+
+        private String newNonce() throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL(directory.requiredString("newNonce")).openConnection();
+            connection.setRequestMethod("HEAD");
+            assertThat(connection.getResponseCode()).isEqualTo(200);
+            return connection.getHeaderField("Replay-Nonce");
+        }
+
+        private Response newAccount() throws IOException, GeneralSecurityException {
+            Response response = post(directory.requiredString("newAccount"), new JsonObject()
+                    .put("termsOfServiceAgreed", true)
+                    .put("contact", JsonArray.fromStrings("mailto:admin@example.com")), nextNonce(), true);
+            accountUrl = response.location;
+            return response;
+        }
+
+        private Response newOrder(String... identifiers) throws IOException, GeneralSecurityException {
+            JsonArray json = new JsonArray();
+            for (String identifier : identifiers) {
+                json.add(new JsonObject().put("type", "dns").put("value", identifier));
+            }
+            return post(directory.requiredString("newOrder"), new JsonObject().put("identifiers", json));
+        }
+
+        /** Publishes the key authorization where the stub validator finds it and responds to the challenge */
+        private void completeChallenge(String authorizationUrl) throws IOException, GeneralSecurityException, InterruptedException {
+            JsonObject authorization = post(authorizationUrl, null).json;
+            JsonObject challenge = authorization.requiredArray("challenges").requiredObject(0);
+            assertThat(challenge.requiredString("type")).isEqualTo("http-01");
+            String token = challenge.requiredString("token");
+            String thumbprint = JsonWebSignature.thumbprint(JsonWebSignature.toJwk(keyPair.getPublic()));
+            published.put(authorization.requiredObject("identifier").requiredString("value") + "/" + token, token + "." + thumbprint);
+            assertThat(post(challenge.requiredString("url"), new JsonObject()).status).isEqualTo(200);
+            assertThat(poll(authorizationUrl, "valid").requiredString("status")).isEqualTo("valid");
+        }
+
+        private Response finalizeOrder(String finalizeUrl, byte[] csr) throws IOException, GeneralSecurityException {
+            return post(finalizeUrl, new JsonObject().put("csr", Base64.getUrlEncoder().withoutPadding().encodeToString(csr)));
+        }
+
+        private JsonObject poll(String url, String expectedStatus) throws IOException, GeneralSecurityException, InterruptedException {
+            JsonObject json = null;
+            for (int i = 0; i < 100; i++) {
+                json = post(url, null).json;
+                if (json.requiredString("status").equals(expectedStatus)) {
+                    break;
+                }
+                Thread.sleep(20);
+            }
+            return json;
+        }
+
+        private Response post(String url, JsonObject payload) throws IOException, GeneralSecurityException {
+            return post(url, payload, nextNonce(), false);
+        }
+
+        private String nextNonce() throws IOException {
+            String result = nonce != null ? nonce : newNonce();
+            nonce = null;
+            return result;
+        }
+
+        private Response post(String url, JsonObject payload, String nonce, boolean withJwk) throws IOException, GeneralSecurityException {
+            JsonObject header = new JsonObject()
+                    .put("alg", keyPair.getPublic().getAlgorithm().equals("EC") ? "ES256" : "RS256")
+                    .put("nonce", nonce)
+                    .put("url", url);
+            if (withJwk) {
+                header.put("jwk", JsonWebSignature.toJwk(keyPair.getPublic()));
+            } else {
+                header.put("kid", accountUrl);
+            }
+            byte[] body = JsonWebSignature.sign(header, payload, keyPair.getPrivate()).toJson().getBytes(StandardCharsets.UTF_8);
+
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/jose+json");
+            connection.setDoOutput(true);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body);
+            }
+            Response response = new Response();
+            response.status = connection.getResponseCode();
+            response.location = connection.getHeaderField("Location");
+            response.nonce = connection.getHeaderField("Replay-Nonce");
+            response.contentType = connection.getContentType();
+            try (InputStream input = response.status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                response.body = input.readAllBytes();
+            }
+            if (response.contentType.contains("json")) {
+                response.json = JsonObject.parse(new String(response.body, StandardCharsets.UTF_8));
+            }
+            this.nonce = response.nonce;
+            return response;
+        }
+    }
+}
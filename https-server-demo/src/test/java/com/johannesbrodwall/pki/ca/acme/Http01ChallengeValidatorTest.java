@@ -0,0 +1,93 @@
+package com.johannesbrodwall.pki.ca.acme;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class Http01ChallengeValidatorTest {
+
+    private final Server server = new Server(0);
+    private final List<String> requests = new ArrayList<>();
+    private int port;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                synchronized (requests) {
+                    requests.add(req.getHeader("Host") + req.getRequestURI());
+                }
+                if (req.getRequestURI().equals("/.well-known/acme-challenge/token")) {
+                    resp.setContentType("text/plain");
+                    resp.getWriter().write("token.thumbprint\n");
+                } else {
+                    resp.sendError(404);
+                }
+            }
+        }), "/*");
+        server.setHandler(context);
+        server.start();
+        port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    void shouldValidatePublishedKeyAuthorization() throws IOException {
+        Http01ChallengeValidator validator = new Http01ChallengeValidator(port, InetAddress::isLoopbackAddress);
+        assertThat(validator.validate("localhost", "token", "token.thumbprint")).isTrue();
+        assertThat(validator.validate("localhost", "token", "token.other")).isFalse();
+        assertThat(validator.validate("localhost", "missing", "missing.thumbprint")).isFalse();
+        assertThat(requests).contains("localhost:" + port + "/.well-known/acme-challenge/token");
+    }
+
+    @Test
+    void shouldRefuseLoopbackIdentifiers() {
+        Http01ChallengeValidator validator = new Http01ChallengeValidator(port);
+        assertThatThrownBy(() -> validator.validate("localhost", "token", "token.thumbprint"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("non-public address");
+        assertThatThrownBy(() -> validator.validate("127.0.0.1", "token", "token.thumbprint"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("non-public address");
+        assertThat(requests).isEmpty();
+    }
+
+    @Test
+    void shouldRefuseNonPublicAddresses() throws IOException {
+        Http01ChallengeValidator validator = new Http01ChallengeValidator(port);
+        assertThatThrownBy(() -> validator.validate("169.254.169.254", "token", "token.thumbprint"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("non-public address 169.254.169.254");
+
+        assertThat(Http01ChallengeValidator.isPublicAddress(InetAddress.getByName("10.1.2.3"))).isFalse();
+        assertThat(Http01ChallengeValidator.isPublicAddress(InetAddress.getByName("192.168.0.1"))).isFalse();
+        assertThat(Http01ChallengeValidator.isPublicAddress(InetAddress.getByName("0.0.0.0"))).isFalse();
+        assertThat(Http01ChallengeValidator.isPublicAddress(InetAddress.getByName("::1"))).isFalse();
+        assertThat(Http01ChallengeValidator.isPublicAddress(InetAddress.getByName("fe80::1"))).isFalse();
+        assertThat(Http01ChallengeValidator.isPublicAddress(InetAddress.getByName("fd00::1"))).isFalse();
+        assertThat(Http01ChallengeValidator.isPublicAddress(InetAddress.getByName("::ffff:127.0.0.1"))).isFalse();
+        assertThat(Http01ChallengeValidator.isPublicAddress(InetAddress.getByName("93.184.216.34"))).isTrue();
+        assertThat(Http01ChallengeValidator.isPublicAddress(InetAddress.getByName("2606:2800:220:1::1"))).isTrue();
+    }
+}
@@ -0,0 +1,168 @@
+package com.johannesbrodwall.pki.ca.cluster;
+
+import com.johannesbrodwall.pki.ca.LiquidPkiCertificateAuthority;
+import com.johannesbrodwall.pki.ca.SerialNumberGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClusterCertificateAuthorityTest {
+
+    private KeyPairGenerator generator;
+    private KeyStore caKeyStore;
+    private Path logDirectory;
+    private final ZonedDateTime now = ZonedDateTime.now();
+
+    @BeforeEach
+    void setUp() throws GeneralSecurityException, IOException {
+        generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        caKeyStore = new LiquidPkiCertificateAuthority(Period.ofDays(1), generator.generateKeyPair(), "CN=Cluster CA,O=Certificate Fun Corp", now)
+                .getKeyStore();
+        logDirectory = Files.createTempDirectory("issuance-log");
+    }
+
+    @Test
+    void shouldIssueFromDisjointSerialRanges() throws GeneralSecurityException, IOException {
+        ClusterCertificateAuthority node0 = createNode(0);
+        ClusterCertificateAuthority node1 = createNode(1);
+
+        KeyPair keyPair = generator.generateKeyPair();
+        X509Certificate first = node0.issueClientCertificate("CN=First", now, keyPair.getPublic());
+        X509Certificate second = node1.issueClientCertificate("CN=Second", now, keyPair.getPublic());
+        X509Certificate third = node0.issueClientCertificate("CN=Third", now, keyPair.getPublic());
+
+        assertThat(PartitionedSerialNumberGenerator.nodeOf(first.getSerialNumber())).isEqualTo(0);
+        assertThat(PartitionedSerialNumberGenerator.nodeOf(second.getSerialNumber())).isEqualTo(1);
+        assertThat(PartitionedSerialNumberGenerator.nodeOf(third.getSerialNumber())).isEqualTo(0);
+        assertThat(first.getSerialNumber()).isNotEqualTo(third.getSerialNumber());
+    }
+
+    @Test
+    void shouldFindCertificatesIssuedByOtherNodes() throws GeneralSecurityException, IOException {
+        ClusterCertificateAuthority node0 = createNode(0);
+        ClusterCertificateAuthority node1 = createNode(1);
+
+        X509Certificate certificate = node0.issueClientCertificate("CN=Client,O=Client Org", now, generator.generateKeyPair().getPublic());
+
+        assertThat(node1.findCertificate(certificate.getSerialNumber())).contains(certificate);
+        assertThat(node1.findCertificate(certificate.getSerialNumber().add(BigInteger.ONE))).isEmpty();
+    }
+
+    @Test
+    void shouldContinueSerialNumbersAfterRestart() throws GeneralSecurityException, IOException {
+        X509Certificate beforeRestart = createNode(0).issueClientCertificate("CN=Before", now, generator.generateKeyPair().getPublic());
+        X509Certificate afterRestart = createNode(0).issueClientCertificate("CN=After", now, generator.generateKeyPair().getPublic());
+
+        assertThat(PartitionedSerialNumberGenerator.sequenceOf(afterRestart.getSerialNumber()))
+                .isEqualTo(PartitionedSerialNumberGenerator.sequenceOf(beforeRestart.getSerialNumber()) + 1);
+    }
+
+    @Test
+    void shouldShareSerialNumbersAcrossReloads() throws GeneralSecurityException, IOException {
+        IssuanceLog log = new DirectoryIssuanceLog(logDirectory, 0);
+        SerialNumberGenerator serialNumbers = ClusterCertificateAuthority.createSerialNumberGenerator(0, log);
+        ClusterCertificateAuthority beforeReload = new ClusterCertificateAuthority(
+                new LiquidPkiCertificateAuthority(caKeyStore, Period.ofDays(1)), 0, log, serialNumbers
+        );
+        ClusterCertificateAuthority afterReload = new ClusterCertificateAuthority(
+                new LiquidPkiCertificateAuthority(caKeyStore, Period.ofDays(1)), 0, log, serialNumbers
+        );
+
+        KeyPair keyPair = generator.generateKeyPair();
+        X509Certificate first = afterReload.issueClientCertificate("CN=First", now, keyPair.getPublic());
+        X509Certificate second = beforeReload.issueClientCertificate("CN=Second", now, keyPair.getPublic());
+        assertThat(second.getSerialNumber()).isNotEqualTo(first.getSerialNumber());
+        assertThat(afterReload.findCertificate(second.getSerialNumber())).contains(second);
+    }
+
+    @Test
+    void shouldNotReuseSerialNumbersWhenRecordingFails() throws GeneralSecurityException, IOException {
+        DirectoryIssuanceLog log = new DirectoryIssuanceLog(logDirectory, 0);
+        IssuanceLog failingLog = new IssuanceLog() {
+            @Override
+            public void reserve(int nodeId, BigInteger serialNumber) throws IOException {
+                log.reserve(nodeId, serialNumber);
+            }
+
+            @Override
+            public Collection<BigInteger> reservedSerialNumbers() throws IOException {
+                return log.reservedSerialNumbers();
+            }
+
+            @Override
+            public void append(IssuanceRecord record) throws IOException {
+                throw new IOException("Disk full");
+            }
+
+            @Override
+            public Optional<IssuanceRecord> find(BigInteger serialNumber) throws IOException {
+                return log.find(serialNumber);
+            }
+
+            @Override
+            public Collection<IssuanceRecord> records() throws IOException {
+                return log.records();
+            }
+        };
+        ClusterCertificateAuthority failingNode = new ClusterCertificateAuthority(
+                new LiquidPkiCertificateAuthority(caKeyStore, Period.ofDays(1)), 0, failingLog
+        );
+        assertThatThrownBy(() -> failingNode.issueClientCertificate("CN=Lost", now, generator.generateKeyPair().getPublic()))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Disk full");
+        assertThat(log.reservedSerialNumbers()).hasSize(1);
+        BigInteger lostSerialNumber = log.reservedSerialNumbers().iterator().next();
+        assertThat(log.find(lostSerialNumber)).isEmpty();
+
+        X509Certificate afterRestart = createNode(0).issueClientCertificate("CN=After", now, generator.generateKeyPair().getPublic());
+        assertThat(PartitionedSerialNumberGenerator.sequenceOf(afterRestart.getSerialNumber()))
+                .isEqualTo(PartitionedSerialNumberGenerator.sequenceOf(lostSerialNumber) + 1);
+        assertThat(new DirectoryIssuanceLog(logDirectory, 1).reservedSerialNumbers())
+                .containsExactly(lostSerialNumber);
+    }
+
+    @Test
+    void shouldReadPartialLinesWhenTheyAreComplete() throws IOException {
+        DirectoryIssuanceLog log = new DirectoryIssuanceLog(logDirectory, 0);
+        Path otherNodeLog = logDirectory.resolve("node-1.log");
+        Files.writeString(otherNodeLog, "1f\t1\t" + Instant.now() + "\treser");
+        assertThat(log.reservedSerialNumbers()).isEmpty();
+
+        Files.writeString(otherNodeLog, "ved\n", StandardOpenOption.APPEND);
+        assertThat(log.reservedSerialNumbers()).containsExactly(BigInteger.valueOf(0x1f));
+    }
+
+    @Test
+    void shouldNotAcceptOtherSerialNumberGenerators() throws GeneralSecurityException, IOException {
+        ClusterCertificateAuthority node = createNode(0);
+        assertThatThrownBy(() -> node.setSerialNumberGenerator(SerialNumberGenerator.random()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private ClusterCertificateAuthority createNode(int nodeId) throws GeneralSecurityException, IOException {
+        return new ClusterCertificateAuthority(
+                new LiquidPkiCertificateAuthority(caKeyStore, Period.ofDays(1)),
+                nodeId,
+                new DirectoryIssuanceLog(logDirectory, nodeId)
+        );
+    }
+}
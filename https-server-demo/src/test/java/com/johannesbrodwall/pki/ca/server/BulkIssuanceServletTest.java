@@ -0,0 +1,283 @@
+package com.johannesbrodwall.pki.ca.server;
+
+import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.CertificateAuthorityHolder;
+import com.johannesbrodwall.pki.ca.LiquidPkiCertificateAuthority;
+import com.johannesbrodwall.pki.util.SslUtil;
+import com.johannesbrodwall.pki.util.SunCertificateUtil;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.jsonbuddy.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BulkIssuanceServletTest {
+
+    private final Server server = new Server(0);
+    private final CertificateAuthorityHolder certificateAuthorityHolder = new CertificateAuthorityHolder();
+    private CertificateAuthority certificateAuthority;
+    private int port;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        certificateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), SslUtil.generateKeyPair("P-256"), "CN=Bulk CA", ZonedDateTime.now());
+        certificateAuthorityHolder.replace(certificateAuthority);
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(new BulkIssuanceServlet(certificateAuthorityHolder, 4)), "/ca/bulk");
+        server.setHandler(context);
+        server.start();
+        port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    void shouldIssueConcatenatedDerAndPem() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(csr("CN=first"));
+        body.write(SslUtil.writePemString(csr("CN=second"), "CERTIFICATE REQUEST").getBytes(StandardCharsets.US_ASCII));
+        body.write("-----BEGIN CERTIFICATE REQUEST-----\nnot base64!\n-----END CERTIFICATE REQUEST-----\n".getBytes(StandardCharsets.US_ASCII));
+        body.write(csr("CN=fourth"));
+
+        List<JsonObject> results = post("application/pkcs10", body.toByteArray());
+        assertThat(results).extracting(r -> r.requiredLong("index")).containsExactly(0L, 1L, 2L, 3L);
+        assertThat(certificate(results.get(0)).getSubjectX500Principal().getName()).isEqualTo("CN=first");
+        assertThat(certificate(results.get(1)).getSubjectX500Principal().getName()).isEqualTo("CN=second");
+        assertThat(results.get(2).requiredString("error")).isNotEmpty();
+        assertThat(certificate(results.get(3)).getSubjectX500Principal().getName()).isEqualTo("CN=fourth");
+    }
+
+    @Test
+    void shouldIssueNdjsonWithIds() throws Exception {
+        String body = new JsonObject().put("id", "a").put("csr", Base64.getEncoder().encodeToString(csr("CN=a"))).toJson() + "\n"
+                      + new JsonObject().put("id", "b").put("csr", SslUtil.writePemString(csr("CN=b"), "CERTIFICATE REQUEST")).toJson() + "\n"
+                      + "\n"
+                      + new JsonObject().put("id", "c").put("csr", Base64.getEncoder().encodeToString(new byte[] { 0x30, 0x03, 1, 2, 3 })).toJson() + "\n"
+                      + "{not json\n";
+
+        List<JsonObject> results = post("application/x-ndjson", body.getBytes(StandardCharsets.UTF_8));
+        assertThat(results).extracting(r -> r.stringValue("id").orElse(null)).containsExactly("a", "b", "c", null);
+        assertThat(certificate(results.get(0)).getSubjectX500Principal().getName()).isEqualTo("CN=a");
+        assertThat(results.get(1).requiredString("serialNumber"))
+                .isEqualTo(certificate(results.get(1)).getSerialNumber().toString(16));
+        assertThat(results.get(2).requiredString("error")).startsWith("Malformed certificate request");
+        assertThat(results.get(3).containsKey("error")).isTrue();
+    }
+
+    @Test
+    void shouldSkipRestOfTooLongNdjsonLine() throws Exception {
+        String body = "{\"id\": \"" + "x".repeat(4 * CertificationRequestReader.MAX_LENGTH) + "\"}\n"
+                      + new JsonObject().put("id", "b").put("csr", Base64.getEncoder().encodeToString(csr("CN=b"))).toJson() + "\n";
+
+        List<JsonObject> results = post("application/x-ndjson", body.getBytes(StandardCharsets.UTF_8));
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).requiredString("error")).startsWith("Line longer than");
+        assertThat(certificate(results.get(1)).getSubjectX500Principal().getName()).isEqualTo("CN=b");
+    }
+
+    @Test
+    void shouldWaitForIssuedCertificatesWhenRequestFails() throws Exception {
+        CertificateAuthority slowCertificateAuthority = (CertificateAuthority) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] { CertificateAuthority.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("issueCertificateAsync")) {
+                        return CompletableFuture.supplyAsync(() -> {
+                            try {
+                                return certificateAuthority.issueCertificate((byte[]) args[0], (ZonedDateTime) args[1]);
+                            } catch (IOException | GeneralSecurityException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }, CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS));
+                    }
+                    try {
+                        return method.invoke(certificateAuthority, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        CertificateAuthorityHolder holder = new CertificateAuthorityHolder();
+        holder.replace(slowCertificateAuthority);
+
+        byte[] firstRequest = csr("CN=first");
+        InputStream brokenInput = new InputStream() {
+            private final InputStream input = new ByteArrayInputStream(firstRequest);
+
+            @Override
+            public int read() throws IOException {
+                int c = input.read();
+                if (c < 0) {
+                    throw new IOException("Connection reset");
+                }
+                return c;
+            }
+        };
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertThatThrownBy(() -> new BulkIssuanceServlet(holder, 4).doPost(request(brokenInput), response(output)))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Connection reset");
+        assertThat(JsonObject.parse(output.toString(StandardCharsets.UTF_8)).requiredString("serialNumber")).isNotEmpty();
+    }
+
+    @Test
+    void shouldStreamCertificateBeforeRequestIsComplete() throws Exception {
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream output = socket.getOutputStream();
+            output.write(("POST /ca/bulk HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/pkcs10\r\n"
+                          + "Transfer-Encoding: chunked\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            writeChunk(output, csr("CN=streamed"));
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertThat(reader.readLine()).isEqualTo("HTTP/1.1 200 OK");
+            String line;
+            while (!(line = reader.readLine()).startsWith("{")) {
+                assertThat(line).isNotNull();
+            }
+            assertThat(certificate(JsonObject.parse(line)).getSubjectX500Principal().getName()).isEqualTo("CN=streamed");
+
+            writeChunk(output, csr("CN=last"));
+            output.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+            while (!(line = reader.readLine()).startsWith("{")) {
+                assertThat(line).isNotNull();
+            }
+            assertThat(JsonObject.parse(line).requiredLong("index")).isEqualTo(1);
+        }
+    }
+
+    private static void writeChunk(OutputStream output, byte[] chunk) throws IOException {
+        output.write((Integer.toHexString(chunk.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        output.write(chunk);
+        output.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+    }
+
+    private List<JsonObject> post(String contentType, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/ca/bulk").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setChunkedStreamingMode(1024);
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.getOutputStream().write(body);
+        assertThat(connection.getResponseCode()).isEqualTo(200);
+        assertThat(connection.getContentType()).startsWith("application/x-ndjson");
+
+        List<JsonObject> results = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                results.add(JsonObject.parse(line));
+            }
+        }
+        results.sort(Comparator.comparing(r -> r.requiredLong("index")));
+        return results;
+    }
+
+    private static HttpServletRequest request(InputStream input) {
+        ServletInputStream servletInput = new ServletInputStream() {
+            @Override
+            public int read() throws IOException {
+                return input.read();
+            }
+
+            @Override
+            public boolean isFinished() {
+                return false;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+            }
+        };
+        return (HttpServletRequest) Proxy.newProxyInstance(BulkIssuanceServletTest.class.getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getContentType": return "application/pkcs10";
+                        case "getInputStream": return servletInput;
+                        default: throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static HttpServletResponse response(OutputStream output) {
+        ServletOutputStream servletOutput = new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                output.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(BulkIssuanceServletTest.class.getClassLoader(), new Class<?>[] { HttpServletResponse.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setContentType": return null;
+                        case "getOutputStream": return servletOutput;
+                        default: throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private X509Certificate certificate(JsonObject result) throws GeneralSecurityException {
+        X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X509")
+                .generateCertificate(new ByteArrayInputStream(result.requiredString("certificate").getBytes(StandardCharsets.US_ASCII)));
+        certificate.verify(certificateAuthority.getCaCertificate().getPublicKey());
+        return certificate;
+    }
+
+    private static byte[] csr(String subject) throws GeneralSecurityException, IOException {
+        return SunCertificateUtil.createCsr(SslUtil.generateKeyPair("P-256"), subject);
+    }
+}
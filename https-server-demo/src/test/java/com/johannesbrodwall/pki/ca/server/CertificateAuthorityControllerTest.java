@@ -0,0 +1,149 @@
+package com.johannesbrodwall.pki.ca.server;
+
+import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.CertificateAuthorityHolder;
+import com.johannesbrodwall.pki.ca.LiquidPkiCertificateAuthority;
+import com.johannesbrodwall.pki.util.SslUtil;
+import org.actioncontroller.exceptions.HttpActionException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CertificateAuthorityControllerTest {
+
+    private final CertificateAuthorityController controller = new CertificateAuthorityController();
+    private final KeyPair subjectKeyPair = SslUtil.generateKeyPair("P-256");
+    private final String publicKey = Base64.getEncoder().encodeToString(subjectKeyPair.getPublic().getEncoded());
+
+    CertificateAuthorityControllerTest() throws GeneralSecurityException {
+    }
+
+    @Test
+    void shouldRejectRequestsBeforeConfiguration() {
+        assertThatThrownBy(() -> controller.issueCertificate("CN=Client", publicKey, Optional.empty(), s -> {}))
+                .isInstanceOf(HttpActionException.class)
+                .extracting("statusCode").isEqualTo(503);
+    }
+
+    @Test
+    void shouldFinishInFlightIssuanceWithOriginalCertificateAuthority() throws Exception {
+        CountDownLatch issuing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CertificateAuthority original = new LiquidPkiCertificateAuthority(Period.ofDays(1), SslUtil.generateKeyPair("P-256"), "CN=Original CA", ZonedDateTime.now()) {
+            @Override
+            public X509Certificate issueCertificate(String subject, ZonedDateTime validFrom, PublicKey publicKey, Optional<byte[]> csrForExtensions) throws GeneralSecurityException, IOException {
+                issuing.countDown();
+                try {
+                    assertThat(release.await(10, TimeUnit.SECONDS)).isTrue();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.issueCertificate(subject, validFrom, publicKey, csrForExtensions);
+            }
+        };
+        assertThat(controller.setCertificateAuthority(original).getNumber()).isEqualTo(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> inFlight = executor.submit(() -> controller.issueCertificate("CN=In flight", publicKey, Optional.empty(), s -> {}));
+            assertThat(issuing.await(10, TimeUnit.SECONDS)).isTrue();
+
+            CertificateAuthorityHolder.Version replacement = controller.setCertificateAuthority(createCertificateAuthority("CN=Replacement CA"));
+            assertThat(replacement.getNumber()).isEqualTo(2);
+            assertThat(issue().getIssuerX500Principal().getName()).isEqualTo("CN=Replacement CA");
+
+            release.countDown();
+            assertThat(parse(inFlight.get(10, TimeUnit.SECONDS)).getIssuerX500Principal().getName()).isEqualTo("CN=Original CA");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldIssueConsistentlyWhileCertificateAuthorityIsReplaced() throws Exception {
+        List<CertificateAuthority> certificateAuthorities = new ArrayList<>();
+        Map<String, PublicKey> caKeys = new ConcurrentHashMap<>();
+        for (int i = 0; i < 8; i++) {
+            CertificateAuthority certificateAuthority = createCertificateAuthority("CN=Stress CA " + i);
+            certificateAuthorities.add(certificateAuthority);
+            caKeys.put("CN=Stress CA " + i, certificateAuthority.getCaCertificate().getPublicKey());
+        }
+        controller.setCertificateAuthority(certificateAuthorities.get(0));
+
+        int threads = 4;
+        int reloads = 5000;
+        AtomicBoolean reloading = new AtomicBoolean(true);
+        AtomicInteger issued = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> issuers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                issuers.add(executor.submit(() -> {
+                    while (reloading.get()) {
+                        X509Certificate certificate = issue();
+                        // A torn read would mix the issuer name of one CA with the key of another
+                        certificate.verify(caKeys.get(certificate.getIssuerX500Principal().getName()));
+                        issued.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+
+            long lastVersion = 1;
+            for (int i = 1; i <= reloads; i++) {
+                CertificateAuthorityHolder.Version version = controller.setCertificateAuthority(certificateAuthorities.get(i % certificateAuthorities.size()));
+                assertThat(version.getNumber()).isEqualTo(lastVersion + 1);
+                lastVersion = version.getNumber();
+                if (i % 500 == 0) {
+                    assertThat(issue().getIssuerX500Principal().getName()).isEqualTo("CN=Stress CA " + i % certificateAuthorities.size());
+                }
+            }
+            reloading.set(false);
+            for (Future<?> issuer : issuers) {
+                issuer.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            reloading.set(false);
+            executor.shutdownNow();
+        }
+        assertThat(issued.get()).isGreaterThan(0);
+    }
+
+    private X509Certificate issue() throws GeneralSecurityException, IOException {
+        return parse(controller.issueCertificate("CN=Client", publicKey, Optional.empty(), s -> {}));
+    }
+
+    private static X509Certificate parse(String pem) throws GeneralSecurityException {
+        return (X509Certificate) CertificateFactory.getInstance("X509")
+                .generateCertificate(new ByteArrayInputStream(pem.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static CertificateAuthority createCertificateAuthority(String issuerDN) throws GeneralSecurityException, IOException {
+        return new LiquidPkiCertificateAuthority(Period.ofDays(1), SslUtil.generateKeyPair("P-256"), issuerDN, ZonedDateTime.now());
+    }
+}
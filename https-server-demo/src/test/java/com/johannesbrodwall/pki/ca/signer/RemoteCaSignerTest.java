@@ -0,0 +1,224 @@
+package com.johannesbrodwall.pki.ca.signer;
+
+import com.johannesbrodwall.pki.ca.LiquidPkiCertificateAuthority;
+import com.johannesbrodwall.pki.util.SunCertificateUtil;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.x509.CertificateInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RemoteCaSignerTest {
+
+    private final ZonedDateTime now = ZonedDateTime.now();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private KeyPairGenerator generator;
+    private KeyPair caKeyPair;
+    private X509Certificate caCertificate;
+    private CaSignerServer server;
+
+    @BeforeEach
+    void setUp() throws GeneralSecurityException, IOException {
+        generator = KeyPairGenerator.getInstance("EC");
+        caKeyPair = generator.generateKeyPair();
+        caCertificate = new LiquidPkiCertificateAuthority(Period.ofDays(1), caKeyPair, "CN=Remote CA", now).getCaCertificate();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        scheduler.shutdownNow();
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void shouldIssueThroughRemoteSigner() throws GeneralSecurityException, IOException {
+        server = CaSignerServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), new InMemoryCaSigner(caKeyPair), caCertificate);
+        try (RemoteCaSigner signer = RemoteCaSigner.connect(server.getLocalAddress(), 8)) {
+            assertThat(signer.getSignatureAlgorithm()).isEqualTo("SHA256withECDSA");
+            LiquidPkiCertificateAuthority certificateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), signer, caCertificate);
+
+            KeyPair keyPair = generator.generateKeyPair();
+            X509Certificate certificate = certificateAuthority.issueCertificate(SunCertificateUtil.createCsr(keyPair, "CN=Client"), now);
+            certificate.verify(caCertificate.getPublicKey());
+            assertThat(certificate.getPublicKey()).isEqualTo(keyPair.getPublic());
+        }
+    }
+
+    @Test
+    void shouldKeepManyRequestsInFlight() throws GeneralSecurityException, IOException {
+        SlowSigner slowSigner = new SlowSigner(new InMemoryCaSigner(caKeyPair), Duration.ofMillis(200));
+        server = CaSignerServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), slowSigner, caCertificate);
+        try (RemoteCaSigner signer = RemoteCaSigner.connect(server.getLocalAddress(), 32)) {
+            LiquidPkiCertificateAuthority certificateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), signer, caCertificate);
+            byte[] csr = SunCertificateUtil.createCsr(generator.generateKeyPair(), "CN=Client");
+
+            long start = System.currentTimeMillis();
+            List<CompletableFuture<X509Certificate>> certificates = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                certificates.add(certificateAuthority.issueCertificateAsync(csr, now));
+            }
+            for (X509Certificate certificate : CaSigner.await(CaSigner.allOf(certificates))) {
+                certificate.verify(caCertificate.getPublicKey());
+            }
+            assertThat(System.currentTimeMillis() - start).isLessThan(20 * 200 / 2);
+            assertThat(slowSigner.maxConcurrent.get()).isGreaterThan(1);
+            assertThat(signer.getPendingCount()).isZero();
+        }
+    }
+
+    @Test
+    void shouldIssueBatch() throws GeneralSecurityException, IOException {
+        server = CaSignerServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), new InMemoryCaSigner(caKeyPair), caCertificate);
+        try (RemoteCaSigner signer = RemoteCaSigner.connect(server.getLocalAddress(), 4)) {
+            LiquidPkiCertificateAuthority certificateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), signer, caCertificate);
+            List<byte[]> csrs = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                csrs.add(SunCertificateUtil.createCsr(generator.generateKeyPair(), "CN=Client " + i));
+            }
+            List<X509Certificate> certificates = CaSigner.await(certificateAuthority.issueCertificates(csrs, now));
+            assertThat(certificates).hasSize(10);
+            assertThat(certificates.get(7).getSubjectX500Principal().getName()).isEqualTo("CN=Client 7");
+            for (X509Certificate certificate : certificates) {
+                certificate.verify(caCertificate.getPublicKey());
+            }
+        }
+    }
+
+    @Test
+    void shouldRejectSignerForOtherKey() throws GeneralSecurityException {
+        InMemoryCaSigner otherSigner = new InMemoryCaSigner(generator.generateKeyPair());
+        assertThatThrownBy(() -> new LiquidPkiCertificateAuthority(Period.ofDays(1), otherSigner, caCertificate))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("CN=Remote CA");
+    }
+
+    @Test
+    void shouldNotCompleteSignaturesOnReaderThread() throws Exception {
+        server = CaSignerServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), new InMemoryCaSigner(caKeyPair), caCertificate);
+        try (RemoteCaSigner signer = RemoteCaSigner.connect(server.getLocalAddress(), 8)) {
+            byte[] toBeSigned = new CertificateInfo()
+                    .issuerName(new X500Name("CN=Remote CA"))
+                    .subjectName(new X500Name("CN=Client"))
+                    .publicKey(generator.generateKeyPair().getPublic())
+                    .toBeSigned(signer.getSignatureAlgorithm());
+            CompletableFuture<byte[]> second = new CompletableFuture<>();
+            CompletableFuture<byte[]> first = signer.sign(toBeSigned)
+                    .thenApply(signature -> second.join());
+            signer.sign(toBeSigned).whenComplete((signature, e) -> second.complete(signature));
+
+            assertThat(first.get(10, TimeUnit.SECONDS)).isNotEmpty();
+        }
+    }
+
+    @Test
+    void shouldOnlyListenOnLoopbackAddresses() {
+        assertThatThrownBy(() -> CaSignerServer.start(new InetSocketAddress(0), new InMemoryCaSigner(caKeyPair), caCertificate))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("not authenticated");
+    }
+
+    @Test
+    void shouldOnlySignCertificatesIssuedByItsCa() throws GeneralSecurityException, IOException {
+        server = CaSignerServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), new InMemoryCaSigner(caKeyPair), caCertificate);
+        try (RemoteCaSigner signer = RemoteCaSigner.connect(server.getLocalAddress(), 8)) {
+            assertThatThrownBy(() -> CaSigner.await(signer.sign("arbitrary message".getBytes())))
+                    .isInstanceOf(SignatureException.class)
+                    .hasMessageContaining("Not a TBSCertificate");
+
+            byte[] otherIssuer = new CertificateInfo()
+                    .issuerName(new X500Name("CN=Other CA"))
+                    .subjectName(new X500Name("CN=Client"))
+                    .publicKey(generator.generateKeyPair().getPublic())
+                    .toBeSigned(signer.getSignatureAlgorithm());
+            assertThatThrownBy(() -> CaSigner.await(signer.sign(otherIssuer)))
+                    .isInstanceOf(SignatureException.class)
+                    .hasMessageContaining("CN=Other CA");
+
+            X509Certificate certificate = new LiquidPkiCertificateAuthority(Period.ofDays(1), signer, caCertificate)
+                    .issueClientCertificate("CN=Client", now, generator.generateKeyPair().getPublic());
+            certificate.verify(caCertificate.getPublicKey());
+        }
+    }
+
+    @Test
+    void shouldSignOverUnixDomainSocket(@TempDir Path directory) throws GeneralSecurityException, IOException {
+        SocketAddress address;
+        try {
+            address = SignerProtocol.parseAddress("unix:" + directory.resolve("signer.sock"));
+        } catch (IllegalArgumentException e) {
+            Assumptions.assumeTrue(false, "Unix domain sockets require Java 16+");
+            return;
+        }
+        server = CaSignerServer.start(address, new InMemoryCaSigner(caKeyPair), caCertificate);
+        try (RemoteCaSigner signer = RemoteCaSigner.connect(address, 8)) {
+            X509Certificate certificate = new LiquidPkiCertificateAuthority(Period.ofDays(1), signer, caCertificate)
+                    .issueClientCertificate("CN=Client", now, generator.generateKeyPair().getPublic());
+            certificate.verify(caCertificate.getPublicKey());
+        }
+    }
+
+    private class SlowSigner implements CaSigner {
+        private final CaSigner delegate;
+        private final Duration delay;
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        SlowSigner(CaSigner delegate, Duration delay) {
+            this.delegate = delegate;
+            this.delay = delay;
+        }
+
+        @Override
+        public String getSignatureAlgorithm() {
+            return delegate.getSignatureAlgorithm();
+        }
+
+        @Override
+        public PublicKey getPublicKey() {
+            return delegate.getPublicKey();
+        }
+
+        @Override
+        public CompletableFuture<byte[]> sign(byte[] toBeSigned) {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            CompletableFuture<byte[]> result = new CompletableFuture<>();
+            scheduler.schedule(() -> {
+                concurrent.decrementAndGet();
+                delegate.sign(toBeSigned).whenComplete((signature, e) -> {
+                    if (e != null) result.completeExceptionally(e);
+                    else result.complete(signature);
+                });
+            }, delay.toMillis(), TimeUnit.MILLISECONDS);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.johannesbrodwall.pki.https.client;
+
+import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.LiquidPkiCertificateAuthority;
+import com.johannesbrodwall.pki.infrastructure.SslServerConnector;
+import com.johannesbrodwall.pki.infrastructure.metrics.MetricsRegistry;
+import com.johannesbrodwall.pki.util.SslUtil;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PooledHttpsClientTest {
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final Server server = new Server();
+    private final SslServerConnector connector = new SslServerConnector(server, metrics);
+    private final ZonedDateTime now = ZonedDateTime.now();
+    private SSLContext clientContext;
+    private URI baseUri;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        CertificateAuthority certificateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), SslUtil.generateKeyPair("P-256"), "CN=Pool CA", now);
+        KeyPair serverKeyPair = SslUtil.generateKeyPair("P-256");
+        X509Certificate serverCertificate = certificateAuthority.issueServerCertificate("localhost", "CN=localhost", now, serverKeyPair.getPublic());
+        KeyPair clientKeyPair = SslUtil.generateKeyPair("P-256");
+        X509Certificate clientCertificate = certificateAuthority.issueClientCertificate("CN=Pooled client", now, clientKeyPair.getPublic());
+        List<X509Certificate> trusted = List.of(certificateAuthority.getCaCertificate());
+
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                if (target.equals("/missing")) {
+                    response.sendError(404);
+                } else {
+                    response.getWriter().write("path " + target);
+                }
+                baseRequest.setHandled(true);
+            }
+        });
+        connector.start(
+                new InetSocketAddress("localhost", 0),
+                SslUtil.createSslContext(SslUtil.createKeyManagers(serverKeyPair, serverCertificate), SslUtil.createTrustManagers(trusted)),
+                false,
+                true
+        );
+        server.addConnector(connector);
+        server.start();
+
+        clientContext = SslUtil.createSslContext(SslUtil.createKeyManagers(clientKeyPair, clientCertificate), SslUtil.createTrustManagers(trusted));
+        baseUri = URI.create("https://localhost:" + connector.getLocalPort() + "/");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    void shouldReuseConnectionsAcrossRequests() throws Exception {
+        PooledHttpsClient client = new PooledHttpsClient(baseUri, clientContext)
+                .version(HttpClient.Version.HTTP_1_1)
+                .maxConnections(4);
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            paths.add("item/" + i);
+        }
+
+        List<String> bodies = client.fetchAll(paths).get(10, TimeUnit.SECONDS);
+
+        assertThat(bodies).hasSize(40).startsWith("path /item/0", "path /item/1").endsWith("path /item/39");
+        assertThat(handshakes()).isBetween(1, 4);
+    }
+
+    @Test
+    void shouldFallBackToHttp11WithoutAlpn() throws IOException {
+        PooledHttpsClient client = new PooledHttpsClient(baseUri, clientContext);
+        assertThat(client.fetch("first")).isEqualTo("path /first");
+        assertThat(client.fetch("second")).isEqualTo("path /second");
+        assertThat(handshakes()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldFailOnErrorResponse() {
+        PooledHttpsClient client = new PooledHttpsClient(baseUri, clientContext);
+        assertThatThrownBy(() -> client.fetch("missing"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("404");
+    }
+
+    @Test
+    void shouldReportLatencyPercentiles() throws Exception {
+        PooledHttpsClient client = new PooledHttpsClient(baseUri, clientContext).maxConnections(2);
+        HttpsLoadDriver.Result result = HttpsLoadDriver.run("test", 2, 50, () -> client.fetchAsync("load"));
+
+        assertThat(result.getCount()).isEqualTo(50);
+        assertThat(result.getErrors()).isZero();
+        assertThat(result.getPercentileMillis(50)).isPositive().isLessThanOrEqualTo(result.getPercentileMillis(99));
+        assertThat(result.toString()).contains("p99");
+    }
+
+    @Test
+    void shouldCountFailedRequests() throws Exception {
+        PooledHttpsClient client = new PooledHttpsClient(baseUri, clientContext);
+        HttpsLoadDriver.Result result = HttpsLoadDriver.run("test", 3, 10, () -> client.fetchAsync("missing"));
+
+        assertThat(result.getCount()).isZero();
+        assertThat(result.getErrors()).isEqualTo(10);
+    }
+
+    private int handshakes() {
+        int count = 0;
+        for (String line : metrics.toPrometheus().split("\n")) {
+            if (line.startsWith("https_handshakes_total{")) {
+                count += (int) Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,184 @@
+package com.johannesbrodwall.pki.infrastructure;
+
+import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.LiquidPkiCertificateAuthority;
+import com.johannesbrodwall.pki.infrastructure.metrics.MetricsRegistry;
+import com.johannesbrodwall.pki.util.SslUtil;
+import org.actioncontroller.config.ConfigMap;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SslServerConnectorTest {
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final Server server = new Server();
+    private final SslServerConnector connector = new SslServerConnector(server, metrics);
+    private final ZonedDateTime now = ZonedDateTime.now();
+    private CertificateAuthority certificateAuthority;
+    private SSLContext serverContext;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        certificateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), SslUtil.generateKeyPair("P-256"), "CN=Connector CA", now);
+        KeyPair serverKeyPair = SslUtil.generateKeyPair("P-256");
+        X509Certificate serverCertificate = certificateAuthority.issueServerCertificate("localhost", "CN=localhost", now, serverKeyPair.getPublic());
+
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.getWriter().write("ok");
+                baseRequest.setHandled(true);
+            }
+        });
+        serverContext = SslUtil.createSslContext(
+                SslUtil.createKeyManagers(serverKeyPair, serverCertificate),
+                SslUtil.createTrustManagers(List.of(certificateAuthority.getCaCertificate()))
+        );
+        connector.start(new InetSocketAddress("localhost", 0), serverContext, true, false);
+        server.addConnector(connector);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    void shouldCountHandshakesByClientAuthentication() throws Exception {
+        SSLContext anonymousClient = SslUtil.createSslContext(null, SslUtil.createTrustManagers(List.of(certificateAuthority.getCaCertificate())));
+        get(anonymousClient);
+
+        KeyPair clientKeyPair = SslUtil.generateKeyPair("P-256");
+        X509Certificate clientCertificate = certificateAuthority.issueClientCertificate("CN=Client", now, clientKeyPair.getPublic());
+        SSLContext authenticatedClient = SslUtil.createSslContext(
+                SslUtil.createKeyManagers(clientKeyPair, clientCertificate),
+                SslUtil.createTrustManagers(List.of(certificateAuthority.getCaCertificate()))
+        );
+        get(authenticatedClient);
+
+        assertThat(metrics.toPrometheus())
+                .containsPattern("https_handshakes_total\\{.*resumed=\"false\",client_auth=\"none\"} 1")
+                .containsPattern("https_handshakes_total\\{.*resumed=\"false\",client_auth=\"certificate\"} 1")
+                .contains("https_handshake_seconds_count{resumed=\"false\"} 2");
+    }
+
+    @Test
+    void shouldCountResumedHandshakes() throws Exception {
+        SSLContext client = SslUtil.createSslContext(null, SslUtil.createTrustManagers(List.of(certificateAuthority.getCaCertificate())));
+        get(client);
+        get(client);
+
+        assertThat(metrics.toPrometheus())
+                .containsPattern("https_handshakes_total\\{.*resumed=\"false\",client_auth=\"none\"} 1")
+                .containsPattern("https_handshakes_total\\{.*resumed=\"true\",client_auth=\"none\"} 1")
+                .contains("https_handshake_seconds_count{resumed=\"true\"} 1");
+    }
+
+    @Test
+    void shouldCountFailedHandshakes() throws Exception {
+        CertificateAuthority otherAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), SslUtil.generateKeyPair("P-256"), "CN=Other CA", now);
+        SSLContext untrustingClient = SslUtil.createSslContext(null, SslUtil.createTrustManagers(List.of(otherAuthority.getCaCertificate())));
+
+        assertThatThrownBy(() -> get(untrustingClient)).isInstanceOf(IOException.class);
+        Thread.sleep(100);
+        assertThat(metrics.toPrometheus()).containsPattern("https_handshake_failures_total\\{exception=\".*\"} 1");
+    }
+
+    @Test
+    void shouldNegotiateHttp2() throws Exception {
+        assertThat(connector.getProtocols()).containsExactly("ssl", "alpn", "h2", "http/1.1");
+        HttpResponse<String> response = getWithHttpClient();
+        assertThat(response.body()).isEqualTo("ok");
+        assertThat(response.version()).isEqualTo(HttpClient.Version.HTTP_2);
+    }
+
+    @Test
+    void shouldNegotiateHttp2WithClientCertificate() throws Exception {
+        KeyPair clientKeyPair = SslUtil.generateKeyPair("P-256");
+        X509Certificate clientCertificate = certificateAuthority.issueClientCertificate("CN=Client", now, clientKeyPair.getPublic());
+        SSLContext authenticatedClient = SslUtil.createSslContext(
+                SslUtil.createKeyManagers(clientKeyPair, clientCertificate),
+                SslUtil.createTrustManagers(List.of(certificateAuthority.getCaCertificate()))
+        );
+
+        HttpResponse<String> response = getWithHttpClient(authenticatedClient);
+        assertThat(response.body()).isEqualTo("ok");
+        assertThat(response.version()).isEqualTo(HttpClient.Version.HTTP_2);
+        assertThat(metrics.toPrometheus()).containsPattern("https_handshakes_total\\{.*client_auth=\"certificate\"} 1");
+    }
+
+    @Test
+    void shouldServeOnlyHttp11WhenHttp2IsDisabled() throws Exception {
+        connector.stop();
+        connector.start(new InetSocketAddress("localhost", 0), serverContext, true, false, new Http2Settings(false, 128, 65535, 65535));
+
+        assertThat(connector.getProtocols()).containsExactly("ssl", "http/1.1");
+        assertThat(getWithHttpClient().version()).isEqualTo(HttpClient.Version.HTTP_1_1);
+    }
+
+    @Test
+    void shouldReadHttp2SettingsFromConfig() {
+        ConfigMap config = new ConfigMap((name, path, filter) -> {}, Map.of(
+                "http2.maxConcurrentStreams", "16",
+                "http2.initialStreamRecvWindow", "65535"
+        ));
+        Http2Settings settings = Http2Settings.fromConfig(config);
+
+        assertThat(settings.isEnabled()).isTrue();
+        assertThat(settings.getMaxConcurrentStreams()).isEqualTo(16);
+        assertThat(settings.getInitialStreamRecvWindow()).isEqualTo(65535);
+        assertThat(settings.getInitialSessionRecvWindow()).isEqualTo(Http2Settings.DEFAULT.getInitialSessionRecvWindow());
+        assertThat(settings.isSameAs(Http2Settings.DEFAULT)).isFalse();
+        assertThat(Http2Settings.fromConfig(new ConfigMap((name, path, filter) -> {}, Map.of())).isSameAs(Http2Settings.DEFAULT)).isTrue();
+    }
+
+    private HttpResponse<String> getWithHttpClient() throws IOException, InterruptedException, GeneralSecurityException {
+        return getWithHttpClient(SslUtil.createSslContext(null, SslUtil.createTrustManagers(List.of(certificateAuthority.getCaCertificate()))));
+    }
+
+    private HttpResponse<String> getWithHttpClient(SSLContext sslContext) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .sslContext(sslContext)
+                .version(HttpClient.Version.HTTP_2)
+                .build();
+        return client.send(HttpRequest.newBuilder(URI.create("https://localhost:" + connector.getLocalPort() + "/")).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void get(SSLContext sslContext) throws IOException {
+        HttpsURLConnection connection = (HttpsURLConnection) new URL("https://localhost:" + connector.getLocalPort() + "/").openConnection();
+        connection.setSSLSocketFactory(sslContext.getSocketFactory());
+        // A new connection, and so a new handshake, for every request
+        connection.setRequestProperty("Connection", "close");
+        try (InputStream input = connection.getInputStream()) {
+            assertThat(new String(input.readAllBytes())).isEqualTo("ok");
+        }
+    }
+}
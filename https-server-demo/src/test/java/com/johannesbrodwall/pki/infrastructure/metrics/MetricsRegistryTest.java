@@ -0,0 +1,57 @@
+package com.johannesbrodwall.pki.infrastructure.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MetricsRegistryTest {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @Test
+    void shouldWriteCountersWithLabels() {
+        registry.counter("ca_certificates_issued_total", "Certificates issued", "kind", "server").increment();
+        registry.counter("ca_certificates_issued_total", "Certificates issued", "kind", "server").increment();
+        registry.counter("ca_certificates_issued_total", "Certificates issued", "kind", "client").increment();
+
+        assertThat(registry.toPrometheus()).isEqualTo(
+                "# HELP ca_certificates_issued_total Certificates issued\n" +
+                "# TYPE ca_certificates_issued_total counter\n" +
+                "ca_certificates_issued_total{kind=\"client\"} 1\n" +
+                "ca_certificates_issued_total{kind=\"server\"} 2\n"
+        );
+    }
+
+    @Test
+    void shouldWriteCumulativeHistogramBuckets() {
+        Timer timer = registry.timer("request_seconds", "Request time");
+        timer.record(TimeUnit.MICROSECONDS.toNanos(300));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(20));
+        timer.record(TimeUnit.SECONDS.toNanos(30));
+
+        assertThat(registry.toPrometheus())
+                .contains("request_seconds_bucket{le=\"5.0E-4\"} 1\n")
+                .contains("request_seconds_bucket{le=\"0.01\"} 1\n")
+                .contains("request_seconds_bucket{le=\"0.025\"} 2\n")
+                .contains("request_seconds_bucket{le=\"10.0\"} 2\n")
+                .contains("request_seconds_bucket{le=\"+Inf\"} 3\n")
+                .contains("request_seconds_sum 30.0203\n")
+                .contains("request_seconds_count 3\n");
+    }
+
+    @Test
+    void shouldEscapeLabelValues() {
+        registry.gauge("connections", "Open connections", "peer", "CN=\"quoted\"").increment();
+        assertThat(registry.toPrometheus()).contains("connections{peer=\"CN=\\\"quoted\\\"\"} 1\n");
+    }
+
+    @Test
+    void shouldRejectMetricWithDifferentType() {
+        registry.counter("requests", "Requests");
+        assertThatThrownBy(() -> registry.timer("requests", "Requests"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,164 @@
+package com.johannesbrodwall.pki.infrastructure.tracing;
+
+import org.jsonbuddy.JsonObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TracerTest {
+
+    private final Tracer tracer = new Tracer();
+    private final List<Span> exported = new ArrayList<>();
+
+    TracerTest() {
+        tracer.setExporter(span -> {
+            synchronized (exported) {
+                exported.add(span);
+            }
+        });
+    }
+
+    @Test
+    void shouldNestSpansOnThread() {
+        tracer.setSampleRate(1);
+        try (Span root = tracer.startSpan("request")) {
+            try (Span ignored = tracer.startSpan("parsePkcs10")) {
+                assertThat(tracer.currentSpan().getName()).isEqualTo("parsePkcs10");
+            }
+            assertThat(tracer.currentSpan()).isSameAs(root);
+        }
+        assertThat(tracer.currentSpan().isSampled()).isFalse();
+
+        assertThat(exported).extracting(Span::getName).containsExactly("parsePkcs10", "request");
+        assertThat(exported.get(0).getParentId()).isEqualTo(exported.get(1).getSpanId());
+        assertThat(exported.get(0).getTraceId()).isEqualTo(exported.get(1).getTraceId());
+        assertThat(exported.get(1).getParentId()).isNull();
+    }
+
+    @Test
+    void shouldPropagateSpanToOtherThreads() throws Exception {
+        tracer.setSampleRate(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<String> future;
+            try (Span ignored = tracer.startSpan("request")) {
+                Span signing = tracer.startSpan("sign");
+                future = signing.endWhenComplete(CompletableFuture.supplyAsync(() -> {
+                    try (Span ignored2 = tracer.startSpan("computeSignature")) {
+                        return Thread.currentThread().getName();
+                    }
+                }, tracer.currentSpan().wrap(executor)));
+                assertThat(tracer.currentSpan().getName()).isEqualTo("request");
+            }
+            String signerThread = future.get();
+
+            Span request = find("request"), sign = find("sign"), computeSignature = find("computeSignature");
+            assertThat(sign.getParentId()).isEqualTo(request.getSpanId());
+            assertThat(computeSignature.getParentId()).isEqualTo(sign.getSpanId());
+            assertThat(computeSignature.getThreadName()).isEqualTo(signerThread).isNotEqualTo(request.getThreadName());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void shouldKeepUnsampledTracesUnsampled() {
+        tracer.setSampleRate(0);
+        try (Span root = tracer.startSpan("request")) {
+            try (Span child = tracer.startSpan("parsePkcs10")) {
+                assertThat(child.isSampled()).isFalse();
+                child.tag("ignored", "value");
+            }
+            tracer.setSampleRate(1);
+            assertThat(tracer.startSpan("sign").isSampled()).as("child of unsampled root").isFalse();
+            assertThat(root.isSampled()).isFalse();
+        }
+        assertThat(exported).isEmpty();
+        assertThat(tracer.startSpan("next request").isSampled()).isTrue();
+    }
+
+    @Test
+    void shouldNotAllocateWhenSamplingIsOff() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        tracer.setSampleRate(0);
+        for (int i = 0; i < 10_000; i++) {
+            traceUnsampled();
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            traceUnsampled();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertThat(allocated).isLessThan(10_000);
+    }
+
+    private void traceUnsampled() {
+        try (Span ignored = tracer.startSpan("request")) {
+            try (Span span = tracer.startSpan("buildTbs")) {
+                span.tag("template", "server");
+            }
+            tracer.currentSpan().wrap(Runnable::run);
+        }
+    }
+
+    @Test
+    void shouldWriteSpansAsJsonLines(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("spans.jsonl");
+        try (JsonLinesSpanExporter exporter = new JsonLinesSpanExporter(file)) {
+            tracer.setExporter(exporter);
+            tracer.setSampleRate(1);
+            try (Span root = tracer.startSpan("request")) {
+                root.tag("path", "/ca/issueCertificate");
+                tracer.startSpan("encodePem").close();
+            }
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertThat(lines).hasSize(2);
+        JsonObject child = JsonObject.parse(lines.get(0));
+        JsonObject root = JsonObject.parse(lines.get(1));
+        assertThat(child.requiredString("name")).isEqualTo("encodePem");
+        assertThat(child.requiredString("parentId")).isEqualTo(root.requiredString("spanId"));
+        assertThat(root.requiredObject("tags").requiredString("path")).isEqualTo("/ca/issueCertificate");
+        assertThat(root.requiredLong("durationMicros")).isGreaterThanOrEqualTo(child.requiredLong("durationMicros"));
+        assertThat(root.value("parentId")).isEmpty();
+    }
+
+    @Test
+    void shouldExportToNewExporterAfterReplacingIt(@TempDir Path directory) throws IOException {
+        JsonLinesSpanExporter oldExporter = new JsonLinesSpanExporter(directory.resolve("old.jsonl"));
+        tracer.setExporter(oldExporter);
+        tracer.setSampleRate(1);
+        Span inFlight = tracer.startSpan("request");
+
+        try (JsonLinesSpanExporter newExporter = new JsonLinesSpanExporter(directory.resolve("new.jsonl"))) {
+            tracer.setExporter(newExporter);
+            oldExporter.close();
+            inFlight.close();
+            oldExporter.export(inFlight);
+        }
+
+        assertThat(Files.readAllLines(directory.resolve("old.jsonl"))).isEmpty();
+        assertThat(Files.readAllLines(directory.resolve("new.jsonl")))
+                .singleElement()
+                .satisfies(line -> assertThat(JsonObject.parse(line).requiredString("name")).isEqualTo("request"));
+    }
+
+    private Span find(String name) {
+        synchronized (exported) {
+            return exported.stream().filter(s -> s.getName().equals(name)).findFirst().orElseThrow();
+        }
+    }
+}
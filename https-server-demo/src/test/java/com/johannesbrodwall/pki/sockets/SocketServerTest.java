@@ -2,6 +2,7 @@ package com.johannesbrodwall.pki.sockets;
 
 import com.johannesbrodwall.pki.ca.CertificateAuthority;
 import com.johannesbrodwall.pki.ca.SunCertificateAuthority;
+import com.johannesbrodwall.pki.util.CachingTrustManager;
 import com.johannesbrodwall.pki.util.SslUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -54,6 +55,24 @@ class SocketServerTest {
         assertThat(response).isEqualTo("Hello " + clientCertificate.getSubjectDN());
     }
 
+    @Test
+    void serverShouldValidateClientsWithCachingTrustManager() throws GeneralSecurityException, IOException {
+        TrustManager[] cachingTrustManagers = SslUtil.createCachingTrustManagers(List.of(certificateAuthority.getCaCertificate()));
+        SocketServer server = new SocketServer(SslUtil.createSslContext(serverKeyManagers, cachingTrustManagers));
+        server.start();
+
+        KeyPair clientKeyPair = generator.generateKeyPair();
+        X509Certificate clientCertificate = certificateAuthority.issueClientCertificate("CN=Client,O=Client Org", now, clientKeyPair.getPublic());
+        KeyManager[] clientKeyManagers = SslUtil.createKeyManagers(clientKeyPair, clientCertificate);
+
+        SocketClient client = new SocketClient(SslUtil.createSslContext(clientKeyManagers, caTrustManagers));
+        for (int i = 0; i < 2; i++) {
+            String response = client.run(InetSocketAddress.createUnresolved("localhost", server.getPort()));
+            assertThat(response).isEqualTo("Hello " + clientCertificate.getSubjectDN());
+        }
+        assertThat(((CachingTrustManager) cachingTrustManagers[0]).getCachedChainCount()).isEqualTo(1);
+    }
+
     @Test
     void serverAcceptUnauthorizedClients() throws GeneralSecurityException, IOException {
         SocketServer server = new SocketServer(SslUtil.createSslContext(serverKeyManagers, caTrustManagers));
@@ -0,0 +1,185 @@
+package com.johannesbrodwall.pki.util;
+
+import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.LiquidPkiCertificateAuthority;
+import com.johannesbrodwall.pki.ca.SunCertificateAuthority;
+import com.johannesbrodwall.pki.ca.signer.CaSigner;
+import io.liquidpki.common.Extension;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.der.Der;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingTrustManagerTest {
+
+    private KeyPairGenerator generator;
+    private CertificateAuthority certificateAuthority;
+    private final ZonedDateTime now = ZonedDateTime.now();
+    private Instant currentTime = Instant.now();
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return currentTime;
+        }
+    };
+    private CachingTrustManager trustManager;
+    private X509Certificate clientCertificate;
+
+    @BeforeEach
+    void setUp() throws GeneralSecurityException, IOException {
+        generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        certificateAuthority = new SunCertificateAuthority(Period.ofDays(1), generator.generateKeyPair(), "CN=Test Root CA,O=Certificate Fun Corp", now.minusHours(1));
+        trustManager = new CachingTrustManager(List.of(certificateAuthority.getCaCertificate()), Duration.ofMinutes(5), clock);
+        clientCertificate = certificateAuthority.issueClientCertificate("CN=Client,O=Client Org", now.minusHours(1), generator.generateKeyPair().getPublic());
+    }
+
+    @Test
+    void shouldCacheValidatedChain() throws CertificateException {
+        trustManager.checkClientTrusted(new X509Certificate[] { clientCertificate }, "RSA");
+        assertThat(trustManager.getCachedChainCount()).isEqualTo(1);
+        trustManager.checkClientTrusted(new X509Certificate[] { clientCertificate }, "RSA");
+        assertThat(trustManager.getCachedChainCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectUntrustedCertificate() throws GeneralSecurityException, IOException {
+        CertificateAuthority otherAuthority = new SunCertificateAuthority(Period.ofDays(1), generator.generateKeyPair(), "CN=Other CA", now.minusHours(1));
+        X509Certificate untrusted = otherAuthority.issueClientCertificate("CN=Intruder", now.minusHours(1), generator.generateKeyPair().getPublic());
+
+        assertThatThrownBy(() -> trustManager.checkClientTrusted(new X509Certificate[] { untrusted }, "RSA"))
+                .isInstanceOf(CertificateException.class);
+        assertThat(trustManager.getCachedChainCount()).isZero();
+    }
+
+    @Test
+    void shouldCheckExtendedKeyUsageForEachSideOfTheHandshake() throws GeneralSecurityException, IOException {
+        LiquidPkiCertificateAuthority templateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), SslUtil.generateKeyPair("P-256"), "CN=Template CA", now.minusHours(1));
+        CachingTrustManager trustManager = new CachingTrustManager(List.of(templateAuthority.getCaCertificate()), Duration.ofMinutes(5), clock);
+        X509Certificate client = templateAuthority.issueClientCertificate("CN=Client", now.minusHours(1), SslUtil.generateKeyPair("P-256").getPublic());
+
+        trustManager.checkClientTrusted(new X509Certificate[] { client }, "EC");
+        assertThatThrownBy(() -> trustManager.checkServerTrusted(new X509Certificate[] { client }, "EC"))
+                .isInstanceOf(CertificateException.class)
+                .hasMessageContaining("does not include " + Extension.ExtendedKeyUsageExtensionType.SERVER_AUTH);
+        trustManager.checkClientTrusted(new X509Certificate[] { client }, "EC");
+        assertThat(trustManager.getValidationCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldRejectUnsupportedCriticalExtension() throws GeneralSecurityException, IOException {
+        LiquidPkiCertificateAuthority templateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), SslUtil.generateKeyPair("P-256"), "CN=Template CA", now.minusHours(1));
+        CachingTrustManager trustManager = new CachingTrustManager(List.of(templateAuthority.getCaCertificate()), Duration.ofMinutes(5), clock);
+        Extension policyConstraints = new Extension(new Der.SEQUENCE(List.of(
+                new Der.OBJECT_IDENTIFIER("2.5.29.36"), new Der.BOOLEAN(true), new Der.OCTET_STRING(new byte[] { 0x30, 0x00 })
+        )));
+        X509Certificate client = CaSigner.await(templateAuthority.issueCertificateAsync(
+                "client", new X500Name("CN=Client"), now.minusHours(1), SslUtil.generateKeyPair("P-256").getPublic(), List.of(policyConstraints)
+        ));
+
+        assertThatThrownBy(() -> trustManager.checkClientTrusted(new X509Certificate[] { client }, "EC"))
+                .isInstanceOf(CertificateException.class)
+                .hasMessageContaining("unsupported critical extension 2.5.29.36");
+        assertThat(trustManager.getCachedChainCount()).isZero();
+    }
+
+    @Test
+    void shouldRevalidateAfterTimeToLive() throws CertificateException {
+        trustManager.checkClientTrusted(new X509Certificate[] { clientCertificate }, "RSA");
+        assertThat(trustManager.getValidationCount()).isEqualTo(1);
+
+        currentTime = currentTime.plus(Duration.ofMinutes(4));
+        trustManager.checkClientTrusted(new X509Certificate[] { clientCertificate }, "RSA");
+        assertThat(trustManager.getValidationCount()).isEqualTo(1);
+
+        currentTime = currentTime.plus(Duration.ofMinutes(2));
+        trustManager.checkClientTrusted(new X509Certificate[] { clientCertificate }, "RSA");
+        assertThat(trustManager.getValidationCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldConsultRevocationCheckerForCachedChains() throws CertificateException {
+        trustManager.checkClientTrusted(new X509Certificate[] { clientCertificate }, "RSA");
+        trustManager.setRevocationChecker(certificate -> true);
+
+        assertThatThrownBy(() -> trustManager.checkClientTrusted(new X509Certificate[] { clientCertificate }, "RSA"))
+                .isInstanceOf(CertificateException.class)
+                .hasMessageContaining("Revoked");
+        assertThat(trustManager.getCachedChainCount()).isZero();
+        assertThat(trustManager.getValidationCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedChains() throws GeneralSecurityException, IOException {
+        CachingTrustManager boundedTrustManager = new CachingTrustManager(List.of(certificateAuthority.getCaCertificate()), Duration.ofMinutes(5), clock, 2);
+        X509Certificate[] clients = new X509Certificate[3];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = certificateAuthority.issueClientCertificate("CN=Client " + i, now.minusHours(1), generator.generateKeyPair().getPublic());
+        }
+        boundedTrustManager.checkClientTrusted(new X509Certificate[] { clients[0] }, "RSA");
+        boundedTrustManager.checkClientTrusted(new X509Certificate[] { clients[1] }, "RSA");
+        boundedTrustManager.checkClientTrusted(new X509Certificate[] { clients[0] }, "RSA");
+        boundedTrustManager.checkClientTrusted(new X509Certificate[] { clients[2] }, "RSA");
+        assertThat(boundedTrustManager.getCachedChainCount()).isEqualTo(2);
+        assertThat(boundedTrustManager.getValidationCount()).isEqualTo(3);
+
+        boundedTrustManager.checkClientTrusted(new X509Certificate[] { clients[0] }, "RSA");
+        assertThat(boundedTrustManager.getValidationCount()).isEqualTo(3);
+        boundedTrustManager.checkClientTrusted(new X509Certificate[] { clients[1] }, "RSA");
+        assertThat(boundedTrustManager.getValidationCount()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldEvictExpiredChainsWhenAddingNewOnes() throws GeneralSecurityException, IOException {
+        trustManager.checkClientTrusted(new X509Certificate[] { clientCertificate }, "RSA");
+        currentTime = currentTime.plus(Duration.ofMinutes(6));
+
+        X509Certificate otherClient = certificateAuthority.issueClientCertificate("CN=Other client", now.minusHours(1), generator.generateKeyPair().getPublic());
+        trustManager.checkClientTrusted(new X509Certificate[] { otherClient }, "RSA");
+        assertThat(trustManager.getCachedChainCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectRevokedCertificateEvenWhenCached() throws CertificateException {
+        trustManager.checkClientTrusted(new X509Certificate[] { clientCertificate }, "RSA");
+        trustManager.revoke(clientCertificate);
+        assertThat(trustManager.getCachedChainCount()).isZero();
+        assertThatThrownBy(() -> trustManager.checkClientTrusted(new X509Certificate[] { clientCertificate }, "RSA"))
+                .isInstanceOf(CertificateException.class)
+                .hasMessageContaining("Revoked");
+    }
+
+    @Test
+    void shouldConsultRevocationChecker() {
+        trustManager.setRevocationChecker(certificate -> certificate.tbsCertificate().serialNumber().equals(clientCertificate.getSerialNumber()));
+        assertThatThrownBy(() -> trustManager.checkClientTrusted(new X509Certificate[] { clientCertificate }, "RSA"))
+                .isInstanceOf(CertificateException.class)
+                .hasMessageContaining("Revoked");
+    }
+}
@@ -0,0 +1,134 @@
+package com.johannesbrodwall.pki.util;
+
+import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.LiquidPkiCertificateAuthority;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SslContextCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private final SslContextCache cache = new SslContextCache(16);
+    private CertificateAuthority certificateAuthority;
+    private Path keyFile;
+    private Path certificateFile;
+    private Path caFile;
+
+    @BeforeEach
+    void setUp() throws GeneralSecurityException, IOException {
+        certificateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), SslUtil.generateKeyPair("P-256"), "CN=Cache CA", ZonedDateTime.now());
+        keyFile = directory.resolve("server.key");
+        certificateFile = directory.resolve("server.crt");
+        caFile = directory.resolve("ca.crt");
+        writeServerKey();
+        SslUtil.writeCertificate(certificateAuthority.getCaCertificate(), caFile);
+    }
+
+    @Test
+    void shouldReturnSameContextForUnchangedFiles() throws Exception {
+        SSLContext first = cache.getSslContext(keyFile, certificateFile, "".toCharArray(), List.of(caFile));
+        SSLContext second = cache.getSslContext(keyFile, certificateFile, "".toCharArray(), List.of(caFile));
+        assertThat(second).isSameAs(first);
+        assertThat(cache.readPrivateKey(keyFile)).isSameAs(cache.readPrivateKey(keyFile));
+    }
+
+    @Test
+    void shouldNotReparseTouchedFile() throws Exception {
+        SSLContext first = cache.getSslContext(keyFile, certificateFile, "".toCharArray(), List.of(caFile));
+        Files.setLastModifiedTime(keyFile, FileTime.from(Instant.now().plusSeconds(10)));
+        assertThat(cache.getSslContext(keyFile, certificateFile, "".toCharArray(), List.of(caFile))).isSameAs(first);
+    }
+
+    @Test
+    void shouldReloadChangedKeyMaterial() throws Exception {
+        SSLContext first = cache.getSslContext(keyFile, certificateFile, "".toCharArray(), List.of(caFile));
+        byte[] originalKey = Files.readAllBytes(keyFile);
+        writeServerKey();
+        Files.setLastModifiedTime(keyFile, FileTime.from(Instant.now().plusSeconds(10)));
+        Files.setLastModifiedTime(certificateFile, FileTime.from(Instant.now().plusSeconds(10)));
+
+        assertThat(Files.readAllBytes(keyFile)).isNotEqualTo(originalKey);
+        SSLContext second = cache.getSslContext(keyFile, certificateFile, "".toCharArray(), List.of(caFile));
+        assertThat(second).isNotSameAs(first);
+        assertThat(cache.getSslContext(keyFile, certificateFile, "".toCharArray(), List.of(caFile))).isSameAs(second);
+    }
+
+    @Test
+    void shouldKeyOnTrustedCertificates() throws Exception {
+        SSLContext first = cache.getSslContext(keyFile, certificateFile, "".toCharArray(), List.of(caFile));
+        assertThat(cache.getSslContext(keyFile, certificateFile, "".toCharArray(), List.of())).isNotSameAs(first);
+    }
+
+    @Test
+    void shouldCacheKeyStoreContexts() throws Exception {
+        Path keyStoreFile = directory.resolve("server.p12");
+        KeyPair keyPair = SslUtil.generateKeyPair("P-256");
+        SslUtil.storeKeyStore(
+                SslUtil.createKeyStore(keyPair.getPrivate(), "secret".toCharArray(), certificateAuthority.issueClientCertificate("CN=server", ZonedDateTime.now(), keyPair.getPublic())),
+                keyStoreFile, "secret");
+
+        SSLContext first = cache.getSslContext(keyStoreFile, "secret", "secret", List.of(caFile));
+        assertThat(cache.getSslContext(keyStoreFile, "secret", "secret", List.of(caFile))).isSameAs(first);
+    }
+
+    @Test
+    void shouldLoadAgainWithOtherPasswords() throws Exception {
+        Path keyStoreFile = directory.resolve("server.p12");
+        KeyPair keyPair = SslUtil.generateKeyPair("P-256");
+        SslUtil.storeKeyStore(
+                SslUtil.createKeyStore(keyPair.getPrivate(), "secret".toCharArray(), certificateAuthority.issueClientCertificate("CN=server", ZonedDateTime.now(), keyPair.getPublic())),
+                keyStoreFile, "secret");
+
+        SSLContext first = cache.getSslContext(keyStoreFile, "secret", "secret", List.of(caFile));
+        assertThatThrownBy(() -> cache.getSslContext(keyStoreFile, "wrong", "wrong", List.of(caFile)))
+                .isInstanceOf(GeneralSecurityException.class);
+        assertThatThrownBy(() -> cache.getSslContext(keyStoreFile, "secret", "wrong", List.of(caFile)))
+                .isInstanceOf(GeneralSecurityException.class);
+        assertThat(cache.getSslContext(keyStoreFile, "secret", "secret", List.of(caFile))).isNotSameAs(first);
+    }
+
+    @Test
+    void shouldLoadOnceForConcurrentLookups() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<SSLContext>> contexts = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                contexts.add(executor.submit(() -> cache.getSslContext(keyFile, certificateFile, "".toCharArray(), List.of(caFile))));
+            }
+            SSLContext first = contexts.get(0).get();
+            for (Future<SSLContext> context : contexts) {
+                assertThat(context.get()).isSameAs(first);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void writeServerKey() throws GeneralSecurityException, IOException {
+        KeyPair keyPair = SslUtil.generateKeyPair("P-256");
+        SslUtil.writePrivateKey(keyPair.getPrivate(), keyFile);
+        SslUtil.writeCertificate(certificateAuthority.issueServerCertificate("localhost", "CN=localhost", ZonedDateTime.now(), keyPair.getPublic()), certificateFile);
+    }
+}
@@ -1,8 +1,11 @@
 package io.liquidpki.common;
 
 import io.liquidpki.der.Der;
+import io.liquidpki.der.Oid;
 
 import java.io.PrintStream;
+import java.security.Key;
+import java.security.interfaces.ECKey;
 import java.util.Iterator;
 import java.util.List;
 
@@ -20,7 +23,26 @@ public class AlgorithmIdentifier {
 
     public AlgorithmIdentifier(String algorithmOid) {
         this.algorithm = new Der.OBJECT_IDENTIFIER(algorithmOid);
-        parameters = null;
+        parameters = Oid.hasNullParameters(algorithmOid) ? new Der.NULL() : null;
+    }
+
+    /**
+     * The signature algorithm this library uses for a key: SHA512withRSA for RSA,
+     * ECDSA with the hash matching the curve size for EC, and Ed25519 for EdDSA keys
+     */
+    public static String defaultSignatureAlgorithm(Key key) {
+        switch (key.getAlgorithm()) {
+            case "RSA":
+                return "SHA512withRSA";
+            case "EC":
+                int fieldSize = ((ECKey) key).getParams().getCurve().getField().getFieldSize();
+                return fieldSize <= 256 ? "SHA256withECDSA" : fieldSize <= 384 ? "SHA384withECDSA" : "SHA512withECDSA";
+            case "EdDSA":
+            case "Ed25519":
+                return "Ed25519";
+            default:
+                throw new IllegalArgumentException("Unsupported key algorithm " + key.getAlgorithm());
+        }
     }
 
     public void dump(PrintStream out, String fieldName, String indent, boolean debug) {
@@ -29,11 +51,16 @@ public class AlgorithmIdentifier {
 
     public Der toDer() {
         return (parameters != null
-                ? new Der.SEQUENCE(List.of(algorithm, parameters, new Der.NULL()))
-                : new Der.SEQUENCE(List.of(algorithm, new Der.NULL())));
+                ? new Der.SEQUENCE(List.of(algorithm, parameters))
+                : new Der.SEQUENCE(List.of(algorithm)));
     }
 
     public String getAlgorithmOid() {
         return algorithm.getObjectIdentifier();
     }
+
+    /** The parameters, or null if absent */
+    public Der getParameters() {
+        return parameters;
+    }
 }
@@ -37,6 +37,15 @@ public class CertificateExtensions {
         this.extensions.add(new Extension(extension));
     }
 
+    public void add(Extension extension) {
+        this.extensions.add(extension);
+    }
+
+    /** Removes the extension with the given OID, returning false if there was none */
+    public boolean remove(String extnId) {
+        return extensions.removeIf(e -> extnId.equals(e.getExtnId()));
+    }
+
     public Extension.SANExtensionType sanExtension() {
         return extension(Extension.SANExtensionType.class);
     }
@@ -45,6 +54,33 @@ public class CertificateExtensions {
         return extension(Extension.KeyUsageExtensionType.class);
     }
 
+    public Extension.ExtendedKeyUsageExtensionType extendedKeyUsage() {
+        return extension(Extension.ExtendedKeyUsageExtensionType.class);
+    }
+
+    public List<Extension> getExtensions() {
+        return extensions;
+    }
+
+    public Extension find(String extnId) {
+        return extensions.stream()
+                .filter(e -> extnId.equals(e.getExtnId()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /** Returns the keyIdentifier of the subjectKeyIdentifier extension, or null if absent */
+    public byte[] subjectKeyIdentifier() {
+        Extension.SubjectKeyIdentifierExtensionType extension = extension(Extension.SubjectKeyIdentifierExtensionType.class);
+        return extension != null ? extension.keyIdentifier() : null;
+    }
+
+    /** Returns the keyIdentifier of the authorityKeyIdentifier extension, or null if absent */
+    public byte[] authorityKeyIdentifier() {
+        Extension.AuthorityKeyIdentifierExtensionType extension = extension(Extension.AuthorityKeyIdentifierExtensionType.class);
+        return extension != null ? extension.keyIdentifier() : null;
+    }
+
     public <T> T extension(Class<T> extensionType) {
         //noinspection unchecked
         return (T) extensions.stream()
@@ -4,18 +4,28 @@ import io.liquidpki.der.Der;
 import io.liquidpki.der.DerContextSpecificValue;
 
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class Extension {
     private static Map<String, Function<Der.OCTET_STRING, ExtensionType>> factory = Map.of(
+            "2.5.29.14", SubjectKeyIdentifierExtensionType::new,
             "2.5.29.15", KeyUsageExtensionType::new,
             "2.5.29.17", SANExtensionType::new,
-            "2.5.29.19", BasicConstraintExtensionType::new
+            "2.5.29.19", BasicConstraintExtensionType::new,
+            "2.5.29.37", ExtendedKeyUsageExtensionType::new,
+            "2.5.29.35", AuthorityKeyIdentifierExtensionType::new
     );
 
     private Der der;
@@ -55,6 +65,20 @@ public class Extension {
         return extensionType;
     }
 
+    public String getExtnId() {
+        return extnId.getObjectIdentifier();
+    }
+
+    /** Whether a relying party which doesn't understand this extension must reject the certificate */
+    public boolean isCritical() {
+        return critical != null && critical.boolValue();
+    }
+
+    /** The DER encoded extension value, that is, the contents of the extnValue OCTET STRING */
+    public byte[] extnValue() {
+        return ((Der.OCTET_STRING) extensionType.toDer()).byteArray();
+    }
+
     public interface ExtensionType {
         void dump(PrintStream out, String indent);
 
@@ -125,6 +149,13 @@ public class Extension {
             return getName(0x87);
         }
 
+        public List<String> dnsNames() {
+            return generalNames.stream()
+                    .filter(name -> name.getTag() == 0x82)
+                    .map(DerContextSpecificValue::stringValue)
+                    .collect(Collectors.toList());
+        }
+
         public String getName(int tag) {
             return generalNames.stream()
                     .filter(name -> name.getTag() == tag)
@@ -174,6 +205,10 @@ public class Extension {
             return "2.5.29.15";
         }
 
+        public KeyUsageExtensionType digitalSignature(boolean value) {
+            return setValue(0b10000000, value);
+        }
+
         public KeyUsageExtensionType keyCertSign(boolean value) {
             return setValue(0b00000100, value);
         }
@@ -182,7 +217,7 @@ public class Extension {
             return setValue(0b00100000, value);
         }
 
-        public ExtensionType crlSign(boolean value) {
+        public KeyUsageExtensionType crlSign(boolean value) {
             return setValue(0b00000010, value);
         }
 
@@ -199,6 +234,10 @@ public class Extension {
             return getValue(0b00000100);
         }
 
+        public boolean digitalSignature() {
+            return getValue(0b10000000);
+        }
+
         public boolean keyEncipherment() {
             return getValue(0b00100000);
         }
@@ -211,12 +250,18 @@ public class Extension {
     public static class BasicConstraintExtensionType implements ExtensionType {
 
         protected Der.BOOLEAN ca;
-        protected final Der.INTEGER pathLengthConstraint;
+        protected Der.INTEGER pathLengthConstraint;
 
         public BasicConstraintExtensionType(Der.OCTET_STRING der) {
             Iterator<Der> iterator = ((Der.SEQUENCE)Der.parse(der.byteArray())).iterator();
-            ca = iterator.hasNext() ? (Der.BOOLEAN) iterator.next() : null;
-            pathLengthConstraint = iterator.hasNext() ? (Der.INTEGER) iterator.next() : null;
+            Der next = iterator.hasNext() ? iterator.next() : null;
+            if (next instanceof Der.BOOLEAN) {
+                ca = (Der.BOOLEAN) next;
+                next = iterator.hasNext() ? iterator.next() : null;
+            } else {
+                ca = null;
+            }
+            pathLengthConstraint = (Der.INTEGER) next;
         }
 
         public BasicConstraintExtensionType() {
@@ -224,9 +269,13 @@ public class Extension {
             pathLengthConstraint = null;
         }
 
+        /** cA is DEFAULT FALSE, so DER leaves it out unless it's true */
         @Override
         public Der toDer() {
-            List<Der> children = new ArrayList<>(List.of(ca));
+            List<Der> children = new ArrayList<>();
+            if (ca()) {
+                children.add(ca);
+            }
             if (pathLengthConstraint != null) {
                 children.add(pathLengthConstraint);
             }
@@ -245,14 +294,207 @@ public class Extension {
             return "2.5.29.19";
         }
 
-        public ExtensionType ca(boolean ca) {
+        public BasicConstraintExtensionType ca(boolean ca) {
             this.ca = new Der.BOOLEAN(ca);
             return this;
         }
 
+        public BasicConstraintExtensionType pathLengthConstraint(int pathLengthConstraint) {
+            this.pathLengthConstraint = new Der.INTEGER(pathLengthConstraint);
+            return this;
+        }
+
         public boolean ca() {
-            return this.ca.boolValue();
+            return this.ca != null && this.ca.boolValue();
+        }
+
+        /** Returns the maximum number of intermediate certificates below this CA, or -1 if unlimited */
+        public int pathLengthConstraint() {
+            return pathLengthConstraint != null ? (int) pathLengthConstraint.longValue() : -1;
+        }
+    }
+
+    /** The purposes the certified key may be used for, beyond those in the KeyUsage */
+    public static class ExtendedKeyUsageExtensionType implements ExtensionType {
+        public static final String SERVER_AUTH = "1.3.6.1.5.5.7.3.1";
+        public static final String CLIENT_AUTH = "1.3.6.1.5.5.7.3.2";
+        public static final String ANY_EXTENDED_KEY_USAGE = "2.5.29.37.0";
+
+        protected List<Der.OBJECT_IDENTIFIER> keyPurposes = new ArrayList<>();
+
+        public ExtendedKeyUsageExtensionType(Der.OCTET_STRING der) {
+            Iterator<Der> iterator = ((Der.SEQUENCE) Der.parse(der.byteArray())).iterator();
+            while (iterator.hasNext()) {
+                keyPurposes.add((Der.OBJECT_IDENTIFIER) iterator.next());
+            }
+        }
+
+        public ExtendedKeyUsageExtensionType() {
+        }
+
+        @Override
+        public Der toDer() {
+            return new Der.OCTET_STRING(new Der.SEQUENCE(keyPurposes).toByteArray());
+        }
+
+        @Override
+        public void dump(PrintStream out, String indent) {
+            out.println(indent + "ExtendedKeyUsage");
+            keyPurposes.forEach(purpose -> out.println(indent + "  " + purpose.getName()));
+        }
+
+        @Override
+        public String getOid() {
+            return "2.5.29.37";
+        }
+
+        public ExtendedKeyUsageExtensionType keyPurpose(String keyPurposeId) {
+            keyPurposes.add(new Der.OBJECT_IDENTIFIER(keyPurposeId));
+            return this;
+        }
+
+        public List<String> keyPurposes() {
+            return keyPurposes.stream().map(Der.OBJECT_IDENTIFIER::getObjectIdentifier).collect(Collectors.toList());
+        }
+
+        /** True if the key may be used for the purpose, either explicitly or by anyExtendedKeyUsage */
+        public boolean permits(String keyPurposeId) {
+            List<String> purposes = keyPurposes();
+            return purposes.contains(keyPurposeId) || purposes.contains(ANY_EXTENDED_KEY_USAGE);
+        }
+    }
+
+    /**
+     * The keyIdentifier of the certified public key. {@link #forPublicKey} computes it as the SHA-1
+     * hash of the subjectPublicKey bits (https://tools.ietf.org/html/rfc5280#section-4.2.1.2, method 1)
+     * and remembers it per key, so a CA hashes its own key once.
+     */
+    public static class SubjectKeyIdentifierExtensionType implements ExtensionType {
+        private static final int KEY_IDENTIFIER_CACHE_SIZE = 1000;
+        private static final Map<ByteBuffer, byte[]> keyIdentifierCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, byte[]> eldest) {
+                return size() > KEY_IDENTIFIER_CACHE_SIZE;
+            }
+        });
+
+        protected byte[] keyIdentifier;
+
+        public SubjectKeyIdentifierExtensionType(Der.OCTET_STRING der) {
+            this.keyIdentifier = ((Der.OCTET_STRING) Der.parse(der.byteArray())).byteArray();
+        }
+
+        public SubjectKeyIdentifierExtensionType() {
+        }
+
+        public static SubjectKeyIdentifierExtensionType forPublicKey(PublicKey publicKey) {
+            return new SubjectKeyIdentifierExtensionType().keyIdentifier(keyIdentifier(publicKey));
+        }
+
+        /** Returns the SHA-1 hash of the subjectPublicKey BIT STRING of the key */
+        public static byte[] keyIdentifier(PublicKey publicKey) {
+            ByteBuffer encodedKey = ByteBuffer.wrap(publicKey.getEncoded());
+            byte[] keyIdentifier = keyIdentifierCache.get(encodedKey);
+            if (keyIdentifier == null) {
+                Iterator<Der> subjectPublicKeyInfo = ((Der.SEQUENCE) Der.parse(encodedKey.array())).iterator();
+                subjectPublicKeyInfo.next();
+                byte[] subjectPublicKey = ((Der.BIT_STRING) subjectPublicKeyInfo.next()).bytesValue();
+                try {
+                    keyIdentifier = MessageDigest.getInstance("SHA-1").digest(subjectPublicKey);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException("SHA-1 is required in every JRE", e);
+                }
+                keyIdentifierCache.put(encodedKey, keyIdentifier);
+            }
+            return keyIdentifier.clone();
+        }
+
+        @Override
+        public Der toDer() {
+            return new Der.OCTET_STRING(new Der.OCTET_STRING(keyIdentifier).toByteArray());
+        }
+
+        @Override
+        public void dump(PrintStream out, String indent) {
+            out.println(indent + "SubjectKeyIdentifier: " + hex(keyIdentifier));
+        }
+
+        @Override
+        public String getOid() {
+            return "2.5.29.14";
+        }
+
+        public SubjectKeyIdentifierExtensionType keyIdentifier(byte[] keyIdentifier) {
+            this.keyIdentifier = keyIdentifier;
+            return this;
+        }
+
+        public byte[] keyIdentifier() {
+            return keyIdentifier;
+        }
+    }
+
+    /**
+     * Identifies the key which signed the certificate. Only the keyIdentifier is interpreted;
+     * authorityCertIssuer and authorityCertSerialNumber are kept as parsed.
+     */
+    public static class AuthorityKeyIdentifierExtensionType implements ExtensionType {
+        private static final int KEY_IDENTIFIER_TAG = 0x80;
+
+        protected List<DerContextSpecificValue> fields = new ArrayList<>();
+
+        public AuthorityKeyIdentifierExtensionType(Der.OCTET_STRING der) {
+            Iterator<Der> iterator = ((Der.SEQUENCE) Der.parse(der.byteArray())).iterator();
+            while (iterator.hasNext()) {
+                fields.add((DerContextSpecificValue) iterator.next());
+            }
+        }
+
+        public AuthorityKeyIdentifierExtensionType() {
+        }
+
+        public static AuthorityKeyIdentifierExtensionType forPublicKey(PublicKey issuerPublicKey) {
+            return new AuthorityKeyIdentifierExtensionType()
+                    .keyIdentifier(SubjectKeyIdentifierExtensionType.keyIdentifier(issuerPublicKey));
+        }
+
+        @Override
+        public Der toDer() {
+            return new Der.OCTET_STRING(new Der.SEQUENCE(fields).toByteArray());
+        }
+
+        @Override
+        public void dump(PrintStream out, String indent) {
+            out.println(indent + "AuthorityKeyIdentifier: " + (keyIdentifier() != null ? hex(keyIdentifier()) : ""));
+        }
+
+        @Override
+        public String getOid() {
+            return "2.5.29.35";
+        }
+
+        public AuthorityKeyIdentifierExtensionType keyIdentifier(byte[] keyIdentifier) {
+            fields.removeIf(field -> field.getTag() == KEY_IDENTIFIER_TAG);
+            fields.add(0, new DerContextSpecificValue(KEY_IDENTIFIER_TAG, keyIdentifier));
+            return this;
+        }
+
+        public byte[] keyIdentifier() {
+            return fields.stream()
+                    .filter(field -> field.getTag() == KEY_IDENTIFIER_TAG)
+                    .findFirst()
+                    .map(DerContextSpecificValue::byteArray)
+                    .orElse(null);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder result = new StringBuilder();
+        for (byte b : bytes) {
+            if (result.length() > 0) result.append(':');
+            result.append(String.format("%02X", b & 0xff));
         }
+        return result.toString();
     }
 
     public static class UnknownExtensionType implements ExtensionType {
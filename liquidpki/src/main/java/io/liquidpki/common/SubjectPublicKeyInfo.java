@@ -4,53 +4,69 @@ import io.liquidpki.der.Der;
 import io.liquidpki.der.Oid;
 
 import java.io.PrintStream;
-import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
-import java.security.interfaces.RSAPublicKey;
-import java.security.spec.RSAPublicKeySpec;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
 import java.util.Iterator;
 import java.util.List;
 
+/**
+ * The algorithm and bits of a public key. The key itself is opaque, so any key type the JCA
+ * can encode works: RSA, EC (where the parameters name the curve) and Ed25519 (no parameters).
+ */
 public class SubjectPublicKeyInfo {
     private Der der;
     protected final Der.OBJECT_IDENTIFIER algorithm;
+    protected final Der parameters; // nullable
     protected final Der.BIT_STRING subjectPublicKey;
-    private final BigInteger modulus;
-    private BigInteger exponent;
 
     public SubjectPublicKeyInfo(Der der) {
         this.der = der;
         Iterator<Der> iterator = ((Der.SEQUENCE) der).iterator();
-        this.algorithm = (Der.OBJECT_IDENTIFIER)((Der.SEQUENCE)iterator.next()).first();
+        Iterator<Der> algorithmIdentifier = ((Der.SEQUENCE) iterator.next()).iterator();
+        this.algorithm = (Der.OBJECT_IDENTIFIER) algorithmIdentifier.next();
+        this.parameters = algorithmIdentifier.hasNext() ? algorithmIdentifier.next() : null;
         this.subjectPublicKey = (Der.BIT_STRING) iterator.next();
-
-        Iterator<Der> keyIterator = ((Der.SEQUENCE) subjectPublicKey.parse()).iterator();
-        this.modulus = ((Der.INTEGER)keyIterator.next()).toBigInteger();
-        this.exponent = ((Der.INTEGER)keyIterator.next()).toBigInteger();
     }
 
-    public SubjectPublicKeyInfo(RSAPublicKey publicKey) {
-        algorithm = new Der.OBJECT_IDENTIFIER(Oid.getSignatureAlgorithm(publicKey.getAlgorithm()));
-        modulus = publicKey.getModulus();
-        exponent = publicKey.getPublicExponent();
-        subjectPublicKey = new Der.BIT_STRING(new Der.SEQUENCE(List.of(
-                new Der.INTEGER(modulus),
-                new Der.INTEGER(exponent)
-        )).toByteArray());
+    public SubjectPublicKeyInfo(PublicKey publicKey) {
+        this(Der.parse(publicKey.getEncoded()));
     }
 
     public void dump(PrintStream out, String fieldName, String indent, boolean debug) {
-        out.println(indent + fieldName + "=" + algorithm.getName() + " " + subjectPublicKey.describeValue() + " [length: " + subjectPublicKey.valueLength() + "]" + (debug ? " " + der : ""));
+        out.println(indent + fieldName + "=" + algorithm.getName()
+                + (parameters instanceof Der.OBJECT_IDENTIFIER ? " " + ((Der.OBJECT_IDENTIFIER) parameters).getName() : "")
+                + " " + subjectPublicKey.describeValue() + " [length: " + subjectPublicKey.valueLength() + "]" + (debug ? " " + der : ""));
     }
 
     public Der toDer() {
-        return new Der.SEQUENCE(List.of(new Der.SEQUENCE(List.of(algorithm, new Der.NULL())), subjectPublicKey));
+        return new Der.SEQUENCE(List.of(
+                parameters != null ? new Der.SEQUENCE(List.of(algorithm, parameters)) : new Der.SEQUENCE(List.of(algorithm)),
+                subjectPublicKey
+        ));
+    }
+
+    /** The DER encoding of this SubjectPublicKeyInfo, as parsed if it was read from DER */
+    public byte[] getEncoded() {
+        return der != null ? der.toByteArray() : toDer().toByteArray();
+    }
+
+    public String getAlgorithmOid() {
+        return algorithm.getObjectIdentifier();
+    }
+
+    /** The JCA key algorithm name, such as "RSA", "EC" or "Ed25519" */
+    public String getKeyAlgorithm() throws NoSuchAlgorithmException {
+        String keyAlgorithm = Oid.getJcaKeyAlgorithm(getAlgorithmOid());
+        if (keyAlgorithm == null) {
+            throw new NoSuchAlgorithmException("Unsupported public key algorithm " + getAlgorithmOid());
+        }
+        return keyAlgorithm;
     }
 
-    public RSAPublicKey getPublicKey() throws GeneralSecurityException {
-        RSAPublicKeySpec spec = new RSAPublicKeySpec(modulus, exponent);
-        KeyFactory factory = KeyFactory.getInstance("RSA");
-        return (RSAPublicKey) factory.generatePublic(spec);
+    public PublicKey getPublicKey() throws GeneralSecurityException {
+        return KeyFactory.getInstance(getKeyAlgorithm()).generatePublic(new X509EncodedKeySpec(getEncoded()));
     }
 }
@@ -1,15 +1,20 @@
 package io.liquidpki.common;
 
 import io.liquidpki.der.Der;
+import io.liquidpki.der.DerValue;
 
 import javax.naming.InvalidNameException;
 import javax.naming.ldap.LdapName;
 import javax.naming.ldap.Rdn;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -19,8 +24,8 @@ public class X500Name {
             "O", new Der.OBJECT_IDENTIFIER("2.5.4.10"),
             "CN", new Der.OBJECT_IDENTIFIER("2.5.4.3")
     );
-    private static final Map<Der.OBJECT_IDENTIFIER, String> RDN_TYPE_NAMES = RDN_TYPES.entrySet().stream()
-            .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
+    private static final Map<String, String> RDN_TYPE_NAMES = RDN_TYPES.entrySet().stream()
+            .collect(Collectors.toMap(e -> e.getValue().getObjectIdentifier(), Map.Entry::getKey));
 
 
 
@@ -110,11 +115,67 @@ public class X500Name {
         return new Der.SEQUENCE(contents);
     }
 
+    /** The DER encoding of this name, as parsed if this name was read from DER */
+    public byte[] getEncoded() {
+        return der != null ? der.toByteArray() : toDer().toByteArray();
+    }
+
+    /**
+     * An encoding of this name for comparing names as https://tools.ietf.org/html/rfc5280#section-7.1
+     * describes: string values of any string type are case folded, stripped of insignificant
+     * whitespace and re-encoded as UTF8String, and the attributes of each RDN are in DER order.
+     * Names which only differ in ways a relying party must ignore have the same normalized encoding.
+     */
+    public byte[] getNormalizedEncoding() {
+        List<Der> rdns = new ArrayList<>();
+        Iterator<Der> rdnIterator = ((Der.SEQUENCE) (der != null ? der : toDer())).iterator();
+        while (rdnIterator.hasNext()) {
+            List<Der> attributes = new ArrayList<>();
+            Iterator<Der> attributeIterator = ((Der.SET) rdnIterator.next()).iterator();
+            while (attributeIterator.hasNext()) {
+                Iterator<Der> typeAndValue = ((Der.SEQUENCE) attributeIterator.next()).iterator();
+                Der type = typeAndValue.next();
+                attributes.add(new Der.SEQUENCE(List.of(type, normalize(typeAndValue.next()))));
+            }
+            rdns.add(new Der.SET(attributes));
+        }
+        return new Der.SEQUENCE(rdns).toByteArray();
+    }
+
+    /** Values which are not strings are compared by their encoding */
+    private static Der normalize(Der value) {
+        String string;
+        if (value instanceof Der.DerString) {
+            string = ((Der.DerString) value).stringValue();
+        } else if (value instanceof Der.BMP_STRING) {
+            string = ((Der.BMP_STRING) value).stringValue();
+        } else {
+            return value;
+        }
+        String normalized = Normalizer.normalize(string, Normalizer.Form.NFKC)
+                .toLowerCase(Locale.ROOT)
+                .trim()
+                .replaceAll("\\s+", " ");
+        return new DerValue(0x0C, normalized.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof X500Name)) return false;
+        return Arrays.equals(getEncoded(), ((X500Name) o).getEncoded());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(getEncoded());
+    }
+
     public String print() {
         List<AttributeTypeAndValue> rdnSequence = new ArrayList<>(this.rdnSequence);
         Collections.reverse(rdnSequence);
         return rdnSequence.stream()
-                .map(entry -> RDN_TYPE_NAMES.get(entry.type) + "=" + entry.value.stringValue())
+                .map(entry -> RDN_TYPE_NAMES.getOrDefault(entry.type.getObjectIdentifier(), entry.type.getObjectIdentifier()) + "=" + entry.value.stringValue())
                 .collect(Collectors.joining(","));
     }
 
@@ -0,0 +1,266 @@
+package io.liquidpki.der;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Basic Encoding Rules as produced by many PKCS#7 and PKCS#12 tools, which may use indefinite lengths
+ * terminated by end-of-contents octets and split strings into constructed segments. {@link #toDer}
+ * converts such input to the definite length encoding {@link Der#parse} understands. A single forward
+ * pass over the input resolves the end of every value into an index of offsets; the output is then
+ * written directly from the input without copying any subtree in between.
+ */
+public final class Ber {
+
+    private static final int INDEFINITE = -1;
+
+    private Ber() {
+    }
+
+    public static Der parse(byte[] ber) {
+        return Der.parse(toDer(ber));
+    }
+
+    public static Der parse(InputStream input) throws IOException {
+        return parse(input.readAllBytes());
+    }
+
+    /** Returns <code>ber</code> itself if the first value already uses definite lengths and primitive strings */
+    public static byte[] toDer(byte[] ber) {
+        Index index = new Index(ber);
+        if (!index.needsRewrite) {
+            return index.end[0] == ber.length ? ber : Arrays.copyOf(ber, index.end[0]);
+        }
+        return index.write();
+    }
+
+    /** Tag, length and contents offsets of each value in pre-order, with the lengths after conversion */
+    private static class Index {
+        private final byte[] bytes;
+        private int size;
+        private int[] start = new int[16];
+        private int[] contentStart = new int[16];
+        private int[] contentEnd = new int[16];
+        /** The end of the value including any end-of-contents octets */
+        private int[] end = new int[16];
+        private int[] parent = new int[16];
+        /** The outermost constructed string a node is a segment of, or -1 */
+        private int[] segmentOf = new int[16];
+        private int[] newContentLength = new int[16];
+        private boolean needsRewrite;
+
+        private Index(byte[] bytes) {
+            this.bytes = bytes;
+            scan();
+            computeLengths();
+        }
+
+        private void scan() {
+            int[] open = new int[16];
+            // The end of the innermost enclosing value with a definite length
+            int[] limits = new int[16];
+            int depth = 0;
+            int pos = 0;
+            do {
+                int current = depth > 0 ? open[depth - 1] : -1;
+                int limit = depth > 0 ? limits[depth - 1] : bytes.length;
+                if (current >= 0 && end[current] == INDEFINITE && pos + 1 < limit && bytes[pos] == 0 && bytes[pos + 1] == 0) {
+                    contentEnd[current] = pos;
+                    end[current] = pos + 2;
+                    pos += 2;
+                    depth--;
+                } else {
+                    int node = readHeader(pos, limit, current);
+                    if (isConstructed(node)) {
+                        if (depth == open.length) {
+                            open = Arrays.copyOf(open, depth * 2);
+                            limits = Arrays.copyOf(limits, depth * 2);
+                        }
+                        open[depth] = node;
+                        limits[depth++] = end[node] != INDEFINITE ? end[node] : limit;
+                        pos = contentStart[node];
+                    } else {
+                        pos = end[node];
+                    }
+                }
+                while (depth > 0 && pos == end[open[depth - 1]]) {
+                    depth--;
+                }
+                if (depth > 0 && pos >= limits[depth - 1]) {
+                    throw new IllegalArgumentException("Missing end-of-contents for value at offset " + start[open[depth - 1]]);
+                }
+            } while (depth > 0);
+        }
+
+        private int readHeader(int pos, int limit, int parentNode) {
+            int node = add(pos, parentNode);
+            if (pos >= limit) {
+                throw new IllegalArgumentException("Missing value at offset " + pos);
+            }
+            int tag = 0xff & bytes[pos++];
+            if ((tag & 0x1f) == 0x1f) {
+                while (pos < limit && bytes[pos] < 0) pos++;
+                pos++;
+            }
+            if (pos >= limit) {
+                throw new IllegalArgumentException("Missing length at offset " + pos);
+            }
+            int length = 0xff & bytes[pos++];
+            if (length == 0x80) {
+                if ((tag & 0x20) == 0) {
+                    throw new IllegalArgumentException("Indefinite length for primitive value at offset " + start[node]);
+                }
+                needsRewrite = true;
+                contentStart[node] = pos;
+                end[node] = contentEnd[node] = INDEFINITE;
+                return node;
+            } else if (length > 0x80) {
+                int bytesInLength = length & 0x7f;
+                length = 0;
+                for (int i = 0; i < bytesInLength; i++) {
+                    if (pos >= limit || length >>> 23 != 0) {
+                        throw new IllegalArgumentException("Unsupported length at offset " + start[node]);
+                    }
+                    length = length << 8 | (0xff & bytes[pos++]);
+                }
+            }
+            if (length > limit - pos) {
+                throw new IllegalArgumentException("Length " + length + " exceeds enclosing value at offset " + start[node]);
+            }
+            contentStart[node] = pos;
+            end[node] = contentEnd[node] = pos + length;
+            return node;
+        }
+
+        private int add(int pos, int parentNode) {
+            if (size == start.length) {
+                int capacity = size * 2;
+                start = Arrays.copyOf(start, capacity);
+                contentStart = Arrays.copyOf(contentStart, capacity);
+                contentEnd = Arrays.copyOf(contentEnd, capacity);
+                end = Arrays.copyOf(end, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                segmentOf = Arrays.copyOf(segmentOf, capacity);
+                newContentLength = Arrays.copyOf(newContentLength, capacity);
+            }
+            int node = size++;
+            start[node] = pos;
+            parent[node] = parentNode;
+            if (parentNode >= 0 && segmentOf[parentNode] >= 0) {
+                segmentOf[node] = segmentOf[parentNode];
+            } else if (parentNode >= 0 && isConstructedString(parentNode)) {
+                segmentOf[node] = parentNode;
+            } else {
+                segmentOf[node] = -1;
+            }
+            return node;
+        }
+
+        private boolean isConstructed(int node) {
+            return (bytes[start[node]] & 0x20) != 0;
+        }
+
+        /** Universal types other than SEQUENCE and SET may only be constructed in BER */
+        private boolean isConstructedString(int node) {
+            int tag = 0xff & bytes[start[node]];
+            return (tag & 0xe0) == 0x20 && tag != 0x30 && tag != 0x31;
+        }
+
+        private boolean isBitString(int node) {
+            return (bytes[start[node]] & 0x1f) == 0x03;
+        }
+
+        private void computeLengths() {
+            for (int node = size - 1; node >= 0; node--) {
+                int root = segmentOf[node];
+                if (root >= 0) {
+                    if (!isConstructed(node)) {
+                        // Only the last segment of a BIT STRING may have unused bits, which we copy
+                        int skip = isBitString(root) ? 1 : 0;
+                        newContentLength[root] += Math.max(0, contentEnd[node] - contentStart[node] - skip);
+                    }
+                    continue;
+                }
+                if (isConstructedString(node)) {
+                    needsRewrite = true;
+                    if (isBitString(node)) {
+                        newContentLength[node]++;
+                    }
+                } else if (!isConstructed(node)) {
+                    newContentLength[node] = contentEnd[node] - contentStart[node];
+                }
+                if (parent[node] >= 0) {
+                    newContentLength[parent[node]] += fullLength(node);
+                }
+            }
+        }
+
+        private int fullLength(int node) {
+            int length = newContentLength[node];
+            return tagLength(node) + (length < 0x80 ? 1 : 1 + Der.bytesInNumber(length)) + length;
+        }
+
+        private int tagLength(int node) {
+            int pos = start[node] + 1;
+            if ((bytes[start[node]] & 0x1f) == 0x1f) {
+                while (bytes[pos] < 0) pos++;
+                pos++;
+            }
+            return pos - start[node];
+        }
+
+        private byte[] write() {
+            byte[] output = new byte[fullLength(0)];
+            int pos = 0;
+            for (int node = 0; node < size; node++) {
+                int root = segmentOf[node];
+                if (root >= 0) {
+                    if (!isConstructed(node)) {
+                        int skip = isBitString(root) ? 1 : 0;
+                        int length = Math.max(0, contentEnd[node] - contentStart[node] - skip);
+                        System.arraycopy(bytes, contentStart[node] + skip, output, pos, length);
+                        pos += length;
+                    }
+                    continue;
+                }
+                int tagLength = tagLength(node);
+                System.arraycopy(bytes, start[node], output, pos, tagLength);
+                if (isConstructedString(node)) {
+                    output[pos] &= ~0x20;
+                }
+                pos += tagLength;
+                pos = writeLength(output, pos, newContentLength[node]);
+                if (isConstructedString(node) && isBitString(node)) {
+                    output[pos++] = lastSegmentUnusedBits(node);
+                } else if (!isConstructed(node)) {
+                    System.arraycopy(bytes, contentStart[node], output, pos, newContentLength[node]);
+                    pos += newContentLength[node];
+                }
+            }
+            return output;
+        }
+
+        private byte lastSegmentUnusedBits(int root) {
+            for (int node = size - 1; node > root; node--) {
+                if (segmentOf[node] == root && !isConstructed(node) && contentEnd[node] > contentStart[node]) {
+                    return bytes[contentStart[node]];
+                }
+            }
+            return 0;
+        }
+
+        private static int writeLength(byte[] output, int pos, int length) {
+            if (length < 0x80) {
+                output[pos++] = (byte) length;
+            } else {
+                int bytesInLength = Der.bytesInNumber(length);
+                output[pos++] = (byte) (0x80 | bytesInLength);
+                for (int i = bytesInLength - 1; i >= 0; i--) {
+                    output[pos++] = (byte) (length >> (i * 8));
+                }
+            }
+            return pos;
+        }
+    }
+}
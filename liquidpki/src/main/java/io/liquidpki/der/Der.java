@@ -9,6 +9,8 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -31,7 +33,9 @@ public interface Der {
         tagMap.put(0x0C, UFT8_STRING::new);
         tagMap.put(0x1e, BMP_STRING::new);
         tagMap.put(0x13, PRINTABLE_STRING::new);
+        tagMap.put(0x16, IA5_STRING::new);
         tagMap.put(0x17, UTCTime::new);
+        tagMap.put(0x18, GeneralizedTime::new);
         tagMap.put(0x30, SEQUENCE::new);
         tagMap.put(0x31, SET::new);
         return tagMap;
@@ -299,6 +303,22 @@ public interface Der {
         }
     }
 
+    class IA5_STRING extends DerString {
+
+        public IA5_STRING(DerValue derValue) {
+            super(derValue);
+        }
+
+        public IA5_STRING(String value) {
+            super(0x16, value);
+        }
+
+        @Override
+        public String stringValue() {
+            return super.stringValue(StandardCharsets.US_ASCII);
+        }
+    }
+
 
     class UTCTime extends DerValue {
         public UTCTime(DerValue derValue) {
@@ -321,6 +341,26 @@ public interface Der {
         }
     }
 
+    /** Used for certificate validity dates from 2050 and onwards */
+    class GeneralizedTime extends DerValue {
+        public GeneralizedTime(DerValue derValue) {
+            super(derValue);
+        }
+
+        public GeneralizedTime(ZonedDateTime dateTime) {
+            super(0x18, dateTime.format(DateTimeFormatter.ofPattern("yyyyMMddHHmmssXX")).getBytes());
+        }
+
+        @Override
+        protected String printValue() {
+            return getDateTime().toString();
+        }
+
+        public ZonedDateTime getDateTime() {
+            return ZonedDateTime.parse(stringValue(Charset.defaultCharset()), DateTimeFormatter.ofPattern("yyyyMMddHHmmssXX"));
+        }
+    }
+
     class SEQUENCE extends DerCollection {
         public SEQUENCE(DerValue derValue) {
             super(derValue);
@@ -341,8 +381,15 @@ public interface Der {
             super(new DerValue(0x31, encoded));
         }
 
+        /** The children are sorted by their encoding, as DER requires for SET OF */
         public SET(List<Der> children) {
-            super(0x31, children);
+            super(0x31, sorted(children));
+        }
+
+        private static List<Der> sorted(List<Der> children) {
+            List<Der> result = new ArrayList<>(children);
+            result.sort(Comparator.comparing(Der::toByteArray, StrictDer::compare));
+            return result;
         }
     }
 
@@ -381,7 +428,11 @@ public interface Der {
         }
     }
 
+    /** The number of bytes needed for the magnitude of <code>value</code>, at least 1 */
     static int bytesInNumber(long value) {
-        return (Long.toString(value, 16).length() + 1) / 2;
+        long magnitude = value < 0 ? -value : value;
+        // A negative value needs room for the sign, like in Long.toString(value, 16)
+        int bits = 64 - Long.numberOfLeadingZeros(magnitude) + (value < 0 ? 4 : 0);
+        return Math.max(1, (bits + 7) / 8);
     }
 }
@@ -17,6 +17,10 @@ public class DerContextSpecificValue extends DerValue {
         return stringValue(Charset.defaultCharset());
     }
 
+    public byte[] byteArray() {
+        return super.byteArray();
+    }
+
     public Der parse() {
         return Der.parse(atOffset(0));
     }
@@ -78,6 +78,9 @@ public class DerValue implements Der {
     }
 
     private int getBytesForLength() {
+        if (unsignedValHeader(1) == 0x80) {
+            throw new IllegalArgumentException("Indefinite length at offset " + offset + ", use Ber.parse for BER input");
+        }
         return unsignedValHeader(1) >= 0b10000000 ? unsignedValHeader(1) + 1 & ~0b10000000 : 1;
     }
 
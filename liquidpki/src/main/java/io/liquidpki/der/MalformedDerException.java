@@ -0,0 +1,15 @@
+package io.liquidpki.der;
+
+/** Thrown by {@link StrictDer} with the offset of the first octet which violates DER */
+public class MalformedDerException extends IllegalArgumentException {
+    private final int offset;
+
+    public MalformedDerException(String message, int offset) {
+        super(message + " at offset " + offset);
+        this.offset = offset;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+}
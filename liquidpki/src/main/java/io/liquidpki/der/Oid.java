@@ -33,15 +33,27 @@ public class Oid {
             "2.5.29.31", "CRL Distribution Points",
             "2.5.29.32", "Certificate Policies",
             "2.5.29.37", "Extended Key Usage",
-            "2.5.29.35", "certificateExtension"
+            "2.5.29.35", "authorityKeyIdentifier"
     );
     private static Map<String, String> rsaAlgOidMap = new HashMap<>(Map.of(
             "1.2.840.113549.1.1.1", "RSA encryption",
             "1.2.840.113549.1.1.5", "sha1-with-rsa-signature",
             "1.2.840.113549.1.1.11", "sha256WithRSAEncryption",
+            "1.2.840.113549.1.1.12", "sha384WithRSAEncryption",
             "1.2.840.113549.1.1.13", "sha512WithRSAEncryption"
     ));
 
+    private static Map<String, String> ecAlgOidMap = Map.of(
+            "1.2.840.10045.2.1", "ecPublicKey",
+            "1.2.840.10045.3.1.7", "prime256v1",
+            "1.3.132.0.34", "secp384r1",
+            "1.3.132.0.35", "secp521r1",
+            "1.2.840.10045.4.3.2", "ecdsa-with-SHA256",
+            "1.2.840.10045.4.3.3", "ecdsa-with-SHA384",
+            "1.2.840.10045.4.3.4", "ecdsa-with-SHA512",
+            "1.3.101.112", "Ed25519"
+    );
+
     private static Map<String, String> rsaOidMap = new HashMap<>(Map.of(
             "1.2.840.113549.1.9.14", "PKCS#9 ExtensionRequest",
             "1.2.840.113549.1.7.1", "id-data",
@@ -50,10 +62,32 @@ public class Oid {
             "1.2.840.113549.1.7.4", "signedAndEnvelopedData",
             "1.2.840.113549.1.7.5", "digestedData",
             "1.2.840.113549.1.7.6", "encryptedData"));
+    public static final String KeyBag = "1.2.840.113549.1.12.10.1.1";
     public static final String PKCS8ShroudedKeyBag = "1.2.840.113549.1.12.10.1.2";
+    public static final String CertBag = "1.2.840.113549.1.12.10.1.3";
+    public static final String SafeContentsBag = "1.2.840.113549.1.12.10.1.6";
+    public static final String PBES2 = "1.2.840.113549.1.5.13";
+    public static final String PBKDF2 = "1.2.840.113549.1.5.12";
 
     static {
+        rsaOidMap.put(KeyBag, "keyBag");
         rsaOidMap.put(PKCS8ShroudedKeyBag, "pkcs8ShroudedKeyBag");
+        rsaOidMap.put(CertBag, "certBag");
+        rsaOidMap.put(SafeContentsBag, "safeContentsBag");
+        rsaOidMap.put("1.2.840.113549.1.9.22.1", "x509Certificate");
+        rsaOidMap.put(PBES2, "PBES2");
+        rsaOidMap.put(PBKDF2, "PBKDF2");
+        rsaOidMap.put("1.2.840.113549.2.7", "hmacWithSHA1");
+        rsaOidMap.put("1.2.840.113549.2.9", "hmacWithSHA256");
+        rsaOidMap.put("1.2.840.113549.2.10", "hmacWithSHA384");
+        rsaOidMap.put("1.2.840.113549.2.11", "hmacWithSHA512");
+        rsaOidMap.put("2.16.840.1.101.3.4.1.2", "aes128-CBC");
+        rsaOidMap.put("2.16.840.1.101.3.4.1.22", "aes192-CBC");
+        rsaOidMap.put("2.16.840.1.101.3.4.1.42", "aes256-CBC");
+        rsaOidMap.put("2.16.840.1.101.3.4.2.1", "sha256");
+        rsaOidMap.put("2.16.840.1.101.3.4.2.2", "sha384");
+        rsaOidMap.put("2.16.840.1.101.3.4.2.3", "sha512");
+        rsaOidMap.put("2.16.840.1.113894.746875.1.1", "oracleTrustedKeyUsage");
         rsaOidMap.put("1.2.840.113549.1.12.1.3", "pbeWithSHAAnd3-KeyTripleDES-CBC");
         rsaOidMap.put("1.2.840.113549.1.12.1.6", "pbewithSHAAnd40BitRC2-CBC");
         rsaOidMap.put("1.2.840.113549.1.9.20", "friendlyName");
@@ -70,6 +104,8 @@ public class Oid {
             return x509oidMap.get(objectIdentifier);
         } else if (rsaAlgOidMap.containsKey(objectIdentifier)) {
             return rsaAlgOidMap.get(objectIdentifier);
+        } else if (ecAlgOidMap.containsKey(objectIdentifier)) {
+            return ecAlgOidMap.get(objectIdentifier);
         } else if (rsaOidMap.containsKey(objectIdentifier)) {
             return rsaOidMap.get(objectIdentifier);
         }
@@ -77,16 +113,64 @@ public class Oid {
         return null;
     }
 
-    public static String getPublicKeyAlgorithm(String algorithm) {
-        if (algorithm.equals("RSA")) {
-            return "1.2.840.113549.1.1.13";
+    private static Map<String, String> jcaSignatureAlgorithms = Map.of(
+            "SHA1withRSA", "1.2.840.113549.1.1.5",
+            "SHA256withRSA", "1.2.840.113549.1.1.11",
+            "SHA384withRSA", "1.2.840.113549.1.1.12",
+            "SHA512withRSA", "1.2.840.113549.1.1.13",
+            "SHA256withECDSA", "1.2.840.10045.4.3.2",
+            "SHA384withECDSA", "1.2.840.10045.4.3.3",
+            "SHA512withECDSA", "1.2.840.10045.4.3.4",
+            "Ed25519", "1.3.101.112"
+    );
+
+    private static Map<String, String> jcaKeyAlgorithms = Map.of(
+            "RSA", "1.2.840.113549.1.1.1",
+            "EC", "1.2.840.10045.2.1",
+            "Ed25519", "1.3.101.112"
+    );
+
+    /** Returns the OID for a JCA signature algorithm name like "SHA512withRSA" */
+    public static String getSignatureAlgorithmOid(String jcaAlgorithm) {
+        String oid = jcaSignatureAlgorithms.get(jcaAlgorithm);
+        if (oid == null) {
+            throw new IllegalArgumentException("Unknown signature algorithm " + jcaAlgorithm);
         }
-        throw new IllegalArgumentException("Unknown algorithm " + algorithm);
+        return oid;
+    }
+
+    /** Returns the JCA signature algorithm name for an OID, or null if the OID isn't a known signature algorithm */
+    public static String getJcaSignatureAlgorithm(String oid) {
+        return jcaSignatureAlgorithms.entrySet().stream()
+                .filter(entry -> entry.getValue().equals(oid))
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /** Returns the JCA key algorithm name for a public key algorithm OID, or null if unknown */
+    public static String getJcaKeyAlgorithm(String oid) {
+        return jcaKeyAlgorithms.entrySet().stream()
+                .filter(entry -> entry.getValue().equals(oid))
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * RSA AlgorithmIdentifiers carry an explicit NULL parameter, while ECDSA and EdDSA signature
+     * AlgorithmIdentifiers must omit the parameters (RFC 5758 and RFC 8410)
+     */
+    public static boolean hasNullParameters(String algorithmOid) {
+        return algorithmOid.startsWith("1.2.840.113549.1.1.");
     }
 
+    /** Returns the OID of a JCA key algorithm name like "RSA" or "EC" */
     public static String getSignatureAlgorithm(String algorithm) {
-        if (algorithm.equals("RSA")) {
-            return "1.2.840.113549.1.1.1";
+        // On Java 15+ Ed25519 keys report their algorithm as "EdDSA"
+        String oid = jcaKeyAlgorithms.get(algorithm.equals("EdDSA") ? "Ed25519" : algorithm);
+        if (oid != null) {
+            return oid;
         }
         throw new IllegalArgumentException("Unknown algorithm " + algorithm);
     }
@@ -0,0 +1,299 @@
+package io.liquidpki.der;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Distinguished Encoding Rules as specified in
+ * <a href="https://www.itu.int/rec/T-REC-X.690">X.690</a> section 10 and 11, which {@link DerValue}
+ * does not enforce when parsing. {@link #validate} checks an encoding in a single forward pass
+ * without building {@link Der} objects, so untrusted input can be rejected before any work is done
+ * on it. {@link #canonicalize} re-encodes a lenient encoding as DER.
+ */
+public final class StrictDer {
+
+    private static final int MAX_DEPTH = 64;
+
+    private StrictDer() {
+    }
+
+    public static void validate(byte[] der) {
+        validate(der, 0, der.length);
+    }
+
+    /**
+     * Throws {@link MalformedDerException} unless <code>der[offset..offset+length&gt;</code> is exactly
+     * one DER value. Checks that lengths and tags are minimal and definite, that SET OF elements are
+     * sorted, that only SEQUENCE, SET and non-universal tags are constructed and that BOOLEAN, INTEGER,
+     * ENUMERATED, NULL, BIT STRING and OBJECT IDENTIFIER have valid contents.
+     */
+    public static void validate(byte[] der, int offset, int length) {
+        int end = offset + length;
+        // The enclosing constructed values are tracked on a stack instead of by recursion
+        int[] ends = new int[MAX_DEPTH];
+        boolean[] sorted = new boolean[MAX_DEPTH];
+        int[] previousStart = new int[MAX_DEPTH];
+        int[] previousEnd = new int[MAX_DEPTH];
+        int depth = 0;
+        ends[0] = end;
+        int pos = offset;
+        do {
+            int start = pos;
+            int limit = ends[depth];
+            if (pos >= limit) {
+                throw new MalformedDerException("Missing value", pos);
+            }
+            int tag = 0xff & der[pos++];
+            if ((tag & 0x1f) == 0x1f) {
+                pos = validateHighTagNumber(der, pos, limit);
+            }
+            if (pos >= limit) {
+                throw new MalformedDerException("Missing length", pos);
+            }
+            int valueLength = 0xff & der[pos++];
+            if (valueLength == 0x80) {
+                throw new MalformedDerException("Indefinite length", pos - 1);
+            } else if (valueLength > 0x80) {
+                int bytesInLength = valueLength & 0x7f;
+                if (bytesInLength > 4 || limit - pos < bytesInLength) {
+                    throw new MalformedDerException("Unsupported length field", pos - 1);
+                } else if (der[pos] == 0) {
+                    throw new MalformedDerException("Length with leading zero", pos);
+                }
+                valueLength = 0;
+                for (int i = 0; i < bytesInLength; i++) {
+                    valueLength = valueLength << 8 | (0xff & der[pos++]);
+                }
+                if (valueLength < 0x80) {
+                    throw new MalformedDerException("Long form for short length " + valueLength, start + 1);
+                }
+            }
+            if (valueLength < 0 || valueLength > limit - pos) {
+                throw new MalformedDerException("Length " + valueLength + " exceeds enclosing value", start + 1);
+            }
+            int valueEnd = pos + valueLength;
+
+            if (sorted[depth]) {
+                if (previousStart[depth] >= 0 && compare(der, previousStart[depth], previousEnd[depth], der, start, valueEnd) > 0) {
+                    throw new MalformedDerException("SET OF elements out of order", start);
+                }
+                previousStart[depth] = start;
+                previousEnd[depth] = valueEnd;
+            }
+
+            boolean universal = (tag & 0xc0) == 0;
+            if ((tag & 0x20) != 0) {
+                if (universal && tag != 0x30 && tag != 0x31) {
+                    throw new MalformedDerException("Constructed encoding of primitive type 0x" + Integer.toHexString(tag & 0x1f), start);
+                }
+                if (++depth == MAX_DEPTH) {
+                    throw new MalformedDerException("Nesting deeper than " + MAX_DEPTH, start);
+                }
+                ends[depth] = valueEnd;
+                sorted[depth] = tag == 0x31;
+                previousStart[depth] = -1;
+            } else {
+                if (universal) {
+                    validatePrimitive(tag, der, pos, valueEnd);
+                }
+                pos = valueEnd;
+            }
+            while (depth > 0 && pos == ends[depth]) {
+                depth--;
+            }
+        } while (depth > 0);
+        if (pos != end) {
+            throw new MalformedDerException("Trailing data after value", pos);
+        }
+    }
+
+    public static boolean isValid(byte[] der) {
+        try {
+            validate(der);
+            return true;
+        } catch (MalformedDerException e) {
+            return false;
+        }
+    }
+
+    private static int validateHighTagNumber(byte[] der, int pos, int limit) {
+        int start = pos;
+        if (pos < limit && (0xff & der[pos]) == 0x80) {
+            throw new MalformedDerException("Tag number with leading zero", pos);
+        }
+        int tagNumber = 0;
+        int octet;
+        do {
+            if (pos >= limit || pos - start == 4) {
+                throw new MalformedDerException("Unsupported tag number", start);
+            }
+            octet = 0xff & der[pos++];
+            tagNumber = tagNumber << 7 | (octet & 0x7f);
+        } while (octet >= 0x80);
+        if (tagNumber < 0x1f) {
+            throw new MalformedDerException("Long form for low tag number " + tagNumber, start);
+        }
+        return pos;
+    }
+
+    private static void validatePrimitive(int tag, byte[] der, int start, int end) {
+        int length = end - start;
+        switch (tag) {
+            case 0x00:
+                throw new MalformedDerException("End-of-contents", start);
+            case 0x01:
+                if (length != 1 || (der[start] != 0 && der[start] != (byte) 0xff)) {
+                    throw new MalformedDerException("BOOLEAN must be 0x00 or 0xFF", start);
+                }
+                break;
+            case 0x02:
+            case 0x0a:
+                if (length == 0) {
+                    throw new MalformedDerException("Empty INTEGER", start);
+                } else if (length > 1 && (der[start] == 0 && der[start + 1] >= 0 || der[start] == -1 && der[start + 1] < 0)) {
+                    throw new MalformedDerException("INTEGER with redundant leading octet", start);
+                }
+                break;
+            case 0x03:
+                if (length == 0 || (0xff & der[start]) > 7 || (length == 1 && der[start] != 0)) {
+                    throw new MalformedDerException("Invalid number of unused bits in BIT STRING", start);
+                } else if ((der[end - 1] & ((1 << der[start]) - 1)) != 0) {
+                    throw new MalformedDerException("Unused bits in BIT STRING must be zero", end - 1);
+                }
+                break;
+            case 0x05:
+                if (length != 0) {
+                    throw new MalformedDerException("NULL with content", start);
+                }
+                break;
+            case 0x06:
+                if (length == 0 || der[end - 1] < 0) {
+                    throw new MalformedDerException("Truncated OBJECT IDENTIFIER", start);
+                }
+                for (int pos = start; pos < end; pos++) {
+                    if ((pos == start || der[pos - 1] >= 0) && der[pos] == (byte) 0x80) {
+                        throw new MalformedDerException("OBJECT IDENTIFIER component with leading zero", pos);
+                    }
+                }
+                break;
+            case 0x10:
+            case 0x11:
+                throw new MalformedDerException("Primitive encoding of constructed type", start);
+        }
+    }
+
+    /**
+     * Re-encodes <code>encoded</code> as DER: lengths are minimal, SET OF elements are sorted, BOOLEAN
+     * TRUE is 0xFF, INTEGER has no redundant leading octets and unused BIT STRING bits are cleared.
+     */
+    public static byte[] canonicalize(byte[] encoded) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(encoded.length);
+        int end = canonicalize(encoded, 0, encoded.length, output, 0);
+        if (end != encoded.length) {
+            throw new MalformedDerException("Trailing data after value", end);
+        }
+        return output.toByteArray();
+    }
+
+    /** Writes the canonical encoding of the value at <code>offset</code> and returns the offset after it */
+    private static int canonicalize(byte[] bytes, int offset, int limit, ByteArrayOutputStream output, int depth) {
+        if (depth == MAX_DEPTH) {
+            throw new MalformedDerException("Nesting deeper than " + MAX_DEPTH, offset);
+        }
+        int pos = offset + 1;
+        if ((bytes[offset] & 0x1f) == 0x1f) {
+            while (pos < limit && bytes[pos] < 0) pos++;
+            pos++;
+        }
+        int tagEnd = pos;
+        if (pos >= limit) {
+            throw new MalformedDerException("Missing length", pos);
+        }
+        int valueLength = 0xff & bytes[pos++];
+        if (valueLength == 0x80) {
+            throw new MalformedDerException("Indefinite length", pos - 1);
+        } else if (valueLength > 0x80) {
+            int bytesInLength = valueLength & 0x7f;
+            valueLength = 0;
+            for (int i = 0; i < bytesInLength; i++) {
+                if (pos >= limit || valueLength >>> 23 != 0) {
+                    throw new MalformedDerException("Unsupported length field", tagEnd);
+                }
+                valueLength = valueLength << 8 | (0xff & bytes[pos++]);
+            }
+        }
+        if (valueLength > limit - pos) {
+            throw new MalformedDerException("Length " + valueLength + " exceeds enclosing value", tagEnd);
+        }
+        int valueEnd = pos + valueLength;
+
+        byte[] content;
+        int tag = 0xff & bytes[offset];
+        if ((tag & 0x20) != 0) {
+            List<byte[]> children = new ArrayList<>();
+            while (pos < valueEnd) {
+                ByteArrayOutputStream child = new ByteArrayOutputStream();
+                pos = canonicalize(bytes, pos, valueEnd, child, depth + 1);
+                children.add(child.toByteArray());
+            }
+            if (tag == 0x31) {
+                children.sort(StrictDer::compare);
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(valueLength);
+            for (byte[] child : children) {
+                buffer.write(child, 0, child.length);
+            }
+            content = buffer.toByteArray();
+        } else {
+            content = canonicalPrimitive(tag, bytes, pos, valueEnd);
+        }
+
+        output.write(bytes, offset, tagEnd - offset);
+        try {
+            Der.writeLength(output, content.length);
+        } catch (IOException cannotHappen) {
+            throw new UncheckedIOException(cannotHappen);
+        }
+        output.write(content, 0, content.length);
+        return valueEnd;
+    }
+
+    private static byte[] canonicalPrimitive(int tag, byte[] bytes, int start, int end) {
+        if (tag == 0x01 && end - start == 1) {
+            return new byte[] { bytes[start] != 0 ? (byte) 0xff : 0 };
+        } else if (tag == 0x02 || tag == 0x0a) {
+            while (end - start > 1 && (bytes[start] == 0 && bytes[start + 1] >= 0 || bytes[start] == -1 && bytes[start + 1] < 0)) {
+                start++;
+            }
+        }
+        byte[] content = new byte[end - start];
+        System.arraycopy(bytes, start, content, 0, content.length);
+        if (tag == 0x03 && content.length > 0 && content[0] >= 0 && content[0] <= 7) {
+            if (content.length == 1) {
+                content[0] = 0;
+            } else {
+                content[content.length - 1] &= (byte) ~((1 << content[0]) - 1);
+            }
+        }
+        return content;
+    }
+
+    /** The order of SET OF elements in DER: encodings compared as unsigned octet strings */
+    static int compare(byte[] a, byte[] b) {
+        return compare(a, 0, a.length, b, 0, b.length);
+    }
+
+    private static int compare(byte[] a, int aStart, int aEnd, byte[] b, int bStart, int bEnd) {
+        int length = Math.min(aEnd - aStart, bEnd - bStart);
+        for (int i = 0; i < length; i++) {
+            int diff = (0xff & a[aStart + i]) - (0xff & b[bStart + i]);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (aEnd - aStart) - (bEnd - bStart);
+    }
+}
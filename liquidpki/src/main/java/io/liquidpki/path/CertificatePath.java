@@ -0,0 +1,33 @@
+package io.liquidpki.path;
+
+import io.liquidpki.x509.SignedCertificate;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A validated chain of certificates, starting with the end entity and ending with the trust anchor
+ */
+public class CertificatePath {
+    private final List<SignedCertificate> certificates;
+
+    public CertificatePath(List<SignedCertificate> certificates) {
+        this.certificates = Collections.unmodifiableList(certificates);
+    }
+
+    public List<SignedCertificate> getCertificates() {
+        return certificates;
+    }
+
+    public SignedCertificate getEndEntity() {
+        return certificates.get(0);
+    }
+
+    public SignedCertificate getTrustAnchor() {
+        return certificates.get(certificates.size() - 1);
+    }
+
+    public int length() {
+        return certificates.size();
+    }
+}
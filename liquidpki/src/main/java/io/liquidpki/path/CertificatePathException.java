@@ -0,0 +1,13 @@
+package io.liquidpki.path;
+
+import java.security.GeneralSecurityException;
+
+public class CertificatePathException extends GeneralSecurityException {
+    public CertificatePathException(String message) {
+        super(message);
+    }
+
+    public CertificatePathException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,288 @@
+package io.liquidpki.path;
+
+import io.liquidpki.common.AlgorithmIdentifier;
+import io.liquidpki.common.CertificateExtensions;
+import io.liquidpki.common.Extension;
+import io.liquidpki.der.Oid;
+import io.liquidpki.x509.CertificateInfo;
+import io.liquidpki.x509.SignedCertificate;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Builds and validates a certification path from an end entity certificate to one of a set of
+ * trust anchors in a {@link TrustAnchorStore}, as a simplified version of https://tools.ietf.org/html/rfc5280#section-6.
+ * Issuers are found by authorityKeyIdentifier when present, otherwise by name chaining with names
+ * compared as in section 7.1, and each link is checked for validity period, BasicConstraints,
+ * KeyUsage and signature. Verified signatures are remembered in a
+ * {@link VerifiedSignatureCache} so validating the same chain again skips the public key operations.
+ *
+ * <p>Certificates below the trust anchor are rejected if they have a critical extension which is
+ * not in {@link #SUPPORTED_CRITICAL_EXTENSIONS}, or if the signature algorithm in the
+ * TBSCertificate differs from the one the certificate is signed with. When a key purpose is given,
+ * the end entity's KeyUsage and ExtendedKeyUsage must allow it.</p>
+ */
+public class CertificatePathValidator {
+    private static final int MAX_PATH_LENGTH = 10;
+
+    /** subjectKeyIdentifier, keyUsage, subjectAltName, basicConstraints, authorityKeyIdentifier and extKeyUsage */
+    public static final Set<String> SUPPORTED_CRITICAL_EXTENSIONS = Set.of(
+            "2.5.29.14", "2.5.29.15", "2.5.29.17", "2.5.29.19", "2.5.29.35", "2.5.29.37"
+    );
+
+    private final TrustAnchorStore trustAnchors;
+    private final VerifiedSignatureCache signatureCache;
+
+    /** Validates against a store which may be updated while the validator is in use */
+    public CertificatePathValidator(TrustAnchorStore trustAnchors, VerifiedSignatureCache signatureCache) {
+        this.trustAnchors = trustAnchors;
+        this.signatureCache = signatureCache;
+    }
+
+    public CertificatePathValidator(TrustAnchorStore trustAnchors) {
+        this(trustAnchors, new VerifiedSignatureCache(10_000));
+    }
+
+    public CertificatePathValidator(Collection<SignedCertificate> trustAnchors, VerifiedSignatureCache signatureCache) {
+        this(new TrustAnchorStore(trustAnchors), signatureCache);
+    }
+
+    public CertificatePathValidator(Collection<SignedCertificate> trustAnchors) {
+        this(new TrustAnchorStore(trustAnchors));
+    }
+
+    public TrustAnchorStore getTrustAnchors() {
+        return trustAnchors;
+    }
+
+    /**
+     * Validates a chain as presented in a TLS handshake: the end entity first, followed by
+     * intermediates in any order. The trust anchor may or may not be included.
+     */
+    public CertificatePath validate(List<SignedCertificate> chain, ZonedDateTime time) throws CertificatePathException {
+        return validate(chain, time, null);
+    }
+
+    /**
+     * Validates a chain as {@link #validate(List, ZonedDateTime)} does, and checks that the end
+     * entity may be used for <code>keyPurpose</code>, such as
+     * {@link Extension.ExtendedKeyUsageExtensionType#CLIENT_AUTH}
+     */
+    public CertificatePath validate(List<SignedCertificate> chain, ZonedDateTime time, String keyPurpose) throws CertificatePathException {
+        if (chain.isEmpty()) {
+            throw new CertificatePathException("Empty certificate chain");
+        }
+        return build(chain.get(0), chain.subList(1, chain.size()), time, keyPurpose);
+    }
+
+    public CertificatePath build(SignedCertificate endEntity, Collection<SignedCertificate> intermediates, ZonedDateTime time) throws CertificatePathException {
+        return build(endEntity, intermediates, time, null);
+    }
+
+    public CertificatePath build(SignedCertificate endEntity, Collection<SignedCertificate> intermediates, ZonedDateTime time, String keyPurpose) throws CertificatePathException {
+        if (isTrustAnchor(endEntity)) {
+            return new CertificatePath(List.of(endEntity));
+        }
+        List<String> failures = new ArrayList<>();
+        checkValidity(endEntity, time, failures);
+        checkEncoding(endEntity, failures);
+        if (keyPurpose != null) {
+            checkKeyPurpose(endEntity, keyPurpose, failures);
+        }
+        if (!failures.isEmpty()) {
+            throw new CertificatePathException(describe(endEntity) + ": " + failures.get(0));
+        }
+
+        Map<ByteBuffer, List<SignedCertificate>> intermediatesByName = new HashMap<>();
+        for (SignedCertificate intermediate : intermediates) {
+            if (!isTrustAnchor(intermediate)) {
+                intermediatesByName.computeIfAbsent(subjectKey(intermediate), k -> new ArrayList<>()).add(intermediate);
+                byte[] subjectKeyIdentifier = keyIdentifier(intermediate, CertificateExtensions::subjectKeyIdentifier);
+                if (subjectKeyIdentifier != null) {
+                    intermediatesByName.computeIfAbsent(keyIdentifierKey(subjectKeyIdentifier), k -> new ArrayList<>()).add(intermediate);
+                }
+            }
+        }
+
+        List<SignedCertificate> path = new ArrayList<>();
+        path.add(endEntity);
+        if (extend(path, intermediatesByName, time, failures)) {
+            return new CertificatePath(path);
+        }
+        throw new CertificatePathException("No valid certification path for " + describe(endEntity)
+                + (failures.isEmpty() ? ": issuer not found" : ": " + String.join(", ", failures)));
+    }
+
+    private boolean extend(List<SignedCertificate> path, Map<ByteBuffer, List<SignedCertificate>> intermediatesByName, ZonedDateTime time, List<String> failures) {
+        SignedCertificate current = path.get(path.size() - 1);
+        for (SignedCertificate trustAnchor : trustAnchors.findIssuers(current)) {
+            if (isValidIssuer(trustAnchor, current, path.size() - 1, true, time, failures)) {
+                path.add(trustAnchor);
+                return true;
+            }
+        }
+        if (path.size() >= MAX_PATH_LENGTH) {
+            failures.add("path longer than " + MAX_PATH_LENGTH);
+            return false;
+        }
+        for (SignedCertificate candidate : findIssuers(current, intermediatesByName)) {
+            if (path.contains(candidate)) {
+                continue;
+            }
+            if (isValidIssuer(candidate, current, path.size() - 1, false, time, failures)) {
+                path.add(candidate);
+                if (extend(path, intermediatesByName, time, failures)) {
+                    return true;
+                }
+                path.remove(path.size() - 1);
+            }
+        }
+        return false;
+    }
+
+    private boolean isValidIssuer(SignedCertificate issuer, SignedCertificate subject, int intermediatesBelow, boolean trustAnchor, ZonedDateTime time, List<String> failures) {
+        int failureCount = failures.size();
+        if (!trustAnchor) {
+            checkValidity(issuer, time, failures);
+            checkEncoding(issuer, failures);
+        }
+        CertificateExtensions extensions = issuer.tbsCertificate().extensions();
+        Extension.BasicConstraintExtensionType basicConstraints = extensions != null ? extensions.extension(Extension.BasicConstraintExtensionType.class) : null;
+        if (basicConstraints == null || !basicConstraints.ca()) {
+            if (!trustAnchor) {
+                failures.add(describe(issuer) + " is not a CA");
+            }
+        } else if (basicConstraints.pathLengthConstraint() >= 0 && intermediatesBelow > basicConstraints.pathLengthConstraint()) {
+            failures.add(describe(issuer) + " pathLengthConstraint " + basicConstraints.pathLengthConstraint() + " exceeded");
+        }
+        Extension.KeyUsageExtensionType keyUsage = extensions != null ? extensions.keyUsage() : null;
+        if (keyUsage != null && !keyUsage.keyCertSign()) {
+            failures.add(describe(issuer) + " key usage does not include keyCertSign");
+        }
+        if (failures.size() > failureCount) {
+            return false;
+        }
+        try {
+            verifySignature(issuer, subject);
+            return true;
+        } catch (GeneralSecurityException e) {
+            failures.add(describe(subject) + " signature not verified by " + describe(issuer) + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void verifySignature(SignedCertificate issuer, SignedCertificate subject) throws GeneralSecurityException {
+        byte[] issuerPublicKey = issuer.tbsCertificate().subjectPublicKeyInfo().getEncoded();
+        if (signatureCache.contains(issuerPublicKey, subject)) {
+            return;
+        }
+        String algorithm = Oid.getJcaSignatureAlgorithm(subject.signatureAlgorithmOid());
+        if (algorithm == null) {
+            throw new CertificatePathException("Unsupported signature algorithm " + subject.signatureAlgorithmOid());
+        }
+        Signature signature = Signature.getInstance(algorithm);
+        signature.initVerify(issuer.tbsCertificate().publicKey());
+        signature.update(subject.tbsCertificateBytes());
+        if (!signature.verify(subject.signatureValue())) {
+            throw new CertificatePathException("Invalid signature");
+        }
+        signatureCache.add(issuerPublicKey, subject);
+    }
+
+    /** Checks the parts of the certificate which don't depend on its place in the path */
+    private static void checkEncoding(SignedCertificate certificate, List<String> failures) {
+        AlgorithmIdentifier tbsSignature = certificate.tbsCertificate().signature();
+        if (tbsSignature == null || !Arrays.equals(tbsSignature.toDer().toByteArray(), certificate.signatureAlgorithm().toDer().toByteArray())) {
+            failures.add(describe(certificate) + " signature algorithm does not match its TBSCertificate");
+        }
+        CertificateExtensions extensions = certificate.tbsCertificate().extensions();
+        if (extensions != null) {
+            for (Extension extension : extensions.getExtensions()) {
+                if (extension.isCritical() && !SUPPORTED_CRITICAL_EXTENSIONS.contains(extension.getExtnId())) {
+                    failures.add(describe(certificate) + " has unsupported critical extension " + extension.getExtnId());
+                }
+            }
+        }
+    }
+
+    /**
+     * TLS clients and servers authenticate by signing, except for the RSA key exchange of TLS
+     * 1.2 and earlier, where a server's key encrypts the premaster secret
+     */
+    private static void checkKeyPurpose(SignedCertificate endEntity, String keyPurpose, List<String> failures) {
+        CertificateExtensions extensions = endEntity.tbsCertificate().extensions();
+        if (extensions == null) {
+            return;
+        }
+        Extension.ExtendedKeyUsageExtensionType extendedKeyUsage = extensions.extendedKeyUsage();
+        if (extendedKeyUsage != null && !extendedKeyUsage.permits(keyPurpose)) {
+            failures.add(describe(endEntity) + " extended key usage " + extendedKeyUsage.keyPurposes() + " does not include " + keyPurpose);
+        }
+        Extension.KeyUsageExtensionType keyUsage = extensions.keyUsage();
+        boolean keyEnciphermentAllowed = keyPurpose.equals(Extension.ExtendedKeyUsageExtensionType.SERVER_AUTH);
+        if (keyUsage != null && !keyUsage.digitalSignature() && !(keyEnciphermentAllowed && keyUsage.keyEncipherment())) {
+            failures.add(describe(endEntity) + " key usage does not include digitalSignature");
+        }
+    }
+
+    private void checkValidity(SignedCertificate certificate, ZonedDateTime time, List<String> failures) {
+        CertificateInfo.Validity validity = certificate.tbsCertificate().validity();
+        if (time.isBefore(validity.getNotBefore())) {
+            failures.add(describe(certificate) + " not valid before " + validity.getNotBefore());
+        } else if (time.isAfter(validity.getNotAfter())) {
+            failures.add(describe(certificate) + " expired " + validity.getNotAfter());
+        }
+    }
+
+    private boolean isTrustAnchor(SignedCertificate certificate) {
+        return trustAnchors.contains(certificate);
+    }
+
+    /** Candidates whose subjectKeyIdentifier matches the authorityKeyIdentifier, or else whose subject matches the issuer */
+    private static List<SignedCertificate> findIssuers(SignedCertificate certificate, Map<ByteBuffer, List<SignedCertificate>> intermediatesByName) {
+        byte[] authorityKeyIdentifier = keyIdentifier(certificate, CertificateExtensions::authorityKeyIdentifier);
+        if (authorityKeyIdentifier != null) {
+            List<SignedCertificate> candidates = intermediatesByName.get(keyIdentifierKey(authorityKeyIdentifier));
+            if (candidates != null) {
+                return candidates;
+            }
+        }
+        return intermediatesByName.getOrDefault(issuerKey(certificate), List.of());
+    }
+
+    private static byte[] keyIdentifier(SignedCertificate certificate, Function<CertificateExtensions, byte[]> keyIdentifier) {
+        CertificateExtensions extensions = certificate.tbsCertificate().extensions();
+        return extensions != null ? keyIdentifier.apply(extensions) : null;
+    }
+
+    /** Key identifiers share the map with encoded names; the OCTET STRING tag keeps them apart from a Name SEQUENCE */
+    private static ByteBuffer keyIdentifierKey(byte[] keyIdentifier) {
+        byte[] key = new byte[keyIdentifier.length + 1];
+        key[0] = 0x04;
+        System.arraycopy(keyIdentifier, 0, key, 1, keyIdentifier.length);
+        return ByteBuffer.wrap(key);
+    }
+
+    private static ByteBuffer subjectKey(SignedCertificate certificate) {
+        return ByteBuffer.wrap(certificate.tbsCertificate().subject().getNormalizedEncoding());
+    }
+
+    private static ByteBuffer issuerKey(SignedCertificate certificate) {
+        return ByteBuffer.wrap(certificate.tbsCertificate().issuer().getNormalizedEncoding());
+    }
+
+    private static String describe(SignedCertificate certificate) {
+        return "[" + certificate.tbsCertificate().subject().print() + "]";
+    }
+}
@@ -0,0 +1,190 @@
+package io.liquidpki.path;
+
+import io.liquidpki.common.CertificateExtensions;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.der.Der;
+import io.liquidpki.x509.SignedCertificate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A set of trusted certificates, indexed by the normalized encoding of their subject name and by their
+ * subjectKeyIdentifier and authorityKeyIdentifier. Anchors with the same subject are kept side by side.
+ * Certificates can be added and removed at any time and lookups never block; each index entry is an
+ * immutable list which is replaced on change.
+ */
+public class TrustAnchorStore {
+
+    private final Map<ByteBuffer, SignedCertificate> byFingerprint = new ConcurrentHashMap<>();
+    private final Map<ByteBuffer, List<SignedCertificate>> bySubject = new ConcurrentHashMap<>();
+    private final Map<ByteBuffer, List<SignedCertificate>> bySubjectKeyIdentifier = new ConcurrentHashMap<>();
+    private final Map<ByteBuffer, List<SignedCertificate>> byAuthorityKeyIdentifier = new ConcurrentHashMap<>();
+
+    public TrustAnchorStore() {
+    }
+
+    public TrustAnchorStore(Collection<SignedCertificate> trustAnchors) {
+        trustAnchors.forEach(this::add);
+    }
+
+    /** Adds the certificate, returning false if it was already present */
+    public boolean add(SignedCertificate certificate) {
+        if (byFingerprint.putIfAbsent(fingerprint(certificate), certificate) != null) {
+            return false;
+        }
+        addTo(bySubject, subjectKey(certificate), certificate);
+        addTo(bySubjectKeyIdentifier, keyOf(certificate, CertificateExtensions::subjectKeyIdentifier), certificate);
+        addTo(byAuthorityKeyIdentifier, keyOf(certificate, CertificateExtensions::authorityKeyIdentifier), certificate);
+        return true;
+    }
+
+    /** Removes the certificate, returning false if it was not present */
+    public boolean remove(SignedCertificate certificate) {
+        SignedCertificate existing = byFingerprint.remove(fingerprint(certificate));
+        if (existing == null) {
+            return false;
+        }
+        removeFrom(bySubject, subjectKey(existing), existing);
+        removeFrom(bySubjectKeyIdentifier, keyOf(existing, CertificateExtensions::subjectKeyIdentifier), existing);
+        removeFrom(byAuthorityKeyIdentifier, keyOf(existing, CertificateExtensions::authorityKeyIdentifier), existing);
+        return true;
+    }
+
+    public boolean contains(SignedCertificate certificate) {
+        return byFingerprint.containsKey(fingerprint(certificate));
+    }
+
+    public int size() {
+        return byFingerprint.size();
+    }
+
+    public Collection<SignedCertificate> getTrustAnchors() {
+        return Collections.unmodifiableCollection(byFingerprint.values());
+    }
+
+    /** Finds anchors whose subject matches as RFC 5280 section 7.1 compares names, not byte for byte */
+    public List<SignedCertificate> findBySubject(byte[] encodedSubject) {
+        return findBySubject(new X500Name(Der.parse(encodedSubject)));
+    }
+
+    public List<SignedCertificate> findBySubject(X500Name subject) {
+        return bySubject.getOrDefault(ByteBuffer.wrap(subject.getNormalizedEncoding()), List.of());
+    }
+
+    public List<SignedCertificate> findBySubjectKeyIdentifier(byte[] keyIdentifier) {
+        return bySubjectKeyIdentifier.getOrDefault(ByteBuffer.wrap(keyIdentifier), List.of());
+    }
+
+    public List<SignedCertificate> findByAuthorityKeyIdentifier(byte[] keyIdentifier) {
+        return byAuthorityKeyIdentifier.getOrDefault(ByteBuffer.wrap(keyIdentifier), List.of());
+    }
+
+    /**
+     * Returns the trust anchors which may have issued the certificate: matched on
+     * authorityKeyIdentifier if the certificate has one and some anchor has that subjectKeyIdentifier,
+     * otherwise on issuer name
+     */
+    public List<SignedCertificate> findIssuers(SignedCertificate certificate) {
+        CertificateExtensions extensions = certificate.tbsCertificate().extensions();
+        byte[] authorityKeyIdentifier = extensions != null ? extensions.authorityKeyIdentifier() : null;
+        if (authorityKeyIdentifier != null) {
+            List<SignedCertificate> issuers = findBySubjectKeyIdentifier(authorityKeyIdentifier);
+            if (!issuers.isEmpty()) {
+                return issuers;
+            }
+        }
+        return findBySubject(certificate.tbsCertificate().issuer());
+    }
+
+    /** Adds every certificate in a PEM file, which may contain several certificates */
+    public int addPemBundle(Path pemFile) throws IOException {
+        return addPem(new String(Files.readAllBytes(pemFile), StandardCharsets.US_ASCII));
+    }
+
+    public int addPem(String pemContent) {
+        int added = 0;
+        int start = pemContent.indexOf("-----BEGIN CERTIFICATE-----");
+        while (start >= 0) {
+            int bodyStart = pemContent.indexOf('\n', start) + 1;
+            int end = pemContent.indexOf("-----END CERTIFICATE-----", bodyStart);
+            if (bodyStart == 0 || end < 0) {
+                throw new IllegalArgumentException("Unterminated PEM certificate at position " + start);
+            }
+            byte[] der = Base64.getMimeDecoder().decode(pemContent.substring(bodyStart, end));
+            if (add(new SignedCertificate(der))) {
+                added++;
+            }
+            start = pemContent.indexOf("-----BEGIN CERTIFICATE-----", end);
+        }
+        return added;
+    }
+
+    /** Adds every .crt, .pem and .cer file in the directory, each as either PEM or DER */
+    public int addDirectory(Path directory) throws IOException {
+        int added = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{crt,pem,cer}")) {
+            for (Path file : files) {
+                byte[] content = Files.readAllBytes(file);
+                if (content.length > 0 && content[0] == 0x30) {
+                    if (add(new SignedCertificate(content))) {
+                        added++;
+                    }
+                } else {
+                    added += addPem(new String(content, StandardCharsets.US_ASCII));
+                }
+            }
+        }
+        return added;
+    }
+
+    private static void addTo(Map<ByteBuffer, List<SignedCertificate>> index, ByteBuffer key, SignedCertificate certificate) {
+        if (key == null) return;
+        index.compute(key, (k, existing) -> {
+            List<SignedCertificate> result = existing != null ? new ArrayList<>(existing) : new ArrayList<>();
+            result.add(certificate);
+            return Collections.unmodifiableList(result);
+        });
+    }
+
+    private static void removeFrom(Map<ByteBuffer, List<SignedCertificate>> index, ByteBuffer key, SignedCertificate certificate) {
+        if (key == null) return;
+        index.computeIfPresent(key, (k, existing) -> {
+            List<SignedCertificate> result = new ArrayList<>(existing);
+            result.remove(certificate);
+            return result.isEmpty() ? null : Collections.unmodifiableList(result);
+        });
+    }
+
+    private static ByteBuffer subjectKey(SignedCertificate certificate) {
+        return ByteBuffer.wrap(certificate.tbsCertificate().subject().getNormalizedEncoding());
+    }
+
+    private static ByteBuffer keyOf(SignedCertificate certificate, Function<CertificateExtensions, byte[]> keyIdentifier) {
+        CertificateExtensions extensions = certificate.tbsCertificate().extensions();
+        byte[] value = extensions != null ? keyIdentifier.apply(extensions) : null;
+        return value != null ? ByteBuffer.wrap(value) : null;
+    }
+
+    private static ByteBuffer fingerprint(SignedCertificate certificate) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required in every JRE", e);
+        }
+    }
+}
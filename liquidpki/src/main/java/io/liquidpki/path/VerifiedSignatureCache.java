@@ -0,0 +1,61 @@
+package io.liquidpki.path;
+
+import io.liquidpki.x509.SignedCertificate;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers which issuer key has already been verified to have signed which certificate, so
+ * repeated validation of the same chains only costs a SHA-256 instead of a public key operation.
+ * Bounded by evicting the least recently used entry.
+ */
+public class VerifiedSignatureCache {
+    private final Map<ByteBuffer, Boolean> verified;
+    private long hits, misses;
+
+    public VerifiedSignatureCache(int maxEntries) {
+        this.verified = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized boolean contains(byte[] issuerPublicKey, SignedCertificate subject) {
+        boolean found = verified.containsKey(key(issuerPublicKey, subject));
+        if (found) hits++; else misses++;
+        return found;
+    }
+
+    public synchronized void add(byte[] issuerPublicKey, SignedCertificate subject) {
+        verified.put(key(issuerPublicKey, subject), Boolean.TRUE);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return verified.size();
+    }
+
+    private static ByteBuffer key(byte[] issuerPublicKey, SignedCertificate subject) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(issuerPublicKey);
+            digest.update(subject.getEncoded());
+            return ByteBuffer.wrap(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required in every JRE", e);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package io.liquidpki.pem;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes and decodes <a href="https://www.rfc-editor.org/rfc/rfc7468">PKIX Textual Encodings</a>
+ * directly between byte arrays or buffers, with no intermediate Strings. Base64 characters are
+ * computed with arithmetic instead of table lookups, so the time taken does not depend on the
+ * bytes of a key being encoded or decoded.
+ */
+public class PemCodec {
+
+    private static final int BYTES_PER_LINE = 48;
+    private static final int COLUMNS = 64;
+
+    /** The number of bytes {@link #encode} writes */
+    public static int encodedLength(String label, int length) {
+        int base64Length = 4 * ((length + 2) / 3);
+        int lines = (base64Length + COLUMNS - 1) / COLUMNS;
+        return "-----BEGIN ".length() + label.length() + "-----\n".length()
+               + base64Length + lines
+               + "-----END ".length() + label.length() + "-----".length();
+    }
+
+    /**
+     * Writes "-----BEGIN label-----", the Base64 of <code>der</code> in lines of 64 columns, and
+     * "-----END label-----" as ASCII, returning the number of bytes written
+     */
+    public static int encode(String label, byte[] der, int offset, int length, byte[] out, int outOffset) {
+        int pos = outOffset;
+        pos = writeBoundary(out, pos, "-----BEGIN ", label);
+        out[pos++] = '\n';
+        int end = offset + length;
+        int column = 0;
+        int i = offset;
+        for (; i + 3 <= end; i += 3) {
+            int bits = (der[i] & 0xff) << 16 | (der[i + 1] & 0xff) << 8 | (der[i + 2] & 0xff);
+            out[pos++] = encodeSextet(bits >>> 18);
+            out[pos++] = encodeSextet((bits >>> 12) & 0x3f);
+            out[pos++] = encodeSextet((bits >>> 6) & 0x3f);
+            out[pos++] = encodeSextet(bits & 0x3f);
+            column += 4;
+            if (column == COLUMNS) {
+                out[pos++] = '\n';
+                column = 0;
+            }
+        }
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (der[i] & 0xff) << 16 | (remaining == 2 ? (der[i + 1] & 0xff) << 8 : 0);
+            out[pos++] = encodeSextet(bits >>> 18);
+            out[pos++] = encodeSextet((bits >>> 12) & 0x3f);
+            out[pos++] = remaining == 2 ? encodeSextet((bits >>> 6) & 0x3f) : (byte) '=';
+            out[pos++] = '=';
+            column += 4;
+        }
+        if (column > 0) {
+            out[pos++] = '\n';
+        }
+        pos = writeBoundary(out, pos, "-----END ", label);
+        return pos - outOffset;
+    }
+
+    public static byte[] encode(String label, byte[] der) {
+        byte[] result = new byte[encodedLength(label, der.length)];
+        encode(label, der, 0, der.length, result, 0);
+        return result;
+    }
+
+    public static String encodeToString(String label, byte[] der) {
+        return new String(encode(label, der), StandardCharsets.US_ASCII);
+    }
+
+    /** Encodes the remaining bytes of <code>der</code> into <code>out</code>, advancing both */
+    public static void encode(String label, ByteBuffer der, ByteBuffer out) {
+        int length = der.remaining();
+        int encodedLength = encodedLength(label, length);
+        if (out.remaining() < encodedLength) {
+            throw new IllegalArgumentException("Need " + encodedLength + " bytes, but only " + out.remaining() + " remain");
+        }
+        if (der.hasArray() && out.hasArray()) {
+            encode(label, der.array(), der.arrayOffset() + der.position(), length, out.array(), out.arrayOffset() + out.position());
+            der.position(der.position() + length);
+            out.position(out.position() + encodedLength);
+            return;
+        }
+        putBoundary(out, "-----BEGIN ", label);
+        out.put((byte) '\n');
+        int column = 0;
+        while (der.remaining() >= 3) {
+            int bits = (der.get() & 0xff) << 16 | (der.get() & 0xff) << 8 | (der.get() & 0xff);
+            out.put(encodeSextet(bits >>> 18)).put(encodeSextet((bits >>> 12) & 0x3f))
+                    .put(encodeSextet((bits >>> 6) & 0x3f)).put(encodeSextet(bits & 0x3f));
+            column += 4;
+            if (column == COLUMNS) {
+                out.put((byte) '\n');
+                column = 0;
+            }
+        }
+        int remaining = der.remaining();
+        if (remaining > 0) {
+            int bits = (der.get() & 0xff) << 16 | (remaining == 2 ? (der.get() & 0xff) << 8 : 0);
+            out.put(encodeSextet(bits >>> 18)).put(encodeSextet((bits >>> 12) & 0x3f))
+                    .put(remaining == 2 ? encodeSextet((bits >>> 6) & 0x3f) : (byte) '=').put((byte) '=');
+            column += 4;
+        }
+        if (column > 0) {
+            out.put((byte) '\n');
+        }
+        putBoundary(out, "-----END ", label);
+    }
+
+    private static void putBoundary(ByteBuffer out, String prefix, String label) {
+        for (int i = 0; i < prefix.length(); i++) {
+            out.put((byte) prefix.charAt(i));
+        }
+        for (int i = 0; i < label.length(); i++) {
+            out.put((byte) label.charAt(i));
+        }
+        for (int i = 0; i < 5; i++) {
+            out.put((byte) '-');
+        }
+    }
+
+    private static int writeBoundary(byte[] out, int pos, String prefix, String label) {
+        for (int i = 0; i < prefix.length(); i++) {
+            out[pos++] = (byte) prefix.charAt(i);
+        }
+        for (int i = 0; i < label.length(); i++) {
+            out[pos++] = (byte) label.charAt(i);
+        }
+        for (int i = 0; i < 5; i++) {
+            out[pos++] = '-';
+        }
+        return pos;
+    }
+
+    /** An upper bound of the number of bytes {@link #decode} writes */
+    public static int maxDecodedLength(int pemLength) {
+        return pemLength / 4 * 3 + 3;
+    }
+
+    /**
+     * Decodes the first PEM block in <code>pem</code> into <code>out</code>, returning the number
+     * of bytes written. Lines starting with "-----" are boundaries and whitespace is ignored, so
+     * plain Base64 is also accepted.
+     *
+     * @throws IllegalArgumentException if the Base64 is malformed
+     */
+    public static int decode(byte[] pem, int offset, int length, byte[] out, int outOffset) {
+        return decode(i -> pem[i] & 0xff, offset, offset + length, out, outOffset);
+    }
+
+    public static byte[] decode(byte[] pem) {
+        return decode(i -> pem[i] & 0xff, pem.length);
+    }
+
+    /** Decodes a PEM string without converting it to bytes first */
+    public static byte[] decode(CharSequence pem) {
+        return decode(pem::charAt, pem.length());
+    }
+
+    private interface Input {
+        int at(int index);
+    }
+
+    private static byte[] decode(Input pem, int length) {
+        byte[] buffer = new byte[maxDecodedLength(length)];
+        int decodedLength = decode(pem, 0, length, buffer, 0);
+        if (decodedLength == buffer.length) {
+            return buffer;
+        }
+        byte[] result = new byte[decodedLength];
+        System.arraycopy(buffer, 0, result, 0, decodedLength);
+        return result;
+    }
+
+    private static int decode(Input pem, int start, int end, byte[] out, int outOffset) {
+        int i = skipBeginBoundary(pem, start, end);
+        int pos = outOffset;
+        int bits = 0, sextets = 0, padding = 0, invalid = 0;
+        for (; i < end; i++) {
+            int c = pem.at(i);
+            if (c == '\n' || c == '\r' || c == ' ' || c == '\t') {
+                continue;
+            } else if (c == '-') {
+                break;
+            } else if (c == '=') {
+                padding++;
+                continue;
+            }
+            int value = decodeChar(c);
+            invalid |= value | -padding;
+            bits = bits << 6 | (value & 0x3f);
+            if (++sextets == 4) {
+                out[pos++] = (byte) (bits >> 16);
+                out[pos++] = (byte) (bits >> 8);
+                out[pos++] = (byte) bits;
+                sextets = 0;
+            }
+        }
+        if (invalid < 0 || sextets == 1 || (padding > 0 && sextets + padding != 4)) {
+            throw new IllegalArgumentException("Invalid Base64 in PEM");
+        }
+        if (sextets == 3) {
+            out[pos++] = (byte) (bits >> 10);
+            out[pos++] = (byte) (bits >> 2);
+        } else if (sextets == 2) {
+            out[pos++] = (byte) (bits >> 4);
+        }
+        return pos - outOffset;
+    }
+
+    private static int skipBeginBoundary(Input pem, int start, int end) {
+        int i = start;
+        while (i < end && Character.isWhitespace(pem.at(i))) {
+            i++;
+        }
+        if (i < end && pem.at(i) == '-') {
+            while (i < end && pem.at(i) != '\n') {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /** Maps 0..63 to the Base64 alphabet without branches or table lookups */
+    static byte encodeSextet(int value) {
+        int diff = 'A';
+        diff += ((25 - value) >> 8) & 6;
+        diff -= ((51 - value) >> 8) & 75;
+        diff -= ((61 - value) >> 8) & 15;
+        diff += ((62 - value) >> 8) & 3;
+        return (byte) (value + diff);
+    }
+
+    /**
+     * Maps a Base64 character to 0..63, or to -1 if it is not one, without branches or table lookups.
+     * The ranges below only hold for 0..255, so anything above ASCII is forced to -1.
+     */
+    static int decodeChar(int c) {
+        int result = -1;
+        result += (((0x40 - c) & (c - 0x5b)) >> 8) & (c - 64);
+        result += (((0x60 - c) & (c - 0x7b)) >> 8) & (c - 70);
+        result += (((0x2f - c) & (c - 0x3a)) >> 8) & (c + 5);
+        result += (((0x2a - c) & (c - 0x2c)) >> 8) & 63;
+        result += (((0x2e - c) & (c - 0x30)) >> 8) & 64;
+        return result | ((0x7f - c) >> 31);
+    }
+}
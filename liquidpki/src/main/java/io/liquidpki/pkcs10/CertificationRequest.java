@@ -6,8 +6,12 @@ import io.liquidpki.common.Extension;
 import io.liquidpki.der.Der;
 import io.liquidpki.der.DerCollection;
 import io.liquidpki.der.DerValue;
+import io.liquidpki.der.Oid;
 
 import java.io.PrintStream;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.SignatureException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -47,6 +51,30 @@ public class CertificationRequest {
         return certificationRequestInfo;
     }
 
+    /**
+     * Checks that the request is signed with the key in its own subjectPKInfo, which shows that
+     * the requester holds the private key
+     *
+     * @throws SignatureException if the signature doesn't match
+     */
+    public void verifySignature() throws GeneralSecurityException {
+        String algorithm = Oid.getJcaSignatureAlgorithm(signatureAlgorithm.getAlgorithmOid());
+        if (algorithm == null) {
+            throw new SignatureException("Unsupported signature algorithm " + signatureAlgorithm.getAlgorithmOid());
+        }
+        Signature verifier = Signature.getInstance(algorithm);
+        verifier.initVerify(certificationRequestInfo.publicKey());
+        verifier.update(certificationRequestInfoBytes());
+        if (!verifier.verify(signature.bytesValue())) {
+            throw new SignatureException("Invalid signature on certification request");
+        }
+    }
+
+    /** The bytes which were signed, as received rather than re-encoded */
+    private byte[] certificationRequestInfoBytes() {
+        return der != null ? ((Der.SEQUENCE) der).first().toByteArray() : certificationRequestInfo.toDer().toByteArray();
+    }
+
     public Der toDer() {
         return new Der.SEQUENCE(List.of(certificationRequestInfo.toDer(), signatureAlgorithm.toDer(), signature));
     }
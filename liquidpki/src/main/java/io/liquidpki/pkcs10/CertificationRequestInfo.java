@@ -15,7 +15,6 @@ import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
-import java.security.interfaces.RSAPublicKey;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -60,7 +59,7 @@ public class CertificationRequestInfo {
     }
 
     public CertificationRequestInfo publicKey(PublicKey publicKey) {
-        this.subjectPKInfo = new SubjectPublicKeyInfo((RSAPublicKey) publicKey);
+        this.subjectPKInfo = new SubjectPublicKeyInfo(publicKey);
         return this;
     }
 
@@ -81,7 +80,7 @@ public class CertificationRequestInfo {
         return subject;
     }
 
-    public RSAPublicKey publicKey() throws GeneralSecurityException {
+    public PublicKey publicKey() throws GeneralSecurityException {
         return subjectPKInfo.getPublicKey();
     }
 
@@ -90,11 +89,12 @@ public class CertificationRequestInfo {
     }
 
     public CertificationRequest signWithKey(PrivateKey privateKey) throws GeneralSecurityException {
-        return new CertificationRequest(this, new AlgorithmIdentifier(Oid.getPublicKeyAlgorithm(privateKey.getAlgorithm())), signature(privateKey));
+        String signatureAlgorithm = AlgorithmIdentifier.defaultSignatureAlgorithm(privateKey);
+        return new CertificationRequest(this, new AlgorithmIdentifier(Oid.getSignatureAlgorithmOid(signatureAlgorithm)), signature(privateKey));
     }
 
     public byte[] signature(PrivateKey privateKey) throws GeneralSecurityException {
-        Signature signature = Signature.getInstance("SHA512withRSA");
+        Signature signature = Signature.getInstance(AlgorithmIdentifier.defaultSignatureAlgorithm(privateKey));
         signature.initSign(privateKey);
         byte[] bytes = toDer().toByteArray();
         signature.update(bytes, 0, bytes.length);
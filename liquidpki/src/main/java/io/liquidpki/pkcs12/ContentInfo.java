@@ -1,69 +1,82 @@
 package io.liquidpki.pkcs12;
 
+import io.liquidpki.common.AlgorithmIdentifier;
 import io.liquidpki.der.Der;
+import io.liquidpki.der.DerCollection;
 import io.liquidpki.der.DerContextSpecificValue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
-import java.util.ArrayList;
+import java.security.GeneralSecurityException;
 import java.util.Iterator;
 import java.util.List;
 
+/**
+ * https://datatracker.ietf.org/doc/html/rfc2315#section-7: The authSafe of a PKCS#12 file and each of
+ * its parts are ContentInfos with either plain data or password encrypted data
+ */
 public class ContentInfo {
-    private final Der.OBJECT_IDENTIFIER type;
-    private final Der.OCTET_STRING safeContents;
-    private Der.SEQUENCE der;
+    public static final String DATA = "1.2.840.113549.1.7.1";
+    public static final String ENCRYPTED_DATA = "1.2.840.113549.1.7.6";
 
-    private List<SafeBag> safeBagList = new ArrayList<>();
+    private final Der.SEQUENCE der;
+    private final Der.OBJECT_IDENTIFIER type;
+    private final Der content;
 
     public ContentInfo(Der.SEQUENCE der) {
         this.der = der;
         Iterator<Der> iterator = der.iterator();
         type = (Der.OBJECT_IDENTIFIER) iterator.next();
-        safeContents = (Der.OCTET_STRING) ((DerContextSpecificValue) iterator.next()).parse();
-        Der.SEQUENCE safeBagSequence = (Der.SEQUENCE) Der.parse(safeContents.byteArray());
-        Iterator<Der> safeBagIterator = safeBagSequence.iterator();
-        while (safeBagIterator.hasNext()) {
-            safeBagList.add(new SafeBag((Der.SEQUENCE) safeBagIterator.next()));
-        }
+        content = iterator.hasNext() ? ((DerContextSpecificValue) iterator.next()).parse() : null;
     }
 
-    public void output(PrintStream out, String indent) {
-        out.println(indent + getClass().getSimpleName() + ": " + der);
-        out.println(indent + "  type: " + type);
-        for (SafeBag safeBag : safeBagList) {
-            safeBag.output(out, indent + "  ");
-        }
-
+    public String getContentType() {
+        return type.getObjectIdentifier();
     }
 
-    public static class SafeBag {
-        private final Der.OBJECT_IDENTIFIER bagId;
-        private final Der contents;
-
-        public SafeBag(Der.SEQUENCE der) {
-            Iterator<Der> iterator = der.iterator();
-            bagId = (Der.OBJECT_IDENTIFIER) iterator.next();
-            Der bagValue = ((DerContextSpecificValue) iterator.next()).parse();
-            if (bagValue instanceof Der.OCTET_STRING) {
-                this.contents = PKCS12BagSet.create((Der.SEQUENCE) Der.parse(((Der.OCTET_STRING)bagValue).byteArray()));
-            } else {
-                this.contents = bagValue;
-            }
-
+    /** The octets of id-data content */
+    public byte[] getData() {
+        if (!getContentType().equals(DATA)) {
+            throw new IllegalStateException("Not data: " + type.getName());
         }
+        return ((Der.OCTET_STRING) content).byteArray();
+    }
 
-        public void output(PrintStream out, String indent) {
-            out.println(indent + getClass().getSimpleName() + ": " + bagId);
-            contents.output(out, indent + "  ");
+    /** The SafeContents of data or encryptedData, where the latter is decrypted with the password */
+    public List<SafeBag> getSafeBags(PasswordBasedEncryption encryption, char[] password) throws GeneralSecurityException {
+        if (getContentType().equals(DATA)) {
+            return SafeBag.parseSafeContents(getData());
+        } else if (getContentType().equals(ENCRYPTED_DATA)) {
+            Iterator<Der> encryptedData = ((Der.SEQUENCE) content).iterator();
+            encryptedData.next(); // version
+            Iterator<Der> encryptedContentInfo = ((Der.SEQUENCE) encryptedData.next()).iterator();
+            encryptedContentInfo.next(); // contentType
+            AlgorithmIdentifier algorithm = new AlgorithmIdentifier(encryptedContentInfo.next());
+            byte[] encrypted = implicitOctets((DerContextSpecificValue) encryptedContentInfo.next());
+            return SafeBag.parseSafeContents(encryption.decrypt(algorithm, encrypted, password));
         }
+        throw new GeneralSecurityException("Unsupported PKCS#12 content " + type.getName());
     }
 
-    private static class PKCS12BagSet {
-        public static Der create(Der.SEQUENCE sequence) {
-            Iterator<Der> iterator = sequence.iterator();
-            Der.OBJECT_IDENTIFIER bagId = (Der.OBJECT_IDENTIFIER) iterator.next();
+    /** [0] IMPLICIT OCTET STRING, which BER encoders may have split into segments */
+    private static byte[] implicitOctets(DerContextSpecificValue value) {
+        if ((value.getTag() & 0x20) == 0) {
+            return value.byteArray();
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Iterator<Der> segments = new DerCollection(value).iterator();
+        while (segments.hasNext()) {
+            byte[] segment = ((Der.OCTET_STRING) segments.next()).byteArray();
+            buffer.write(segment, 0, segment.length);
+        }
+        return buffer.toByteArray();
+    }
 
-            return null;
+    public void output(PrintStream out, String indent) {
+        out.println(indent + getClass().getSimpleName() + ": " + der);
+        out.println(indent + "  type: " + type);
+        if (content != null) {
+            content.output(out, indent + "  ");
         }
     }
 }
@@ -0,0 +1,115 @@
+package io.liquidpki.pkcs12;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers the results of password based key derivation, which is deliberately slow. Loading the same
+ * keystore again, for example when configuration is reloaded, then only costs the decryption.
+ * Entries are identified by a SHA-256 hash of the password rather than the password itself.
+ */
+public class DerivedKeyCache {
+
+    private static final DerivedKeyCache defaultCache = new DerivedKeyCache(256);
+
+    private final Map<CacheKey, byte[]> cache;
+
+    public DerivedKeyCache(int maxSize) {
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, byte[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static DerivedKeyCache getDefault() {
+        return defaultCache;
+    }
+
+    /** A cache which never remembers anything */
+    public static DerivedKeyCache disabled() {
+        return new DerivedKeyCache(0);
+    }
+
+    public interface KeyDerivation {
+        byte[] derive() throws GeneralSecurityException;
+    }
+
+    /**
+     * Returns the key derived with <code>algorithm</code> from the password, salt and iterations, where
+     * <code>purpose</code> and <code>length</code> distinguish several keys derived from the same input
+     */
+    public byte[] computeIfAbsent(
+            String algorithm, char[] password, byte[] salt, int iterations, int purpose, int length, KeyDerivation derivation
+    ) throws GeneralSecurityException {
+        CacheKey key = new CacheKey(algorithm, hash(password), salt.clone(), iterations, purpose, length);
+        byte[] result;
+        synchronized (cache) {
+            result = cache.get(key);
+        }
+        if (result == null) {
+            // Derive outside the lock, so different keys are derived in parallel
+            result = derivation.derive();
+            synchronized (cache) {
+                cache.put(key, result);
+            }
+        }
+        return result.clone();
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static byte[] hash(char[] password) throws NoSuchAlgorithmException {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(bytes);
+        Arrays.fill(bytes.array(), (byte) 0);
+        return digest.digest();
+    }
+
+    private static class CacheKey {
+        private final String algorithm;
+        private final byte[] passwordHash;
+        private final byte[] salt;
+        private final int iterations;
+        private final int purpose;
+        private final int length;
+
+        private CacheKey(String algorithm, byte[] passwordHash, byte[] salt, int iterations, int purpose, int length) {
+            this.algorithm = algorithm;
+            this.passwordHash = passwordHash;
+            this.salt = salt;
+            this.iterations = iterations;
+            this.purpose = purpose;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey other = (CacheKey) o;
+            return iterations == other.iterations && purpose == other.purpose && length == other.length
+                   && algorithm.equals(other.algorithm)
+                   && Arrays.equals(passwordHash, other.passwordHash)
+                   && Arrays.equals(salt, other.salt);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(algorithm, Arrays.hashCode(passwordHash), Arrays.hashCode(salt), iterations, purpose, length);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package io.liquidpki.pkcs12;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.KeyStoreSpi;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The entries of a decoded PKCS#12 file. Keys are decrypted when the file is loaded, like the JDK
+ * does for certificates, so {@link #engineGetKey} is cheap. It still only returns a key for the
+ * password the entry was stored with, which for a loaded file is the file's password. A null
+ * password counts as the empty password, as for the JDK's password-less PKCS#12 files.
+ */
+class InMemoryKeyStoreSpi extends KeyStoreSpi {
+
+    private final Map<String, Entry> entries = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    static KeyStore createKeyStore(InMemoryKeyStoreSpi spi) {
+        KeyStore keyStore = new KeyStore(spi, null, "PKCS12") {
+        };
+        try {
+            keyStore.load(null, null);
+        } catch (IOException | GeneralSecurityException cannotHappen) {
+            throw new RuntimeException(cannotHappen);
+        }
+        return keyStore;
+    }
+
+    private static class Entry {
+        private final PrivateKey key;
+        private final char[] password;
+        private final Certificate[] chain;
+        private final Date creationDate = new Date();
+
+        private Entry(PrivateKey key, char[] password, Certificate[] chain) {
+            this.key = key;
+            this.password = password;
+            this.chain = chain;
+        }
+    }
+
+    @Override
+    public Key engineGetKey(String alias, char[] password) throws UnrecoverableKeyException {
+        Entry entry = entries.get(alias);
+        if (entry == null || entry.key == null) {
+            return null;
+        } else if (!MessageDigest.isEqual(passwordBytes(entry.password), passwordBytes(password))) {
+            throw new UnrecoverableKeyException("Wrong password for " + alias);
+        }
+        return entry.key;
+    }
+
+    private static byte[] passwordBytes(char[] password) {
+        return password != null ? new String(password).getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    @Override
+    public Certificate[] engineGetCertificateChain(String alias) {
+        Entry entry = entries.get(alias);
+        return entry != null && entry.key != null ? entry.chain.clone() : null;
+    }
+
+    @Override
+    public Certificate engineGetCertificate(String alias) {
+        Entry entry = entries.get(alias);
+        return entry != null && entry.chain.length > 0 ? entry.chain[0] : null;
+    }
+
+    @Override
+    public Date engineGetCreationDate(String alias) {
+        Entry entry = entries.get(alias);
+        return entry != null ? entry.creationDate : null;
+    }
+
+    @Override
+    public void engineSetKeyEntry(String alias, Key key, char[] password, Certificate[] chain) throws KeyStoreException {
+        if (!(key instanceof PrivateKey)) {
+            throw new KeyStoreException("Only private keys are supported, not " + key.getClass().getName());
+        } else if (chain == null || chain.length == 0) {
+            throw new KeyStoreException("A private key needs a certificate chain");
+        }
+        entries.put(alias, new Entry((PrivateKey) key, password != null ? password.clone() : null, chain.clone()));
+    }
+
+    @Override
+    public void engineSetKeyEntry(String alias, byte[] key, Certificate[] chain) throws KeyStoreException {
+        throw new KeyStoreException("Protected keys are not supported");
+    }
+
+    @Override
+    public void engineSetCertificateEntry(String alias, Certificate certificate) throws KeyStoreException {
+        Entry existing = entries.get(alias);
+        if (existing != null && existing.key != null) {
+            throw new KeyStoreException(alias + " is a key entry");
+        }
+        entries.put(alias, new Entry(null, null, new Certificate[] { certificate }));
+    }
+
+    @Override
+    public void engineDeleteEntry(String alias) {
+        entries.remove(alias);
+    }
+
+    @Override
+    public Enumeration<String> engineAliases() {
+        synchronized (entries) {
+            return Collections.enumeration(new ArrayList<>(entries.keySet()));
+        }
+    }
+
+    @Override
+    public boolean engineContainsAlias(String alias) {
+        return entries.containsKey(alias);
+    }
+
+    @Override
+    public int engineSize() {
+        return entries.size();
+    }
+
+    @Override
+    public boolean engineIsKeyEntry(String alias) {
+        Entry entry = entries.get(alias);
+        return entry != null && entry.key != null;
+    }
+
+    @Override
+    public boolean engineIsCertificateEntry(String alias) {
+        Entry entry = entries.get(alias);
+        return entry != null && entry.key == null;
+    }
+
+    @Override
+    public String engineGetCertificateAlias(Certificate certificate) {
+        synchronized (entries) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (entry.getValue().chain.length > 0 && entry.getValue().chain[0].equals(certificate)) {
+                    return entry.getKey();
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Like {@link Pkcs12Writer#write(char[])}, refuses to store key entries without a password */
+    @Override
+    public void engineStore(OutputStream stream, char[] password) throws IOException, NoSuchAlgorithmException, CertificateException {
+        Pkcs12Writer writer = new Pkcs12Writer();
+        try {
+            synchronized (entries) {
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    if (entry.getValue().key != null) {
+                        writer.addKeyEntry(entry.getKey(), entry.getValue().key, entry.getValue().chain);
+                    } else {
+                        writer.addCertificateEntry(entry.getKey(), entry.getValue().chain[0]);
+                    }
+                }
+            }
+            writer.write(stream, password);
+        } catch (NoSuchAlgorithmException | CertificateException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to write PKCS#12 keystore: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void engineLoad(InputStream stream, char[] password) throws IOException, NoSuchAlgorithmException, CertificateException {
+        // load(null, null) only marks the KeyStore as initialized and keeps entries added before
+        if (stream != null) {
+            entries.clear();
+            try {
+                new Pkcs12KeyStore(stream).addEntries(this, password);
+            } catch (NoSuchAlgorithmException | CertificateException e) {
+                throw e;
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to read PKCS#12 keystore: " + e.getMessage(), e);
+            }
+        }
+    }
+}
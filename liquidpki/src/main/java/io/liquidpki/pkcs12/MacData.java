@@ -1,17 +1,51 @@
 package io.liquidpki.pkcs12;
 
+import io.liquidpki.common.AlgorithmIdentifier;
 import io.liquidpki.der.Der;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.PrintStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.UnrecoverableKeyException;
+import java.util.Iterator;
 
+/**
+ * https://datatracker.ietf.org/doc/html/rfc7292#section-4: An HMAC over the authSafe content
+ * with a key derived from the password
+ */
 public class MacData {
-    private Der.SEQUENCE der;
+    private final Der.SEQUENCE der;
+    private final AlgorithmIdentifier digestAlgorithm;
+    private final byte[] digest;
+    private final byte[] salt;
+    private final int iterations;
 
     public MacData(Der.SEQUENCE der) {
         this.der = der;
+        Iterator<Der> iterator = der.iterator();
+        Iterator<Der> digestInfo = ((Der.SEQUENCE) iterator.next()).iterator();
+        digestAlgorithm = new AlgorithmIdentifier(digestInfo.next());
+        digest = ((Der.OCTET_STRING) digestInfo.next()).byteArray();
+        salt = ((Der.OCTET_STRING) iterator.next()).byteArray();
+        iterations = iterator.hasNext() ? (int) ((Der.INTEGER) iterator.next()).longValue() : 1;
+    }
+
+    /** Throws UnrecoverableKeyException if the MAC doesn't match, which usually means that the password is wrong */
+    public void verify(byte[] authSafeContent, char[] password, PasswordBasedEncryption encryption) throws GeneralSecurityException {
+        String digestName = PasswordBasedEncryption.digestAlgorithm(digestAlgorithm.getAlgorithmOid());
+        int length = MessageDigest.getInstance(digestName).getDigestLength();
+        byte[] key = encryption.pkcs12Kdf(digestName, password, salt, iterations, PasswordBasedEncryption.MAC_MATERIAL, length);
+        Mac mac = Mac.getInstance("Hmac" + digestName.replace("-", ""));
+        mac.init(new SecretKeySpec(key, mac.getAlgorithm()));
+        if (!MessageDigest.isEqual(mac.doFinal(authSafeContent), digest)) {
+            throw new UnrecoverableKeyException("PKCS#12 MAC verification failed, the password may be incorrect");
+        }
     }
 
     public void output(PrintStream out, String indent) {
         out.println(indent + getClass().getSimpleName() + ": " + der);
+        out.println(indent + "  digestAlgorithm=" + digestAlgorithm.getAlgorithmOid() + " iterations=" + iterations);
     }
 }
@@ -0,0 +1,206 @@
+package io.liquidpki.pkcs12;
+
+import io.liquidpki.common.AlgorithmIdentifier;
+import io.liquidpki.der.Der;
+import io.liquidpki.der.Oid;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.RC2ParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Decryption of PKCS#12 contents and keys: PBES2 with PBKDF2 from
+ * <a href="https://datatracker.ietf.org/doc/html/rfc8018">PKCS#5</a>, as written by current JDKs and
+ * OpenSSL, and the older PKCS#12 algorithms with the key derivation from
+ * <a href="https://datatracker.ietf.org/doc/html/rfc7292#appendix-B">RFC 7292 appendix B</a>.
+ * Derived keys are remembered in a {@link DerivedKeyCache}.
+ */
+public class PasswordBasedEncryption {
+
+    private static final String PBE_WITH_SHA_AND_3KEY_TRIPLE_DES = "1.2.840.113549.1.12.1.3";
+    private static final String PBE_WITH_SHA_AND_40BIT_RC2 = "1.2.840.113549.1.12.1.6";
+
+    static final int KEY_MATERIAL = 1;
+    static final int IV_MATERIAL = 2;
+    static final int MAC_MATERIAL = 3;
+
+    private static final Map<String, String> hmacAlgorithms = Map.of(
+            "1.2.840.113549.2.7", "HmacSHA1",
+            "1.2.840.113549.2.9", "HmacSHA256",
+            "1.2.840.113549.2.10", "HmacSHA384",
+            "1.2.840.113549.2.11", "HmacSHA512"
+    );
+
+    private static final Map<String, Integer> aesKeyLengths = Map.of(
+            "2.16.840.1.101.3.4.1.2", 16,
+            "2.16.840.1.101.3.4.1.22", 24,
+            "2.16.840.1.101.3.4.1.42", 32
+    );
+
+    private static final Map<String, String> digestAlgorithms = Map.of(
+            "1.3.14.3.2.26", "SHA-1",
+            "2.16.840.1.101.3.4.2.1", "SHA-256",
+            "2.16.840.1.101.3.4.2.2", "SHA-384",
+            "2.16.840.1.101.3.4.2.3", "SHA-512"
+    );
+
+    private final DerivedKeyCache cache;
+
+    public PasswordBasedEncryption(DerivedKeyCache cache) {
+        this.cache = cache;
+    }
+
+    public byte[] decrypt(AlgorithmIdentifier algorithm, byte[] encrypted, char[] password) throws GeneralSecurityException {
+        String oid = algorithm.getAlgorithmOid();
+        if (oid.equals(Oid.PBES2)) {
+            return decryptPbes2((Der.SEQUENCE) algorithm.getParameters(), encrypted, password);
+        } else if (oid.equals(PBE_WITH_SHA_AND_3KEY_TRIPLE_DES) || oid.equals(PBE_WITH_SHA_AND_40BIT_RC2)) {
+            Iterator<Der> parameters = ((Der.SEQUENCE) algorithm.getParameters()).iterator();
+            byte[] salt = ((Der.OCTET_STRING) parameters.next()).byteArray();
+            int iterations = (int) ((Der.INTEGER) parameters.next()).longValue();
+            boolean tripleDes = oid.equals(PBE_WITH_SHA_AND_3KEY_TRIPLE_DES);
+            byte[] key = pkcs12Kdf("SHA-1", password, salt, iterations, KEY_MATERIAL, tripleDes ? 24 : 5);
+            byte[] iv = pkcs12Kdf("SHA-1", password, salt, iterations, IV_MATERIAL, 8);
+            Cipher cipher;
+            if (tripleDes) {
+                cipher = Cipher.getInstance("DESede/CBC/PKCS5Padding");
+                cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "DESede"), new IvParameterSpec(iv));
+            } else {
+                cipher = Cipher.getInstance("RC2/CBC/PKCS5Padding");
+                cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "RC2"), new RC2ParameterSpec(40, iv));
+            }
+            return cipher.doFinal(encrypted);
+        }
+        throw new NoSuchAlgorithmException("Unsupported PKCS#12 encryption " + oid + " (" + Oid.get(oid) + ")");
+    }
+
+    private byte[] decryptPbes2(Der.SEQUENCE parameters, byte[] encrypted, char[] password) throws GeneralSecurityException {
+        Iterator<Der> iterator = parameters.iterator();
+        AlgorithmIdentifier keyDerivation = new AlgorithmIdentifier(iterator.next());
+        AlgorithmIdentifier encryptionScheme = new AlgorithmIdentifier(iterator.next());
+        if (!keyDerivation.getAlgorithmOid().equals(Oid.PBKDF2)) {
+            throw new NoSuchAlgorithmException("Unsupported PBES2 key derivation " + keyDerivation.getAlgorithmOid());
+        }
+        Integer keyLength = aesKeyLengths.get(encryptionScheme.getAlgorithmOid());
+        if (keyLength == null) {
+            throw new NoSuchAlgorithmException("Unsupported PBES2 encryption " + encryptionScheme.getAlgorithmOid());
+        }
+
+        Iterator<Der> kdfParameters = ((Der.SEQUENCE) keyDerivation.getParameters()).iterator();
+        byte[] salt = ((Der.OCTET_STRING) kdfParameters.next()).byteArray();
+        int iterations = (int) ((Der.INTEGER) kdfParameters.next()).longValue();
+        String prf = "HmacSHA1";
+        while (kdfParameters.hasNext()) {
+            Der parameter = kdfParameters.next();
+            if (parameter instanceof Der.SEQUENCE) {
+                String prfOid = new AlgorithmIdentifier(parameter).getAlgorithmOid();
+                prf = hmacAlgorithms.get(prfOid);
+                if (prf == null) {
+                    throw new NoSuchAlgorithmException("Unsupported PBKDF2 pseudo random function " + prfOid);
+                }
+            }
+        }
+
+        byte[] key = pbkdf2(prf, password, salt, iterations, keyLength);
+        byte[] iv = ((Der.OCTET_STRING) encryptionScheme.getParameters()).byteArray();
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+        return cipher.doFinal(encrypted);
+    }
+
+    public byte[] pbkdf2(String hmac, char[] password, byte[] salt, int iterations, int keyLength) throws GeneralSecurityException {
+        return cache.computeIfAbsent("PBKDF2With" + hmac, password, salt, iterations, 0, keyLength, () -> {
+            PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, keyLength * 8);
+            try {
+                return SecretKeyFactory.getInstance("PBKDF2With" + hmac).generateSecret(spec).getEncoded();
+            } finally {
+                spec.clearPassword();
+            }
+        });
+    }
+
+    /**
+     * The key derivation from RFC 7292 appendix B.2, where <code>purpose</code> is {@link #KEY_MATERIAL},
+     * {@link #IV_MATERIAL} or {@link #MAC_MATERIAL}
+     */
+    public byte[] pkcs12Kdf(String digestAlgorithm, char[] password, byte[] salt, int iterations, int purpose, int length) throws GeneralSecurityException {
+        return cache.computeIfAbsent("PKCS12With" + digestAlgorithm, password, salt, iterations, purpose, length, () -> {
+            MessageDigest digest = MessageDigest.getInstance(digestAlgorithm);
+            int u = digest.getDigestLength();
+            int v = u > 32 ? 128 : 64;
+
+            // The password as a big endian BMPString with a terminating null
+            byte[] passwordBytes = new byte[password.length * 2 + 2];
+            for (int i = 0; i < password.length; i++) {
+                passwordBytes[i * 2] = (byte) (password[i] >> 8);
+                passwordBytes[i * 2 + 1] = (byte) password[i];
+            }
+            byte[] input = new byte[fill(salt.length, v) + fill(passwordBytes.length, v)];
+            for (int i = 0; i < fill(salt.length, v); i++) {
+                input[i] = salt[i % salt.length];
+            }
+            for (int i = 0; i < fill(passwordBytes.length, v); i++) {
+                input[fill(salt.length, v) + i] = passwordBytes[i % passwordBytes.length];
+            }
+
+            byte[] diversifier = new byte[v];
+            Arrays.fill(diversifier, (byte) purpose);
+            byte[] result = new byte[length];
+            byte[] block = new byte[v];
+            for (int offset = 0; offset < length; offset += u) {
+                digest.update(diversifier);
+                digest.update(input);
+                byte[] hash = digest.digest();
+                for (int i = 1; i < iterations; i++) {
+                    hash = digest.digest(hash);
+                }
+                System.arraycopy(hash, 0, result, offset, Math.min(u, length - offset));
+                if (offset + u >= length) {
+                    break;
+                }
+                for (int i = 0; i < v; i++) {
+                    block[i] = hash[i % u];
+                }
+                for (int j = 0; j < input.length; j += v) {
+                    addBlockPlusOne(input, j, block);
+                }
+            }
+            Arrays.fill(passwordBytes, (byte) 0);
+            Arrays.fill(input, (byte) 0);
+            return result;
+        });
+    }
+
+    /** The JCA name of the digest algorithm with the given OID, as used by the PKCS#12 MAC */
+    static String digestAlgorithm(String digestOid) throws NoSuchAlgorithmException {
+        String digest = digestAlgorithms.get(digestOid);
+        if (digest == null) {
+            throw new NoSuchAlgorithmException("Unsupported PKCS#12 MAC digest " + digestOid);
+        }
+        return digest;
+    }
+
+    /** The length of the data repeated to fill whole blocks of v bytes */
+    private static int fill(int length, int v) {
+        return length == 0 ? 0 : v * ((length + v - 1) / v);
+    }
+
+    /** input[offset..offset+v] = (input[offset..offset+v] + block + 1) mod 2^(8v) */
+    private static void addBlockPlusOne(byte[] input, int offset, byte[] block) {
+        int carry = 1;
+        for (int i = block.length - 1; i >= 0; i--) {
+            int sum = (0xff & input[offset + i]) + (0xff & block[i]) + carry;
+            input[offset + i] = (byte) sum;
+            carry = sum >>> 8;
+        }
+    }
+}
@@ -1,18 +1,48 @@
 package io.liquidpki.pkcs12;
 
+import io.liquidpki.der.Ber;
 import io.liquidpki.der.Der;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * https://datatracker.ietf.org/doc/html/rfc7292#section-4
+ *
+ * <p>{@link #toKeyStore} verifies the MAC, decrypts the contents and keys and returns a KeyStore with the
+ * results. The encrypted parts are decrypted in parallel, and the slow password based key derivation is
+ * remembered in a {@link DerivedKeyCache}, so loading the same file again is cheap.</p>
  */
 public class Pkcs12KeyStore {
     private final Der.INTEGER version;
     private final ContentInfo authSafe;
+    private final List<ContentInfo> authenticatedSafe = new ArrayList<>();
     private final MacData macData;
     private final Der der;
+    private PasswordBasedEncryption encryption = new PasswordBasedEncryption(DerivedKeyCache.getDefault());
+    private Executor executor = ForkJoinPool.commonPool();
+
+    /** Reads keystores in BER, as written by many other tools, as well as DER */
+    public Pkcs12KeyStore(InputStream input) throws IOException {
+        this(Ber.parse(input));
+    }
 
     public Pkcs12KeyStore(Der der) {
         this.der = der;
@@ -20,13 +50,168 @@ public class Pkcs12KeyStore {
         version = (Der.INTEGER) iterator.next();
         authSafe = new ContentInfo((Der.SEQUENCE) iterator.next());
         macData = iterator.hasNext() ? new MacData((Der.SEQUENCE) iterator.next()) : null;
+        Iterator<Der> contentInfos = ((Der.SEQUENCE) Ber.parse(authSafe.getData())).iterator();
+        while (contentInfos.hasNext()) {
+            authenticatedSafe.add(new ContentInfo((Der.SEQUENCE) contentInfos.next()));
+        }
+    }
+
+    /** Reads a PKCS#12 file into a KeyStore where all keys are already decrypted with <code>password</code> */
+    public static KeyStore load(InputStream input, char[] password) throws IOException, GeneralSecurityException {
+        return new Pkcs12KeyStore(input).toKeyStore(password);
+    }
+
+    public Pkcs12KeyStore derivedKeyCache(DerivedKeyCache cache) {
+        this.encryption = new PasswordBasedEncryption(cache);
+        return this;
+    }
+
+    /** Where encrypted contents and keys are decrypted */
+    public Pkcs12KeyStore executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public void verifyMac(char[] password) throws GeneralSecurityException {
+        if (macData != null) {
+            macData.verify(authSafe.getData(), password, encryption);
+        }
+    }
+
+    /** All bags of the keystore, where encrypted contents are decrypted in parallel */
+    public List<SafeBag> getSafeBags(char[] password) throws GeneralSecurityException {
+        List<SafeBag> result = new ArrayList<>();
+        for (List<SafeBag> bags : inParallel(authenticatedSafe, contentInfo -> contentInfo.getSafeBags(encryption, password))) {
+            result.addAll(bags);
+        }
+        return result;
+    }
+
+    public KeyStore toKeyStore(char[] password) throws GeneralSecurityException {
+        InMemoryKeyStoreSpi spi = new InMemoryKeyStoreSpi();
+        addEntries(spi, password);
+        return InMemoryKeyStoreSpi.createKeyStore(spi);
+    }
+
+    void addEntries(InMemoryKeyStoreSpi spi, char[] password) throws GeneralSecurityException {
+        verifyMac(password);
+        List<SafeBag> keyBags = new ArrayList<>();
+        List<SafeBag> certBags = new ArrayList<>();
+        for (SafeBag bag : getSafeBags(password)) {
+            if (bag.isKeyBag()) {
+                keyBags.add(bag);
+            } else if (bag.isCertBag()) {
+                certBags.add(bag);
+            }
+        }
+        List<PrivateKey> keys = inParallel(keyBags, bag -> bag.getPrivateKey(encryption, password));
+        CertificateFactory certificateFactory = CertificateFactory.getInstance("X509");
+        List<X509Certificate> certificates = new ArrayList<>();
+        for (SafeBag bag : certBags) {
+            certificates.add((X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(bag.getCertificate())));
+        }
+
+        for (int i = 0; i < keyBags.size(); i++) {
+            SafeBag keyBag = keyBags.get(i);
+            int leaf = findCertificate(certBags, keyBag.getLocalKeyId());
+            if (leaf < 0) {
+                throw new KeyStoreException("No certificate for key " + alias(keyBag, "key" + i));
+            }
+            spi.engineSetKeyEntry(
+                    alias(keyBag, alias(certBags.get(leaf), "key" + i)),
+                    keys.get(i),
+                    password,
+                    buildChain(certificates.get(leaf), certificates)
+            );
+        }
+        for (int i = 0; i < certBags.size(); i++) {
+            // Like the JDK, only expose certificates marked as trusted, unless it's a pure trust store
+            if (certBags.get(i).isTrusted() || keyBags.isEmpty()) {
+                spi.engineSetCertificateEntry(alias(certBags.get(i), "certificate" + i), certificates.get(i));
+            }
+        }
+    }
+
+    private static int findCertificate(List<SafeBag> certBags, byte[] localKeyId) {
+        for (int i = 0; i < certBags.size(); i++) {
+            if (localKeyId != null && Arrays.equals(localKeyId, certBags.get(i).getLocalKeyId())) {
+                return i;
+            }
+        }
+        return certBags.size() == 1 ? 0 : -1;
+    }
+
+    private static Certificate[] buildChain(X509Certificate leaf, List<X509Certificate> certificates) {
+        List<X509Certificate> chain = new ArrayList<>(List.of(leaf));
+        X509Certificate current = leaf;
+        while (chain.size() <= certificates.size() && !current.getIssuerX500Principal().equals(current.getSubjectX500Principal())) {
+            X509Certificate issuer = null;
+            for (X509Certificate certificate : certificates) {
+                if (certificate.getSubjectX500Principal().equals(current.getIssuerX500Principal()) && !chain.contains(certificate)) {
+                    issuer = certificate;
+                    break;
+                }
+            }
+            if (issuer == null) {
+                break;
+            }
+            chain.add(issuer);
+            current = issuer;
+        }
+        return chain.toArray(new Certificate[0]);
+    }
+
+    private static String alias(SafeBag bag, String defaultAlias) {
+        return bag.getFriendlyName() != null ? bag.getFriendlyName() : defaultAlias;
+    }
+
+    private interface Decryption<T, R> {
+        R apply(T input) throws GeneralSecurityException;
+    }
+
+    private <T, R> List<R> inParallel(List<T> inputs, Decryption<T, R> decryption) throws GeneralSecurityException {
+        if (inputs.size() <= 1) {
+            List<R> result = new ArrayList<>();
+            for (T input : inputs) {
+                result.add(decryption.apply(input));
+            }
+            return result;
+        }
+        List<CompletableFuture<R>> futures = new ArrayList<>();
+        for (T input : inputs) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return decryption.apply(input);
+                } catch (GeneralSecurityException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        List<R> result = new ArrayList<>();
+        try {
+            for (CompletableFuture<R> future : futures) {
+                result.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) e.getCause();
+            }
+            throw e;
+        }
+        return result;
     }
 
     public void output(PrintStream out, String indent) {
-        der.output(out, indent);
-        out.println(getClass().getSimpleName() + ": " + der);
+        out.println(indent + getClass().getSimpleName() + ": " + der);
         out.println(indent + "  version=" + version);
-        authSafe.output(out, indent + "  ");
+        for (ContentInfo contentInfo : authenticatedSafe) {
+            contentInfo.output(out, indent + "  ");
+            if (contentInfo.getContentType().equals(ContentInfo.DATA)) {
+                for (SafeBag safeBag : SafeBag.parseSafeContents(contentInfo.getData())) {
+                    safeBag.output(out, indent + "    ");
+                }
+            }
+        }
         if (macData != null) {
             macData.output(out, indent + "  ");
         }
@@ -0,0 +1,440 @@
+package io.liquidpki.pkcs12;
+
+import io.liquidpki.der.Der;
+import io.liquidpki.der.DerValue;
+import io.liquidpki.der.Oid;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes PKCS#12 files that the JDK, OpenSSL and {@link Pkcs12KeyStore} can read. The size of every
+ * value is computed up front, and keys, certificates and the encrypted contents are written directly
+ * into one buffer of the exact size. Encryption uses PBES2 with PBKDF2-HmacSHA256 and AES-CBC. Bags
+ * with the same encryption share one derived key with separate IVs, so a file usually costs a single
+ * key derivation plus the derivation of the HmacSHA256 MAC key.
+ *
+ * <pre>
+ * byte[] pkcs12 = new Pkcs12Writer()
+ *         .addKeyEntry("server", privateKey, new Certificate[] { certificate, caCertificate })
+ *         .write(password);
+ * </pre>
+ */
+public class Pkcs12Writer {
+
+    public enum Encryption {
+        /** Keys are written in a plain keyBag, still protected by the MAC, and certificates in plain data */
+        NONE(null, 0),
+        AES_128_CBC("2.16.840.1.101.3.4.1.2", 16),
+        AES_256_CBC("2.16.840.1.101.3.4.1.42", 32);
+
+        private final String oid;
+        private final int keyLength;
+
+        Encryption(String oid, int keyLength) {
+            this.oid = oid;
+            this.keyLength = keyLength;
+        }
+
+        /** AES-CBC with PKCS#5 padding always adds between 1 and 16 bytes */
+        private int encryptedLength(int length) {
+            return this == NONE ? length : (length / 16 + 1) * 16;
+        }
+    }
+
+    private static final int SALT_LENGTH = 16;
+    private static final String HMAC_WITH_SHA256 = "1.2.840.113549.2.9";
+    private static final String SHA256 = "2.16.840.1.101.3.4.2.1";
+    private static final String X509_CERTIFICATE = "1.2.840.113549.1.9.22.1";
+    private static final String ANY_EXTENDED_KEY_USAGE = "2.5.29.37.0";
+
+    private static final byte[] VERSION = new Der.INTEGER(3).toByteArray();
+    private static final byte[] ENCRYPTED_DATA_VERSION = new Der.INTEGER(0).toByteArray();
+    private static final byte[] DATA_OID = oid(ContentInfo.DATA);
+    private static final byte[] ENCRYPTED_DATA_OID = oid(ContentInfo.ENCRYPTED_DATA);
+    private static final byte[] KEY_BAG_OID = oid(Oid.KeyBag);
+    private static final byte[] SHROUDED_KEY_BAG_OID = oid(Oid.PKCS8ShroudedKeyBag);
+    private static final byte[] CERT_BAG_OID = oid(Oid.CertBag);
+    private static final byte[] X509_CERTIFICATE_OID = oid(X509_CERTIFICATE);
+    private static final byte[] MAC_ALGORITHM = new Der.SEQUENCE(List.of(new Der.OBJECT_IDENTIFIER(SHA256), new Der.NULL())).toByteArray();
+
+    private Encryption keyEncryption = Encryption.AES_256_CBC;
+    private Encryption certificateEncryption = Encryption.AES_256_CBC;
+    private int iterations = 10000;
+    private int macIterations = 10000;
+    private SecureRandom random;
+    private final List<Bag> keyBags = new ArrayList<>();
+    private final List<Bag> certificateBags = new ArrayList<>();
+
+    public Pkcs12Writer keyEncryption(Encryption keyEncryption) {
+        this.keyEncryption = keyEncryption;
+        return this;
+    }
+
+    public Pkcs12Writer certificateEncryption(Encryption certificateEncryption) {
+        this.certificateEncryption = certificateEncryption;
+        return this;
+    }
+
+    /** PBKDF2 iterations for the key that encrypts keys and certificates */
+    public Pkcs12Writer iterations(int iterations) {
+        this.iterations = iterations;
+        return this;
+    }
+
+    /** Iterations of the PKCS#12 key derivation for the MAC key */
+    public Pkcs12Writer macIterations(int macIterations) {
+        this.macIterations = macIterations;
+        return this;
+    }
+
+    public Pkcs12Writer random(SecureRandom random) {
+        this.random = random;
+        return this;
+    }
+
+    /** Adds a private key, where <code>chain[0]</code> is the certificate for the key */
+    public Pkcs12Writer addKeyEntry(String alias, PrivateKey key, Certificate[] chain) throws GeneralSecurityException {
+        if (chain == null || chain.length == 0) {
+            throw new IllegalArgumentException("A private key needs a certificate chain");
+        }
+        byte[] certificate = chain[0].getEncoded();
+        byte[] localKeyId = MessageDigest.getInstance("SHA-1").digest(certificate);
+        keyBags.add(new Bag(key.getEncoded(), keyAttributes(alias, localKeyId)));
+        certificateBags.add(new Bag(certificate, keyAttributes(alias, localKeyId)));
+        for (int i = 1; i < chain.length; i++) {
+            addChainCertificate(chain[i].getEncoded());
+        }
+        return this;
+    }
+
+    /** Adds a certificate which the JDK reads as a trusted certificate entry */
+    public Pkcs12Writer addCertificateEntry(String alias, Certificate certificate) throws GeneralSecurityException {
+        certificateBags.add(new Bag(certificate.getEncoded(), attributes(
+                attribute(SafeBag.FRIENDLY_NAME, bmpString(alias)),
+                attribute(SafeBag.TRUSTED_KEY_USAGE, new Der.OBJECT_IDENTIFIER(ANY_EXTENDED_KEY_USAGE))
+        )));
+        return this;
+    }
+
+    private void addChainCertificate(byte[] certificate) {
+        for (Bag bag : certificateBags) {
+            if (Arrays.equals(bag.content, certificate)) {
+                return;
+            }
+        }
+        certificateBags.add(new Bag(certificate, new byte[0]));
+    }
+
+    public void write(OutputStream output, char[] password) throws GeneralSecurityException, IOException {
+        output.write(write(password));
+    }
+
+    /**
+     * Returns the encoded PFX. Without a password nothing is encrypted and there is no MAC, like the JDK
+     * does for <code>KeyStore.store(stream, null)</code>. This is only allowed for certificates, as it
+     * would leave private keys readable by anyone with the file.
+     *
+     * @throws IllegalArgumentException if <code>password</code> is null and there are key entries
+     */
+    public byte[] write(char[] password) throws GeneralSecurityException {
+        if (password == null && !keyBags.isEmpty()) {
+            throw new IllegalArgumentException("Refusing to write private keys without a password");
+        }
+        Encryption keyEncryption = password != null ? this.keyEncryption : Encryption.NONE;
+        Encryption certificateEncryption = password != null ? this.certificateEncryption : Encryption.NONE;
+        SecureRandom random = this.random != null ? this.random : new SecureRandom();
+
+        byte[] salt = randomBytes(random, SALT_LENGTH);
+        byte[] certificateSalt = keyEncryption == certificateEncryption ? salt : randomBytes(random, SALT_LENGTH);
+        PasswordBasedEncryption encryption = new PasswordBasedEncryption(DerivedKeyCache.disabled());
+        SecretKey keyEncryptionKey = deriveKey(encryption, keyEncryption, password, salt);
+        SecretKey certificateEncryptionKey = keyEncryption == certificateEncryption
+                ? keyEncryptionKey
+                : deriveKey(encryption, certificateEncryption, password, certificateSalt);
+
+        for (Bag bag : keyBags) {
+            bag.algorithmIdentifier(keyEncryption, salt, iterations, random);
+        }
+        Bag certificateContents = new Bag(null, null);
+        certificateContents.algorithmIdentifier(certificateEncryption, certificateSalt, iterations, random);
+
+        // Compute the length of each level, from the inside out
+        int keySafeContents = 0;
+        for (Bag bag : keyBags) {
+            keySafeContents += tlv(keyBagLength(bag, keyEncryption));
+        }
+        int certificateSafeContents = 0;
+        for (Bag bag : certificateBags) {
+            certificateSafeContents += tlv(certificateBagLength(bag));
+        }
+        int keyContentInfo = dataContentInfoLength(keySafeContents);
+        int certificateContentInfo = certificateEncryption == Encryption.NONE
+                ? dataContentInfoLength(certificateSafeContents)
+                : ENCRYPTED_DATA_OID.length + tlv(tlv(encryptedDataLength(certificateContents, certificateEncryption, certificateSafeContents)));
+        int authenticatedSafe = (keyBags.isEmpty() ? 0 : tlv(keyContentInfo)) + (certificateBags.isEmpty() ? 0 : tlv(certificateContentInfo));
+        int authSafe = dataContentInfoLength(authenticatedSafe);
+        int macLength = 32;
+        byte[] macIterationsEncoded = new Der.INTEGER(macIterations).toByteArray();
+        int macData = tlv(MAC_ALGORITHM.length + tlv(macLength)) + tlv(SALT_LENGTH) + macIterationsEncoded.length;
+        int pfx = VERSION.length + tlv(authSafe) + (password != null ? tlv(macData) : 0);
+
+        Buffer out = new Buffer(tlv(pfx));
+        out.header(0x30, pfx);
+        out.write(VERSION);
+        out.header(0x30, authSafe);
+        out.write(DATA_OID);
+        out.header(0xa0, tlv(tlv(authenticatedSafe)));
+        out.header(0x04, tlv(authenticatedSafe));
+        int macStart = out.pos;
+        out.header(0x30, authenticatedSafe);
+        if (!keyBags.isEmpty()) {
+            out.header(0x30, keyContentInfo);
+            writeDataHeader(out, keySafeContents);
+            out.header(0x30, keySafeContents);
+            for (Bag bag : keyBags) {
+                writeKeyBag(out, bag, keyEncryption, keyEncryptionKey);
+            }
+        }
+        if (!certificateBags.isEmpty()) {
+            out.header(0x30, certificateContentInfo);
+            if (certificateEncryption == Encryption.NONE) {
+                writeDataHeader(out, certificateSafeContents);
+                writeCertificateBags(out, certificateSafeContents);
+            } else {
+                out.write(ENCRYPTED_DATA_OID);
+                int encryptedData = encryptedDataLength(certificateContents, certificateEncryption, certificateSafeContents);
+                out.header(0xa0, tlv(encryptedData));
+                out.header(0x30, encryptedData);
+                out.write(ENCRYPTED_DATA_VERSION);
+                out.header(0x30, encryptedContentInfoLength(certificateContents, certificateEncryption, certificateSafeContents));
+                out.write(DATA_OID);
+                out.write(certificateContents.algorithmIdentifier);
+                out.header(0x80, certificateEncryption.encryptedLength(tlv(certificateSafeContents)));
+                int plaintextStart = out.pos;
+                writeCertificateBags(out, certificateSafeContents);
+                out.encryptInPlace(cipher(certificateEncryptionKey, certificateContents.iv), plaintextStart);
+            }
+        }
+        int macEnd = out.pos;
+
+        if (password != null) {
+            byte[] macSalt = randomBytes(random, SALT_LENGTH);
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(encryption.pkcs12Kdf("SHA-256", password, macSalt, macIterations, PasswordBasedEncryption.MAC_MATERIAL, macLength), "HmacSHA256"));
+            mac.update(out.bytes, macStart, macEnd - macStart);
+            out.header(0x30, macData);
+            out.header(0x30, MAC_ALGORITHM.length + tlv(macLength));
+            out.write(MAC_ALGORITHM);
+            out.header(0x04, macLength);
+            mac.doFinal(out.bytes, out.pos);
+            out.pos += macLength;
+            out.header(0x04, SALT_LENGTH);
+            out.write(macSalt);
+            out.write(macIterationsEncoded);
+        }
+        if (out.pos != out.bytes.length) {
+            throw new IllegalStateException("Wrote " + out.pos + " bytes, expected " + out.bytes.length);
+        }
+        return out.bytes;
+    }
+
+    private int keyBagLength(Bag bag, Encryption encryption) {
+        int bagValue = encryption == Encryption.NONE ? bag.content.length : tlv(encryptedPrivateKeyInfoLength(bag, encryption));
+        return (encryption == Encryption.NONE ? KEY_BAG_OID : SHROUDED_KEY_BAG_OID).length + tlv(bagValue) + bag.attributes.length;
+    }
+
+    private int encryptedPrivateKeyInfoLength(Bag bag, Encryption encryption) {
+        return bag.algorithmIdentifier.length + tlv(encryption.encryptedLength(bag.content.length));
+    }
+
+    private void writeKeyBag(Buffer out, Bag bag, Encryption encryption, SecretKey key) throws GeneralSecurityException {
+        out.header(0x30, keyBagLength(bag, encryption));
+        if (encryption == Encryption.NONE) {
+            out.write(KEY_BAG_OID);
+            out.header(0xa0, bag.content.length);
+            out.write(bag.content);
+        } else {
+            int encryptedPrivateKeyInfo = encryptedPrivateKeyInfoLength(bag, encryption);
+            out.write(SHROUDED_KEY_BAG_OID);
+            out.header(0xa0, tlv(encryptedPrivateKeyInfo));
+            out.header(0x30, encryptedPrivateKeyInfo);
+            out.write(bag.algorithmIdentifier);
+            out.header(0x04, encryption.encryptedLength(bag.content.length));
+            out.pos += cipher(key, bag.iv).doFinal(bag.content, 0, bag.content.length, out.bytes, out.pos);
+        }
+        out.write(bag.attributes);
+    }
+
+    private static int certificateValueLength(Bag bag) {
+        return X509_CERTIFICATE_OID.length + tlv(tlv(bag.content.length));
+    }
+
+    private static int certificateBagLength(Bag bag) {
+        return CERT_BAG_OID.length + tlv(tlv(certificateValueLength(bag))) + bag.attributes.length;
+    }
+
+    private void writeCertificateBags(Buffer out, int safeContents) {
+        out.header(0x30, safeContents);
+        for (Bag bag : certificateBags) {
+            out.header(0x30, certificateBagLength(bag));
+            out.write(CERT_BAG_OID);
+            out.header(0xa0, tlv(certificateValueLength(bag)));
+            out.header(0x30, certificateValueLength(bag));
+            out.write(X509_CERTIFICATE_OID);
+            out.header(0xa0, tlv(bag.content.length));
+            out.header(0x04, bag.content.length);
+            out.write(bag.content);
+            out.write(bag.attributes);
+        }
+    }
+
+    /** ContentInfo with contentType data and the SafeContents in an OCTET STRING */
+    private static int dataContentInfoLength(int safeContents) {
+        return DATA_OID.length + tlv(tlv(tlv(safeContents)));
+    }
+
+    private static void writeDataHeader(Buffer out, int safeContents) {
+        out.write(DATA_OID);
+        out.header(0xa0, tlv(tlv(safeContents)));
+        out.header(0x04, tlv(safeContents));
+    }
+
+    /** EncryptedData with the SafeContents encrypted in the [0] IMPLICIT encryptedContent */
+    private static int encryptedDataLength(Bag contents, Encryption encryption, int safeContents) {
+        return ENCRYPTED_DATA_VERSION.length + tlv(encryptedContentInfoLength(contents, encryption, safeContents));
+    }
+
+    private static int encryptedContentInfoLength(Bag contents, Encryption encryption, int safeContents) {
+        return DATA_OID.length + contents.algorithmIdentifier.length + tlv(encryption.encryptedLength(tlv(safeContents)));
+    }
+
+    private SecretKey deriveKey(PasswordBasedEncryption encryption, Encryption algorithm, char[] password, byte[] salt) throws GeneralSecurityException {
+        if (algorithm == Encryption.NONE) {
+            return null;
+        }
+        return new SecretKeySpec(encryption.pbkdf2("HmacSHA256", password, salt, iterations, algorithm.keyLength), "AES");
+    }
+
+    private static byte[] randomBytes(SecureRandom random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static Cipher cipher(SecretKey key, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+        return cipher;
+    }
+
+    private static byte[] keyAttributes(String alias, byte[] localKeyId) {
+        return attributes(
+                attribute(SafeBag.FRIENDLY_NAME, bmpString(alias)),
+                attribute(SafeBag.LOCAL_KEY_ID, new Der.OCTET_STRING(localKeyId))
+        );
+    }
+
+    private static byte[] attributes(Der... attributes) {
+        return new Der.SET(List.of(attributes)).toByteArray();
+    }
+
+    private static Der attribute(String oid, Der value) {
+        return new Der.SEQUENCE(List.of(new Der.OBJECT_IDENTIFIER(oid), new Der.SET(List.of(value))));
+    }
+
+    /** Big endian without byte order mark, as PKCS#12 readers expect */
+    private static Der bmpString(String value) {
+        return new DerValue(0x1e, value.getBytes(StandardCharsets.UTF_16BE));
+    }
+
+    private static byte[] oid(String oid) {
+        return new Der.OBJECT_IDENTIFIER(oid).toByteArray();
+    }
+
+    /** The length of a value with the given content length, including tag and length */
+    static int tlv(int contentLength) {
+        return 1 + (contentLength < 0x80 ? 1 : 1 + Der.bytesInNumber(contentLength)) + contentLength;
+    }
+
+    private static class Bag {
+        private final byte[] content;
+        private final byte[] attributes;
+        private byte[] iv;
+        private byte[] algorithmIdentifier = new byte[0];
+
+        private Bag(byte[] content, byte[] attributes) {
+            this.content = content;
+            this.attributes = attributes;
+        }
+
+        /** PBES2 parameters with the shared salt and a fresh IV for this bag */
+        private void algorithmIdentifier(Encryption encryption, byte[] salt, int iterations, SecureRandom random) {
+            if (encryption == Encryption.NONE) {
+                return;
+            }
+            iv = new byte[16];
+            random.nextBytes(iv);
+            algorithmIdentifier = new Der.SEQUENCE(List.of(
+                    new Der.OBJECT_IDENTIFIER(Oid.PBES2),
+                    new Der.SEQUENCE(List.of(
+                            new Der.SEQUENCE(List.of(
+                                    new Der.OBJECT_IDENTIFIER(Oid.PBKDF2),
+                                    new Der.SEQUENCE(List.of(
+                                            new Der.OCTET_STRING(salt),
+                                            new Der.INTEGER(iterations),
+                                            new Der.SEQUENCE(List.of(new Der.OBJECT_IDENTIFIER(HMAC_WITH_SHA256), new Der.NULL()))
+                                    ))
+                            )),
+                            new Der.SEQUENCE(List.of(new Der.OBJECT_IDENTIFIER(encryption.oid), new Der.OCTET_STRING(iv)))
+                    ))
+            )).toByteArray();
+        }
+    }
+
+    private static class Buffer {
+        private final byte[] bytes;
+        private int pos;
+
+        private Buffer(int length) {
+            bytes = new byte[length];
+        }
+
+        private void header(int tag, int length) {
+            bytes[pos++] = (byte) tag;
+            if (length < 0x80) {
+                bytes[pos++] = (byte) length;
+            } else {
+                int bytesInLength = Der.bytesInNumber(length);
+                bytes[pos++] = (byte) (0x80 | bytesInLength);
+                for (int i = bytesInLength - 1; i >= 0; i--) {
+                    bytes[pos++] = (byte) (length >> (i * 8));
+                }
+            }
+        }
+
+        private void write(byte[] value) {
+            System.arraycopy(value, 0, bytes, pos, value.length);
+            pos += value.length;
+        }
+
+        /** Replaces the plaintext from <code>start</code> with its encryption, which the length was reserved for */
+        private void encryptInPlace(Cipher cipher, int start) throws GeneralSecurityException {
+            pos = start + cipher.doFinal(bytes, start, pos - start, bytes, start);
+        }
+    }
+}
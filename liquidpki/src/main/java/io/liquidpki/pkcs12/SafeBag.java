@@ -0,0 +1,137 @@
+package io.liquidpki.pkcs12;
+
+import io.liquidpki.common.AlgorithmIdentifier;
+import io.liquidpki.der.Ber;
+import io.liquidpki.der.Der;
+import io.liquidpki.der.DerContextSpecificValue;
+import io.liquidpki.der.Oid;
+
+import java.io.PrintStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/** https://datatracker.ietf.org/doc/html/rfc7292#section-4.2 */
+public class SafeBag {
+    static final String FRIENDLY_NAME = "1.2.840.113549.1.9.20";
+    static final String LOCAL_KEY_ID = "1.2.840.113549.1.9.21";
+    /** Marks certificates which the JDK stores as trusted certificate entries */
+    static final String TRUSTED_KEY_USAGE = "2.16.840.1.113894.746875.1.1";
+
+    private final Der.OBJECT_IDENTIFIER bagId;
+    private final Der bagValue;
+    private String friendlyName;
+    private byte[] localKeyId;
+    private boolean trusted;
+
+    public SafeBag(Der.SEQUENCE der) {
+        Iterator<Der> iterator = der.iterator();
+        bagId = (Der.OBJECT_IDENTIFIER) iterator.next();
+        bagValue = ((DerContextSpecificValue) iterator.next()).parse();
+        if (iterator.hasNext()) {
+            Iterator<Der> attributes = ((Der.SET) iterator.next()).iterator();
+            while (attributes.hasNext()) {
+                Iterator<Der> attribute = ((Der.SEQUENCE) attributes.next()).iterator();
+                String type = ((Der.OBJECT_IDENTIFIER) attribute.next()).getObjectIdentifier();
+                Der value = ((Der.SET) attribute.next()).first();
+                if (type.equals(FRIENDLY_NAME)) {
+                    friendlyName = ((Der.BMP_STRING) value).stringValue();
+                } else if (type.equals(LOCAL_KEY_ID)) {
+                    localKeyId = ((Der.OCTET_STRING) value).byteArray();
+                } else if (type.equals(TRUSTED_KEY_USAGE)) {
+                    trusted = true;
+                }
+            }
+        }
+    }
+
+    /** Parses SafeContents, including the bags of nested safeContentsBags */
+    public static List<SafeBag> parseSafeContents(byte[] safeContents) {
+        List<SafeBag> result = new ArrayList<>();
+        addBags((Der.SEQUENCE) Ber.parse(safeContents), result);
+        return result;
+    }
+
+    private static void addBags(Der.SEQUENCE safeContents, List<SafeBag> result) {
+        Iterator<Der> iterator = safeContents.iterator();
+        while (iterator.hasNext()) {
+            SafeBag bag = new SafeBag((Der.SEQUENCE) iterator.next());
+            if (bag.getBagId().equals(Oid.SafeContentsBag)) {
+                addBags((Der.SEQUENCE) bag.bagValue, result);
+            } else {
+                result.add(bag);
+            }
+        }
+    }
+
+    public String getBagId() {
+        return bagId.getObjectIdentifier();
+    }
+
+    public boolean isKeyBag() {
+        return getBagId().equals(Oid.KeyBag) || getBagId().equals(Oid.PKCS8ShroudedKeyBag);
+    }
+
+    public boolean isCertBag() {
+        return getBagId().equals(Oid.CertBag);
+    }
+
+    public String getFriendlyName() {
+        return friendlyName;
+    }
+
+    public byte[] getLocalKeyId() {
+        return localKeyId;
+    }
+
+    public boolean isTrusted() {
+        return trusted;
+    }
+
+    /** The PKCS#8 PrivateKeyInfo of a keyBag, or decrypted from a pkcs8ShroudedKeyBag */
+    public byte[] getPrivateKeyInfo(PasswordBasedEncryption encryption, char[] password) throws GeneralSecurityException {
+        if (getBagId().equals(Oid.KeyBag)) {
+            return bagValue.toByteArray();
+        } else if (getBagId().equals(Oid.PKCS8ShroudedKeyBag)) {
+            Iterator<Der> encryptedPrivateKeyInfo = ((Der.SEQUENCE) bagValue).iterator();
+            AlgorithmIdentifier algorithm = new AlgorithmIdentifier(encryptedPrivateKeyInfo.next());
+            byte[] encrypted = ((Der.OCTET_STRING) encryptedPrivateKeyInfo.next()).byteArray();
+            return encryption.decrypt(algorithm, encrypted, password);
+        }
+        throw new IllegalStateException("Not a key bag: " + bagId.getName());
+    }
+
+    public PrivateKey getPrivateKey(PasswordBasedEncryption encryption, char[] password) throws GeneralSecurityException {
+        byte[] privateKeyInfo = Ber.toDer(getPrivateKeyInfo(encryption, password));
+        Iterator<Der> iterator = ((Der.SEQUENCE) Der.parse(privateKeyInfo)).iterator();
+        iterator.next(); // version
+        String algorithmOid = new AlgorithmIdentifier(iterator.next()).getAlgorithmOid();
+        String keyAlgorithm = Oid.getJcaKeyAlgorithm(algorithmOid);
+        if (keyAlgorithm == null) {
+            throw new NoSuchAlgorithmException("Unsupported private key algorithm " + algorithmOid);
+        }
+        return KeyFactory.getInstance(keyAlgorithm).generatePrivate(new PKCS8EncodedKeySpec(privateKeyInfo));
+    }
+
+    /** The DER encoded certificate of a certBag with an X.509 certificate */
+    public byte[] getCertificate() {
+        if (!isCertBag()) {
+            throw new IllegalStateException("Not a certificate bag: " + bagId.getName());
+        }
+        Iterator<Der> certBag = ((Der.SEQUENCE) bagValue).iterator();
+        certBag.next(); // certId, which is x509Certificate for all certificates we handle
+        return ((Der.OCTET_STRING) ((DerContextSpecificValue) certBag.next()).parse()).byteArray();
+    }
+
+    public void output(PrintStream out, String indent) {
+        out.println(indent + getClass().getSimpleName() + ": " + bagId
+                    + (friendlyName != null ? " friendlyName=" + friendlyName : "")
+                    + (localKeyId != null ? " localKeyId=" + Der.toHex(localKeyId) : ""));
+        bagValue.output(out, indent + "  ");
+    }
+}
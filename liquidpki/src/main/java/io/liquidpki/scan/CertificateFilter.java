@@ -0,0 +1,138 @@
+package io.liquidpki.scan;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses filter expressions over the fields of a {@link ScannedCertificate}, such as
+ * <code>daysToExpiry&lt;30</code>, <code>keySize&lt;2048</code>, <code>sanCount=0</code>,
+ * <code>notAfter&lt;2025-01-01</code> or <code>subject~CN=.*\.example\.com</code>.
+ *
+ * <p>The operators are <code>&lt; &lt;= &gt; &gt;= = !=</code> and <code>~</code>, which finds a
+ * regular expression. Numbers and dates are compared by value and text ignoring case. A list
+ * field such as <code>dnsNames</code> matches if any of its values do. A boolean field can be given
+ * alone, as in <code>selfSigned</code> or <code>!selfSigned</code>.</p>
+ */
+public final class CertificateFilter {
+
+    private static final Pattern EXPRESSION = Pattern.compile("(\\w+)\\s*(<=|>=|!=|<|>|=|~)\\s*(.*)");
+
+    private CertificateFilter() {
+    }
+
+    /**
+     * Converts the operand to the type of the field here, so a malformed expression is reported
+     * before scanning rather than by the first certificate it is tested on
+     *
+     * @throws IllegalArgumentException if the field is unknown or the operand doesn't fit its type
+     */
+    public static Predicate<ScannedCertificate> parse(String expression) {
+        String trimmed = expression.trim();
+        Matcher matcher = EXPRESSION.matcher(trimmed);
+        if (!matcher.matches()) {
+            boolean negated = trimmed.startsWith("!");
+            String field = negated ? trimmed.substring(1).trim() : trimmed;
+            if (ScannedCertificate.fieldType(field) != Boolean.class) {
+                throw new IllegalArgumentException("Expected <field><operator><value> or a boolean field, was " + expression);
+            }
+            return parse(field + (negated ? "=false" : "=true"));
+        }
+        String field = matcher.group(1);
+        Class<?> type = ScannedCertificate.fieldType(field);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown field " + field + " in " + expression + ", expected one of " + ScannedCertificate.FIELDS.keySet());
+        }
+        Function<ScannedCertificate, Object> getter = ScannedCertificate.FIELDS.get(field);
+        String operator = matcher.group(2);
+        String value = matcher.group(3);
+        if (operator.equals("~")) {
+            Pattern pattern = Pattern.compile(value, Pattern.CASE_INSENSITIVE);
+            return certificate -> matches(getter.apply(certificate), o -> pattern.matcher(String.valueOf(o)).find());
+        }
+        Comparable<?> operand = parseOperand(type, value, expression);
+        return certificate -> matches(getter.apply(certificate), o -> test(compare(o, operand), operator));
+    }
+
+    /** All the expressions must match, and no expressions match every certificate */
+    public static Predicate<ScannedCertificate> parseAll(List<String> expressions) {
+        Predicate<ScannedCertificate> result = certificate -> true;
+        for (String expression : expressions) {
+            result = result.and(parse(expression));
+        }
+        return result;
+    }
+
+    /** A list field matches if any of its values do */
+    private static boolean matches(Object fieldValue, Predicate<Object> predicate) {
+        if (fieldValue instanceof List) {
+            for (Object o : (List<?>) fieldValue) {
+                if (predicate.test(o)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return predicate.test(fieldValue);
+    }
+
+    private static Comparable<?> parseOperand(Class<?> type, String value, String expression) {
+        if (Number.class.isAssignableFrom(type)) {
+            return parseNumber(value, expression);
+        } else if (type == Instant.class) {
+            return parseInstant(value, expression);
+        } else if (type == Boolean.class) {
+            if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+                throw new IllegalArgumentException("Expected true or false, was " + value + " in " + expression);
+            }
+            return Boolean.parseBoolean(value);
+        }
+        return value;
+    }
+
+    private static int compare(Object fieldValue, Comparable<?> operand) {
+        if (operand instanceof Long) {
+            return Long.compare(((Number) fieldValue).longValue(), (Long) operand);
+        } else if (operand instanceof Instant) {
+            return ((Instant) fieldValue).compareTo((Instant) operand);
+        } else if (operand instanceof Boolean) {
+            return Boolean.compare((Boolean) fieldValue, (Boolean) operand);
+        }
+        return String.valueOf(fieldValue).compareToIgnoreCase((String) operand);
+    }
+
+    private static boolean test(int comparison, String operator) {
+        switch (operator) {
+            case "<": return comparison < 0;
+            case "<=": return comparison <= 0;
+            case ">": return comparison > 0;
+            case ">=": return comparison >= 0;
+            case "=": return comparison == 0;
+            case "!=": return comparison != 0;
+            default: throw new IllegalArgumentException("Unknown operator " + operator);
+        }
+    }
+
+    private static long parseNumber(String value, String expression) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number, was " + value + " in " + expression);
+        }
+    }
+
+    /** An instant such as 2025-01-01T00:00:00Z, or a date which means midnight UTC */
+    private static Instant parseInstant(String value, String expression) {
+        try {
+            return value.contains("T") ? Instant.parse(value) : LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Expected a date, was " + value + " in " + expression);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package io.liquidpki.scan;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Scans directories of .crt, .pem and .cer files for certificates and writes a report of those
+ * matching a {@link CertificateFilter}, for inventories of hundreds of thousands of files.
+ *
+ * <p>The scan runs on a {@link ForkJoinPool}: each directory is a task which forks a task for
+ * each subdirectory and splits its files into ranges of {@value #FILES_PER_TASK}. Idle threads
+ * steal ranges and directories from busy ones, so the scan keeps every core busy even when
+ * most of the files are in a few large directories. Each range formats its matching
+ * certificates before taking the lock on the report, so the threads only wait for each other
+ * to write. Files which can't be read or parsed are counted and reported in the
+ * {@link Summary}, and never stop the scan.</p>
+ *
+ * <p>From the command line:</p>
+ * <pre>
+ * java io.liquidpki.scan.CertificateScanner [--format=csv|json] [--filter=&lt;expression&gt;]...
+ *     [--threads=&lt;n&gt;] [--output=&lt;file&gt;] &lt;directory or file&gt;...
+ * </pre>
+ */
+public class CertificateScanner {
+
+    static final int FILES_PER_TASK = 64;
+    private static final int FAILURES_KEPT = 100;
+    private static final String BEGIN_CERTIFICATE = "-----BEGIN CERTIFICATE-----";
+    private static final String END_CERTIFICATE = "-----END CERTIFICATE-----";
+
+    public static class Summary {
+        private final long files;
+        private final long certificates;
+        private final long matches;
+        private final long failureCount;
+        private final List<String> failures;
+        private final long elapsedNanos;
+
+        private Summary(long files, long certificates, long matches, long failureCount, List<String> failures, long elapsedNanos) {
+            this.files = files;
+            this.certificates = certificates;
+            this.matches = matches;
+            this.failureCount = failureCount;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getCertificates() {
+            return certificates;
+        }
+
+        public long getMatches() {
+            return matches;
+        }
+
+        public long getFailureCount() {
+            return failureCount;
+        }
+
+        /** The first hundred files which couldn't be read or parsed, with the reason */
+        public List<String> getFailures() {
+            return failures;
+        }
+
+        public double getFilesPerSecond() {
+            return files * 1_000_000_000.0 / Math.max(1, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d files, %d certificates, %d matches, %d failures in %.1f s (%.0f files/s)",
+                    files, certificates, matches, failureCount, elapsedNanos / 1_000_000_000.0, getFilesPerSecond());
+        }
+    }
+
+    private final int parallelism;
+    private Predicate<ScannedCertificate> filter = certificate -> true;
+    private ReportFormat format = ReportFormat.CSV;
+    private Instant now;
+
+    /** Scans with one thread per available processor */
+    public CertificateScanner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public CertificateScanner(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public CertificateScanner filter(Predicate<ScannedCertificate> filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    public CertificateScanner format(ReportFormat format) {
+        this.format = format;
+        return this;
+    }
+
+    /** The time to count days to expiry from, by default when the scan starts */
+    public CertificateScanner now(Instant now) {
+        this.now = now;
+        return this;
+    }
+
+    /** Scans the directories and files and writes the report of matching certificates, without closing <code>output</code> */
+    public Summary scan(List<Path> roots, Writer output) throws IOException {
+        long start = System.nanoTime();
+        Scan scan = new Scan(output, now != null ? now : Instant.now());
+        output.write(format.header());
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    List<RecursiveAction> tasks = new ArrayList<>();
+                    List<Path> files = new ArrayList<>();
+                    for (Path root : roots) {
+                        if (Files.isDirectory(root)) {
+                            tasks.add(scan.new DirectoryTask(root));
+                        } else {
+                            files.add(root);
+                        }
+                    }
+                    tasks.add(scan.new FilesTask(files, 0, files.size()));
+                    invokeAll(tasks);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        output.write(format.footer());
+        output.flush();
+        return new Summary(scan.files.sum(), scan.certificates.sum(), scan.matches.sum(),
+                scan.failureCount.sum(), new ArrayList<>(scan.failures), System.nanoTime() - start);
+    }
+
+    /** The state of one call to {@link #scan}, shared by its tasks */
+    private class Scan {
+        private final Writer output;
+        private final Instant now;
+        private final LongAdder files = new LongAdder();
+        private final LongAdder certificates = new LongAdder();
+        private final LongAdder matches = new LongAdder();
+        private final LongAdder failureCount = new LongAdder();
+        private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+        private boolean firstRecord = true;
+
+        private Scan(Writer output, Instant now) {
+            this.output = output;
+            this.now = now;
+        }
+
+        private class DirectoryTask extends RecursiveAction {
+            private final Path directory;
+
+            private DirectoryTask(Path directory) {
+                this.directory = directory;
+            }
+
+            @Override
+            protected void compute() {
+                List<RecursiveAction> tasks = new ArrayList<>();
+                List<Path> files = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                    for (Path entry : entries) {
+                        if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                            tasks.add(new DirectoryTask(entry));
+                        } else if (isCertificateFile(entry)) {
+                            files.add(entry);
+                        }
+                    }
+                } catch (IOException | DirectoryIteratorException e) {
+                    fail(directory, e);
+                }
+                tasks.add(new FilesTask(files, 0, files.size()));
+                invokeAll(tasks);
+            }
+        }
+
+        private class FilesTask extends RecursiveAction {
+            private final List<Path> files;
+            private final int start;
+            private final int end;
+
+            private FilesTask(List<Path> files, int start, int end) {
+                this.files = files;
+                this.start = start;
+                this.end = end;
+            }
+
+            @Override
+            protected void compute() {
+                if (end - start > FILES_PER_TASK) {
+                    int middle = (start + end) >>> 1;
+                    invokeAll(new FilesTask(files, start, middle), new FilesTask(files, middle, end));
+                    return;
+                }
+                List<String> records = new ArrayList<>();
+                for (int i = start; i < end; i++) {
+                    scanFile(files.get(i), records);
+                }
+                if (!records.isEmpty()) {
+                    write(records);
+                }
+            }
+        }
+
+        private void scanFile(Path file, List<String> records) {
+            files.increment();
+            List<byte[]> certificates;
+            try {
+                certificates = readCertificates(Files.readAllBytes(file));
+            } catch (IOException | IllegalArgumentException e) {
+                fail(file, e);
+                return;
+            }
+            if (certificates.isEmpty()) {
+                fail(file, "No certificate found");
+            }
+            for (int i = 0; i < certificates.size(); i++) {
+                ScannedCertificate certificate;
+                try {
+                    certificate = ScannedCertificate.read(file, certificates.get(i), now);
+                } catch (RuntimeException e) {
+                    fail(certificates.size() > 1 ? file + " certificate " + (i + 1) : file.toString(), e.toString());
+                    continue;
+                }
+                this.certificates.increment();
+                if (filter.test(certificate)) {
+                    matches.increment();
+                    records.add(format.record(certificate));
+                }
+            }
+        }
+
+        private synchronized void write(List<String> records) {
+            try {
+                for (String record : records) {
+                    if (!firstRecord) {
+                        output.write(format.separator());
+                    }
+                    firstRecord = false;
+                    output.write(record);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void fail(Path file, Exception e) {
+            fail(file.toString(), e.toString());
+        }
+
+        private void fail(Object file, String reason) {
+            failureCount.increment();
+            if (failureCount.sum() <= FAILURES_KEPT) {
+                failures.add(file + ": " + reason);
+            }
+        }
+    }
+
+    static boolean isCertificateFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".crt") || name.endsWith(".pem") || name.endsWith(".cer");
+    }
+
+    /** A file starting with a SEQUENCE tag is a DER certificate, anything else may be a PEM bundle */
+    static List<byte[]> readCertificates(byte[] content) {
+        if (content.length > 0 && content[0] == 0x30) {
+            return List.of(content);
+        }
+        List<byte[]> result = new ArrayList<>();
+        String pemContent = new String(content, StandardCharsets.US_ASCII);
+        int start = pemContent.indexOf(BEGIN_CERTIFICATE);
+        while (start >= 0) {
+            int bodyStart = pemContent.indexOf('\n', start) + 1;
+            int end = pemContent.indexOf(END_CERTIFICATE, bodyStart);
+            if (bodyStart == 0 || end < 0) {
+                throw new IllegalArgumentException("Unterminated PEM certificate at position " + start);
+            }
+            result.add(Base64.getMimeDecoder().decode(pemContent.substring(bodyStart, end)));
+            start = pemContent.indexOf(BEGIN_CERTIFICATE, end);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        CertificateScanner scanner = new CertificateScanner();
+        List<String> filters = new ArrayList<>();
+        List<Path> roots = new ArrayList<>();
+        Path outputFile = null;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--format=")) {
+                    scanner.format(ReportFormat.valueOf(arg.substring("--format=".length()).toUpperCase(Locale.ROOT)));
+                } else if (arg.startsWith("--filter=")) {
+                    filters.add(arg.substring("--filter=".length()));
+                } else if (arg.startsWith("--threads=")) {
+                    scanner = new CertificateScanner(Integer.parseInt(arg.substring("--threads=".length()))).format(scanner.format);
+                } else if (arg.startsWith("--output=")) {
+                    outputFile = Paths.get(arg.substring("--output=".length()));
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else {
+                    roots.add(Paths.get(arg));
+                }
+            }
+            if (roots.isEmpty()) {
+                throw new IllegalArgumentException("No directory to scan");
+            }
+            scanner.filter(CertificateFilter.parseAll(filters));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: " + CertificateScanner.class.getName()
+                    + " [--format=csv|json] [--filter=<expression>]... [--threads=<n>] [--output=<file>] <directory or file>...");
+            System.err.println("Filter fields: " + ScannedCertificate.FIELDS.keySet());
+            System.exit(1);
+            return;
+        }
+
+        Summary summary;
+        if (outputFile != null) {
+            try (Writer output = Files.newBufferedWriter(outputFile)) {
+                summary = scanner.scan(roots, output);
+            }
+        } else {
+            summary = scanner.scan(roots, new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        }
+        for (String failure : summary.getFailures()) {
+            System.err.println("Failed: " + failure);
+        }
+        System.err.println(summary);
+    }
+}
@@ -0,0 +1,126 @@
+package io.liquidpki.scan;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * How {@link CertificateScanner} writes each matching certificate. A report is streamed as a
+ * header, the records with a separator between them and a footer, so it never has to be held
+ * in memory.
+ */
+public enum ReportFormat {
+
+    /** One line per certificate with the columns of {@link ScannedCertificate#FIELDS} and DNS names separated by spaces */
+    CSV {
+        @Override
+        public String header() {
+            return String.join(",", ScannedCertificate.FIELDS.keySet()) + "\n";
+        }
+
+        @Override
+        public String separator() {
+            return "";
+        }
+
+        @Override
+        public String record(ScannedCertificate certificate) {
+            StringBuilder result = new StringBuilder();
+            for (Function<ScannedCertificate, Object> field : ScannedCertificate.FIELDS.values()) {
+                if (result.length() > 0) {
+                    result.append(',');
+                }
+                Object value = field.apply(certificate);
+                String text = value instanceof List ? ((List<?>) value).stream().map(String::valueOf).collect(Collectors.joining(" ")) : String.valueOf(value);
+                if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+                    result.append('"').append(text.replace("\"", "\"\"")).append('"');
+                } else {
+                    result.append(text);
+                }
+            }
+            return result.append('\n').toString();
+        }
+
+        @Override
+        public String footer() {
+            return "";
+        }
+    },
+
+    /** A JSON array with an object per certificate */
+    JSON {
+        @Override
+        public String header() {
+            return "[\n";
+        }
+
+        @Override
+        public String separator() {
+            return ",\n";
+        }
+
+        @Override
+        public String record(ScannedCertificate certificate) {
+            StringBuilder result = new StringBuilder("  {");
+            for (Map.Entry<String, Function<ScannedCertificate, Object>> field : ScannedCertificate.FIELDS.entrySet()) {
+                if (result.length() > 3) {
+                    result.append(", ");
+                }
+                appendString(result, field.getKey());
+                result.append(": ");
+                appendValue(result, field.getValue().apply(certificate));
+            }
+            return result.append('}').toString();
+        }
+
+        @Override
+        public String footer() {
+            return "\n]\n";
+        }
+
+        private void appendValue(StringBuilder result, Object value) {
+            if (value instanceof List) {
+                result.append('[');
+                for (Object o : (List<?>) value) {
+                    if (result.charAt(result.length() - 1) != '[') {
+                        result.append(", ");
+                    }
+                    appendValue(result, o);
+                }
+                result.append(']');
+            } else if (value instanceof Number || value instanceof Boolean) {
+                result.append(value);
+            } else if (value instanceof Instant || value instanceof String) {
+                appendString(result, value.toString());
+            } else {
+                result.append("null");
+            }
+        }
+
+        private void appendString(StringBuilder result, String s) {
+            result.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    result.append('\\').append(c);
+                } else if (c < 0x20) {
+                    result.append(String.format("\\u%04x", (int) c));
+                } else {
+                    result.append(c);
+                }
+            }
+            result.append('"');
+        }
+    };
+
+    public abstract String header();
+
+    /** Written between two records */
+    public abstract String separator();
+
+    public abstract String record(ScannedCertificate certificate);
+
+    public abstract String footer();
+}
@@ -0,0 +1,182 @@
+package io.liquidpki.scan;
+
+import io.liquidpki.common.CertificateExtensions;
+import io.liquidpki.common.Extension;
+import io.liquidpki.common.SubjectPublicKeyInfo;
+import io.liquidpki.der.Oid;
+import io.liquidpki.x509.CompactCertificate;
+
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The fields of a certificate which {@link CertificateScanner} reports and filters on, read once
+ * from a {@link CompactCertificate} so the certificate itself needn't be kept.
+ */
+public final class ScannedCertificate {
+
+    /** The report columns and filter fields, in report order */
+    public static final Map<String, Function<ScannedCertificate, Object>> FIELDS = new LinkedHashMap<>();
+    /** The type of each field, or of its values for a list, which filter operands are converted to */
+    private static final Map<String, Class<?>> FIELD_TYPES = new HashMap<>();
+
+    static {
+        field("file", String.class, c -> c.file.toString());
+        field("subject", String.class, c -> c.subject);
+        field("issuer", String.class, c -> c.issuer);
+        field("serialNumber", String.class, c -> c.serialNumber);
+        field("notBefore", Instant.class, c -> c.notBefore);
+        field("notAfter", Instant.class, c -> c.notAfter);
+        field("daysToExpiry", Long.class, c -> c.daysToExpiry);
+        field("keyAlgorithm", String.class, c -> c.keyAlgorithm);
+        field("keySize", Integer.class, c -> c.keySize);
+        field("signatureAlgorithm", String.class, c -> c.signatureAlgorithm);
+        field("dnsNames", String.class, c -> c.dnsNames);
+        field("sanCount", Integer.class, c -> c.dnsNames.size());
+        field("selfSigned", Boolean.class, c -> c.selfSigned);
+        field("fingerprint", String.class, c -> c.fingerprint);
+    }
+
+    private static void field(String name, Class<?> type, Function<ScannedCertificate, Object> getter) {
+        FIELDS.put(name, getter);
+        FIELD_TYPES.put(name, type);
+    }
+
+    /** String, Instant, Boolean or a Number, or null if there is no such field */
+    static Class<?> fieldType(String field) {
+        return FIELD_TYPES.get(field);
+    }
+
+    private final Path file;
+    private final String subject;
+    private final String issuer;
+    private final String serialNumber;
+    private final Instant notBefore;
+    private final Instant notAfter;
+    private final long daysToExpiry;
+    private final String keyAlgorithm;
+    private final int keySize;
+    private final String signatureAlgorithm;
+    private final List<String> dnsNames;
+    private final boolean selfSigned;
+    private final String fingerprint;
+
+    private ScannedCertificate(Path file, CompactCertificate certificate, byte[] der, Instant now) {
+        this.file = file;
+        this.subject = certificate.subject().print();
+        this.issuer = certificate.issuer().print();
+        this.serialNumber = certificate.serialNumber().toString(16);
+        this.notBefore = certificate.notBefore().toInstant();
+        this.notAfter = certificate.notAfter().toInstant();
+        this.daysToExpiry = Duration.between(now, notAfter).toDays();
+        SubjectPublicKeyInfo publicKeyInfo = certificate.subjectPublicKeyInfo();
+        String keyAlgorithm = Oid.getJcaKeyAlgorithm(publicKeyInfo.getAlgorithmOid());
+        this.keyAlgorithm = keyAlgorithm != null ? keyAlgorithm : publicKeyInfo.getAlgorithmOid();
+        this.keySize = keyAlgorithm != null ? keySize(publicKeyInfo) : 0;
+        String signatureAlgorithm = Oid.getJcaSignatureAlgorithm(certificate.signatureAlgorithmOid());
+        this.signatureAlgorithm = signatureAlgorithm != null ? signatureAlgorithm : certificate.signatureAlgorithmOid();
+        CertificateExtensions extensions = certificate.extensions();
+        Extension.SANExtensionType san = extensions != null ? extensions.sanExtension() : null;
+        this.dnsNames = san != null ? san.dnsNames() : List.of();
+        this.selfSigned = certificate.isIssuedBy(certificate);
+        this.fingerprint = hex(sha256(der));
+    }
+
+    /** Reads the fields of a DER encoded certificate, with the days to expiry counted from <code>now</code> */
+    public static ScannedCertificate read(Path file, byte[] der, Instant now) {
+        return new ScannedCertificate(file, new CompactCertificate(der), der, now);
+    }
+
+    private static int keySize(SubjectPublicKeyInfo publicKeyInfo) {
+        try {
+            PublicKey publicKey = publicKeyInfo.getPublicKey();
+            if (publicKey instanceof RSAPublicKey) {
+                return ((RSAPublicKey) publicKey).getModulus().bitLength();
+            } else if (publicKey instanceof ECPublicKey) {
+                return ((ECPublicKey) publicKey).getParams().getOrder().bitLength();
+            } else if (publicKeyInfo.getKeyAlgorithm().equals("Ed25519")) {
+                return 255;
+            }
+        } catch (GeneralSecurityException ignored) {
+            // reported as key size 0
+        }
+        return 0;
+    }
+
+    private static byte[] sha256(byte[] der) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(der);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required in every JRE", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    public Object get(String field) {
+        Function<ScannedCertificate, Object> getter = FIELDS.get(field);
+        if (getter == null) {
+            throw new IllegalArgumentException("Unknown field " + field + ", expected one of " + FIELDS.keySet());
+        }
+        return getter.apply(this);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public Instant getNotAfter() {
+        return notAfter;
+    }
+
+    public long getDaysToExpiry() {
+        return daysToExpiry;
+    }
+
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    public int getKeySize() {
+        return keySize;
+    }
+
+    public List<String> getDnsNames() {
+        return dnsNames;
+    }
+
+    public boolean isSelfSigned() {
+        return selfSigned;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{file=" + file + ", subject=" + subject + "}";
+    }
+}
@@ -0,0 +1,294 @@
+package io.liquidpki.store;
+
+import io.liquidpki.x509.CompactCertificate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * DER encoded certificates in memory-mapped files outside the Java heap, indexed by their SHA-256
+ * fingerprint. <code>&lt;name&gt;.data</code> holds the certificates one after the other, each
+ * prefixed by its length, in mapped chunks which a certificate never crosses.
+ * <code>&lt;name&gt;.index</code> is an open addressing hash table with linear probing from
+ * fingerprint to offset in the data file. Reopening a store maps both files again and reads two
+ * headers, so it is immediate whatever the number of certificates.
+ *
+ * <p>{@link #slice} returns a read-only view of the mapped certificate. {@link io.liquidpki.der.Der}
+ * and {@link CompactCertificate} read from a <code>byte[]</code>, so {@link #get} copies the one
+ * certificate before parsing it. The store is not safe for use by several processes at once.</p>
+ */
+public class MappedCertificateStore implements Closeable {
+
+    private static final long DATA_MAGIC = 0x4c504b4944415441L; // "LPKIDATA"
+    private static final long INDEX_MAGIC = 0x4c504b49494e4458L; // "LPKIINDX"
+    private static final int HEADER_LENGTH = 64;
+    private static final int FINGERPRINT_LENGTH = 32;
+    private static final int SLOT_LENGTH = FINGERPRINT_LENGTH + Long.BYTES;
+    /** The index is rebuilt with twice the capacity when it is this full */
+    private static final double MAX_LOAD = 0.7;
+
+    private final Path dataFile;
+    private final Path indexFile;
+    private final FileChannel dataChannel;
+    private int chunkSize;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private long dataEnd;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int count;
+
+    private MappedCertificateStore(Path file, int initialCapacity, int chunkSize) throws IOException {
+        this.dataFile = file.resolveSibling(file.getFileName() + ".data");
+        this.indexFile = file.resolveSibling(file.getFileName() + ".index");
+        boolean exists = Files.exists(dataFile);
+        dataChannel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (exists) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            dataChannel.read(header, 0);
+            if (header.getLong(0) != DATA_MAGIC) {
+                throw new IOException(dataFile + " is not a certificate store");
+            }
+            this.dataEnd = header.getLong(8);
+            this.chunkSize = header.getInt(16);
+            openIndex();
+        } else {
+            this.chunkSize = chunkSize;
+            chunk(0).putLong(0, DATA_MAGIC).putLong(8, HEADER_LENGTH).putInt(16, chunkSize);
+            dataEnd = HEADER_LENGTH;
+            createIndex(indexFile, Integer.highestOneBit(Math.max(16, initialCapacity) * 2 - 1));
+            openIndex();
+        }
+    }
+
+    /** Opens the store in <code>file.data</code> and <code>file.index</code>, creating it if it doesn't exist */
+    public static MappedCertificateStore open(Path file) throws IOException {
+        return open(file, 1 << 16, 1 << 28);
+    }
+
+    /**
+     * @param initialCapacity the number of certificates to size the index for when the store is created
+     * @param chunkSize the size of each mapping of the data file when the store is created
+     */
+    public static MappedCertificateStore open(Path file, int initialCapacity, int chunkSize) throws IOException {
+        return new MappedCertificateStore(file, initialCapacity, chunkSize);
+    }
+
+    public static byte[] fingerprint(byte[] der) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(der);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required in every JRE", e);
+        }
+    }
+
+    /** Adds the certificate unless it is already present, and returns its fingerprint */
+    public synchronized byte[] add(byte[] der) throws IOException {
+        new CompactCertificate(der); // throws MalformedDerException if this is not a certificate
+        byte[] fingerprint = fingerprint(der);
+        int slot = findSlot(fingerprint);
+        if (index.getLong(slotOffset(slot) + FINGERPRINT_LENGTH) != 0) {
+            return fingerprint;
+        }
+        if (Integer.BYTES + der.length > chunkSize - HEADER_LENGTH) {
+            throw new IllegalArgumentException("Certificate of " + der.length + " bytes is larger than chunk size " + chunkSize);
+        }
+        long position = dataEnd;
+        if (position / chunkSize != (position + Integer.BYTES + der.length - 1) / chunkSize) {
+            position = (position / chunkSize + 1) * chunkSize;
+        }
+        // The cast keeps JDK 13+ from linking to MappedByteBuffer.duplicate(), which Java 11 lacks
+        ByteBuffer chunk = ((ByteBuffer) chunk((int) (position / chunkSize))).duplicate();
+        chunk.position((int) (position % chunkSize));
+        chunk.putInt(der.length).put(der);
+        dataEnd = position + Integer.BYTES + der.length;
+
+        setSlot(index, slot, fingerprint, position + Integer.BYTES);
+        chunks.get(0).putLong(8, dataEnd);
+        index.putInt(12, ++count);
+        if (count > capacity * MAX_LOAD) {
+            resize(capacity * 2);
+        }
+        return fingerprint;
+    }
+
+    public synchronized boolean contains(byte[] fingerprint) {
+        return offset(fingerprint) != 0;
+    }
+
+    /** A read-only view of the DER encoded certificate in the mapped file, or null if it is not present */
+    public synchronized ByteBuffer slice(byte[] fingerprint) {
+        long offset = offset(fingerprint);
+        return offset == 0 ? null : slice(offset);
+    }
+
+    /** A copy of the certificate from the mapped file, or null if it is not present */
+    public CompactCertificate get(byte[] fingerprint) {
+        ByteBuffer slice = slice(fingerprint);
+        if (slice == null) {
+            return null;
+        }
+        byte[] der = new byte[slice.remaining()];
+        slice.get(der);
+        return new CompactCertificate(der);
+    }
+
+    /** Visits every certificate in the order they were added, without touching the index */
+    public synchronized void forEach(Consumer<ByteBuffer> consumer) {
+        long position = HEADER_LENGTH;
+        while (position < dataEnd) {
+            int offsetInChunk = (int) (position % chunkSize);
+            int length = chunkSize - offsetInChunk < Integer.BYTES ? 0 : chunk((int) (position / chunkSize)).getInt(offsetInChunk);
+            if (length == 0) { // the rest of the chunk was skipped
+                position = (position / chunkSize + 1) * chunkSize;
+                continue;
+            }
+            consumer.accept(slice(position + Integer.BYTES));
+            position += Integer.BYTES + length;
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /** Writes changes in the mapped memory to the files */
+    public synchronized void flush() {
+        chunks.forEach(MappedByteBuffer::force);
+        index.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        dataChannel.close();
+        indexChannel.close();
+    }
+
+    private ByteBuffer slice(long offset) {
+        ByteBuffer chunk = chunk((int) (offset / chunkSize));
+        int position = (int) (offset % chunkSize);
+        int length = chunk.getInt(position - Integer.BYTES);
+        ByteBuffer slice = chunk.asReadOnlyBuffer();
+        slice.position(position).limit(position + length);
+        return slice.slice();
+    }
+
+    private MappedByteBuffer chunk(int chunkIndex) {
+        while (chunks.size() <= chunkIndex) {
+            try {
+                chunks.add(dataChannel.map(FileChannel.MapMode.READ_WRITE, (long) chunks.size() * chunkSize, chunkSize));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to map " + dataFile, e);
+            }
+        }
+        return chunks.get(chunkIndex);
+    }
+
+    /** The offset of the certificate in the data file, or 0 if it is not present */
+    private long offset(byte[] fingerprint) {
+        return index.getLong(slotOffset(findSlot(fingerprint)) + FINGERPRINT_LENGTH);
+    }
+
+    /** The slot with this fingerprint, or the empty slot where it belongs */
+    private int findSlot(byte[] fingerprint) {
+        return findSlot(index, capacity, fingerprint);
+    }
+
+    private static int findSlot(ByteBuffer index, int capacity, byte[] fingerprint) {
+        // SHA-256 is evenly distributed, so its first bytes are as good a hash as any
+        int slot = ((0xff & fingerprint[0]) << 24 | (0xff & fingerprint[1]) << 16 | (0xff & fingerprint[2]) << 8 | (0xff & fingerprint[3])) & (capacity - 1);
+        while (true) {
+            int slotOffset = slotOffset(slot);
+            if (index.getLong(slotOffset + FINGERPRINT_LENGTH) == 0 || fingerprintEquals(index, slotOffset, fingerprint)) {
+                return slot;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    private static boolean fingerprintEquals(ByteBuffer index, int slotOffset, byte[] fingerprint) {
+        for (int i = 0; i < FINGERPRINT_LENGTH; i++) {
+            if (index.get(slotOffset + i) != fingerprint[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_LENGTH + slot * SLOT_LENGTH;
+    }
+
+    private static void setSlot(ByteBuffer index, int slot, byte[] fingerprint, long offset) {
+        int slotOffset = slotOffset(slot);
+        for (int i = 0; i < FINGERPRINT_LENGTH; i++) {
+            index.put(slotOffset + i, fingerprint[i]);
+        }
+        index.putLong(slotOffset + FINGERPRINT_LENGTH, offset);
+    }
+
+    private static MappedByteBuffer mapIndex(FileChannel channel, int capacity) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH + (long) capacity * SLOT_LENGTH);
+    }
+
+    private static void createIndex(Path file, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer index = mapIndex(channel, capacity);
+            index.putLong(0, INDEX_MAGIC).putInt(8, capacity).putInt(12, 0);
+            index.force();
+        }
+    }
+
+    private void openIndex() throws IOException {
+        if (indexChannel != null) {
+            indexChannel.close();
+        }
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        indexChannel.read(header, 0);
+        if (header.getLong(0) != INDEX_MAGIC) {
+            throw new IOException(indexFile + " is not a certificate store index");
+        }
+        capacity = header.getInt(8);
+        count = header.getInt(12);
+        index = mapIndex(indexChannel, capacity);
+    }
+
+    /** Writes a new index beside the old one and moves it into place, so a crash leaves one or the other */
+    private void resize(int newCapacity) throws IOException {
+        Path newIndexFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        Files.deleteIfExists(newIndexFile);
+        createIndex(newIndexFile, newCapacity);
+        try (FileChannel channel = FileChannel.open(newIndexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer newIndex = mapIndex(channel, newCapacity);
+            byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
+            for (int slot = 0; slot < capacity; slot++) {
+                int slotOffset = slotOffset(slot);
+                long offset = index.getLong(slotOffset + FINGERPRINT_LENGTH);
+                if (offset != 0) {
+                    for (int i = 0; i < FINGERPRINT_LENGTH; i++) {
+                        fingerprint[i] = index.get(slotOffset + i);
+                    }
+                    setSlot(newIndex, findSlot(newIndex, newCapacity, fingerprint), fingerprint, offset);
+                }
+            }
+            newIndex.putInt(12, count);
+            newIndex.force();
+        }
+        Files.move(newIndexFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        openIndex();
+    }
+}
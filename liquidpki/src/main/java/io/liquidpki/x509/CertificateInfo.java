@@ -10,11 +10,12 @@ import io.liquidpki.der.DerContextSpecificValue;
 import io.liquidpki.der.Oid;
 
 import java.io.PrintStream;
+import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
-import java.security.interfaces.RSAPublicKey;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -41,7 +42,12 @@ public class CertificateInfo {
         validity = new Validity(iterator.next());
         subject = new X500Name(iterator.next());
         subjectPublicKeyInfo = new SubjectPublicKeyInfo(iterator.next());
-        extensions = new CertificateExtensions((Der.SEQUENCE) ((DerContextSpecificValue) iterator.next()).parse());
+        while (iterator.hasNext()) {
+            Der next = iterator.next();
+            if (next.getTag() == 0xA3) { // [1] issuerUniqueID and [2] subjectUniqueID are ignored
+                extensions = new CertificateExtensions((Der.SEQUENCE) ((DerContextSpecificValue) next).parse());
+            }
+        }
     }
 
     public CertificateInfo() {
@@ -80,7 +86,9 @@ public class CertificateInfo {
         validity.dump(out, "validity", indent + "  ");
         subject.dump(out, "subject", indent + "  ", debug);
         subjectPublicKeyInfo.dump(out, "subjectPublicKeyInfo", indent + "  ", debug);
-        extensions.dump(out, "extensions", indent + "  ", debug);
+        if (extensions != null) {
+            extensions.dump(out, "extensions", indent + "  ", debug);
+        }
     }
 
     public CertificateInfo version(int version) {
@@ -97,16 +105,38 @@ public class CertificateInfo {
         return this;
     }
 
+    public CertificateInfo serialNumber(BigInteger serialNumber) {
+        this.serialNumber = new Der.INTEGER(serialNumber);
+        return this;
+    }
+
+    public BigInteger serialNumber() {
+        return serialNumber.toBigInteger();
+    }
+
     public CertificateInfo signature(String signatureAlgorithm) {
         this.signature = new AlgorithmIdentifier(signatureAlgorithm);
         return this;
     }
 
+    /** The signature algorithm the issuer promised to sign with, null until set or parsed */
+    public AlgorithmIdentifier signature() {
+        return signature;
+    }
+
     public CertificateInfo issuerName(X500Name issuer) {
         this.issuer = issuer;
         return this;
     }
 
+    public X500Name issuer() {
+        return issuer;
+    }
+
+    public Validity validity() {
+        return validity;
+    }
+
     public CertificateInfo validity(ZonedDateTime notBefore, ZonedDateTime notAfter) {
         this.validity = new Validity(notBefore, notAfter);
         return this;
@@ -117,12 +147,20 @@ public class CertificateInfo {
         return this;
     }
 
+    public X500Name subject() {
+        return subject;
+    }
+
+    public SubjectPublicKeyInfo subjectPublicKeyInfo() {
+        return subjectPublicKeyInfo;
+    }
+
     public CertificateInfo publicKey(PublicKey publicKey) {
-        this.subjectPublicKeyInfo = new SubjectPublicKeyInfo((RSAPublicKey) publicKey);
+        this.subjectPublicKeyInfo = new SubjectPublicKeyInfo(publicKey);
         return this;
     }
 
-    public RSAPublicKey publicKey() throws GeneralSecurityException {
+    public PublicKey publicKey() throws GeneralSecurityException {
         return subjectPublicKeyInfo.getPublicKey();
     }
 
@@ -132,6 +170,12 @@ public class CertificateInfo {
         return this;
     }
 
+    public CertificateInfo addExtension(Extension extension) {
+        if (extensions == null) extensions = new CertificateExtensions();
+        extensions.add(extension);
+        return this;
+    }
+
     public CertificateInfo extensions(CertificateExtensions extensions) {
         this.extensions = extensions;
         return this;
@@ -141,14 +185,30 @@ public class CertificateInfo {
         return extensions;
     }
 
+    /** Signs with {@link AlgorithmIdentifier#defaultSignatureAlgorithm} for the key */
+    public SignedCertificate signWithKey(PrivateKey privateKey) throws GeneralSecurityException {
+        return signWithKey(privateKey, AlgorithmIdentifier.defaultSignatureAlgorithm(privateKey));
+    }
+
     public SignedCertificate signWithKey(PrivateKey privateKey, String signatureAlgorithm) throws GeneralSecurityException {
-        this.signature(Oid.getSignatureAlgorithm(privateKey.getAlgorithm()));
-        byte[] bytes = toDer().toByteArray();
+        byte[] bytes = toBeSigned(signatureAlgorithm);
         Signature signature = Signature.getInstance(signatureAlgorithm);
         signature.initSign(privateKey);
         signature.update(bytes, 0, bytes.length);
-        byte[] sign = signature.sign();
-        return new SignedCertificate(this, this.signature, sign);
+        return withSignature(signature.sign());
+    }
+
+    /**
+     * Sets the signature algorithm and returns the DER encoding to be signed, for signing
+     * elsewhere. Complete the certificate with {@link #withSignature}.
+     */
+    public byte[] toBeSigned(String signatureAlgorithm) {
+        this.signature(Oid.getSignatureAlgorithmOid(signatureAlgorithm));
+        return toDer().toByteArray();
+    }
+
+    public SignedCertificate withSignature(byte[] signatureValue) {
+        return new SignedCertificate(this, this.signature, signatureValue);
     }
 
     public static class CertificateVersion {
@@ -179,8 +239,12 @@ public class CertificateInfo {
 
         public Validity(Der der) {
             Iterator<Der> iterator = ((Der.SEQUENCE) der).iterator();
-            this.notBefore = ((Der.UTCTime)iterator.next()).getDateTime(); // Inexact - should be DerTimestamp of either UTCTime or GeneralizedTime
-            this.notAfter = ((Der.UTCTime)iterator.next()).getDateTime();
+            this.notBefore = toDateTime(iterator.next());
+            this.notAfter = toDateTime(iterator.next());
+        }
+
+        private static ZonedDateTime toDateTime(Der der) {
+            return der instanceof Der.GeneralizedTime ? ((Der.GeneralizedTime) der).getDateTime() : ((Der.UTCTime) der).getDateTime();
         }
 
         public Validity(ZonedDateTime notBefore, ZonedDateTime notAfter) {
@@ -201,7 +265,13 @@ public class CertificateInfo {
         }
 
         public Der toDer() {
-            return new Der.SEQUENCE(List.of(new Der.UTCTime(notBefore), new Der.UTCTime(notAfter)));
+            return new Der.SEQUENCE(List.of(toDer(notBefore), toDer(notAfter)));
+        }
+
+        /** RFC 5280 section 4.1.2.5: UTCTime through 2049 and GeneralizedTime from 2050, always in UTC */
+        private static Der toDer(ZonedDateTime dateTime) {
+            ZonedDateTime utc = dateTime.withZoneSameInstant(ZoneOffset.UTC);
+            return utc.getYear() < 2050 ? new Der.UTCTime(utc) : new Der.GeneralizedTime(utc);
         }
     }
 }
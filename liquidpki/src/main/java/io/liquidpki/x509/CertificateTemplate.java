@@ -0,0 +1,146 @@
+package io.liquidpki.x509;
+
+import io.liquidpki.common.AlgorithmIdentifier;
+import io.liquidpki.common.Extension;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.der.Der;
+import io.liquidpki.der.Oid;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.security.PublicKey;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The parts of a certificate which are the same for every certificate a CA issues for some purpose.
+ * The issuer name, signature algorithm and fixed extensions are encoded once when the template is
+ * created, and {@link #toBeSigned} only encodes the serial number, validity, subject, key and the
+ * extensions which vary per certificate. The result is identical to the encoding of the
+ * corresponding {@link CertificateInfo}.
+ */
+public class CertificateTemplate {
+    private static final byte[] VERSION_3 = new CertificateInfo.CertificateVersion(2).toDer().toByteArray();
+
+    private final String name;
+    private final Period validity;
+    private final byte[] signatureAlgorithm;
+    private final byte[] signatureAndIssuer;
+    private final byte[] fixedExtensions;
+    private final Set<String> fixedExtensionIds = new HashSet<>();
+
+    public CertificateTemplate(String name, X500Name issuer, String signatureAlgorithm, Period validity, List<Extension.ExtensionType> extensions) {
+        this.name = name;
+        this.validity = validity;
+        this.signatureAlgorithm = new AlgorithmIdentifier(Oid.getSignatureAlgorithmOid(signatureAlgorithm)).toDer().toByteArray();
+        this.signatureAndIssuer = concat(this.signatureAlgorithm, issuer.toDer().toByteArray());
+        List<byte[]> encodedExtensions = new ArrayList<>();
+        for (Extension.ExtensionType extension : extensions) {
+            fixedExtensionIds.add(extension.getOid());
+            encodedExtensions.add(new Extension(extension).toDer().toByteArray());
+        }
+        this.fixedExtensions = concat(encodedExtensions.toArray(new byte[0][]));
+    }
+
+    /**
+     * End entity certificates for TLS servers: not a CA, digitalSignature and keyEncipherment,
+     * for serverAuth only
+     */
+    public static CertificateTemplate server(X500Name issuer, byte[] issuerKeyIdentifier, String signatureAlgorithm, Period validity) {
+        return new CertificateTemplate("server", issuer, signatureAlgorithm, validity, List.of(
+                new Extension.BasicConstraintExtensionType().ca(false),
+                new Extension.KeyUsageExtensionType().digitalSignature(true).keyEncipherment(true),
+                new Extension.ExtendedKeyUsageExtensionType().keyPurpose(Extension.ExtendedKeyUsageExtensionType.SERVER_AUTH),
+                new Extension.AuthorityKeyIdentifierExtensionType().keyIdentifier(issuerKeyIdentifier)
+        ));
+    }
+
+    /** End entity certificates for TLS clients: not a CA, digitalSignature, for clientAuth only */
+    public static CertificateTemplate client(X500Name issuer, byte[] issuerKeyIdentifier, String signatureAlgorithm, Period validity) {
+        return new CertificateTemplate("client", issuer, signatureAlgorithm, validity, List.of(
+                new Extension.BasicConstraintExtensionType().ca(false),
+                new Extension.KeyUsageExtensionType().digitalSignature(true),
+                new Extension.ExtendedKeyUsageExtensionType().keyPurpose(Extension.ExtendedKeyUsageExtensionType.CLIENT_AUTH),
+                new Extension.AuthorityKeyIdentifierExtensionType().keyIdentifier(issuerKeyIdentifier)
+        ));
+    }
+
+    /** CA certificates which may only issue end entity certificates */
+    public static CertificateTemplate intermediate(X500Name issuer, byte[] issuerKeyIdentifier, String signatureAlgorithm, Period validity) {
+        return new CertificateTemplate("intermediate", issuer, signatureAlgorithm, validity, List.of(
+                new Extension.BasicConstraintExtensionType().ca(true).pathLengthConstraint(0),
+                new Extension.KeyUsageExtensionType().keyCertSign(true).crlSign(true),
+                new Extension.AuthorityKeyIdentifierExtensionType().keyIdentifier(issuerKeyIdentifier)
+        ));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** True if the template sets this extension, in which case requested values for it are ignored */
+    public boolean isFixed(String extnId) {
+        return fixedExtensionIds.contains(extnId);
+    }
+
+    /**
+     * Returns the DER encoding of the tbsCertificate, with the fixed extensions of the template followed
+     * by <code>extensions</code>. Sign it and complete the certificate with {@link #withSignature}.
+     */
+    public byte[] toBeSigned(BigInteger serialNumber, ZonedDateTime validFrom, X500Name subject, PublicKey publicKey, List<Extension> extensions) {
+        ByteArrayOutputStream extensionSequence = new ByteArrayOutputStream();
+        extensionSequence.write(fixedExtensions, 0, fixedExtensions.length);
+        for (Extension extension : extensions) {
+            byte[] encoded = extension.toDer().toByteArray();
+            extensionSequence.write(encoded, 0, encoded.length);
+        }
+        byte[] extensionsField = wrap(0xA3, wrap(0x30, extensionSequence.toByteArray()));
+
+        return wrap(0x30, concat(
+                VERSION_3,
+                new Der.INTEGER(serialNumber).toByteArray(),
+                signatureAndIssuer,
+                new CertificateInfo.Validity(validFrom, validFrom.plus(validity)).toDer().toByteArray(),
+                subject.toDer().toByteArray(),
+                publicKey.getEncoded(),
+                extensionsField
+        ));
+    }
+
+    /** Returns the DER encoding of the certificate with the tbsCertificate from {@link #toBeSigned} */
+    public byte[] withSignature(byte[] toBeSigned, byte[] signature) {
+        return wrap(0x30, concat(toBeSigned, signatureAlgorithm, new Der.BIT_STRING(signature).toByteArray()));
+    }
+
+    private static byte[] wrap(int tag, byte[] content) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length + 6);
+        buffer.write(tag);
+        try {
+            Der.writeLength(buffer, content.length);
+        } catch (IOException cannotHappen) {
+            throw new UncheckedIOException(cannotHappen);
+        }
+        buffer.write(content, 0, content.length);
+        return buffer.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,265 @@
+package io.liquidpki.x509;
+
+import io.liquidpki.common.AlgorithmIdentifier;
+import io.liquidpki.common.CertificateExtensions;
+import io.liquidpki.common.SubjectPublicKeyInfo;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.der.Der;
+import io.liquidpki.der.DerContextSpecificValue;
+import io.liquidpki.der.MalformedDerException;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * A read-only view of an encoded certificate for holding very many certificates in memory. Where
+ * {@link SignedCertificate} keeps the parsed tree of every field, this keeps only the encoding and
+ * the offset of each field in it, and parses a field each time it is asked for. A certificate of
+ * about a kilobyte costs little more than its encoding, and checking whether one certificate
+ * issued another compares the encoded names in place.
+ */
+public final class CompactCertificate {
+
+    private static final int TBS_CERTIFICATE = 0;
+    private static final int VERSION = 1;
+    private static final int SERIAL_NUMBER = 2;
+    private static final int SIGNATURE = 3;
+    private static final int ISSUER = 4;
+    private static final int VALIDITY = 5;
+    private static final int SUBJECT = 6;
+    private static final int SUBJECT_PUBLIC_KEY_INFO = 7;
+    private static final int EXTENSIONS = 8;
+    private static final int SIGNATURE_ALGORITHM = 9;
+    private static final int SIGNATURE_VALUE = 10;
+    private static final int FIELD_COUNT = 11;
+
+    private final byte[] encoded;
+    /** The offset of the tag of each field, or -1 for the optional version and extensions */
+    private final int[] offsets;
+
+    /**
+     * Keeps <code>encoded</code> without copying it, so the caller must not change it afterwards.
+     * Trailing bytes after the certificate are dropped.
+     */
+    public CompactCertificate(byte[] encoded) {
+        int end = end(encoded, 0, encoded.length);
+        this.encoded = end == encoded.length ? encoded : Arrays.copyOf(encoded, end);
+        this.offsets = index(this.encoded);
+    }
+
+    private static int[] index(byte[] bytes) {
+        int[] offsets = new int[FIELD_COUNT];
+        Arrays.fill(offsets, -1);
+        int certificateEnd = expect(bytes, 0, 0x30, bytes.length);
+        int tbs = contentStart(bytes, 0);
+        offsets[TBS_CERTIFICATE] = tbs;
+        int tbsEnd = expect(bytes, tbs, 0x30, certificateEnd);
+
+        int pos = contentStart(bytes, tbs);
+        if (pos < tbsEnd && (0xff & bytes[pos]) == 0xA0) {
+            offsets[VERSION] = pos;
+            pos = end(bytes, pos, tbsEnd);
+        }
+        pos = field(bytes, offsets, SERIAL_NUMBER, pos, 0x02, tbsEnd);
+        pos = field(bytes, offsets, SIGNATURE, pos, 0x30, tbsEnd);
+        pos = field(bytes, offsets, ISSUER, pos, 0x30, tbsEnd);
+        pos = field(bytes, offsets, VALIDITY, pos, 0x30, tbsEnd);
+        pos = field(bytes, offsets, SUBJECT, pos, 0x30, tbsEnd);
+        pos = field(bytes, offsets, SUBJECT_PUBLIC_KEY_INFO, pos, 0x30, tbsEnd);
+        while (pos < tbsEnd) { // [1] issuerUniqueID and [2] subjectUniqueID are ignored
+            int end = end(bytes, pos, tbsEnd);
+            if ((0xff & bytes[pos]) == 0xA3) {
+                offsets[EXTENSIONS] = contentStart(bytes, pos);
+                expect(bytes, offsets[EXTENSIONS], 0x30, end);
+            }
+            pos = end;
+        }
+
+        pos = field(bytes, offsets, SIGNATURE_ALGORITHM, tbsEnd, 0x30, certificateEnd);
+        pos = field(bytes, offsets, SIGNATURE_VALUE, pos, 0x03, certificateEnd);
+        if (pos != certificateEnd) {
+            throw new MalformedDerException("Unexpected value after signature", pos);
+        }
+        return offsets;
+    }
+
+    private static int field(byte[] bytes, int[] offsets, int field, int pos, int tag, int limit) {
+        offsets[field] = pos;
+        return expect(bytes, pos, tag, limit);
+    }
+
+    private static int expect(byte[] bytes, int pos, int tag, int limit) {
+        if (pos >= limit) {
+            throw new MalformedDerException("Missing value", pos);
+        } else if ((0xff & bytes[pos]) != tag) {
+            throw new MalformedDerException("Expected tag 0x" + Integer.toHexString(tag) + ", was 0x" + Integer.toHexString(0xff & bytes[pos]), pos);
+        }
+        return end(bytes, pos, limit);
+    }
+
+    private static int contentStart(byte[] bytes, int pos) {
+        int length = 0xff & bytes[pos + 1];
+        return pos + 2 + (length > 0x80 ? length & 0x7f : 0);
+    }
+
+    private static int contentLength(byte[] bytes, int pos) {
+        int length = 0xff & bytes[pos + 1];
+        if (length == 0x80) {
+            throw new MalformedDerException("Indefinite length", pos + 1);
+        } else if (length < 0x80) {
+            return length;
+        }
+        int bytesInLength = length & 0x7f;
+        if (bytesInLength > 3) {
+            throw new MalformedDerException("Unsupported length field", pos + 1);
+        }
+        length = 0;
+        for (int i = 0; i < bytesInLength; i++) {
+            length = length << 8 | (0xff & bytes[pos + 2 + i]);
+        }
+        return length;
+    }
+
+    /**
+     * The offset after the value at <code>pos</code>, checking that its length field and content
+     * fit within <code>limit</code> before reading them
+     */
+    private static int end(byte[] bytes, int pos, int limit) {
+        if (pos + 2 > limit) {
+            throw new MalformedDerException("Missing length", pos);
+        }
+        int contentStart = contentStart(bytes, pos);
+        if (contentStart > limit) {
+            throw new MalformedDerException("Truncated length", pos + 1);
+        }
+        int end = contentStart + contentLength(bytes, pos);
+        if (end > limit) {
+            throw new MalformedDerException("Length exceeds enclosing value", pos);
+        }
+        return end;
+    }
+
+    private Der parse(int field) {
+        return Der.parse(encoded, offsets[field]);
+    }
+
+    private byte[] fieldBytes(int field) {
+        return Arrays.copyOfRange(encoded, offsets[field], end(encoded, offsets[field], encoded.length));
+    }
+
+    private byte[] contentBytes(int field) {
+        return Arrays.copyOfRange(encoded, contentStart(encoded, offsets[field]), end(encoded, offsets[field], encoded.length));
+    }
+
+    /** Compares the encoding of a field with a field of another certificate without copying */
+    private boolean fieldEquals(int field, CompactCertificate other, int otherField) {
+        int start = offsets[field];
+        int otherStart = other.offsets[otherField];
+        return Arrays.equals(
+                encoded, start, end(encoded, start, encoded.length),
+                other.encoded, otherStart, end(other.encoded, otherStart, other.encoded.length)
+        );
+    }
+
+    public byte[] getEncoded() {
+        return encoded.clone();
+    }
+
+    /** The number of bytes this certificate keeps on the heap, not counting object headers */
+    public int getEncodedLength() {
+        return encoded.length;
+    }
+
+    /** The DER encoding of the tbsCertificate exactly as it was signed */
+    public byte[] tbsCertificateBytes() {
+        return fieldBytes(TBS_CERTIFICATE);
+    }
+
+    /** As encoded, so 2 for an X.509 v3 certificate, and 0 if the version is omitted */
+    public int version() {
+        return offsets[VERSION] < 0 ? 0 : (int) ((Der.INTEGER) ((DerContextSpecificValue) parse(VERSION)).parse()).longValue();
+    }
+
+    public BigInteger serialNumber() {
+        return new BigInteger(contentBytes(SERIAL_NUMBER));
+    }
+
+    public X500Name issuer() {
+        return new X500Name(parse(ISSUER));
+    }
+
+    /** The DER encoding of the issuer name, for indexing or comparing with another certificate's subject */
+    public byte[] issuerBytes() {
+        return fieldBytes(ISSUER);
+    }
+
+    public boolean isIssuedBy(CompactCertificate issuer) {
+        return fieldEquals(ISSUER, issuer, SUBJECT);
+    }
+
+    public X500Name subject() {
+        return new X500Name(parse(SUBJECT));
+    }
+
+    public byte[] subjectBytes() {
+        return fieldBytes(SUBJECT);
+    }
+
+    public CertificateInfo.Validity validity() {
+        return new CertificateInfo.Validity(parse(VALIDITY));
+    }
+
+    public ZonedDateTime notBefore() {
+        return validity().getNotBefore();
+    }
+
+    public ZonedDateTime notAfter() {
+        return validity().getNotAfter();
+    }
+
+    public SubjectPublicKeyInfo subjectPublicKeyInfo() {
+        return new SubjectPublicKeyInfo(parse(SUBJECT_PUBLIC_KEY_INFO));
+    }
+
+    public PublicKey publicKey() throws GeneralSecurityException {
+        return subjectPublicKeyInfo().getPublicKey();
+    }
+
+    /** Null if the certificate has no extensions */
+    public CertificateExtensions extensions() {
+        return offsets[EXTENSIONS] < 0 ? null : new CertificateExtensions((Der.SEQUENCE) parse(EXTENSIONS));
+    }
+
+    public String signatureAlgorithmOid() {
+        return new AlgorithmIdentifier(parse(SIGNATURE_ALGORITHM)).getAlgorithmOid();
+    }
+
+    public byte[] signatureValue() {
+        return ((Der.BIT_STRING) parse(SIGNATURE_VALUE)).bytesValue();
+    }
+
+    /** Parses the whole certificate */
+    public SignedCertificate toSignedCertificate() {
+        return new SignedCertificate(encoded);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CompactCertificate)) return false;
+        return Arrays.equals(encoded, ((CompactCertificate) o).encoded);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(encoded);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{subject=" + subject().print() + ", serialNumber=" + serialNumber().toString(16) + "}";
+    }
+}
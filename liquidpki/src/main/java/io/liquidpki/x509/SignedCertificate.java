@@ -45,6 +45,31 @@ public class SignedCertificate {
         return new Der.SEQUENCE(List.of(tbsCertificate.toDer(), signatureAlgorithm.toDer(), signatureValue));
     }
 
+    public CertificateInfo tbsCertificate() {
+        return tbsCertificate;
+    }
+
+    /** The DER encoding of the tbsCertificate exactly as it was signed */
+    public byte[] tbsCertificateBytes() {
+        return der != null ? ((Der.SEQUENCE) der).first().toByteArray() : tbsCertificate.toDer().toByteArray();
+    }
+
+    public AlgorithmIdentifier signatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    public String signatureAlgorithmOid() {
+        return signatureAlgorithm.getAlgorithmOid();
+    }
+
+    public byte[] signatureValue() {
+        return signatureValue.bytesValue();
+    }
+
+    public byte[] getEncoded() {
+        return der != null ? der.toByteArray() : toDer().toByteArray();
+    }
+
     public void dump(PrintStream out, boolean debug) {
         out.println("X509Certificate:" + (debug ? " " + der : ""));
         tbsCertificate.dump(out, "tbsCertificate", "  ", debug);
@@ -0,0 +1,134 @@
+package io.liquidpki.der;
+
+import io.liquidpki.common.X500Name;
+import io.liquidpki.pkcs12.Pkcs12KeyStore;
+import io.liquidpki.x509.CertificateInfo;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.CertificateFactory;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BerTest {
+
+    @Test
+    void shouldResolveIndefiniteLengths() {
+        byte[] ber = fromHex("3080" + "0201" + "05" + "3080" + "0500" + "0000" + "0000");
+        assertThat(Der.toHex(Ber.toDer(ber))).isEqualTo("30070201053002" + "0500");
+        Der.SEQUENCE sequence = (Der.SEQUENCE) Ber.parse(ber);
+        assertThat(((Der.INTEGER) sequence.first()).longValue()).isEqualTo(5);
+    }
+
+    @Test
+    void shouldJoinConstructedStrings() {
+        assertThat(Der.toHex(Ber.toDer(fromHex("2480" + "04020102" + "2406" + "04020304" + "0400" + "0000"))))
+                .isEqualTo("040401020304");
+        assertThat(Der.toHex(Ber.toDer(fromHex("2309" + "0303000102" + "03020480"))))
+                .isEqualTo("030404010280");
+        assertThat(Der.toHex(Ber.toDer(fromHex("a080" + "2c80" + "0000" + "0000"))))
+                .isEqualTo("A0020C00");
+    }
+
+    @Test
+    void shouldReturnDerUnchanged() {
+        byte[] der = new Der.SEQUENCE(List.of(new Der.INTEGER(5), new Der.OCTET_STRING(new byte[300]))).toByteArray();
+        assertThat(Ber.toDer(der)).isSameAs(der);
+    }
+
+    @Test
+    void shouldRejectMissingEndOfContents() {
+        assertThatThrownBy(() -> Ber.toDer(fromHex("30800500")))
+                .hasMessageContaining("end-of-contents");
+        assertThatThrownBy(() -> Ber.toDer(fromHex("3004" + "30800500")))
+                .hasMessageContaining("end-of-contents");
+        assertThatThrownBy(() -> Ber.toDer(fromHex("0480")))
+                .hasMessageContaining("primitive");
+        assertThatThrownBy(() -> Der.parse(fromHex("30800500" + "0000")).fullLength())
+                .hasMessageContaining("Ber.parse");
+    }
+
+    @Test
+    void shouldReadKeystoreWithIndefiniteLengths() throws Exception {
+        byte[] der = createKeystore();
+        ByteArrayOutputStream ber = new ByteArrayOutputStream();
+        toIndefiniteLengths(der, 0, der.length, ber);
+        assertThat(ber.size()).isNotEqualTo(der.length);
+
+        assertThat(Ber.toDer(ber.toByteArray())).isEqualTo(der);
+        new Pkcs12KeyStore(new ByteArrayInputStream(ber.toByteArray()));
+    }
+
+    private static byte[] createKeystore() throws GeneralSecurityException, IOException {
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        byte[] certificate = new CertificateInfo()
+                .version(2)
+                .serialNumber(4711)
+                .subjectName(new X500Name().cn("Keystore Test"))
+                .issuerName(new X500Name().cn("Keystore Test"))
+                .publicKey(keyPair.getPublic())
+                .signWithKey(keyPair.getPrivate(), "SHA256withRSA")
+                .toDer().toByteArray();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setCertificateEntry("ca", CertificateFactory.getInstance("X509").generateCertificate(new ByteArrayInputStream(certificate)));
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        keyStore.store(buffer, "secret".toCharArray());
+        return buffer.toByteArray();
+    }
+
+    /** Rewrites DER like streaming encoders do: indefinite lengths and OCTET STRINGs in segments */
+    private static void toIndefiniteLengths(byte[] der, int pos, int end, ByteArrayOutputStream out) {
+        while (pos < end) {
+            int tag = der[pos] & 0xff;
+            int length = der[pos + 1] & 0xff;
+            int headerLength = 2;
+            if (length > 0x80) {
+                int bytesInLength = length & 0x7f;
+                length = 0;
+                for (int i = 0; i < bytesInLength; i++) {
+                    length = length << 8 | (der[pos + 2 + i] & 0xff);
+                }
+                headerLength += bytesInLength;
+            }
+            int contentStart = pos + headerLength;
+            if ((tag & 0x20) != 0) {
+                out.write(tag);
+                out.write(0x80);
+                toIndefiniteLengths(der, contentStart, contentStart + length, out);
+                out.write(0);
+                out.write(0);
+            } else if (tag == 0x04 && length > 16) {
+                out.write(0x24);
+                out.write(0x80);
+                for (int offset = 0; offset < length; offset += 16) {
+                    int segment = Math.min(16, length - offset);
+                    out.write(0x04);
+                    out.write(segment);
+                    out.write(der, contentStart + offset, segment);
+                }
+                out.write(0);
+                out.write(0);
+            } else {
+                out.write(der, pos, headerLength + length);
+            }
+            pos = contentStart + length;
+        }
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return result;
+    }
+}
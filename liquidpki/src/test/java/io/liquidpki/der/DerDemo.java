@@ -25,7 +25,7 @@ public class DerDemo {
         }
         byte[] bytes = buffer.toByteArray();
 
-        new Pkcs12KeyStore(Der.parse(bytes)).output(System.out, "");
+        new Pkcs12KeyStore(Ber.parse(bytes)).output(System.out, "");
     }
 
 }
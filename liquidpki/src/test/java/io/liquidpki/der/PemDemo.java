@@ -1,10 +1,10 @@
 package io.liquidpki.der;
 
+import io.liquidpki.pem.PemCodec;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.Base64;
-import java.util.stream.Collectors;
 
 public class PemDemo {
 
@@ -24,10 +24,6 @@ public class PemDemo {
     }
 
     private static byte[] pemToBytes(String filename) throws IOException {
-        String pemContent = Files.readAllLines(Paths.get(filename)).stream()
-                .filter(s -> !s.startsWith("-----"))
-                .map(String::trim)
-                .collect(Collectors.joining(""));
-        return Base64.getDecoder().decode(pemContent);
+        return PemCodec.decode(Files.readAllBytes(Paths.get(filename)));
     }
 }
@@ -0,0 +1,135 @@
+package io.liquidpki.der;
+
+import io.liquidpki.common.Extension;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.pkcs10.CertificationRequestInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StrictDerTest {
+
+    @Test
+    void shouldAcceptCertificationRequest() throws GeneralSecurityException {
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        byte[] csr = new CertificationRequestInfo()
+                .subject(new X500Name().cn("www.example.net").o("Example Company Inc"))
+                .addExtension(new Extension.SANExtensionType().dnsName("www.example.net"))
+                .publicKey(keyPair.getPublic())
+                .signWithKey(keyPair.getPrivate())
+                .toDer().toByteArray();
+
+        StrictDer.validate(csr);
+        assertThat(StrictDer.canonicalize(csr)).isEqualTo(csr);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "0500", "0101ff", "010100", "020100", "02017f", "020200ff", "0201ff", "02028000",
+            "030100", "03020780", "06052b0e03021a", "3000", "3006020101020102", "31060201010201ff",
+            "a003020101", "1f2100", "30818004" + "7e"
+    })
+    void shouldAcceptValidDer(String hex) {
+        if (hex.endsWith("7e")) {
+            hex = hex + "00".repeat(0x7e);
+        }
+        byte[] der = fromHex(hex);
+        StrictDer.validate(der);
+        assertThat(StrictDer.isValid(der)).isTrue();
+        assertThat(Der.toHex(StrictDer.canonicalize(der))).isEqualTo(Der.toHex(der));
+    }
+
+    @Test
+    void shouldRejectNonMinimalLengths() {
+        assertThatThrownBy(() -> StrictDer.validate(fromHex("04810100")))
+                .isInstanceOf(MalformedDerException.class)
+                .hasMessageContaining("Long form")
+                .extracting("offset").isEqualTo(1);
+        assertThatThrownBy(() -> StrictDer.validate(fromHex("0482000100")))
+                .hasMessageContaining("leading zero");
+        assertThat(Der.toHex(StrictDer.canonicalize(fromHex("300704820001000500")))).isEqualTo("30050401000500");
+    }
+
+    @Test
+    void shouldRejectIndefiniteAndTruncatedLengths() {
+        assertThatThrownBy(() -> StrictDer.validate(fromHex("308005000000")))
+                .hasMessageContaining("Indefinite");
+        assertThatThrownBy(() -> StrictDer.validate(fromHex("300605000500")))
+                .hasMessageContaining("exceeds enclosing");
+        assertThatThrownBy(() -> StrictDer.validate(fromHex("300205000500")))
+                .hasMessageContaining("Trailing data");
+        assertThatThrownBy(() -> StrictDer.validate(fromHex("3003050005")))
+                .isInstanceOf(MalformedDerException.class);
+        assertThatThrownBy(() -> StrictDer.validate(new byte[0]))
+                .hasMessageContaining("Missing value");
+    }
+
+    @Test
+    void shouldRejectInvalidBooleanAndInteger() {
+        assertThat(StrictDer.isValid(fromHex("010101"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("01020000"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("0200"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("0202007f"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("0202ff80"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("0a020001"))).isFalse();
+        assertThat(Der.toHex(StrictDer.canonicalize(fromHex("3008010101020300007f")))).isEqualTo("30060101FF02017F");
+    }
+
+    @Test
+    void shouldRejectInvalidPrimitives() {
+        assertThat(StrictDer.isValid(fromHex("050100"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("030108"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("030101"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("03020781"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("06022b8e"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("06032b8001"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("2403040100"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("1000"))).isFalse();
+        assertThat(StrictDer.isValid(fromHex("1f0100"))).isFalse();
+        assertThat(Der.toHex(StrictDer.canonicalize(fromHex("03020781")))).isEqualTo("03020780");
+    }
+
+    @Test
+    void shouldRequireSortedSetOf() {
+        assertThatThrownBy(() -> StrictDer.validate(fromHex("310602010202010" + "1")))
+                .hasMessageContaining("SET OF")
+                .extracting("offset").isEqualTo(5);
+        assertThat(StrictDer.isValid(fromHex("3006020101020101"))).isTrue();
+        assertThat(StrictDer.isValid(fromHex("300831060201020201" + "01"))).isFalse();
+        assertThat(Der.toHex(StrictDer.canonicalize(fromHex("3106020102020101")))).isEqualTo("3106020101020102");
+    }
+
+    @Test
+    void shouldSortSetOnEncode() {
+        Der.SET set = new Der.SET(List.of(new Der.PRINTABLE_STRING("b"), new Der.INTEGER(7), new Der.PRINTABLE_STRING("a")));
+        assertThat(Der.toHex(set.toByteArray())).isEqualTo("3109020107130161130162");
+        StrictDer.validate(set.toByteArray());
+    }
+
+    @Test
+    void shouldRejectDeepNesting() {
+        byte[] der = new byte[0];
+        for (int i = 0; i < 100; i++) {
+            der = new Der.SEQUENCE(List.of(Der.parse(der.length > 0 ? der : new Der.NULL().toByteArray()))).toByteArray();
+        }
+        byte[] nested = der;
+        assertThatThrownBy(() -> StrictDer.validate(nested)).hasMessageContaining("Nesting");
+        assertThatThrownBy(() -> StrictDer.canonicalize(nested)).hasMessageContaining("Nesting");
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return result;
+    }
+}
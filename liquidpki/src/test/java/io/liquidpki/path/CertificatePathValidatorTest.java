@@ -0,0 +1,209 @@
+package io.liquidpki.path;
+
+import io.liquidpki.common.AlgorithmIdentifier;
+import io.liquidpki.common.Extension;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.der.Der;
+import io.liquidpki.der.Oid;
+import io.liquidpki.x509.CertificateInfo;
+import io.liquidpki.x509.SignedCertificate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CertificatePathValidatorTest {
+
+    private final ZonedDateTime now = ZonedDateTime.now();
+    private KeyPairGenerator generator;
+    private KeyPair rootKey, intermediateKey, leafKey;
+    private SignedCertificate root, intermediate, leaf;
+
+    @BeforeEach
+    void setUp() throws GeneralSecurityException {
+        generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        rootKey = generator.generateKeyPair();
+        intermediateKey = generator.generateKeyPair();
+        leafKey = generator.generateKeyPair();
+
+        root = reparse(caCertificate("CN=Root CA,O=Test", "CN=Root CA,O=Test", rootKey.getPublic(), now.minusDays(1), -1)
+                .signWithKey(rootKey.getPrivate(), "SHA256withRSA"));
+        intermediate = reparse(caCertificate("CN=Intermediate CA,O=Test", "CN=Root CA,O=Test", intermediateKey.getPublic(), now.minusDays(1), 0)
+                .signWithKey(rootKey.getPrivate(), "SHA256withRSA"));
+        leaf = reparse(leafCertificate("CN=www.example.com", "CN=Intermediate CA,O=Test", now.minusDays(1))
+                .signWithKey(intermediateKey.getPrivate(), "SHA512withRSA"));
+    }
+
+    @Test
+    void shouldBuildPathThroughIntermediate() throws GeneralSecurityException {
+        CertificatePath path = new CertificatePathValidator(List.of(root)).validate(List.of(leaf, intermediate), now);
+        assertThat(path.getCertificates()).containsExactly(leaf, intermediate, root);
+    }
+
+    @Test
+    void shouldRejectUnknownIssuer() throws GeneralSecurityException {
+        KeyPair otherKey = generator.generateKeyPair();
+        SignedCertificate otherRoot = caCertificate("CN=Other CA", "CN=Other CA", otherKey.getPublic(), now.minusDays(1), -1)
+                .signWithKey(otherKey.getPrivate(), "SHA256withRSA");
+        assertThatThrownBy(() -> new CertificatePathValidator(List.of(otherRoot)).validate(List.of(leaf, intermediate), now))
+                .isInstanceOf(CertificatePathException.class)
+                .hasMessageContaining("www.example.com");
+    }
+
+    @Test
+    void shouldRejectForgedSignature() throws GeneralSecurityException {
+        SignedCertificate forged = leafCertificate("CN=www.example.com", "CN=Intermediate CA,O=Test", now.minusDays(1))
+                .signWithKey(leafKey.getPrivate(), "SHA512withRSA");
+        assertThatThrownBy(() -> new CertificatePathValidator(List.of(root)).validate(List.of(forged, intermediate), now))
+                .isInstanceOf(CertificatePathException.class)
+                .hasMessageContaining("signature not verified");
+    }
+
+    @Test
+    void shouldRejectExpiredCertificate() {
+        assertThatThrownBy(() -> new CertificatePathValidator(List.of(root)).validate(List.of(leaf, intermediate), now.plusYears(2)))
+                .isInstanceOf(CertificatePathException.class)
+                .hasMessageContaining("expired");
+    }
+
+    @Test
+    void shouldRejectNonCaIssuer() throws GeneralSecurityException {
+        SignedCertificate notCa = reparse(leafCertificate("CN=Intermediate CA,O=Test", "CN=Root CA,O=Test", now.minusDays(1))
+                .publicKey(intermediateKey.getPublic())
+                .signWithKey(rootKey.getPrivate(), "SHA256withRSA"));
+        assertThatThrownBy(() -> new CertificatePathValidator(List.of(root)).validate(List.of(leaf, notCa), now))
+                .isInstanceOf(CertificatePathException.class)
+                .hasMessageContaining("is not a CA");
+    }
+
+    @Test
+    void shouldEnforcePathLengthConstraint() throws GeneralSecurityException {
+        KeyPair subKey = generator.generateKeyPair();
+        SignedCertificate subIntermediate = reparse(caCertificate("CN=Sub CA,O=Test", "CN=Intermediate CA,O=Test", subKey.getPublic(), now.minusDays(1), -1)
+                .signWithKey(intermediateKey.getPrivate(), "SHA256withRSA"));
+        SignedCertificate deepLeaf = reparse(leafCertificate("CN=deep.example.com", "CN=Sub CA,O=Test", now.minusDays(1))
+                .signWithKey(subKey.getPrivate(), "SHA256withRSA"));
+        assertThatThrownBy(() -> new CertificatePathValidator(List.of(root)).validate(List.of(deepLeaf, subIntermediate, intermediate), now))
+                .isInstanceOf(CertificatePathException.class)
+                .hasMessageContaining("pathLengthConstraint");
+    }
+
+    @Test
+    void shouldRejectUnknownCriticalExtension() throws GeneralSecurityException {
+        Extension unknownCritical = new Extension(new Der.SEQUENCE(List.of(
+                new Der.OBJECT_IDENTIFIER("1.3.6.1.4.1.99999.1"), new Der.BOOLEAN(true), new Der.OCTET_STRING(new byte[] { 0x05, 0x00 })
+        )));
+        SignedCertificate withCriticalExtension = reparse(leafCertificate("CN=www.example.com", "CN=Intermediate CA,O=Test", now.minusDays(1))
+                .addExtension(unknownCritical)
+                .signWithKey(intermediateKey.getPrivate(), "SHA512withRSA"));
+        assertThatThrownBy(() -> new CertificatePathValidator(List.of(root)).validate(List.of(withCriticalExtension, intermediate), now))
+                .isInstanceOf(CertificatePathException.class)
+                .hasMessageContaining("unsupported critical extension 1.3.6.1.4.1.99999.1");
+    }
+
+    @Test
+    void shouldCheckExtendedKeyUsageOfEndEntity() throws GeneralSecurityException {
+        SignedCertificate serverCertificate = reparse(leafCertificate("CN=www.example.com", "CN=Intermediate CA,O=Test", now.minusDays(1))
+                .addExtension(new Extension.KeyUsageExtensionType().digitalSignature(true))
+                .addExtension(new Extension.ExtendedKeyUsageExtensionType().keyPurpose(Extension.ExtendedKeyUsageExtensionType.SERVER_AUTH))
+                .signWithKey(intermediateKey.getPrivate(), "SHA512withRSA"));
+        CertificatePathValidator validator = new CertificatePathValidator(List.of(root));
+
+        validator.validate(List.of(serverCertificate, intermediate), now, Extension.ExtendedKeyUsageExtensionType.SERVER_AUTH);
+        assertThatThrownBy(() -> validator.validate(List.of(serverCertificate, intermediate), now, Extension.ExtendedKeyUsageExtensionType.CLIENT_AUTH))
+                .isInstanceOf(CertificatePathException.class)
+                .hasMessageContaining("does not include " + Extension.ExtendedKeyUsageExtensionType.CLIENT_AUTH);
+    }
+
+    @Test
+    void shouldCheckKeyUsageOfEndEntity() throws GeneralSecurityException {
+        SignedCertificate encipherOnly = reparse(leafCertificate("CN=www.example.com", "CN=Intermediate CA,O=Test", now.minusDays(1))
+                .addExtension(new Extension.KeyUsageExtensionType().keyEncipherment(true))
+                .signWithKey(intermediateKey.getPrivate(), "SHA512withRSA"));
+        CertificatePathValidator validator = new CertificatePathValidator(List.of(root));
+
+        validator.validate(List.of(encipherOnly, intermediate), now, Extension.ExtendedKeyUsageExtensionType.SERVER_AUTH);
+        assertThatThrownBy(() -> validator.validate(List.of(encipherOnly, intermediate), now, Extension.ExtendedKeyUsageExtensionType.CLIENT_AUTH))
+                .isInstanceOf(CertificatePathException.class)
+                .hasMessageContaining("key usage does not include digitalSignature");
+    }
+
+    @Test
+    void shouldRejectSignatureAlgorithmDifferentFromTbsCertificate() throws GeneralSecurityException {
+        SignedCertificate signed = leafCertificate("CN=www.example.com", "CN=Intermediate CA,O=Test", now.minusDays(1))
+                .signWithKey(intermediateKey.getPrivate(), "SHA512withRSA");
+        SignedCertificate relabelled = reparse(new SignedCertificate(
+                signed.tbsCertificate(), new AlgorithmIdentifier(Oid.getSignatureAlgorithmOid("SHA256withRSA")), signed.signatureValue()
+        ));
+        assertThatThrownBy(() -> new CertificatePathValidator(List.of(root)).validate(List.of(relabelled, intermediate), now))
+                .isInstanceOf(CertificatePathException.class)
+                .hasMessageContaining("signature algorithm does not match");
+    }
+
+    @Test
+    void shouldChainIssuerNamesWhichDifferOnlyInCaseAndSpace() throws GeneralSecurityException {
+        SignedCertificate differentlySpelled = reparse(leafCertificate("CN=www.example.com", "CN=INTERMEDIATE  CA ,O=test", now.minusDays(1))
+                .signWithKey(intermediateKey.getPrivate(), "SHA512withRSA"));
+        CertificatePath path = new CertificatePathValidator(List.of(root)).validate(List.of(differentlySpelled, intermediate), now);
+        assertThat(path.getCertificates()).containsExactly(differentlySpelled, intermediate, root);
+    }
+
+    @Test
+    void shouldSkipSignatureVerificationForCachedChains() throws GeneralSecurityException {
+        VerifiedSignatureCache cache = new VerifiedSignatureCache(100);
+        CertificatePathValidator validator = new CertificatePathValidator(List.of(root), cache);
+
+        validator.validate(List.of(leaf, intermediate), now);
+        assertThat(cache.getHits()).isEqualTo(0);
+        assertThat(cache.size()).isEqualTo(2);
+
+        validator.validate(List.of(reparse(leaf), reparse(intermediate)), now);
+        assertThat(cache.getHits()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedSignatures() throws GeneralSecurityException {
+        VerifiedSignatureCache cache = new VerifiedSignatureCache(1);
+        new CertificatePathValidator(List.of(root), cache).validate(List.of(leaf, intermediate), now);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    private CertificateInfo caCertificate(String subject, String issuer, PublicKey publicKey, ZonedDateTime validFrom, int pathLength) {
+        Extension.BasicConstraintExtensionType basicConstraints = new Extension.BasicConstraintExtensionType();
+        basicConstraints.ca(true);
+        if (pathLength >= 0) {
+            basicConstraints.pathLengthConstraint(pathLength);
+        }
+        return new CertificateInfo()
+                .version(2)
+                .subjectName(new X500Name(subject))
+                .issuerName(new X500Name(issuer))
+                .validity(validFrom, validFrom.plusYears(1))
+                .publicKey(publicKey)
+                .addExtension(basicConstraints)
+                .addExtension(new Extension.KeyUsageExtensionType().keyCertSign(true));
+    }
+
+    private CertificateInfo leafCertificate(String subject, String issuer, ZonedDateTime validFrom) {
+        return new CertificateInfo()
+                .version(2)
+                .subjectName(new X500Name(subject))
+                .issuerName(new X500Name(issuer))
+                .validity(validFrom, validFrom.plusYears(1))
+                .publicKey(leafKey.getPublic())
+                .addExtension(new Extension.SANExtensionType().dnsName("www.example.com"));
+    }
+
+    private static SignedCertificate reparse(SignedCertificate certificate) {
+        return new SignedCertificate(Der.parse(certificate.getEncoded()));
+    }
+}
@@ -0,0 +1,127 @@
+package io.liquidpki.path;
+
+import io.liquidpki.common.Extension;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.der.Der;
+import io.liquidpki.x509.CertificateInfo;
+import io.liquidpki.x509.SignedCertificate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TrustAnchorStoreTest {
+
+    private final ZonedDateTime now = ZonedDateTime.now();
+
+    @Test
+    void shouldLoadPemBundleOnce() throws IOException {
+        String bundle = resource("/buypass-root.crt") + "\n" + resource("/dst-root-ca.crt");
+        TrustAnchorStore store = new TrustAnchorStore();
+        assertThat(store.addPem(bundle)).isEqualTo(2);
+        assertThat(store.addPem(bundle)).isEqualTo(0);
+        assertThat(store.size()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldLoadPemAndDerFilesFromDirectory(@TempDir Path directory) throws IOException {
+        Files.write(directory.resolve("buypass.pem"), resource("/buypass-root.crt").getBytes(StandardCharsets.US_ASCII));
+        SignedCertificate dstRoot = parsePem(resource("/dst-root-ca.crt"));
+        Files.write(directory.resolve("dst.cer"), dstRoot.getEncoded());
+        Files.write(directory.resolve("README.txt"), "ignored".getBytes());
+
+        TrustAnchorStore store = new TrustAnchorStore();
+        assertThat(store.addDirectory(directory)).isEqualTo(2);
+        assertThat(store.contains(dstRoot)).isTrue();
+        assertThat(store.findBySubject(dstRoot.tbsCertificate().subject().getEncoded()))
+                .extracting(SignedCertificate::getEncoded)
+                .containsExactly(dstRoot.getEncoded());
+    }
+
+    @Test
+    void shouldIndexByKeyIdentifiers() throws IOException {
+        SignedCertificate github = parsePem(resource("/github-cert.crt"));
+        SignedCertificate buypass = parsePem(resource("/buypass-root.crt"));
+        TrustAnchorStore store = new TrustAnchorStore(List.of(github, buypass));
+
+        byte[] subjectKeyIdentifier = github.tbsCertificate().extensions().subjectKeyIdentifier();
+        byte[] authorityKeyIdentifier = github.tbsCertificate().extensions().authorityKeyIdentifier();
+        assertThat(subjectKeyIdentifier).isNotNull();
+        assertThat(authorityKeyIdentifier).isNotNull();
+        assertThat(store.findBySubjectKeyIdentifier(subjectKeyIdentifier)).containsExactly(github);
+        assertThat(store.findByAuthorityKeyIdentifier(authorityKeyIdentifier)).containsExactly(github);
+        assertThat(store.findBySubjectKeyIdentifier(authorityKeyIdentifier)).isEmpty();
+
+        assertThat(store.remove(github)).isTrue();
+        assertThat(store.remove(github)).isFalse();
+        assertThat(store.findBySubjectKeyIdentifier(subjectKeyIdentifier)).isEmpty();
+        assertThat(store.findByAuthorityKeyIdentifier(authorityKeyIdentifier)).isEmpty();
+        assertThat(store.size()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldKeepAnchorsWithSameSubject() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair oldKey = generator.generateKeyPair(), newKey = generator.generateKeyPair(), leafKey = generator.generateKeyPair();
+        SignedCertificate oldRoot = root(oldKey);
+        SignedCertificate newRoot = root(newKey);
+        SignedCertificate leaf = reparse(new CertificateInfo()
+                .version(2)
+                .subjectName(new X500Name("CN=www.example.com"))
+                .issuerName(new X500Name("CN=Root CA,O=Test"))
+                .validity(now.minusDays(1), now.plusDays(1))
+                .publicKey(leafKey.getPublic())
+                .signWithKey(newKey.getPrivate(), "SHA256withRSA"));
+
+        TrustAnchorStore store = new TrustAnchorStore(List.of(oldRoot, newRoot));
+        assertThat(store.findIssuers(leaf)).containsExactly(oldRoot, newRoot);
+
+        CertificatePathValidator validator = new CertificatePathValidator(store);
+        assertThat(validator.validate(List.of(leaf), now).getTrustAnchor()).isEqualTo(newRoot);
+
+        store.remove(newRoot);
+        assertThatThrownBy(() -> validator.validate(List.of(leaf), now))
+                .isInstanceOf(CertificatePathException.class);
+    }
+
+    private SignedCertificate root(KeyPair keyPair) throws GeneralSecurityException {
+        return reparse(new CertificateInfo()
+                .version(2)
+                .subjectName(new X500Name("CN=Root CA,O=Test"))
+                .issuerName(new X500Name("CN=Root CA,O=Test"))
+                .validity(now.minusDays(1), now.plusYears(1))
+                .publicKey(keyPair.getPublic())
+                .addExtension(new Extension.BasicConstraintExtensionType().ca(true))
+                .signWithKey(keyPair.getPrivate(), "SHA256withRSA"));
+    }
+
+    private static SignedCertificate parsePem(String pem) {
+        TrustAnchorStore store = new TrustAnchorStore();
+        store.addPem(pem);
+        return store.getTrustAnchors().iterator().next();
+    }
+
+    private String resource(String name) throws IOException {
+        try (InputStream input = Objects.requireNonNull(getClass().getResourceAsStream(name))) {
+            return new String(input.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static SignedCertificate reparse(SignedCertificate certificate) {
+        return new SignedCertificate(Der.parse(certificate.getEncoded()));
+    }
+}
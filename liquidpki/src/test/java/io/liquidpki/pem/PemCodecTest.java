@@ -0,0 +1,118 @@
+package io.liquidpki.pem;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PemCodecTest {
+
+    private final Random random = new Random(4711);
+
+    @Test
+    void shouldEncodeLikeMimeEncoder() {
+        for (int length = 0; length < 200; length++) {
+            byte[] der = randomBytes(length);
+            String base64 = Base64.getMimeEncoder(64, "\n".getBytes()).encodeToString(der);
+            String expected = "-----BEGIN CERTIFICATE-----\n" + base64 + (base64.isEmpty() ? "" : "\n") + "-----END CERTIFICATE-----";
+
+            assertThat(PemCodec.encodeToString("CERTIFICATE", der)).as("length " + length).isEqualTo(expected);
+            assertThat(PemCodec.encodedLength("CERTIFICATE", length)).isEqualTo(expected.length());
+        }
+    }
+
+    @Test
+    void shouldRoundTrip() {
+        for (int length = 0; length < 200; length++) {
+            byte[] der = randomBytes(length);
+            assertThat(PemCodec.decode(PemCodec.encode("PRIVATE KEY", der))).isEqualTo(der);
+            assertThat(PemCodec.decode(PemCodec.encodeToString("PRIVATE KEY", der))).isEqualTo(der);
+        }
+    }
+
+    @Test
+    void shouldEncodeIntoCallerArrays() {
+        byte[] der = randomBytes(100);
+        byte[] out = new byte[PemCodec.encodedLength("CERTIFICATE", 90) + 10];
+        int length = PemCodec.encode("CERTIFICATE", der, 5, 90, out, 10);
+        assertThat(length).isEqualTo(out.length - 10);
+
+        byte[] decoded = new byte[PemCodec.maxDecodedLength(length) + 3];
+        int decodedLength = PemCodec.decode(out, 10, length, decoded, 3);
+        assertThat(decodedLength).isEqualTo(90);
+        for (int i = 0; i < 90; i++) {
+            assertThat(decoded[i + 3]).isEqualTo(der[i + 5]);
+        }
+    }
+
+    @Test
+    void shouldEncodeBetweenByteBuffers() {
+        byte[] der = randomBytes(150);
+        String expected = PemCodec.encodeToString("CERTIFICATE", der);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(der.length);
+        direct.put(der).flip();
+        ByteBuffer out = ByteBuffer.allocateDirect(PemCodec.encodedLength("CERTIFICATE", der.length));
+        PemCodec.encode("CERTIFICATE", direct, out);
+        assertThat(direct.hasRemaining()).isFalse();
+        assertThat(out.hasRemaining()).isFalse();
+        out.flip();
+        assertThat(StandardCharsets.US_ASCII.decode(out).toString()).isEqualTo(expected);
+
+        ByteBuffer heap = ByteBuffer.allocate(expected.length());
+        PemCodec.encode("CERTIFICATE", ByteBuffer.wrap(der), heap);
+        assertThat(new String(heap.array(), StandardCharsets.US_ASCII)).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldDecodeFirstBlockWithCrLfAndSurroundingText() {
+        byte[] der = randomBytes(70);
+        String pem = "\r\n" + PemCodec.encodeToString("CERTIFICATE", der).replace("\n", "\r\n") + "\r\n"
+                     + PemCodec.encodeToString("CERTIFICATE", randomBytes(20));
+        assertThat(PemCodec.decode(pem)).isEqualTo(der);
+    }
+
+    @Test
+    void shouldMapAlphabetWithoutTables() {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < 64; i++) {
+            assertThat((char) PemCodec.encodeSextet(i)).isEqualTo(alphabet.charAt(i));
+        }
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            assertThat(PemCodec.decodeChar(c)).as("char " + c).isEqualTo(alphabet.indexOf(c));
+        }
+    }
+
+    @Test
+    void shouldRejectInvalidBase64() {
+        assertThatThrownBy(() -> PemCodec.decode("-----BEGIN X-----\nAB*D\n-----END X-----"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PemCodec.decode("QUJD=RA=="))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PemCodec.decode("QUJDR"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PemCodec.decode("QUJ\u00e9"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldRejectCharactersAboveLatin1() {
+        assertThatThrownBy(() -> PemCodec.decode("QUJ\u022b"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PemCodec.decode("-----BEGIN X-----\n\u0141UJD\n-----END X-----"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PemCodec.decode("QUJ\uff21"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -10,10 +10,13 @@ import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.Signature;
+import java.security.SignatureException;
 import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
 import java.util.Base64;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class CertificationRequestTest {
 
@@ -50,6 +53,43 @@ class CertificationRequestTest {
         assertThat(signature.verify(request.signature.bytesValue())).isTrue();
     }
 
+    @Test
+    void shouldRejectRequestSignedWithOtherKey() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+        CertificationRequest request = new CertificationRequestInfo()
+                .subject(new X500Name().cn("www.example.net"))
+                .publicKey(keyPair.getPublic())
+                .signWithKey(keyPair.getPrivate());
+        new CertificationRequest(request.toDer().toByteArray()).verifySignature();
+
+        CertificationRequest forged = new CertificationRequestInfo()
+                .subject(new X500Name().cn("www.example.net"))
+                .publicKey(keyPair.getPublic())
+                .signWithKey(generator.generateKeyPair().getPrivate());
+        assertThatThrownBy(() -> new CertificationRequest(forged.toDer().toByteArray()).verifySignature())
+                .isInstanceOf(SignatureException.class);
+    }
+
+    @Test
+    void shouldSignCertificationRequestWithEcKey() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp384r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+        CertificationRequest request = new CertificationRequestInfo()
+                .subject(new X500Name().cn("www.example.net"))
+                .publicKey(keyPair.getPublic())
+                .signWithKey(keyPair.getPrivate());
+
+        CertificationRequest restored = new CertificationRequest(Der.parse(request.toDer().toByteArray()));
+        assertThat(restored.certificationRequestInfo.publicKey()).isEqualTo(keyPair.getPublic());
+        Signature signature = Signature.getInstance("SHA384withECDSA");
+        signature.initVerify(restored.certificationRequestInfo.publicKey());
+        signature.update(request.certificationRequestInfo.toDer().toByteArray());
+        assertThat(signature.verify(request.signature.bytesValue())).isTrue();
+    }
+
     @Test
     void shouldSerializeCertificationRequestInfo() throws GeneralSecurityException {
         KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
@@ -0,0 +1,39 @@
+package io.liquidpki.pkcs12;
+
+import io.liquidpki.common.X500Name;
+import io.liquidpki.x509.CertificateInfo;
+
+import java.io.ByteArrayInputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+
+/** Keys and certificates for the PKCS#12 tests */
+class Pkcs12Fixtures {
+
+    static X509Certificate issue(String subject, KeyPair keyPair, String issuer, KeyPair issuerKeyPair) {
+        try {
+            byte[] certificate = new CertificateInfo()
+                    .version(2)
+                    .serialNumber(System.nanoTime())
+                    .subjectName(new X500Name().cn(subject))
+                    .issuerName(new X500Name().cn(issuer))
+                    .publicKey(keyPair.getPublic())
+                    .signWithKey(issuerKeyPair.getPrivate(), issuerKeyPair.getPrivate().getAlgorithm().equals("EC") ? "SHA256withECDSA" : "SHA256withRSA")
+                    .toDer().toByteArray();
+            return (X509Certificate) CertificateFactory.getInstance("X509").generateCertificate(new ByteArrayInputStream(certificate));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static KeyPair generateKeyPair(String algorithm) {
+        try {
+            return KeyPairGenerator.getInstance(algorithm).generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package io.liquidpki.pkcs12;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+
+import static io.liquidpki.pkcs12.Pkcs12Fixtures.generateKeyPair;
+import static io.liquidpki.pkcs12.Pkcs12Fixtures.issue;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class Pkcs12KeyStoreTest {
+
+    private final KeyPair caKeyPair = generateKeyPair("EC");
+    private final X509Certificate caCertificate = issue("Test CA", caKeyPair, "Test CA", caKeyPair);
+
+    @ParameterizedTest
+    @ValueSource(strings = {"secret", ""})
+    void shouldReadKeyEntryWrittenByJdk(String password) throws Exception {
+        KeyPair keyPair = generateKeyPair("RSA");
+        X509Certificate certificate = issue("Test Server", keyPair, "Test CA", caKeyPair);
+        byte[] pkcs12 = writeWithJdk(password, keyStore -> {
+            keyStore.setKeyEntry("server", keyPair.getPrivate(), password.toCharArray(), new Certificate[] { certificate, caCertificate });
+            keyStore.setCertificateEntry("ca", caCertificate);
+        });
+
+        KeyStore keyStore = Pkcs12KeyStore.load(new ByteArrayInputStream(pkcs12), password.toCharArray());
+        assertThat(Collections.list(keyStore.aliases())).containsExactlyInAnyOrder("server", "ca");
+        assertThat(keyStore.getKey("server", password.toCharArray())).isEqualTo(keyPair.getPrivate());
+        assertThat(keyStore.getCertificateChain("server")).containsExactly(certificate, caCertificate);
+        assertThat(keyStore.isCertificateEntry("ca")).isTrue();
+        assertThat(keyStore.getCertificate("ca")).isEqualTo(caCertificate);
+    }
+
+    @Test
+    void shouldRejectWrongPassword() throws Exception {
+        byte[] pkcs12 = writeWithJdk("secret", keyStore -> keyStore.setCertificateEntry("ca", caCertificate));
+        assertThatThrownBy(() -> Pkcs12KeyStore.load(new ByteArrayInputStream(pkcs12), "wrong".toCharArray()))
+                .isInstanceOf(UnrecoverableKeyException.class)
+                .hasMessageContaining("MAC");
+    }
+
+    @Test
+    void shouldCheckKeyPassword() throws Exception {
+        KeyPair keyPair = generateKeyPair("EC");
+        X509Certificate certificate = issue("Protected", keyPair, "Test CA", caKeyPair);
+        byte[] pkcs12 = writeWithJdk("secret", keyStore ->
+                keyStore.setKeyEntry("protected", keyPair.getPrivate(), "secret".toCharArray(), new Certificate[] { certificate }));
+
+        KeyStore keyStore = Pkcs12KeyStore.load(new ByteArrayInputStream(pkcs12), "secret".toCharArray());
+        assertThat(keyStore.getKey("protected", "secret".toCharArray())).isEqualTo(keyPair.getPrivate());
+        assertThatThrownBy(() -> keyStore.getKey("protected", "wrong".toCharArray()))
+                .isInstanceOf(UnrecoverableKeyException.class);
+        assertThatThrownBy(() -> keyStore.getKey("protected", null))
+                .isInstanceOf(UnrecoverableKeyException.class);
+        assertThat(keyStore.getKey("missing", "secret".toCharArray())).isNull();
+    }
+
+    @Test
+    void shouldReadLegacyEncryption() throws Exception {
+        KeyPair keyPair = generateKeyPair("EC");
+        X509Certificate certificate = issue("Legacy", keyPair, "Test CA", caKeyPair);
+        String[] properties = {"keystore.pkcs12.certProtectionAlgorithm", "keystore.pkcs12.keyProtectionAlgorithm", "keystore.pkcs12.macAlgorithm"};
+        String[] values = {"PBEWithSHA1AndRC2_40", "PBEWithSHA1AndDESede", "HmacPBESHA1"};
+        byte[] pkcs12;
+        try {
+            for (int i = 0; i < properties.length; i++) {
+                System.setProperty(properties[i], values[i]);
+            }
+            pkcs12 = writeWithJdk("secret", keyStore ->
+                    keyStore.setKeyEntry("legacy", keyPair.getPrivate(), "secret".toCharArray(), new Certificate[] { certificate, caCertificate }));
+        } finally {
+            for (String property : properties) {
+                System.clearProperty(property);
+            }
+        }
+
+        KeyStore keyStore = Pkcs12KeyStore.load(new ByteArrayInputStream(pkcs12), "secret".toCharArray());
+        assertThat(keyStore.getKey("legacy", "secret".toCharArray())).isEqualTo(keyPair.getPrivate());
+        assertThat(keyStore.getCertificateChain("legacy")).containsExactly(certificate, caCertificate);
+    }
+
+    @Test
+    void shouldReuseDerivedKeys() throws Exception {
+        KeyPair keyPair = generateKeyPair("EC");
+        X509Certificate certificate = issue("Cached", keyPair, "Test CA", caKeyPair);
+        byte[] pkcs12 = writeWithJdk("secret", keyStore ->
+                keyStore.setKeyEntry("cached", keyPair.getPrivate(), "secret".toCharArray(), new Certificate[] { certificate }));
+
+        DerivedKeyCache cache = new DerivedKeyCache(16);
+        new Pkcs12KeyStore(new ByteArrayInputStream(pkcs12)).derivedKeyCache(cache).toKeyStore("secret".toCharArray());
+        int derivedKeys = cache.size();
+        assertThat(derivedKeys).isGreaterThan(0);
+
+        KeyStore keyStore = new Pkcs12KeyStore(new ByteArrayInputStream(pkcs12)).derivedKeyCache(cache).toKeyStore("secret".toCharArray());
+        assertThat(cache.size()).isEqualTo(derivedKeys);
+        assertThat(keyStore.getKey("cached", "secret".toCharArray())).isEqualTo(keyPair.getPrivate());
+
+        assertThatThrownBy(() -> new Pkcs12KeyStore(new ByteArrayInputStream(pkcs12)).derivedKeyCache(cache).toKeyStore("other".toCharArray()))
+                .isInstanceOf(UnrecoverableKeyException.class);
+    }
+
+    @Test
+    void shouldDecryptOnExecutor() throws Exception {
+        byte[] pkcs12 = writeWithJdk("secret", keyStore -> {
+            for (int i = 0; i < 3; i++) {
+                KeyPair keyPair = generateKeyPair("EC");
+                keyStore.setKeyEntry("key" + i, keyPair.getPrivate(), "secret".toCharArray(),
+                        new Certificate[] { issue("Key " + i, keyPair, "Test CA", caKeyPair) });
+            }
+        });
+        int[] tasks = {0};
+        KeyStore keyStore = new Pkcs12KeyStore(new ByteArrayInputStream(pkcs12))
+                .derivedKeyCache(DerivedKeyCache.disabled())
+                .executor(command -> { tasks[0]++; command.run(); })
+                .toKeyStore("secret".toCharArray());
+        assertThat(Collections.list(keyStore.aliases())).containsExactlyInAnyOrder("key0", "key1", "key2");
+        assertThat(tasks[0]).isGreaterThanOrEqualTo(3);
+    }
+
+    private interface KeyStoreContent {
+        void addTo(KeyStore keyStore) throws GeneralSecurityException;
+    }
+
+    private static byte[] writeWithJdk(String password, KeyStoreContent content) throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        content.addTo(keyStore);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        keyStore.store(buffer, password.toCharArray());
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,89 @@
+package io.liquidpki.pkcs12;
+
+import io.liquidpki.der.StrictDer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+
+import static io.liquidpki.pkcs12.Pkcs12Fixtures.generateKeyPair;
+import static io.liquidpki.pkcs12.Pkcs12Fixtures.issue;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class Pkcs12WriterTest {
+
+    private final KeyPair caKeyPair = generateKeyPair("EC");
+    private final X509Certificate caCertificate = issue("Test CA", caKeyPair, "Test CA", caKeyPair);
+    private final KeyPair keyPair = generateKeyPair("RSA");
+    private final X509Certificate certificate = issue("Test Server", keyPair, "Test CA", caKeyPair);
+
+    @ParameterizedTest
+    @EnumSource(Pkcs12Writer.Encryption.class)
+    void shouldBeReadableByJdk(Pkcs12Writer.Encryption certificateEncryption) throws Exception {
+        byte[] pkcs12 = new Pkcs12Writer()
+                .certificateEncryption(certificateEncryption)
+                .iterations(2048)
+                .macIterations(2048)
+                .addKeyEntry("server", keyPair.getPrivate(), new Certificate[] { certificate, caCertificate })
+                .addCertificateEntry("ca", caCertificate)
+                .write("secret".toCharArray());
+        StrictDer.validate(pkcs12);
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(new ByteArrayInputStream(pkcs12), "secret".toCharArray());
+        assertThat(Collections.list(keyStore.aliases())).containsExactlyInAnyOrder("server", "ca");
+        assertThat(keyStore.getKey("server", "secret".toCharArray())).isEqualTo(keyPair.getPrivate());
+        assertThat(keyStore.getCertificateChain("server")).containsExactly(certificate, caCertificate);
+        assertThat(keyStore.isCertificateEntry("ca")).isTrue();
+    }
+
+    @Test
+    void shouldRoundTripWithPkcs12KeyStore() throws Exception {
+        byte[] pkcs12 = new Pkcs12Writer()
+                .keyEncryption(Pkcs12Writer.Encryption.AES_128_CBC)
+                .addKeyEntry("Test Server \u00e9", keyPair.getPrivate(), new Certificate[] { certificate, caCertificate })
+                .write("".toCharArray());
+
+        KeyStore keyStore = Pkcs12KeyStore.load(new ByteArrayInputStream(pkcs12), "".toCharArray());
+        assertThat(keyStore.getKey("Test Server \u00e9", null)).isEqualTo(keyPair.getPrivate());
+        assertThat(keyStore.getCertificateChain("Test Server \u00e9")).containsExactly(certificate, caCertificate);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        keyStore.store(buffer, "other".toCharArray());
+        KeyStore reloaded = KeyStore.getInstance("PKCS12");
+        reloaded.load(new ByteArrayInputStream(buffer.toByteArray()), "other".toCharArray());
+        assertThat(reloaded.getKey("Test Server \u00e9", "other".toCharArray())).isEqualTo(keyPair.getPrivate());
+    }
+
+    @Test
+    void shouldWriteCertificatesWithoutPassword() throws Exception {
+        byte[] pkcs12 = new Pkcs12Writer()
+                .addCertificateEntry("ca", caCertificate)
+                .write(null);
+        StrictDer.validate(pkcs12);
+
+        KeyStore keyStore = new Pkcs12KeyStore(new ByteArrayInputStream(pkcs12)).toKeyStore(null);
+        assertThat(keyStore.getCertificate("ca")).isEqualTo(caCertificate);
+    }
+
+    @Test
+    void shouldRefuseToWriteKeysWithoutPassword() throws Exception {
+        Pkcs12Writer writer = new Pkcs12Writer()
+                .addKeyEntry("server", keyPair.getPrivate(), new Certificate[] { certificate });
+        assertThatThrownBy(() -> writer.write(null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("without a password");
+
+        KeyStore keyStore = Pkcs12KeyStore.load(new ByteArrayInputStream(writer.write("secret".toCharArray())), "secret".toCharArray());
+        assertThatThrownBy(() -> keyStore.store(new ByteArrayOutputStream(), null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,199 @@
+package io.liquidpki.scan;
+
+import io.liquidpki.common.Extension;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.pem.PemCodec;
+import io.liquidpki.x509.CertificateInfo;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CertificateScannerTest {
+
+    private static final ZonedDateTime NOW = ZonedDateTime.of(2024, 6, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+    private static final Pattern FIRST_CN = Pattern.compile("CN=([^,\"]+)");
+    private static KeyPair ecKey;
+    private static byte[] expiring, longLived, weakRsa;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void createCertificates() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        ecKey = generator.generateKeyPair();
+        KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+        rsaGenerator.initialize(1024);
+        KeyPair rsaKey = rsaGenerator.generateKeyPair();
+
+        expiring = new CertificateInfo()
+                .serialNumber(1)
+                .issuerName(new X500Name().cn("expiring.example.com"))
+                .subjectName(new X500Name().cn("expiring.example.com"))
+                .validity(NOW.minusDays(355), NOW.plusDays(10))
+                .publicKey(ecKey.getPublic())
+                .addExtension(new Extension.SANExtensionType().dnsName("expiring.example.com"))
+                .signWithKey(ecKey.getPrivate())
+                .getEncoded();
+        longLived = new CertificateInfo()
+                .serialNumber(2)
+                .issuerName(new X500Name().cn("Scan CA"))
+                .subjectName(new X500Name().cn("www.example.com").o("Example, Inc"))
+                .validity(NOW.minusDays(1), NOW.plusDays(400))
+                .publicKey(ecKey.getPublic())
+                .addExtension(new Extension.SANExtensionType().dnsName("www.example.com").dnsName("api.example.com"))
+                .signWithKey(ecKey.getPrivate())
+                .getEncoded();
+        weakRsa = new CertificateInfo()
+                .serialNumber(3)
+                .issuerName(new X500Name().cn("Scan CA"))
+                .subjectName(new X500Name().cn("Legacy client"))
+                .validity(NOW.minusDays(1), NOW.plusDays(100))
+                .publicKey(rsaKey.getPublic())
+                .signWithKey(ecKey.getPrivate())
+                .getEncoded();
+    }
+
+    @BeforeEach
+    void writeFiles() throws IOException {
+        Files.createDirectories(directory.resolve("a/b"));
+        Files.write(directory.resolve("a/expiring.crt"), expiring);
+        Files.write(directory.resolve("a/b/bundle.pem"),
+                (PemCodec.encodeToString("CERTIFICATE", longLived) + PemCodec.encodeToString("CERTIFICATE", weakRsa)).getBytes());
+        Files.write(directory.resolve("broken.pem"), "-----BEGIN CERTIFICATE-----\nMAMCAQE=\n-----END CERTIFICATE-----\n".getBytes());
+        Files.write(directory.resolve("notes.txt"), "not a certificate".getBytes());
+    }
+
+    @Test
+    void shouldReportEveryCertificateAsCsv() throws IOException {
+        StringWriter output = new StringWriter();
+        CertificateScanner.Summary summary = new CertificateScanner(2).now(NOW.toInstant()).scan(List.of(directory), output);
+
+        assertThat(summary.getFiles()).isEqualTo(3);
+        assertThat(summary.getCertificates()).isEqualTo(3);
+        assertThat(summary.getMatches()).isEqualTo(3);
+        assertThat(summary.getFailureCount()).isEqualTo(1);
+        assertThat(summary.getFailures()).hasSize(1);
+        assertThat(summary.getFailures().get(0)).contains("broken.pem");
+
+        String[] lines = output.toString().split("\n");
+        assertThat(lines[0]).isEqualTo(String.join(",", ScannedCertificate.FIELDS.keySet()));
+        assertThat(lines).hasSize(4);
+        assertThat(output.toString())
+                .contains(",CN=expiring.example.com,CN=expiring.example.com,1,2023-06-12T12:00:00Z,2024-06-11T12:00:00Z,10,EC,256,SHA256withECDSA,expiring.example.com,1,true,")
+                .contains(",\"O=Example, Inc,CN=www.example.com\",")
+                .contains(",www.example.com api.example.com,2,false,")
+                .contains(",RSA,1024,SHA256withECDSA,,0,false,");
+    }
+
+    @Test
+    void shouldFilterOnTypedFields() throws IOException {
+        assertThat(scanSubjects("keyAlgorithm=RSA", "keySize<2048")).containsExactly("Legacy client");
+        assertThat(scanSubjects("keySize<=256")).containsExactlyInAnyOrder("www.example.com", "expiring.example.com");
+        assertThat(scanSubjects("sanCount=0")).containsExactly("Legacy client");
+        assertThat(scanSubjects("daysToExpiry<30")).containsExactly("expiring.example.com");
+        assertThat(scanSubjects("notAfter>=2025-01-01")).containsExactly("www.example.com");
+        assertThat(scanSubjects("dnsNames=API.example.com")).containsExactly("www.example.com");
+        assertThat(scanSubjects("selfSigned")).containsExactly("expiring.example.com");
+        assertThat(scanSubjects("subject~CN=(www|expiring)\\.")).containsExactlyInAnyOrder("www.example.com", "expiring.example.com");
+        assertThat(scanSubjects("!selfSigned", "keyAlgorithm=ec")).containsExactly("www.example.com");
+    }
+
+    @Test
+    void shouldWriteJsonArray() throws IOException {
+        StringWriter output = new StringWriter();
+        new CertificateScanner(2)
+                .format(ReportFormat.JSON)
+                .filter(CertificateFilter.parse("!selfSigned"))
+                .now(NOW.toInstant())
+                .scan(List.of(directory.resolve("a")), output);
+
+        assertThat(output.toString())
+                .startsWith("[\n  {\"file\": \"")
+                .endsWith("}\n]\n")
+                .contains("\"subject\": \"O=Example, Inc,CN=www.example.com\"")
+                .contains("\"dnsNames\": [\"www.example.com\", \"api.example.com\"], \"sanCount\": 2")
+                .contains("\"keySize\": 1024")
+                .contains("\"dnsNames\": [], \"sanCount\": 0");
+        assertThat(output.toString().split("},\n  \\{")).hasSize(2);
+    }
+
+    @Test
+    void shouldSplitLargeDirectoriesBetweenThreads() throws IOException {
+        Path large = directory.resolve("large");
+        for (int i = 0; i < 10 * CertificateScanner.FILES_PER_TASK; i++) {
+            Path subdirectory = large.resolve("dir" + (i % 3));
+            Files.createDirectories(subdirectory);
+            Files.write(subdirectory.resolve("certificate" + i + ".cer"), i % 2 == 0 ? longLived : weakRsa);
+        }
+
+        StringWriter output = new StringWriter();
+        CertificateScanner.Summary summary = new CertificateScanner(4)
+                .filter(CertificateFilter.parseAll(List.of("keyAlgorithm=RSA", "keySize<2048")))
+                .scan(List.of(large, directory.resolve("a/expiring.crt")), output);
+
+        assertThat(summary.getFiles()).isEqualTo(10 * CertificateScanner.FILES_PER_TASK + 1);
+        assertThat(summary.getCertificates()).isEqualTo(10 * CertificateScanner.FILES_PER_TASK + 1);
+        assertThat(summary.getMatches()).isEqualTo(5 * CertificateScanner.FILES_PER_TASK);
+        assertThat(output.toString().split("\n")).hasSize(5 * CertificateScanner.FILES_PER_TASK + 1);
+    }
+
+    @Test
+    void shouldRejectInvalidFiltersWhenParsing() {
+        assertThatThrownBy(() -> CertificateFilter.parse("colour=red"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unknown field colour");
+        assertThatThrownBy(() -> CertificateFilter.parse("keySize<abc"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Expected a number");
+        assertThatThrownBy(() -> CertificateFilter.parse("notAfter<soon"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Expected a date");
+        assertThatThrownBy(() -> CertificateFilter.parse("selfSigned=maybe"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Expected true or false");
+        assertThatThrownBy(() -> CertificateFilter.parse("keySize"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Expected <field><operator><value>");
+        assertThatThrownBy(() -> CertificateFilter.parse("key size"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Expected <field><operator><value>");
+        assertThatThrownBy(() -> CertificateFilter.parse("subject~("))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private List<String> scanSubjects(String... filters) throws IOException {
+        Predicate<ScannedCertificate> filter = CertificateFilter.parseAll(List.of(filters));
+        StringWriter output = new StringWriter();
+        new CertificateScanner(2).filter(filter).now(NOW.toInstant()).scan(List.of(directory), output);
+        return Arrays.stream(output.toString().split("\n"))
+                .skip(1)
+                .map(line -> {
+                    Matcher subject = FIRST_CN.matcher(line);
+                    return subject.find() ? subject.group(1) : line;
+                })
+                .collect(Collectors.toList());
+    }
+}
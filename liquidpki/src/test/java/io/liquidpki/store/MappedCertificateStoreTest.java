@@ -0,0 +1,141 @@
+package io.liquidpki.store;
+
+import io.liquidpki.common.X500Name;
+import io.liquidpki.der.Der;
+import io.liquidpki.der.MalformedDerException;
+import io.liquidpki.x509.CertificateInfo;
+import io.liquidpki.x509.CompactCertificate;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedCertificateStoreTest {
+
+    private static final List<byte[]> certificates = new ArrayList<>();
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void createCertificates() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+        for (int i = 0; i < 100; i++) {
+            certificates.add(new CertificateInfo()
+                    .serialNumber(i + 1)
+                    .issuerName(new X500Name().cn("Store CA"))
+                    .subjectName(new X500Name().cn("Certificate " + i))
+                    .publicKey(keyPair.getPublic())
+                    .signWithKey(keyPair.getPrivate())
+                    .getEncoded());
+        }
+    }
+
+    @Test
+    void shouldFindCertificatesByFingerprint() throws IOException {
+        try (MappedCertificateStore store = MappedCertificateStore.open(directory.resolve("inventory"))) {
+            byte[] fingerprint = store.add(certificates.get(0));
+            store.add(certificates.get(1));
+
+            assertThat(fingerprint).isEqualTo(MappedCertificateStore.fingerprint(certificates.get(0)));
+            assertThat(store.contains(fingerprint)).isTrue();
+            assertThat(store.get(fingerprint).subject().cn()).isEqualTo("Certificate 0");
+            assertThat(store.get(MappedCertificateStore.fingerprint(certificates.get(1))).serialNumber()).isEqualTo(BigInteger.valueOf(2));
+            assertThat(store.get(MappedCertificateStore.fingerprint(certificates.get(2)))).isNull();
+            assertThat(store.slice(MappedCertificateStore.fingerprint(certificates.get(2)))).isNull();
+            assertThat(store.size()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void shouldReturnReadOnlyViewOfMappedCertificate() throws IOException {
+        try (MappedCertificateStore store = MappedCertificateStore.open(directory.resolve("inventory"))) {
+            ByteBuffer slice = store.slice(store.add(certificates.get(3)));
+
+            assertThat(slice.isReadOnly()).isTrue();
+            byte[] bytes = new byte[slice.remaining()];
+            slice.get(bytes);
+            assertThat(bytes).isEqualTo(certificates.get(3));
+        }
+    }
+
+    @Test
+    void shouldIgnoreDuplicates() throws IOException {
+        try (MappedCertificateStore store = MappedCertificateStore.open(directory.resolve("inventory"))) {
+            store.add(certificates.get(0));
+            store.add(certificates.get(0));
+            assertThat(store.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void shouldReopenWithoutReadingCertificates() throws IOException {
+        Path file = directory.resolve("inventory");
+        try (MappedCertificateStore store = MappedCertificateStore.open(file, 16, 4096)) {
+            for (byte[] certificate : certificates) {
+                store.add(certificate);
+            }
+        }
+        try (MappedCertificateStore store = MappedCertificateStore.open(file)) {
+            assertThat(store.size()).isEqualTo(certificates.size());
+            for (byte[] certificate : certificates) {
+                assertThat(store.get(MappedCertificateStore.fingerprint(certificate)).getEncoded()).isEqualTo(certificate);
+            }
+            store.add(certificates.get(0));
+            assertThat(store.size()).isEqualTo(certificates.size());
+        }
+        assertThat(Files.list(directory)).extracting(Path::getFileName).extracting(Path::toString)
+                .containsExactlyInAnyOrder("inventory.data", "inventory.index");
+    }
+
+    @Test
+    void shouldVisitCertificatesAcrossChunks() throws IOException {
+        List<byte[]> visited = new ArrayList<>();
+        try (MappedCertificateStore store = MappedCertificateStore.open(directory.resolve("inventory"), 16, 1024)) {
+            for (byte[] certificate : certificates) {
+                store.add(certificate);
+            }
+            store.forEach(slice -> {
+                byte[] bytes = new byte[slice.remaining()];
+                slice.get(bytes);
+                visited.add(bytes);
+            });
+        }
+        assertThat(visited).containsExactlyElementsOf(certificates);
+    }
+
+    @Test
+    void shouldRejectNonCertificates() throws IOException {
+        try (MappedCertificateStore store = MappedCertificateStore.open(directory.resolve("inventory"))) {
+            assertThatThrownBy(() -> store.add(new Der.INTEGER(5).toByteArray()))
+                    .isInstanceOf(MalformedDerException.class);
+            assertThatThrownBy(() -> store.add(new byte[] { 0x30, (byte) 0x83 }))
+                    .isInstanceOf(MalformedDerException.class);
+            assertThat(store.size()).isZero();
+        }
+    }
+
+    @Test
+    void shouldRejectOtherFiles() throws IOException {
+        Files.write(directory.resolve("inventory.data"), new byte[64]);
+        assertThatThrownBy(() -> MappedCertificateStore.open(directory.resolve("inventory")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("is not a certificate store");
+    }
+}
@@ -0,0 +1,91 @@
+package io.liquidpki.x509;
+
+import io.liquidpki.common.Extension;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.der.Der;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CertificateTemplateTest {
+
+    private final X500Name issuer = new X500Name("CN=Template CA,O=Example Org");
+    private final byte[] issuerKeyIdentifier = new byte[] { 1, 2, 3, 4 };
+
+    @Test
+    void shouldEncodeLikeCertificateInfo() throws GeneralSecurityException {
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        ZonedDateTime validFrom = ZonedDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        X500Name subject = new X500Name("CN=www.example.com,O=Example Org");
+        CertificateTemplate template = CertificateTemplate.server(issuer, issuerKeyIdentifier, "SHA256withRSA", Period.ofDays(30));
+
+        byte[] toBeSigned = template.toBeSigned(
+                BigInteger.valueOf(4711), validFrom, subject, keyPair.getPublic(),
+                List.of(new Extension(new Extension.SANExtensionType().dnsName("www.example.com")))
+        );
+
+        CertificateInfo expected = new CertificateInfo()
+                .version(2)
+                .serialNumber(4711)
+                .issuerName(issuer)
+                .subjectName(subject)
+                .validity(validFrom, validFrom.plusDays(30))
+                .publicKey(keyPair.getPublic())
+                .addExtension(new Extension.BasicConstraintExtensionType().ca(false))
+                .addExtension(new Extension.KeyUsageExtensionType().digitalSignature(true).keyEncipherment(true))
+                .addExtension(new Extension.ExtendedKeyUsageExtensionType().keyPurpose(Extension.ExtendedKeyUsageExtensionType.SERVER_AUTH))
+                .addExtension(new Extension.AuthorityKeyIdentifierExtensionType().keyIdentifier(issuerKeyIdentifier))
+                .addExtension(new Extension.SANExtensionType().dnsName("www.example.com"));
+        assertThat(Der.toHex(toBeSigned)).isEqualTo(Der.toHex(expected.toBeSigned("SHA256withRSA")));
+    }
+
+    @Test
+    void shouldPinBasicConstraintsAndExtendedKeyUsageForEndEntities() {
+        CertificateTemplate server = CertificateTemplate.server(issuer, issuerKeyIdentifier, "SHA256withRSA", Period.ofDays(30));
+        CertificateTemplate client = CertificateTemplate.client(issuer, issuerKeyIdentifier, "SHA256withRSA", Period.ofDays(30));
+        for (String extnId : List.of("2.5.29.19", "2.5.29.15", "2.5.29.37", "2.5.29.35")) {
+            assertThat(server.isFixed(extnId)).as("server " + extnId).isTrue();
+            assertThat(client.isFixed(extnId)).as("client " + extnId).isTrue();
+        }
+        assertThat(Der.toHex(new Extension(new Extension.BasicConstraintExtensionType().ca(false)).toDer().toByteArray()))
+                .as("cA is DEFAULT FALSE and must be left out")
+                .endsWith("04023000");
+    }
+
+    @Test
+    void shouldProduceCertificateAcceptedByJdk() throws GeneralSecurityException {
+        KeyPair caKeyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        CertificateTemplate template = CertificateTemplate.intermediate(issuer, issuerKeyIdentifier, "SHA256withRSA", Period.ofYears(1));
+
+        byte[] toBeSigned = template.toBeSigned(
+                BigInteger.TEN, ZonedDateTime.now(), new X500Name("CN=Intermediate CA"), keyPair.getPublic(), List.of()
+        );
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(caKeyPair.getPrivate());
+        signature.update(toBeSigned);
+        byte[] encoded = template.withSignature(toBeSigned, signature.sign());
+
+        X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X509")
+                .generateCertificate(new ByteArrayInputStream(encoded));
+        certificate.verify(caKeyPair.getPublic());
+        assertThat(certificate.getBasicConstraints()).isEqualTo(0);
+        assertThat(certificate.getKeyUsage()[5]).isTrue();
+        assertThat(certificate.getIssuerX500Principal().getName()).isEqualTo("CN=Template CA,O=Example Org");
+        assertThat(new SignedCertificate(encoded).tbsCertificate().extensions().authorityKeyIdentifier())
+                .isEqualTo(issuerKeyIdentifier);
+    }
+}
@@ -4,15 +4,23 @@ import io.liquidpki.common.Extension;
 import io.liquidpki.common.X500Name;
 import io.liquidpki.der.Der;
 import io.liquidpki.der.Oid;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
 import java.security.Signature;
-import java.security.interfaces.RSAPublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
@@ -84,7 +92,7 @@ class CertificateTest {
         assertThat(restored.extensions().keyUsage().keyEncipherment()).isEqualTo(false);
         assertThat(restored.extensions().extension(Extension.BasicConstraintExtensionType.class).ca()).isTrue();
 
-        RSAPublicKey publicKey = restored.publicKey();
+        PublicKey publicKey = restored.publicKey();
         assertThat(publicKey).isEqualTo(keyPair.getPublic());
     }
 
@@ -125,6 +133,74 @@ class CertificateTest {
         assertThat(signature.verify(certificate.signatureValue.bytesValue())).isTrue();
     }
 
+    @Test
+    void shouldSerializeKeyIdentifiers() throws GeneralSecurityException {
+        KeyPair issuerKey = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        KeyPair subjectKey = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        SignedCertificate certificate = new CertificateInfo()
+                .issuerName(new X500Name().cn("Issuer"))
+                .subjectName(new X500Name().cn("www.example.com"))
+                .publicKey(subjectKey.getPublic())
+                .addExtension(Extension.SubjectKeyIdentifierExtensionType.forPublicKey(subjectKey.getPublic()))
+                .addExtension(Extension.AuthorityKeyIdentifierExtensionType.forPublicKey(issuerKey.getPublic()))
+                .signWithKey(issuerKey.getPrivate(), "SHA256withRSA");
+
+        SignedCertificate clone = new SignedCertificate(serializeAndDeserialize(certificate.toDer()));
+        assertThat(clone.tbsCertificate.extensions.subjectKeyIdentifier())
+                .hasSize(20)
+                .isEqualTo(Extension.SubjectKeyIdentifierExtensionType.keyIdentifier(subjectKey.getPublic()));
+        assertThat(clone.tbsCertificate.extensions.authorityKeyIdentifier())
+                .isEqualTo(Extension.SubjectKeyIdentifierExtensionType.keyIdentifier(issuerKey.getPublic()));
+    }
+
+    @Test
+    void shouldComputeKeyIdentifierLikeOtherIssuers() throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Objects.requireNonNull(getClass().getResourceAsStream("/github-cert.crt")).transferTo(buffer);
+        SignedCertificate certificate = new SignedCertificate(readPemObjects(buffer).get(0));
+
+        Extension.SubjectKeyIdentifierExtensionType subjectKeyIdentifier = certificate.tbsCertificate.extensions
+                .extension(Extension.SubjectKeyIdentifierExtensionType.class);
+        assertThat(subjectKeyIdentifier.keyIdentifier())
+                .isEqualTo(Extension.SubjectKeyIdentifierExtensionType.keyIdentifier(certificate.tbsCertificate.publicKey()));
+        assertThat(certificate.tbsCertificate.extensions.authorityKeyIdentifier()).startsWith(0x3D, 0xD3, 0x50);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"secp256r1", "secp384r1"})
+    void shouldSignWithEcKey(String curve) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec(curve));
+        assertJdkAcceptsSelfSigned(generator.generateKeyPair());
+    }
+
+    @Test
+    void shouldSignWithEd25519Key() throws GeneralSecurityException {
+        KeyPairGenerator generator = null;
+        try {
+            generator = KeyPairGenerator.getInstance("Ed25519");
+        } catch (NoSuchAlgorithmException ignored) {
+        }
+        Assumptions.assumeTrue(generator != null, "Ed25519 requires Java 15+");
+        assertJdkAcceptsSelfSigned(generator.generateKeyPair());
+    }
+
+    private void assertJdkAcceptsSelfSigned(KeyPair keyPair) throws GeneralSecurityException {
+        SignedCertificate certificate = new CertificateInfo()
+                .version(2)
+                .issuerName(new X500Name().cn("Issuer"))
+                .subjectName(new X500Name().cn("Issuer"))
+                .validity(ZonedDateTime.now().minusDays(1), ZonedDateTime.now().plusDays(1))
+                .publicKey(keyPair.getPublic())
+                .signWithKey(keyPair.getPrivate());
+
+        X509Certificate x509Certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(certificate.getEncoded()));
+        x509Certificate.verify(keyPair.getPublic());
+        assertThat(x509Certificate.getPublicKey()).isEqualTo(keyPair.getPublic());
+        assertThat(new SignedCertificate(certificate.getEncoded()).tbsCertificate.publicKey()).isEqualTo(keyPair.getPublic());
+    }
+
     @Test
     void shouldSerializeValidity() {
         ZonedDateTime dateTime = ZonedDateTime.now().truncatedTo(ChronoUnit.SECONDS).withZoneSameInstant(ZoneId.of("UTC"));
@@ -141,6 +217,22 @@ class CertificateTest {
                 .isEqualTo(Base64.getEncoder().encodeToString(restore));
     }
 
+    @Test
+    void shouldEncodeValidityFrom2050AsGeneralizedTime() {
+        ZonedDateTime endOf2049 = ZonedDateTime.of(2050, 1, 1, 0, 59, 59, 0, ZoneId.of("Europe/Oslo"));
+        ZonedDateTime startOf2050 = endOf2049.plusSeconds(1);
+
+        Der.SEQUENCE der = (Der.SEQUENCE) serializeAndDeserialize(new CertificateInfo.Validity(endOf2049, startOf2050).toDer());
+        List<Der> times = new ArrayList<>();
+        der.iterator().forEachRemaining(times::add);
+        assertThat(times.get(0)).isInstanceOf(Der.UTCTime.class);
+        assertThat(times.get(1)).isInstanceOf(Der.GeneralizedTime.class);
+
+        CertificateInfo.Validity restored = new CertificateInfo.Validity(der);
+        assertThat(restored.getNotBefore().toInstant()).isEqualTo(endOf2049.toInstant());
+        assertThat(restored.getNotAfter().toInstant()).isEqualTo(startOf2050.toInstant());
+    }
+
     @Test
     void shouldDeserializeValidity() {
         ZonedDateTime dateTime = ZonedDateTime.now().truncatedTo(ChronoUnit.SECONDS).withZoneSameInstant(ZoneId.of("UTC"));
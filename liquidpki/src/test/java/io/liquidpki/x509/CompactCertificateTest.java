@@ -0,0 +1,139 @@
+package io.liquidpki.x509;
+
+import io.liquidpki.common.Extension;
+import io.liquidpki.common.X500Name;
+import io.liquidpki.der.Der;
+import io.liquidpki.der.MalformedDerException;
+import io.liquidpki.pem.PemCodec;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompactCertificateTest {
+
+    @Test
+    void shouldReadFieldsLikeTheJdk() throws IOException, GeneralSecurityException {
+        byte[] encoded = PemCodec.decode(new String(Objects.requireNonNull(getClass().getResourceAsStream("/github-cert.crt")).readAllBytes(), StandardCharsets.US_ASCII));
+        X509Certificate jdkCertificate = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(encoded));
+
+        CompactCertificate certificate = new CompactCertificate(encoded);
+
+        assertThat(certificate.version()).isEqualTo(jdkCertificate.getVersion() - 1);
+        assertThat(certificate.serialNumber()).isEqualTo(jdkCertificate.getSerialNumber());
+        assertThat(certificate.subjectBytes()).isEqualTo(jdkCertificate.getSubjectX500Principal().getEncoded());
+        assertThat(certificate.issuerBytes()).isEqualTo(jdkCertificate.getIssuerX500Principal().getEncoded());
+        assertThat(certificate.notAfter().toInstant()).isEqualTo(jdkCertificate.getNotAfter().toInstant());
+        assertThat(certificate.notBefore().toInstant()).isEqualTo(jdkCertificate.getNotBefore().toInstant());
+        assertThat(certificate.publicKey()).isEqualTo(jdkCertificate.getPublicKey());
+        assertThat(certificate.signatureAlgorithmOid()).isEqualTo(jdkCertificate.getSigAlgOID());
+        assertThat(certificate.signatureValue()).isEqualTo(jdkCertificate.getSignature());
+        assertThat(certificate.tbsCertificateBytes()).isEqualTo(jdkCertificate.getTBSCertificate());
+        assertThat(certificate.extensions().sanExtension().dnsNames()).contains("github.com");
+        assertThat(certificate.getEncoded()).isEqualTo(encoded);
+    }
+
+    @Test
+    void shouldMatchSignedCertificate() throws GeneralSecurityException {
+        KeyPair issuerKey = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        KeyPair subjectKey = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        X500Name issuerName = new X500Name().cn("Compact CA");
+        SignedCertificate issuer = new CertificateInfo()
+                .version(2)
+                .serialNumber(1)
+                .issuerName(issuerName)
+                .subjectName(issuerName)
+                .validity(ZonedDateTime.now().minusDays(1), ZonedDateTime.now().plusDays(10))
+                .publicKey(issuerKey.getPublic())
+                .signWithKey(issuerKey.getPrivate());
+        SignedCertificate signed = new CertificateInfo()
+                .version(2)
+                .serialNumber(4711)
+                .issuerName(issuerName)
+                .subjectName(new X500Name().cn("Compact subject").o("Example Org"))
+                .validity(ZonedDateTime.now().minusDays(1), ZonedDateTime.now().plusDays(10))
+                .publicKey(subjectKey.getPublic())
+                .addExtension(new Extension.SANExtensionType().dnsName("www.example.com"))
+                .signWithKey(issuerKey.getPrivate());
+
+        CompactCertificate certificate = new CompactCertificate(signed.getEncoded());
+        CompactCertificate compactIssuer = new CompactCertificate(issuer.getEncoded());
+
+        assertThat(certificate.serialNumber()).isEqualTo(4711);
+        assertThat(certificate.subject().cn()).isEqualTo("Compact subject");
+        assertThat(certificate.subject()).isEqualTo(signed.tbsCertificate().subject());
+        assertThat(certificate.issuer()).isEqualTo(issuer.tbsCertificate().subject());
+        assertThat(certificate.isIssuedBy(compactIssuer)).isTrue();
+        assertThat(compactIssuer.isIssuedBy(certificate)).isFalse();
+        assertThat(certificate.tbsCertificateBytes()).isEqualTo(signed.tbsCertificateBytes());
+        assertThat(certificate.extensions().sanExtension().dnsNames()).containsExactly("www.example.com");
+        assertThat(compactIssuer.extensions()).isNull();
+        assertThat(certificate.toSignedCertificate().getEncoded()).isEqualTo(signed.getEncoded());
+        assertThat(certificate).isEqualTo(new CompactCertificate(signed.getEncoded())).isNotEqualTo(compactIssuer);
+    }
+
+    @Test
+    void shouldDropTrailingBytes() throws GeneralSecurityException {
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        byte[] encoded = new CertificateInfo()
+                .issuerName(new X500Name().cn("Trailing"))
+                .subjectName(new X500Name().cn("Trailing"))
+                .publicKey(keyPair.getPublic())
+                .signWithKey(keyPair.getPrivate())
+                .getEncoded();
+        byte[] padded = Arrays.copyOf(encoded, encoded.length + 16);
+
+        assertThat(new CompactCertificate(padded).getEncodedLength()).isEqualTo(encoded.length);
+    }
+
+    @Test
+    void shouldRejectNonCertificates() {
+        byte[] name = new X500Name().cn("Not a certificate").toDer().toByteArray();
+        assertThatThrownBy(() -> new CompactCertificate(name))
+                .isInstanceOf(MalformedDerException.class);
+        byte[] truncated = Arrays.copyOf(new Der.SEQUENCE(List.of(new Der.INTEGER(1))).toByteArray(), 2);
+        assertThatThrownBy(() -> new CompactCertificate(truncated))
+                .isInstanceOf(MalformedDerException.class);
+    }
+
+    @Test
+    void shouldRejectTruncatedInput() {
+        assertThatThrownBy(() -> new CompactCertificate(new byte[] { 0x30, 0x02, 0x30, 0x00 }))
+                .isInstanceOf(MalformedDerException.class);
+        assertThatThrownBy(() -> new CompactCertificate(new byte[] { 0x30, (byte) 0x83 }))
+                .isInstanceOf(MalformedDerException.class);
+        assertThatThrownBy(() -> new CompactCertificate(new byte[] { 0x30, 0x03, 0x30, 0x01, (byte) 0xA0 }))
+                .isInstanceOf(MalformedDerException.class);
+        assertThatThrownBy(() -> new CompactCertificate(new byte[0]))
+                .isInstanceOf(MalformedDerException.class);
+
+        byte[] encoded = PemCodec.decode(new String(readResource("/github-cert.crt"), StandardCharsets.US_ASCII));
+        for (int length = 0; length < encoded.length; length++) {
+            byte[] prefix = Arrays.copyOf(encoded, length);
+            assertThatThrownBy(() -> new CompactCertificate(prefix))
+                    .as("prefix of " + length + " bytes")
+                    .isInstanceOf(MalformedDerException.class);
+        }
+    }
+
+    private byte[] readResource(String name) {
+        try {
+            return Objects.requireNonNull(getClass().getResourceAsStream(name)).readAllBytes();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.johannesbrodwall.pki.load;
+
+import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.LiquidPkiCertificateAuthority;
+import com.johannesbrodwall.pki.https.server.HttpsDemoServer;
+import com.johannesbrodwall.pki.sockets.SocketServer;
+import com.johannesbrodwall.pki.util.SslUtil;
+import org.jsonbuddy.JsonArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens many concurrent mTLS connections, each with one of a set of distinct client certificates,
+ * and reports handshakes per second, latency percentiles, how many handshakes resumed a session
+ * and CPU time per handshake. Every connection makes a new handshake; a client's later
+ * connections can resume the session from its earlier ones, so the resumption rate depends on
+ * how many connections there are per client.
+ */
+public class LoadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private final List<SSLContext> clients;
+
+    public LoadGenerator(List<SSLContext> clients) {
+        this.clients = clients;
+    }
+
+    /** One SSLContext per client, and so one session cache, each with its own key and certificate */
+    public static List<SSLContext> mintClients(CertificateAuthority certificateAuthority, int count, String keyType) throws GeneralSecurityException, IOException {
+        List<X509Certificate> trustedCertificates = List.of(certificateAuthority.getCaCertificate());
+        ZonedDateTime now = ZonedDateTime.now();
+        List<SSLContext> clients = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            KeyPair keyPair = SslUtil.generateKeyPair(keyType);
+            X509Certificate certificate = certificateAuthority.issueClientCertificate("CN=Load client " + i + ",O=Load Generator", now, keyPair.getPublic());
+            clients.add(SslUtil.createSslContext(SslUtil.createKeyManagers(keyPair, certificate), SslUtil.createTrustManagers(trustedCertificates)));
+        }
+        return clients;
+    }
+
+    /**
+     * Makes <code>connections</code> connections to the target from <code>concurrency</code> threads.
+     * Java 11 has no virtual threads, so concurrency is bounded by the size of a platform thread pool.
+     */
+    public LoadReport run(LoadTarget target, int connections, int concurrency) throws InterruptedException {
+        long[] handshakeNanos = new long[connections];
+        long[] connectionNanos = new long[connections];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger resumed = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        AtomicLong clientCpuNanos = new AtomicLong();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        Instant startTime = Instant.now();
+        long processCpuStart = processCpuNanos();
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        for (int t = 0; t < concurrency; t++) {
+            executor.execute(() -> {
+                long threadCpuStart = threads.getCurrentThreadCpuTime();
+                int i;
+                while ((i = next.getAndIncrement()) < connections) {
+                    SSLContext client = clients.get(i % clients.size());
+                    long connectionStart = System.nanoTime();
+                    long connectionStartMillis = System.currentTimeMillis();
+                    try (SSLSocket socket = (SSLSocket) client.getSocketFactory().createSocket(target.getAddress().getHostString(), target.getAddress().getPort())) {
+                        socket.startHandshake();
+                        long handshakeTime = System.nanoTime() - connectionStart;
+                        // A resumed session was created by an earlier connection
+                        boolean wasResumed = socket.getSession().getCreationTime() < connectionStartMillis;
+                        target.exchange(socket);
+                        int index = completed.getAndIncrement();
+                        handshakeNanos[index] = handshakeTime;
+                        connectionNanos[index] = System.nanoTime() - connectionStart;
+                        if (wasResumed) {
+                            resumed.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        logger.debug("Connection {} to {} failed", i, target.getAddress(), e);
+                        errors.incrementAndGet();
+                    }
+                }
+                clientCpuNanos.addAndGet(threads.getCurrentThreadCpuTime() - threadCpuStart);
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        long elapsedNanos = System.nanoTime() - start;
+        long processCpuEnd = processCpuNanos();
+
+        return new LoadReport(
+                target.getName(), clients.size(), concurrency,
+                Arrays.copyOf(handshakeNanos, completed.get()), Arrays.copyOf(connectionNanos, completed.get()),
+                resumed.get(), errors.get(), elapsedNanos,
+                processCpuStart < 0 ? -1 : processCpuEnd - processCpuStart, clientCpuNanos.get(), startTime
+        );
+    }
+
+    private static long processCpuNanos() {
+        OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+        if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) operatingSystem).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * Usage: LoadGenerator [--clients=100] [--connections=2000] [--concurrency=32] [--keyType=P-256] [--output=results.json]
+     *
+     * <p>Starts a certificate authority, HttpsDemoServer and SocketServer in this JVM, runs both targets
+     * and prints the reports as a JSON array, or writes them to the output file.</p>
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.err.println("Usage: LoadGenerator [--clients=100] [--connections=2000] [--concurrency=32] [--keyType=P-256] [--output=results.json]");
+                System.exit(1);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        int clientCount = Integer.parseInt(options.getOrDefault("clients", "100"));
+        int connections = Integer.parseInt(options.getOrDefault("connections", "2000"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        String keyType = options.getOrDefault("keyType", "P-256");
+
+        ZonedDateTime now = ZonedDateTime.now();
+        CertificateAuthority certificateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), SslUtil.generateKeyPair(keyType), "CN=Load Generator CA", now);
+        KeyPair serverKeyPair = SslUtil.generateKeyPair(keyType);
+        X509Certificate serverCertificate = certificateAuthority.issueServerCertificate("localhost", "CN=localhost", now, serverKeyPair.getPublic());
+        SSLContext serverContext = SslUtil.createSslContext(
+                SslUtil.createKeyManagers(serverKeyPair, serverCertificate),
+                SslUtil.createCachingTrustManagers(List.of(certificateAuthority.getCaCertificate()))
+        );
+
+        HttpsDemoServer httpsServer = new HttpsDemoServer();
+        httpsServer.setHttpsConfiguration(new InetSocketAddress("localhost", 0), serverContext);
+        httpsServer.start();
+        SocketServer socketServer = new SocketServer(serverContext);
+        socketServer.start();
+
+        // Warm up with other clients, so the measured clients start without cached sessions
+        LoadGenerator warmup = new LoadGenerator(mintClients(certificateAuthority, concurrency, keyType));
+        LoadGenerator generator = new LoadGenerator(mintClients(certificateAuthority, clientCount, keyType));
+        List<LoadTarget> targets = List.of(
+                LoadTarget.https(new InetSocketAddress("localhost", httpsServer.getURL().getPort()), "/"),
+                LoadTarget.socket(new InetSocketAddress("localhost", socketServer.getPort()))
+        );
+        JsonArray reports = new JsonArray();
+        for (LoadTarget target : targets) {
+            warmup.run(target, Math.max(connections / 10, concurrency), concurrency);
+            LoadReport report = generator.run(target, connections, concurrency);
+            logger.info("{}: {} handshakes/s, p99 {} ms", target.getName(), Math.round(report.getHandshakesPerSecond()), report.getHandshakePercentileMillis(99));
+            reports.add(report.toJson());
+        }
+
+        if (options.containsKey("output")) {
+            Files.writeString(Path.of(options.get("output")), reports.toIndentedJson("  "));
+        } else {
+            System.out.println(reports.toIndentedJson("  "));
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,105 @@
+package com.johannesbrodwall.pki.load;
+
+import org.jsonbuddy.JsonObject;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * The result of one {@link LoadGenerator#run} as JSON, for comparing runs over time.
+ * CPU time is for the whole process, which includes the server when it runs in the same JVM,
+ * and separately for the client threads.
+ */
+public class LoadReport {
+
+    private final String target;
+    private final int clients;
+    private final int concurrency;
+    private final long[] handshakeNanos;
+    private final long[] connectionNanos;
+    private final int resumed;
+    private final int errors;
+    private final long elapsedNanos;
+    private final long processCpuNanos;
+    private final long clientCpuNanos;
+    private final Instant startTime;
+
+    LoadReport(String target, int clients, int concurrency, long[] handshakeNanos, long[] connectionNanos, int resumed, int errors, long elapsedNanos, long processCpuNanos, long clientCpuNanos, Instant startTime) {
+        this.target = target;
+        this.clients = clients;
+        this.concurrency = concurrency;
+        this.handshakeNanos = handshakeNanos;
+        this.connectionNanos = connectionNanos;
+        this.resumed = resumed;
+        this.errors = errors;
+        this.elapsedNanos = elapsedNanos;
+        this.processCpuNanos = processCpuNanos;
+        this.clientCpuNanos = clientCpuNanos;
+        this.startTime = startTime;
+        Arrays.sort(handshakeNanos);
+        Arrays.sort(connectionNanos);
+    }
+
+    public int getHandshakes() {
+        return handshakeNanos.length;
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+
+    public double getHandshakesPerSecond() {
+        return handshakeNanos.length * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    public double getResumptionRate() {
+        return handshakeNanos.length == 0 ? 0 : (double) resumed / handshakeNanos.length;
+    }
+
+    /** Process CPU time per handshake, or -1 if the JVM doesn't report process CPU time */
+    public double getCpuMillisPerHandshake() {
+        return processCpuNanos < 0 || handshakeNanos.length == 0 ? -1 : processCpuNanos / 1_000_000.0 / handshakeNanos.length;
+    }
+
+    public double getClientCpuMillisPerHandshake() {
+        return handshakeNanos.length == 0 ? -1 : clientCpuNanos / 1_000_000.0 / handshakeNanos.length;
+    }
+
+    public double getHandshakePercentileMillis(double percentile) {
+        return percentile(handshakeNanos, percentile);
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1_000_000.0;
+    }
+
+    private static JsonObject percentiles(long[] sortedNanos) {
+        return new JsonObject()
+                .put("p50", percentile(sortedNanos, 50))
+                .put("p90", percentile(sortedNanos, 90))
+                .put("p99", percentile(sortedNanos, 99))
+                .put("max", percentile(sortedNanos, 100));
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("target", target)
+                .put("startTime", startTime.toString())
+                .put("javaVersion", System.getProperty("java.version"))
+                .put("availableProcessors", Runtime.getRuntime().availableProcessors())
+                .put("clients", clients)
+                .put("concurrency", concurrency)
+                .put("handshakes", getHandshakes())
+                .put("errors", errors)
+                .put("handshakesPerSecond", getHandshakesPerSecond())
+                .put("resumptionRate", getResumptionRate())
+                .put("cpuMillisPerHandshake", getCpuMillisPerHandshake())
+                .put("clientCpuMillisPerHandshake", getClientCpuMillisPerHandshake())
+                .put("handshakeMillis", percentiles(handshakeNanos))
+                .put("connectionMillis", percentiles(connectionNanos));
+    }
+}
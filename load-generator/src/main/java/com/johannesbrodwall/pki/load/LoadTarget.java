@@ -0,0 +1,70 @@
+package com.johannesbrodwall.pki.load;
+
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A server to open mTLS connections to, and what to do on each connection after the handshake.
+ */
+public interface LoadTarget {
+
+    String getName();
+
+    InetSocketAddress getAddress();
+
+    void exchange(SSLSocket socket) throws IOException;
+
+    /** Sends one HTTP/1.1 request with <code>Connection: close</code> and reads the response, as against HttpsDemoServer */
+    static LoadTarget https(InetSocketAddress address, String path) {
+        return new LoadTarget() {
+            @Override
+            public String getName() {
+                return "https";
+            }
+
+            @Override
+            public InetSocketAddress getAddress() {
+                return address;
+            }
+
+            @Override
+            public void exchange(SSLSocket socket) throws IOException {
+                OutputStream output = socket.getOutputStream();
+                output.write(("GET " + path + " HTTP/1.1\r\nHost: " + address.getHostString() + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                output.flush();
+                byte[] response = socket.getInputStream().readAllBytes();
+                if (!new String(response, 0, Math.min(response.length, 12), StandardCharsets.US_ASCII).startsWith("HTTP/1.1 2")) {
+                    throw new IOException("Unexpected response from " + address);
+                }
+            }
+        };
+    }
+
+    /** Reads the greeting until the server closes the connection, as against SocketServer */
+    static LoadTarget socket(InetSocketAddress address) {
+        return new LoadTarget() {
+            @Override
+            public String getName() {
+                return "socket";
+            }
+
+            @Override
+            public InetSocketAddress getAddress() {
+                return address;
+            }
+
+            @Override
+            public void exchange(SSLSocket socket) throws IOException {
+                try (InputStream input = socket.getInputStream()) {
+                    if (input.readAllBytes().length == 0) {
+                        throw new IOException("Empty response from " + address);
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package com.johannesbrodwall.pki.load;
+
+import com.johannesbrodwall.pki.ca.CertificateAuthority;
+import com.johannesbrodwall.pki.ca.LiquidPkiCertificateAuthority;
+import com.johannesbrodwall.pki.https.server.HttpsDemoServer;
+import com.johannesbrodwall.pki.sockets.SocketServer;
+import com.johannesbrodwall.pki.util.SslUtil;
+import org.jsonbuddy.JsonObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadGeneratorTest {
+
+    private final ZonedDateTime now = ZonedDateTime.now();
+    private CertificateAuthority certificateAuthority;
+    private SSLContext serverContext;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        certificateAuthority = new LiquidPkiCertificateAuthority(Period.ofDays(1), SslUtil.generateKeyPair("P-256"), "CN=Load CA", now);
+        KeyPair serverKeyPair = SslUtil.generateKeyPair("P-256");
+        X509Certificate serverCertificate = certificateAuthority.issueServerCertificate("localhost", "CN=localhost", now, serverKeyPair.getPublic());
+        serverContext = SslUtil.createSslContext(
+                SslUtil.createKeyManagers(serverKeyPair, serverCertificate),
+                SslUtil.createTrustManagers(List.of(certificateAuthority.getCaCertificate()))
+        );
+    }
+
+    @Test
+    void shouldMintDistinctClients() throws Exception {
+        List<SSLContext> clients = LoadGenerator.mintClients(certificateAuthority, 3, "P-256");
+        assertThat(clients).hasSize(3).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void shouldMeasureHandshakesAgainstSocketServer() throws Exception {
+        SocketServer server = new SocketServer(serverContext);
+        server.start();
+
+        LoadGenerator generator = new LoadGenerator(LoadGenerator.mintClients(certificateAuthority, 2, "P-256"));
+        LoadReport report = generator.run(LoadTarget.socket(new InetSocketAddress("localhost", server.getPort())), 10, 2);
+
+        assertThat(report.getErrors()).isZero();
+        assertThat(report.getHandshakes()).isEqualTo(10);
+        assertThat(report.getResumptionRate()).isGreaterThan(0).isLessThan(1);
+        assertThat(report.getHandshakePercentileMillis(50)).isLessThanOrEqualTo(report.getHandshakePercentileMillis(99));
+    }
+
+    @Test
+    void shouldReportHttpsLoadAsJson() throws Exception {
+        HttpsDemoServer server = new HttpsDemoServer();
+        server.setHttpsConfiguration(new InetSocketAddress("localhost", 0), serverContext);
+        server.start();
+
+        LoadGenerator generator = new LoadGenerator(LoadGenerator.mintClients(certificateAuthority, 4, "P-256"));
+        LoadReport report = generator.run(LoadTarget.https(new InetSocketAddress("localhost", server.getURL().getPort()), "/"), 12, 4);
+
+        JsonObject json = report.toJson();
+        assertThat(json.requiredString("target")).isEqualTo("https");
+        assertThat(json.requiredLong("handshakes")).isEqualTo(12);
+        assertThat(json.requiredLong("errors")).isZero();
+        assertThat(json.requiredDouble("handshakesPerSecond")).isPositive();
+        assertThat(json.requiredObject("handshakeMillis").requiredDouble("p99")).isPositive();
+        assertThat(json.requiredDouble("clientCpuMillisPerHandshake")).isPositive();
+    }
+}